@@ -0,0 +1,16 @@
+-- flow表索引迁移脚本（与Flow实体上声明的索引一致）
+-- 在已有数据的库上执行：CONCURRENTLY建索引不阻塞写入，不能放在事务块内执行
+-- psql -d navigation -f flow_indexes.sql
+
+-- 按日期、小时扫描和(节点, 日期, 小时)单点查询；唯一索引保证每个数据点只有一行，流式导入的upsert依赖它
+-- 先删除重复的数据点（保留id最大的一行），再建唯一索引替换旧的非唯一索引
+DELETE FROM flow a USING flow b
+WHERE a.day_num = b.day_num AND a.time_stamp = b.time_stamp AND a.node_id = b.node_id AND a.id < b.id;
+CREATE UNIQUE INDEX CONCURRENTLY IF NOT EXISTS idx_flow_day_time_node_unique ON flow (day_num, time_stamp, node_id);
+DROP INDEX CONCURRENTLY IF EXISTS idx_flow_day_time_node;
+ALTER INDEX idx_flow_day_time_node_unique RENAME TO idx_flow_day_time_node;
+
+-- 按节点查询（节点历史、节点趋势）
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_flow_node_day ON flow (node_id, day_num);
+
+ANALYZE flow;
@@ -0,0 +1,17 @@
+-- nodes表坐标类型迁移脚本（与Node实体一致）
+-- 旧版本的latitude/longitude为字符串列，转换为双精度数值并建立范围查询索引
+-- 转换会重写nodes表并持有排他锁，应在维护窗口执行；无法解析的坐标会使整个事务回滚
+-- psql -d navigation -f nodes_numeric_coordinates.sql
+
+BEGIN;
+
+ALTER TABLE nodes
+    ALTER COLUMN latitude TYPE DOUBLE PRECISION USING trim(latitude)::double precision,
+    ALTER COLUMN longitude TYPE DOUBLE PRECISION USING trim(longitude)::double precision;
+
+-- 按坐标范围查询节点
+CREATE INDEX IF NOT EXISTS idx_nodes_lat_lng ON nodes (latitude, longitude);
+
+COMMIT;
+
+ANALYZE nodes;
@@ -6,28 +6,35 @@ CREATE TABLE users (
     email VARCHAR(100) NOT NULL UNIQUE
 );
 
--- 创建节点表
+-- 创建节点表（与Node实体一致，导入路网时保留文件中的节点ID）
 CREATE TABLE nodes (
-    id SERIAL PRIMARY KEY,
+    node_id SERIAL PRIMARY KEY,
     latitude DOUBLE PRECISION NOT NULL,
-    longitude DOUBLE PRECISION NOT NULL,
-    node_name VARCHAR(100),
-    node_type VARCHAR(50)
+    longitude DOUBLE PRECISION NOT NULL
 );
+CREATE INDEX idx_nodes_lat_lng ON nodes (latitude, longitude);
 
--- 创建边表
+-- 创建边表（与Edge实体一致，道路按双向处理，distance单位为公里）
 CREATE TABLE edges (
-    id SERIAL PRIMARY KEY,
-    source_node_id BIGINT NOT NULL,
-    target_node_id BIGINT NOT NULL,
-    distance DOUBLE PRECISION NOT NULL,
-    road_name VARCHAR(100),
-    road_type VARCHAR(50),
-    capacity INTEGER,
-    is_bidirectional BOOLEAN DEFAULT TRUE,
-    FOREIGN KEY (source_node_id) REFERENCES nodes(id),
-    FOREIGN KEY (target_node_id) REFERENCES nodes(id)
+    id BIGSERIAL PRIMARY KEY,
+    node_id1 INTEGER NOT NULL,
+    node_id2 INTEGER NOT NULL,
+    distance REAL NOT NULL
+);
+CREATE INDEX idx_edges_node1 ON edges (node_id1);
+CREATE INDEX idx_edges_node2 ON edges (node_id2);
+
+-- 创建路段小时拥挤度表（与EdgeCongestion实体一致，由应用增量维护）
+CREATE TABLE edge_congestion (
+    id BIGSERIAL PRIMARY KEY,
+    day_num INTEGER NOT NULL,
+    time_stamp INTEGER NOT NULL,
+    edge_id BIGINT NOT NULL,
+    node_id1 INTEGER NOT NULL,
+    node_id2 INTEGER NOT NULL,
+    flow INTEGER NOT NULL
 );
+CREATE UNIQUE INDEX idx_edge_congestion_day_time_edge ON edge_congestion (day_num, time_stamp, edge_id);
 
 -- 创建交通数据表
 CREATE TABLE traffic_data (
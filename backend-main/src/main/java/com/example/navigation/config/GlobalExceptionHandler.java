@@ -1,7 +1,10 @@
 package com.example.navigation.config;
 
 import com.example.navigation.exception.BusinessException;
+import com.example.navigation.exception.StreamAbortedException;
 import com.example.navigation.model.dto.ErrorResponse;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -73,6 +76,22 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
     }
 
+    /**
+     * 处理流式响应中途失败
+     * 响应头未提交时清除已设置的ETag等头部后返回500；已提交时重新抛出，由容器中止连接，不结束残缺的响应
+     */
+    @ExceptionHandler(StreamAbortedException.class)
+    public ResponseEntity<String> handleStreamAbortedException(
+            StreamAbortedException ex, HttpServletResponse response) throws StreamAbortedException {
+        if (response.isCommitted()) {
+            throw ex;
+        }
+        response.reset();
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .cacheControl(CacheControl.noStore())
+                .body("系统内部错误：" + ex.getMessage());
+    }
+
     /**
      * 处理所有未捕获的异常
      */
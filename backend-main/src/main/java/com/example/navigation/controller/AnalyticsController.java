@@ -0,0 +1,80 @@
+package com.example.navigation.controller;
+
+import com.example.navigation.service.FlowAnalyticsService;
+import com.example.navigation.service.FlowQuantileService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 流量分析控制器
+ * 提供多日区间的小时分布、星期分布、节点趋势和高流量节点查询，以及当天按区域和小时的流量分位数
+ */
+@RestController
+@RequestMapping("/api/analytics/flow")
+@RequiredArgsConstructor
+public class AnalyticsController {
+
+    private final FlowAnalyticsService flowAnalyticsService;
+    private final FlowQuantileService flowQuantileService;
+
+    /**
+     * 日期区间内按小时的流量分布，可指定单个节点
+     */
+    @GetMapping("/hourly")
+    public ResponseEntity<List<Map<String, Object>>> getHourlyProfile(@RequestParam int startDay,
+                                                                      @RequestParam int endDay,
+                                                                      @RequestParam(required = false) Integer nodeId) {
+        return ResponseEntity.ok(flowAnalyticsService.getHourlyProfile(startDay, endDay, nodeId));
+    }
+
+    /**
+     * 日期区间内按星期的流量分布
+     */
+    @GetMapping("/weekday")
+    public ResponseEntity<List<Map<String, Object>>> getWeekdayProfile(@RequestParam int startDay, @RequestParam int endDay) {
+        return ResponseEntity.ok(flowAnalyticsService.getWeekdayProfile(startDay, endDay));
+    }
+
+    /**
+     * 单个节点每天的流量趋势
+     */
+    @GetMapping("/nodes/{nodeId}/trend")
+    public ResponseEntity<List<Map<String, Object>>> getNodeTrend(@PathVariable int nodeId,
+                                                                  @RequestParam int startDay,
+                                                                  @RequestParam int endDay) {
+        return ResponseEntity.ok(flowAnalyticsService.getNodeTrend(nodeId, startDay, endDay));
+    }
+
+    /**
+     * 日期区间内平均流量最高的节点
+     */
+    @GetMapping("/top-nodes")
+    public ResponseEntity<List<Map<String, Object>>> getTopNodes(@RequestParam int startDay,
+                                                                 @RequestParam int endDay,
+                                                                 @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(flowAnalyticsService.getTopNodes(startDay, endDay, limit));
+    }
+
+    /**
+     * 当天指定小时范围和区域的流量分位数（p50/p90/p99），可按区域或小时分组
+     */
+    @GetMapping("/quantiles")
+    public ResponseEntity<Map<String, Object>> getQuantiles(@RequestParam(required = false) Integer fromHour,
+                                                            @RequestParam(required = false) Integer toHour,
+                                                            @RequestParam(required = false) List<String> regions,
+                                                            @RequestParam(defaultValue = "none") String groupBy) {
+        return ResponseEntity.ok(flowQuantileService.getQuantiles(fromHour, toHour, regions, groupBy));
+    }
+
+    /**
+     * 分位数摘要统计信息
+     */
+    @GetMapping("/quantiles/stats")
+    public ResponseEntity<Map<String, Object>> getQuantileStatistics() {
+        return ResponseEntity.ok(flowQuantileService.getStatistics());
+    }
+}
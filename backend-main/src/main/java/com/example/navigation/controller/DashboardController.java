@@ -2,14 +2,24 @@ package com.example.navigation.controller;
 
 import com.example.navigation.model.dto.dashboard.DashboardStatsResponse;
 import com.example.navigation.service.DashboardService;
+import com.example.navigation.service.EpochResponseCache;
+import com.example.navigation.service.HotspotService;
+import com.example.navigation.service.RegionStatsService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.Map;
+
 /**
  * 仪表盘控制器
  * 处理交通统计信息相关接口
@@ -22,21 +32,116 @@ public class DashboardController {
     private static final Logger logger = LoggerFactory.getLogger(DashboardController.class);
     
     private final DashboardService dashboardService;
+    private final EpochResponseCache epochResponseCache;
+    private final HotspotService hotspotService;
+    private final RegionStatsService regionStatsService;
 
     /**
-     * 获取仪表盘统计数据
+     * 获取仪表盘统计数据，支持按流量数据版本的ETag条件请求
      */
     @GetMapping("/stats")
-    public ResponseEntity<DashboardStatsResponse> getDashboardStats() {
-        logger.info("获取仪表盘统计数据请求");
+    public ResponseEntity<byte[]> getDashboardStats(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        logger.debug("获取仪表盘统计数据请求");
         
         try {
-            DashboardStatsResponse response = dashboardService.getDashboardStats();
-            logger.info("获取仪表盘统计数据成功");
-            return ResponseEntity.ok(response);
+            return epochResponseCache.respond("dashboard-stats", ifNoneMatch, () -> {
+                DashboardStatsResponse response = dashboardService.getDashboardStats();
+                logger.debug("获取仪表盘统计数据成功");
+                return response;
+            });
         } catch (Exception e) {
             logger.error("获取仪表盘统计数据失败: error={}", e.getMessage());
             throw e;
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * 获取统计快照详情（计数、总和、各级别分布、版本）
+     */
+    @GetMapping("/stats/snapshot")
+    public ResponseEntity<Map<String, Object>> getStatsSnapshot() {
+        return ResponseEntity.ok(dashboardService.getSnapshotDetails());
+    }
+
+    /**
+     * 将增量维护的统计快照与数据库全量扫描结果比对，只报告结果，不修改快照
+     */
+    @GetMapping("/stats/verify")
+    public ResponseEntity<Map<String, Object>> verifyStats() {
+        logger.info("仪表盘统计一致性检查请求");
+        return ResponseEntity.ok(dashboardService.verifyConsistency(false));
+    }
+
+    /**
+     * 比对统计快照与数据库全量扫描结果，repair为true时在不一致时重建快照
+     */
+    @PostMapping("/stats/verify")
+    public ResponseEntity<Map<String, Object>> verifyAndRepairStats(@RequestParam(defaultValue = "false") boolean repair) {
+        logger.info("仪表盘统计一致性检查请求: repair={}", repair);
+        return ResponseEntity.ok(dashboardService.verifyConsistency(repair));
+    }
+
+    /**
+     * 按区域获取统计数据，hour为空时统计全天，支持按流量数据版本的ETag条件请求
+     */
+    @GetMapping("/stats/regions")
+    public ResponseEntity<byte[]> getRegionStats(
+            @RequestParam(required = false) Integer hour,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        logger.debug("获取区域统计数据请求: hour={}", hour);
+        return epochResponseCache.respond("dashboard-regions|" + hour, ifNoneMatch,
+                () -> regionStatsService.getRegionStats(hour));
+    }
+
+    /**
+     * 下钻单个区域的全天、逐小时统计和流量分位数
+     */
+    @GetMapping("/stats/regions/{regionId}")
+    public ResponseEntity<byte[]> getRegionDetail(
+            @PathVariable String regionId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        logger.debug("获取区域详情请求: regionId={}", regionId);
+        return epochResponseCache.respond("dashboard-region|" + regionId, ifNoneMatch,
+                () -> regionStatsService.getRegionDetail(regionId));
+    }
+
+    /**
+     * 获取区域统计服务信息
+     */
+    @GetMapping("/stats/regions-info")
+    public ResponseEntity<Map<String, Object>> getRegionStatistics() {
+        return ResponseEntity.ok(regionStatsService.getStatistics());
+    }
+
+    /**
+     * 从头重建统计快照
+     */
+    @PostMapping("/stats/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildStats() {
+        logger.info("仪表盘统计重建请求");
+        dashboardService.rebuild();
+        return ResponseEntity.ok(dashboardService.getSnapshotDetails());
+    }
+
+    /**
+     * 获取滑动窗口内流量最高的K个节点和K条路段，window为截止当前小时的小时数
+     */
+    @GetMapping("/hotspots")
+    public ResponseEntity<byte[]> getHotspots(
+            @RequestParam(defaultValue = "10") int k,
+            @RequestParam(defaultValue = "1") int window,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        logger.debug("获取拥堵热点请求: k={}, window={}", k, window);
+        String key = "hotspots|" + k + "|" + window + "|" + hotspotService.getCurrentHour();
+        return epochResponseCache.respond(key, ifNoneMatch, () -> hotspotService.getHotspots(k, window));
+    }
+
+    /**
+     * 获取拥堵热点统计信息
+     */
+    @GetMapping("/hotspots/stats")
+    public ResponseEntity<Map<String, Object>> getHotspotStatistics() {
+        return ResponseEntity.ok(hotspotService.getStatistics());
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.navigation.controller;
+
+import com.example.navigation.service.FlowArchiveService;
+import com.example.navigation.service.FlowIngestService;
+import com.example.navigation.service.FlowRollupService;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 车流量数据控制器
+ * 提供检测器网络的流式数据导入、流量汇总查询和历史数据归档接口
+ */
+@RestController
+@RequestMapping("/api/flow")
+@RequiredArgsConstructor
+public class FlowController {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlowController.class);
+
+    private final FlowIngestService flowIngestService;
+    private final FlowRollupService flowRollupService;
+    private final FlowArchiveService flowArchiveService;
+
+    /**
+     * 流式导入车流量数据
+     * 请求体为NDJSON（application/x-ndjson）或CSV（text/csv），也可通过format参数指定
+     */
+    @PostMapping("/ingest")
+    public ResponseEntity<Map<String, Object>> ingest(
+            @RequestHeader(value = "Content-Type", required = false) String contentType,
+            @RequestParam(required = false) String format,
+            InputStream body) throws IOException {
+        String resolved = resolveFormat(contentType, format);
+        logger.info("收到车流量导入请求: 格式={}", resolved);
+
+        Map<String, Object> result = "csv".equals(resolved)
+                ? flowIngestService.ingestCsv(body)
+                : flowIngestService.ingestNdjson(body);
+
+        Map<String, Object> response = new HashMap<>(result);
+        response.put("success", true);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 获取日期区间内每天的全路网流量汇总
+     */
+    @GetMapping("/rollups/daily")
+    public ResponseEntity<List<Map<String, Object>>> getDailyRollups(@RequestParam int startDay, @RequestParam int endDay) {
+        return ResponseEntity.ok(flowRollupService.getDailyTotals(startDay, endDay));
+    }
+
+    /**
+     * 获取节点每小时的流量汇总（样本数、平均值、最大值、P95）
+     */
+    @GetMapping("/rollups/nodes/{nodeId}")
+    public ResponseEntity<List<Map<String, Object>>> getNodeRollups(@PathVariable int nodeId) {
+        return ResponseEntity.ok(flowRollupService.getNodeHourlyProfile(nodeId));
+    }
+
+    /**
+     * 获取流量汇总统计信息
+     */
+    @GetMapping("/rollups/stats")
+    public ResponseEntity<Map<String, Object>> getRollupStatistics() {
+        return ResponseEntity.ok(flowRollupService.getStatistics());
+    }
+
+    /**
+     * 从flow表并行回填流量汇总
+     */
+    @PostMapping("/rollups/backfill")
+    public ResponseEntity<Map<String, Object>> backfillRollups() {
+        logger.info("收到流量汇总回填请求");
+        return ResponseEntity.ok(flowRollupService.backfill());
+    }
+
+    /**
+     * 归档早于保留天数的流量数据
+     */
+    @PostMapping("/archive")
+    public ResponseEntity<Map<String, Object>> archiveExpired() {
+        logger.info("收到流量归档请求");
+        return ResponseEntity.ok(flowArchiveService.archiveExpired());
+    }
+
+    /**
+     * 归档指定日期的流量数据
+     */
+    @PostMapping("/archive/{day}")
+    public ResponseEntity<Map<String, Object>> archiveDay(@PathVariable int day) {
+        logger.info("收到流量归档请求: 日期={}", day);
+        return ResponseEntity.ok(flowArchiveService.archiveDay(day));
+    }
+
+    /**
+     * 获取归档统计信息（段数、文件大小、压缩比）
+     */
+    @GetMapping("/archive/stats")
+    public ResponseEntity<Map<String, Object>> getArchiveStatistics() {
+        return ResponseEntity.ok(flowArchiveService.getStatistics());
+    }
+
+    /**
+     * 扫描日期区间（合并归档段与flow表），返回数据点数和扫描吞吐量
+     */
+    @GetMapping("/archive/scan")
+    public ResponseEntity<Map<String, Object>> benchmarkScan(@RequestParam int startDay, @RequestParam int endDay) {
+        return ResponseEntity.ok(flowArchiveService.benchmarkScan(startDay, endDay));
+    }
+
+    private static String resolveFormat(String contentType, String format) {
+        if (format != null) {
+            if ("csv".equalsIgnoreCase(format) || "ndjson".equalsIgnoreCase(format)) {
+                return format.toLowerCase();
+            }
+            throw new IllegalArgumentException("不支持的导入格式: " + format);
+        }
+        if (contentType == null) {
+            return "ndjson";
+        }
+        if (contentType.startsWith("text/csv")) {
+            return "csv";
+        }
+        if (contentType.contains("ndjson") || contentType.contains("json") || contentType.startsWith("text/plain")) {
+            return "ndjson";
+        }
+        throw new IllegalArgumentException("不支持的Content-Type: " + contentType);
+    }
+}
@@ -1,15 +1,35 @@
 package com.example.navigation.controller;
 
-import com.example.navigation.model.dto.map.HeatmapResponse;
 import com.example.navigation.model.dto.map.CongestionResponse;
+import com.example.navigation.model.dto.map.HeatmapTileResponse;
+import com.example.navigation.service.EpochResponseCache;
+import com.example.navigation.service.FlowTimeSeriesStore;
+import com.example.navigation.service.HeatmapTileService;
+import com.example.navigation.service.HeatmapTimelineService;
 import com.example.navigation.service.MapService;
+import com.example.navigation.service.MapStreamService;
+import com.example.navigation.service.TrafficClock;
+import com.example.navigation.service.RoadTileService;
+import com.example.navigation.service.StreamingResponseWriter;
+import com.example.navigation.util.BoundingBox;
+import com.example.navigation.util.MvtEncoder;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Map;
 
 /**
  * 地图控制器
@@ -23,38 +43,165 @@ public class MapController {
     private static final Logger logger = LoggerFactory.getLogger(MapController.class);
     
     private final MapService mapService;
+    private final FlowTimeSeriesStore flowTimeSeriesStore;
+    private final HeatmapTileService heatmapTileService;
+    private final EpochResponseCache epochResponseCache;
+    private final MapStreamService mapStreamService;
+    private final RoadTileService roadTileService;
+    private final StreamingResponseWriter streamingResponseWriter;
+    private final HeatmapTimelineService heatmapTimelineService;
+    private final TrafficClock trafficClock;
 
     /**
-     * 获取热力图数据
+     * 获取热力图数据，支持按流量数据版本的ETag条件请求
+     * 可选bbox（west,south,east,north）只返回视口内的数据，可选zoom按该层级在服务端聚合为加权点；
+     * 响应边遍历边流式写出，按Accept返回JSON、CBOR或Smile，按Accept-Encoding压缩
      */
     @GetMapping("/heatmap")
-    public ResponseEntity<HeatmapResponse> getHeatmapData() {
-        logger.info("获取热力图数据请求");
-        
-        try {
-            HeatmapResponse response = mapService.getHeatmapData();
-            logger.info("获取热力图数据成功，数据点数量: {}", response.getData().size());
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            logger.error("获取热力图数据失败: error={}", e.getMessage());
-            throw e;
-        }
+    public ResponseEntity<StreamingResponseBody> getHeatmapData(@RequestParam(required = false) String bbox,
+                                                                @RequestParam(required = false) Integer zoom,
+                                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                                @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                                @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        logger.info("获取热力图数据请求: bbox={}, zoom={}", bbox, zoom);
+        mapService.validateHeatmapZoom(zoom);
+        BoundingBox viewport = parseBoundingBox(bbox);
+        return streamingResponseWriter.respond(ifNoneMatch, accept, acceptEncoding,
+                generator -> mapService.writeHeatmapData(viewport, zoom, generator));
+    }
+
+    /**
+     * 获取某日24小时热力图回放帧（基准帧加逐小时增量帧），day为空时使用当前日期
+     * 支持按流量数据版本的ETag条件请求
+     */
+    @GetMapping("/heatmap/timeline")
+    public ResponseEntity<byte[]> getHeatmapTimeline(@RequestParam(required = false) Integer day,
+                                                     @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        int timelineDay = day != null ? day : trafficClock.getCurrentDay();
+        return epochResponseCache.respond("timeline|" + timelineDay, ifNoneMatch,
+                () -> heatmapTimelineService.getTimeline(timelineDay));
+    }
+
+    /**
+     * 获取热力图回放统计信息（缓存日期、增量编码压缩比）
+     */
+    @GetMapping("/heatmap/timeline/stats")
+    public ResponseEntity<Map<String, Object>> getHeatmapTimelineStatistics() {
+        return ResponseEntity.ok(heatmapTimelineService.getStatistics());
+    }
+
+    /**
+     * 获取热力图瓦片（Web墨卡托z/x/y），每个瓦片返回的点数有上限
+     */
+    @GetMapping("/heatmap/{z}/{x}/{y}")
+    public ResponseEntity<HeatmapTileResponse> getHeatmapTile(@PathVariable int z, @PathVariable int x, @PathVariable int y) {
+        HeatmapTileResponse response = heatmapTileService.getTile(z, x, y);
+        logger.debug("获取热力图瓦片: {}/{}/{}, 数据点数量: {}", z, x, y, response.getData().size());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 获取热力图瓦片金字塔统计信息
+     */
+    @GetMapping("/heatmap/pyramid/stats")
+    public ResponseEntity<Map<String, Object>> getHeatmapPyramidStatistics() {
+        return ResponseEntity.ok(heatmapTileService.getStatistics());
+    }
+
+    /**
+     * 获取路段矢量瓦片（MVT），线要素带当前小时的流量和拥挤级别属性
+     * 编码结果按流量数据版本缓存，支持ETag条件请求
+     */
+    @GetMapping("/roads/{z}/{x}/{y}.mvt")
+    public ResponseEntity<byte[]> getRoadTile(@PathVariable int z, @PathVariable int x, @PathVariable int y,
+                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String key = "roads|" + z + "/" + x + "/" + y + "|" + roadTileService.getCurrentHour();
+        return epochResponseCache.respondBytes(key, ifNoneMatch, MediaType.parseMediaType(MvtEncoder.CONTENT_TYPE),
+                () -> roadTileService.getTile(z, x, y));
+    }
+
+    /**
+     * 获取路段矢量瓦片统计信息
+     */
+    @GetMapping("/roads/stats")
+    public ResponseEntity<Map<String, Object>> getRoadTileStatistics() {
+        return ResponseEntity.ok(roadTileService.getStatistics());
     }
 
     /**
-     * 获取拥挤度数据
+     * 获取拥挤度数据，支持按流量数据版本的ETag条件请求
+     * 可选bbox（west,south,east,north）只统计视口内的节点
      */
     @GetMapping("/congestion")
-    public ResponseEntity<CongestionResponse> getCongestionData() {
-        logger.info("获取拥挤度数据请求");
+    public ResponseEntity<byte[]> getCongestionData(@RequestParam(required = false) String bbox,
+                                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        logger.info("获取拥挤度数据请求: bbox={}", bbox);
         
         try {
-            CongestionResponse response = mapService.getCongestionData();
-            logger.info("获取拥挤度数据成功，区域数量: {}", response.getData().getRegions().size());
-            return ResponseEntity.ok(response);
+            BoundingBox viewport = parseBoundingBox(bbox);
+            return epochResponseCache.respond("congestion|" + bbox, ifNoneMatch, () -> {
+                CongestionResponse response = mapService.getCongestionData(viewport);
+                logger.info("获取拥挤度数据成功，区域数量: {}", response.getData().getRegions().size());
+                return response;
+            });
         } catch (Exception e) {
             logger.error("获取拥挤度数据失败: error={}", e.getMessage());
             throw e;
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * 订阅地图数据推送（SSE）
+     * 首先收到snapshot事件，之后流量数据版本推进时收到只包含变化网格和拥挤度的delta事件
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMapData() {
+        return mapStreamService.subscribe();
+    }
+
+    /**
+     * 获取地图推送统计信息（订阅者数、增量数、丢弃事件数）
+     */
+    @GetMapping("/stream/stats")
+    public ResponseEntity<Map<String, Object>> getStreamStatistics() {
+        return ResponseEntity.ok(mapStreamService.getStatistics());
+    }
+
+    /**
+     * 获取流式响应统计信息（流式写出、304、二进制格式和压缩次数）
+     */
+    @GetMapping("/streaming/stats")
+    public ResponseEntity<Map<String, Object>> getStreamingStatistics() {
+        return ResponseEntity.ok(streamingResponseWriter.getStatistics());
+    }
+
+    /**
+     * 获取条件请求响应缓存统计信息（当前版本、命中、304次数）
+     */
+    @GetMapping("/response-cache/stats")
+    public ResponseEntity<Map<String, Object>> getResponseCacheStatistics() {
+        return ResponseEntity.ok(epochResponseCache.getStatistics());
+    }
+
+    /**
+     * 获取列式流量存储统计信息（含内存占用）
+     */
+    @GetMapping("/flow-store/stats")
+    public ResponseEntity<Map<String, Object>> getFlowStoreStatistics() {
+        return ResponseEntity.ok(flowTimeSeriesStore.getStatistics());
+    }
+
+    /**
+     * 从数据库重新加载列式流量存储
+     */
+    @PostMapping("/flow-store/reload")
+    public ResponseEntity<Map<String, Object>> reloadFlowStore() {
+        logger.info("收到列式流量存储重新加载请求");
+        flowTimeSeriesStore.reload();
+        return ResponseEntity.ok(flowTimeSeriesStore.getStatistics());
+    }
+
+    private static BoundingBox parseBoundingBox(String bbox) {
+        return bbox == null || bbox.isBlank() ? null : BoundingBox.parse(bbox);
+    }
+}
@@ -1,9 +1,14 @@
 package com.example.navigation.controller;
 
+import com.example.navigation.service.ForecastMaterializationJob;
+import com.example.navigation.service.ModelRegistry;
+import com.example.navigation.service.PredictionBatchCollector;
+import com.example.navigation.service.PredictionCache;
 import com.example.navigation.service.PythonModelService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -23,6 +28,10 @@ public class ModelController {
     private static final Logger logger = LoggerFactory.getLogger(ModelController.class);
     
     private final PythonModelService pythonModelService;
+    private final PredictionBatchCollector predictionBatchCollector;
+    private final PredictionCache predictionCache;
+    private final ModelRegistry modelRegistry;
+    private final ForecastMaterializationJob forecastMaterializationJob;
 
     /**
      * 预测单个节点的流量
@@ -35,7 +44,7 @@ public class ModelController {
         logger.info("收到流量预测请求: nodeId={}, timePoint={}", nodeId, timePoint);
         
         try {
-            double volume = pythonModelService.predictVolume(nodeId, timePoint);
+            double volume = predictionCache.get(nodeId, timePoint);
             
             Map<String, Object> response = new HashMap<>();
             response.put("nodeId", nodeId);
@@ -72,7 +81,7 @@ public class ModelController {
                    request.getNodeIds(), request.getTimePoint());
         
         try {
-            Map<Integer, Double> predictions = pythonModelService.predictVolumesBatch(
+            Map<Integer, Double> predictions = predictionCache.getAll(
                     request.getNodeIds(), request.getTimePoint());
             
             Map<String, Object> response = new HashMap<>();
@@ -116,6 +125,97 @@ public class ModelController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * 获取预测微批统计信息（批大小与等待时间直方图）
+     */
+    @GetMapping("/batch/stats")
+    public ResponseEntity<Map<String, Object>> getBatchStatistics() {
+        return ResponseEntity.ok(predictionBatchCollector.getStatistics());
+    }
+
+    /**
+     * 获取预测缓存统计信息（命中率与加载延迟）
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> getCacheStatistics() {
+        return ResponseEntity.ok(predictionCache.getStatistics());
+    }
+
+    /**
+     * 重新加载模型，成功后清空预测缓存
+     * 模型服务的重载会把生效版本重置为默认模型，注册中心已切换到其他版本时拒绝重载，避免两边的生效版本不一致
+     */
+    @PostMapping("/reload")
+    public ResponseEntity<Map<String, Object>> reloadModel() {
+        logger.info("收到模型重载请求");
+
+        if (modelRegistry.hasPromotedVersion()) {
+            logger.warn("当前生效的是已切换的模型版本{}，拒绝重载默认模型", modelRegistry.getActiveVersion());
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("activeVersion", modelRegistry.getActiveVersion());
+            response.put("message", "当前生效的是已切换的模型版本，重载会回退到默认模型；请通过模型目录发布新版本");
+            response.put("timestamp", System.currentTimeMillis());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        }
+
+        boolean success = pythonModelService.reloadModel();
+        if (success) {
+            predictionCache.invalidateAll();
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", success);
+        response.put("message", success ? "模型重载成功" : "模型重载失败");
+        response.put("timestamp", System.currentTimeMillis());
+
+        return success ? ResponseEntity.ok(response) : ResponseEntity.internalServerError().body(response);
+    }
+
+    /**
+     * 获取模型版本状态（生效版本、影子期延迟与差异统计）
+     */
+    @GetMapping("/versions")
+    public ResponseEntity<Map<String, Object>> getModelVersions() {
+        return ResponseEntity.ok(modelRegistry.getStatus());
+    }
+
+    /**
+     * 手动提前切换到影子期中的候选版本
+     * 版本不在影子期时返回400，切换期间候选版本被替代时返回409，模型服务切换失败时返回502
+     */
+    @PostMapping("/versions/{version}/promote")
+    public ResponseEntity<Map<String, Object>> promoteModelVersion(@PathVariable String version) {
+        logger.info("收到模型版本切换请求: version={}", version);
+        modelRegistry.promote(version);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("activeVersion", modelRegistry.getActiveVersion());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 手动触发预测流量物化
+     */
+    @PostMapping("/forecast/materialize")
+    public ResponseEntity<Map<String, Object>> materializeForecast() {
+        logger.info("收到预测流量物化请求");
+        Map<String, Object> response = new HashMap<>(forecastMaterializationJob.materialize());
+        response.put("success", true);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 获取最近一次预测流量物化结果
+     */
+    @GetMapping("/forecast/status")
+    public ResponseEntity<Map<String, Object>> getForecastStatus() {
+        Map<String, Object> response = new HashMap<>(forecastMaterializationJob.getLastRun());
+        response.put("success", true);
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * 批量预测请求DTO
      */
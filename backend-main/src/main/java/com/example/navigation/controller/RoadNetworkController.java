@@ -0,0 +1,80 @@
+package com.example.navigation.controller;
+
+import com.example.navigation.service.EdgeCongestionStore;
+import com.example.navigation.service.RoadGraph;
+import com.example.navigation.service.RoadNetworkImportService;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 路网控制器
+ * 提供节点和边的批量导入接口以及路网图快照统计
+ */
+@RestController
+@RequestMapping("/api/network")
+@RequiredArgsConstructor
+public class RoadNetworkController {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoadNetworkController.class);
+
+    private final RoadNetworkImportService roadNetworkImportService;
+    private final RoadGraph roadGraph;
+    private final EdgeCongestionStore edgeCongestionStore;
+
+    /**
+     * 导入节点CSV（nodeID,latitude,longitude）
+     */
+    @PostMapping("/import/nodes")
+    public ResponseEntity<Map<String, Object>> importNodes(InputStream body) throws IOException {
+        logger.info("收到节点导入请求");
+        return success(roadNetworkImportService.importNodesCsv(body));
+    }
+
+    /**
+     * 导入边CSV（nodeID1,nodeID2[,distance]），端点必须已导入
+     */
+    @PostMapping("/import/edges")
+    public ResponseEntity<Map<String, Object>> importEdges(InputStream body) throws IOException {
+        logger.info("收到边导入请求");
+        return success(roadNetworkImportService.importEdgesCsv(body));
+    }
+
+    /**
+     * 导入OSM转换格式（N/W行），节点和道路在同一个文件中
+     */
+    @PostMapping("/import/osm")
+    public ResponseEntity<Map<String, Object>> importOsm(InputStream body) throws IOException {
+        logger.info("收到OSM路网导入请求");
+        return success(roadNetworkImportService.importOsm(body));
+    }
+
+    /**
+     * 获取路网图快照统计信息
+     */
+    @GetMapping("/graph/stats")
+    public ResponseEntity<Map<String, Object>> getGraphStatistics() {
+        return ResponseEntity.ok(roadGraph.getStatistics());
+    }
+
+    /**
+     * 获取路段拥挤度统计信息
+     */
+    @GetMapping("/edges/congestion/stats")
+    public ResponseEntity<Map<String, Object>> getEdgeCongestionStatistics() {
+        return ResponseEntity.ok(edgeCongestionStore.getStatistics());
+    }
+
+    private static ResponseEntity<Map<String, Object>> success(Map<String, Object> result) {
+        Map<String, Object> response = new HashMap<>(result);
+        response.put("success", true);
+        return ResponseEntity.ok(response);
+    }
+}
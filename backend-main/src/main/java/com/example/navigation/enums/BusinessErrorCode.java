@@ -19,6 +19,10 @@ public enum BusinessErrorCode {
     // 验证码相关错误
     VERIFICATION_CODE_INVALID(20001, "验证码无效或已过期", HttpStatus.BAD_REQUEST),
     
+    // 模型版本相关错误
+    MODEL_PROMOTION_CONFLICT(30001, "候选版本已被其他操作切换或替代", HttpStatus.CONFLICT),
+    MODEL_SERVICE_ERROR(30002, "模型服务切换版本失败", HttpStatus.BAD_GATEWAY),
+
     // 系统错误
     SYSTEM_ERROR(99999, "系统内部错误", HttpStatus.INTERNAL_SERVER_ERROR);
 
@@ -0,0 +1,14 @@
+package com.example.navigation.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 道路边变更事件
+ * 边新增、修改或删除并提交后发布，路网图快照据此失效重建
+ */
+@Getter
+@AllArgsConstructor
+public class EdgesChangedEvent {
+    private final String source; // 变更来源（jpa、import等）
+}
@@ -0,0 +1,30 @@
+package com.example.navigation.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 观测流量变更事件
+ * 通过JPA或批量导入写入flow表并提交后发布，列式存储、仪表盘等内存消费者据此增量更新
+ */
+@Getter
+@AllArgsConstructor
+public class FlowChangedEvent {
+    private final String source;             // 变更来源（jpa、ingest等）
+    private final List<FlowChange> changes;  // 本次提交的全部变更
+
+    /**
+     * 单个(日期, 小时, 节点)的流量变更
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class FlowChange {
+        private final int day;
+        private final int timeStamp;
+        private final int nodeId;
+        private final Integer oldFlow;  // 变更前的流量，新增时为null
+        private final Integer newFlow;  // 变更后的流量，删除时为null
+    }
+}
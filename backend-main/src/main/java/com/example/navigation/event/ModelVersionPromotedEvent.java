@@ -0,0 +1,15 @@
+package com.example.navigation.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 模型版本切换事件
+ * 新模型版本通过影子评分并生效后发布，缓存等组件据此标记旧版本结果为过期
+ */
+@Getter
+@AllArgsConstructor
+public class ModelVersionPromotedEvent {
+    private final String previousVersion; // 切换前的版本
+    private final String activeVersion;   // 切换后的版本
+}
@@ -0,0 +1,14 @@
+package com.example.navigation.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 道路节点变更事件
+ * 节点新增、坐标修改或删除并提交后发布，空间索引等按节点坐标组织的内存结构据此失效重建
+ */
+@Getter
+@AllArgsConstructor
+public class NodesChangedEvent {
+    private final String source; // 变更来源（jpa、import等）
+}
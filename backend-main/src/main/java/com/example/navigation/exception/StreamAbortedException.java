@@ -0,0 +1,14 @@
+package com.example.navigation.exception;
+
+import java.io.IOException;
+
+/**
+ * 流式响应中途失败异常
+ * 响应体未完整写出，调用方不应让已设置的ETag等头部随残缺内容一起返回
+ */
+public class StreamAbortedException extends IOException {
+
+    public StreamAbortedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
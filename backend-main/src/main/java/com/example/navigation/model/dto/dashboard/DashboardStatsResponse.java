@@ -20,5 +20,16 @@ public class DashboardStatsResponse {
     public static class DashboardStatsData {
         private String congestionLevel;    // 拥挤级别
         private Integer congestedSections; // 拥挤路段数量
+        private FlowQuantiles flowQuantiles; // 当天有效流量分位数
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FlowQuantiles {
+        private long count;  // 数据点数量
+        private Integer p50; // 中位数
+        private Integer p90; // 90分位数
+        private Integer p99; // 99分位数
     }
 } 
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.example.navigation.model.dto.map;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -22,5 +23,11 @@ public class HeatmapResponse {
         private double lat;        // 纬度
         private double lng;        // 经度
         private double intensity;  // 热度强度
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private Integer weight;    // 服务端聚合时该点代表的数据点数量，未聚合时为空
+
+        public HeatmapPoint(double lat, double lng, double intensity) {
+            this(lat, lng, intensity, null);
+        }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.example.navigation.model.dto.map;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+/**
+ * 热力图瓦片响应DTO
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HeatmapTileResponse {
+    private boolean success;
+    private int z;
+    private int x;
+    private int y;
+    private int sourceZoom;                         // 实际使用的聚合层级
+    private List<HeatmapResponse.HeatmapPoint> data;
+}
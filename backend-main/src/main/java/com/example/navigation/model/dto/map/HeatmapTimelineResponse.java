@@ -0,0 +1,45 @@
+package com.example.navigation.model.dto.map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 热力图24小时回放响应DTO
+ * cells列出当天出现过数据的网格，帧中用网格下标引用；
+ * 第一帧（0点）为基准帧，包含所有有数据的网格，之后每帧只包含强度变化的网格和不再有数据的网格
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HeatmapTimelineResponse {
+    private boolean success;
+    private int day;                  // 日期编号
+    private int zoom;                 // 网格聚合层级
+    private List<TimelineCell> cells; // 网格表
+    private List<Frame> frames;       // 基准帧和增量帧
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TimelineCell {
+        private String id;   // 网格编号（x:y）
+        private double lat;  // 当天有数据节点的质心纬度
+        private double lng;  // 当天有数据节点的质心经度
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Frame {
+        private int hour;             // 小时
+        private boolean base;         // 是否为基准帧
+        private int[] cells;          // 新增或强度变化的网格下标
+        private double[] intensities; // 与cells一一对应的平均强度
+        private int[] removed;        // 本小时不再有数据的网格下标
+    }
+}
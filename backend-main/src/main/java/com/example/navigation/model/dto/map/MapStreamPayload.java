@@ -0,0 +1,35 @@
+package com.example.navigation.model.dto.map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 地图推送事件数据
+ * snapshot事件包含全部网格和拥挤度；delta事件只包含变化的网格、删除的网格编号，
+ * 拥挤度未变化时congestion为空
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MapStreamPayload {
+    private long epoch;                                // 流量数据版本
+    private CongestionResponse.CongestionData congestion; // 拥挤度数据
+    private List<StreamCell> cells;                    // 新增或变化的热力图网格
+    private List<String> removed;                      // 已不再有数据的网格编号
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class StreamCell {
+        private String id;         // 网格编号（x:y）
+        private double lat;        // 纬度
+        private double lng;        // 经度
+        private double intensity;  // 热度强度
+        private int weight;        // 数据点数量
+    }
+}
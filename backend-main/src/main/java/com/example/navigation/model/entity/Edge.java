@@ -10,7 +10,11 @@ import lombok.NoArgsConstructor;
  * 对应数据库表：edges
  */
 @Entity
-@Table(name = "edges")
+@Table(name = "edges", indexes = {
+        @Index(name = "idx_edges_node1", columnList = "node_id1"),
+        @Index(name = "idx_edges_node2", columnList = "node_id2")
+})
+@EntityListeners(EdgeEntityListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
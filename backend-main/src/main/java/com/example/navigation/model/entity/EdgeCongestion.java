@@ -0,0 +1,41 @@
+package com.example.navigation.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 路段小时拥挤度实体类（边两端节点有效流量的平均值，由路段拥挤度存储增量写入，供分析查询）
+ * 对应数据库表：edge_congestion
+ */
+@Entity
+@Table(name = "edge_congestion", indexes = {
+        @Index(name = "idx_edge_congestion_day_time_edge", columnList = "day_num, time_stamp, edge_id", unique = true)
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EdgeCongestion {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "day_num", nullable = false)
+    private Integer day;
+
+    @Column(name = "time_stamp", nullable = false)
+    private Integer timeStamp;
+
+    @Column(name = "edge_id", nullable = false)
+    private Long edgeId;
+
+    @Column(name = "node_id1", nullable = false)
+    private Integer nodeID1;
+
+    @Column(name = "node_id2", nullable = false)
+    private Integer nodeID2;
+
+    @Column(nullable = false)
+    private Integer flow;
+}
@@ -0,0 +1,39 @@
+package com.example.navigation.model.entity;
+
+import com.example.navigation.event.EdgesChangedEvent;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Edge实体监听器
+ * 通过JPA写入或删除边后发布EdgesChangedEvent；在事务中写入时，等事务提交后再发布
+ */
+public class EdgeEntityListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public EdgeEntityListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChanged(Edge edge) {
+        EdgesChangedEvent event = new EdgesChangedEvent("jpa");
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eventPublisher.publishEvent(event);
+                }
+            });
+        } else {
+            eventPublisher.publishEvent(event);
+        }
+    }
+}
@@ -1,19 +1,26 @@
 package com.example.navigation.model.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
-import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 /**
  * 节点监测的车流量实体类
  * 对应数据库表：flow
+ * (day_num, time_stamp, node_id)唯一索引服务按日期/小时的扫描和单点查询，并保证每个数据点只有一行（流式导入依赖它做upsert），
+ * (node_id, day_num)索引服务按节点的查询，已有数据库的建索引脚本见sql/flow_indexes.sql
  */
 @Entity
-@Table(name = "flow")
+@Table(name = "flow", indexes = {
+        @Index(name = "idx_flow_day_time_node", columnList = "day_num, time_stamp, node_id", unique = true),
+        @Index(name = "idx_flow_node_day", columnList = "node_id, day_num")
+})
+@EntityListeners(FlowEntityListener.class)
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class Flow {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -30,4 +37,19 @@ public class Flow {
 
     @Column(nullable = false)
     private Integer flow;
+
+    // 从数据库加载时的取值{日期, 时间戳, 节点ID, 流量}，更新时据此发布变更前的流量
+    @Transient
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @JsonIgnore
+    private int[] loadedState;
+
+    public Flow(Long id, Integer day, Integer timeStamp, Integer nodeID, Integer flow) {
+        this.id = id;
+        this.day = day;
+        this.timeStamp = timeStamp;
+        this.nodeID = nodeID;
+        this.flow = flow;
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,79 @@
+package com.example.navigation.model.entity;
+
+import com.example.navigation.event.FlowChangedEvent;
+import com.example.navigation.event.FlowChangedEvent.FlowChange;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+/**
+ * Flow实体监听器
+ * 将通过JPA写入的观测流量以FlowChangedEvent发布；在事务中写入时，等事务提交后再发布。
+ * 加载和写入后记录实体当时的取值，更新时据此填写变更前的流量
+ */
+public class FlowEntityListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public FlowEntityListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostLoad
+    public void onLoaded(Flow flow) {
+        remember(flow);
+    }
+
+    @PostPersist
+    public void onPersisted(Flow flow) {
+        publishAfterCommit(List.of(new FlowChange(flow.getDay(), flow.getTimeStamp(), flow.getNodeID(), null, flow.getFlow())));
+        remember(flow);
+    }
+
+    /**
+     * 更新时携带加载时的流量作为旧值；日期、时间戳或节点被修改时拆分为旧位置的删除和新位置的写入
+     */
+    @PostUpdate
+    public void onUpdated(Flow flow) {
+        int[] loaded = flow.getLoadedState();
+        if (loaded == null) {
+            publishAfterCommit(List.of(new FlowChange(flow.getDay(), flow.getTimeStamp(), flow.getNodeID(), null, flow.getFlow())));
+        } else if (loaded[0] == flow.getDay() && loaded[1] == flow.getTimeStamp() && loaded[2] == flow.getNodeID()) {
+            publishAfterCommit(List.of(new FlowChange(flow.getDay(), flow.getTimeStamp(), flow.getNodeID(), loaded[3], flow.getFlow())));
+        } else {
+            publishAfterCommit(List.of(
+                    new FlowChange(loaded[0], loaded[1], loaded[2], loaded[3], null),
+                    new FlowChange(flow.getDay(), flow.getTimeStamp(), flow.getNodeID(), null, flow.getFlow())));
+        }
+        remember(flow);
+    }
+
+    @PostRemove
+    public void onRemoved(Flow flow) {
+        publishAfterCommit(List.of(new FlowChange(flow.getDay(), flow.getTimeStamp(), flow.getNodeID(), flow.getFlow(), null)));
+    }
+
+    private static void remember(Flow flow) {
+        flow.setLoadedState(new int[]{flow.getDay(), flow.getTimeStamp(), flow.getNodeID(), flow.getFlow()});
+    }
+
+    private void publishAfterCommit(List<FlowChange> changes) {
+        FlowChangedEvent event = new FlowChangedEvent("jpa", changes);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eventPublisher.publishEvent(event);
+                }
+            });
+        } else {
+            eventPublisher.publishEvent(event);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.navigation.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 节点预测车流量实体类（由预测物化任务批量写入，结构与Flow一致）
+ * 对应数据库表：flow_forecast
+ */
+@Entity
+@Table(name = "flow_forecast", indexes = {
+        @Index(name = "idx_flow_forecast_day_time_node", columnList = "day_num, time_stamp, node_id", unique = true)
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FlowForecast {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "day_num", nullable = false)
+    private Integer day;
+
+    @Column(name = "time_stamp", nullable = false)
+    private Integer timeStamp;
+
+    @Column(name = "node_id", nullable = false)
+    private Integer nodeID;
+
+    @Column(nullable = false)
+    private Integer flow;
+
+    @Column(name = "model_version", nullable = false, length = 64)
+    private String modelVersion;
+}
@@ -0,0 +1,30 @@
+package com.example.navigation.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 每日全路网流量汇总实体类（由流量汇总服务增量维护和回填）
+ * 对应数据库表：flow_rollup_daily
+ */
+@Entity
+@Table(name = "flow_rollup_daily")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FlowRollupDaily {
+    @Id
+    @Column(name = "day_num")
+    private Integer day;
+
+    @Column(name = "sample_count", nullable = false)
+    private Long sampleCount;
+
+    @Column(name = "flow_sum", nullable = false)
+    private Long flowSum;
+
+    @Column(name = "flow_max", nullable = false)
+    private Integer flowMax;
+}
@@ -0,0 +1,42 @@
+package com.example.navigation.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 节点小时流量汇总实体类（跨所有日期，由流量汇总服务增量维护和回填）
+ * 对应数据库表：flow_rollup_hourly
+ */
+@Entity
+@Table(name = "flow_rollup_hourly", indexes = {
+        @Index(name = "idx_flow_rollup_hourly_node_time", columnList = "node_id, time_stamp", unique = true)
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FlowRollupHourly {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "node_id", nullable = false)
+    private Integer nodeID;
+
+    @Column(name = "time_stamp", nullable = false)
+    private Integer timeStamp;
+
+    @Column(name = "sample_count", nullable = false)
+    private Long sampleCount;
+
+    @Column(name = "flow_sum", nullable = false)
+    private Long flowSum;
+
+    @Column(name = "flow_max", nullable = false)
+    private Integer flowMax;
+
+    // 固定宽度分桶的计数，逗号分隔，用于估算分位数
+    @Column(nullable = false, length = 255)
+    private String histogram;
+}
@@ -8,9 +8,14 @@ import lombok.NoArgsConstructor;
 /**
  * 道路节点实体类（位于交叉路口）
  * 对应数据库表：nodes
+ * 经纬度以双精度数值存储，(latitude, longitude)索引服务按范围查询，
+ * 旧库中字符串类型坐标的迁移脚本见sql/nodes_numeric_coordinates.sql
  */
 @Entity
-@Table(name = "nodes")
+@Table(name = "nodes", indexes = {
+        @Index(name = "idx_nodes_lat_lng", columnList = "latitude, longitude")
+})
+@EntityListeners(NodeEntityListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -21,8 +26,8 @@ public class Node {
     private Integer nodeID;
 
     @Column(nullable = false)
-    private String latitude;
+    private Double latitude;
 
     @Column(nullable = false)
-    private String longitude;
+    private Double longitude;
 }
\ No newline at end of file
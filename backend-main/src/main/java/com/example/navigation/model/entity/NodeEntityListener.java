@@ -0,0 +1,39 @@
+package com.example.navigation.model.entity;
+
+import com.example.navigation.event.NodesChangedEvent;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Node实体监听器
+ * 通过JPA写入或删除节点后发布NodesChangedEvent；在事务中写入时，等事务提交后再发布
+ */
+public class NodeEntityListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public NodeEntityListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChanged(Node node) {
+        NodesChangedEvent event = new NodesChangedEvent("jpa");
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eventPublisher.publishEvent(event);
+                }
+            });
+        } else {
+            eventPublisher.publishEvent(event);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.navigation.model.projection;
+
+/**
+ * 观测流量与预测流量的合并视图
+ * 同一(节点, 小时)下的observed来自flow表，predicted来自flow_forecast表，任一方可能为空
+ */
+public interface CombinedFlowView {
+    Integer getNodeId();
+
+    Integer getTimeStamp();
+
+    Integer getObserved();
+
+    Integer getPredicted();
+
+    /**
+     * 有观测值时使用观测值，否则使用预测值
+     */
+    default Integer getEffectiveFlow() {
+        return getObserved() != null ? getObserved() : getPredicted();
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.navigation.model.projection;
+
+/**
+ * 节点坐标视图
+ * 只读取节点ID和经纬度，用于构建空间索引、热力图和查找最近节点，不加载托管实体；
+ * 使用构造器表达式直接创建，避免接口投影的代理和元组开销
+ */
+public record NodeCoordinateView(int nodeId, double latitude, double longitude) {
+}
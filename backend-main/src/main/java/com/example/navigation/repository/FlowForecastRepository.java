@@ -0,0 +1,56 @@
+package com.example.navigation.repository;
+
+import com.example.navigation.model.entity.FlowForecast;
+import com.example.navigation.model.projection.CombinedFlowView;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.List;
+
+public interface FlowForecastRepository extends JpaRepository<FlowForecast, Long> {
+
+    /**
+     * 查询指定日期的预测车流量数据
+     */
+    List<FlowForecast> findByDay(Integer day);
+
+    /**
+     * 统计指定日期的预测数据条数
+     */
+    long countByDay(Integer day);
+
+    /**
+     * 一次查询同时读取指定日期的观测流量和预测流量
+     * 两个子查询都按day_num前缀索引扫描，再按(节点, 小时)合并
+     */
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT c.node_id AS \"nodeId\", c.time_stamp AS \"timeStamp\", " +
+                   "MAX(c.observed) AS \"observed\", MAX(c.predicted) AS \"predicted\" FROM (" +
+                   "SELECT node_id, time_stamp, flow AS observed, CAST(NULL AS INTEGER) AS predicted " +
+                   "FROM flow WHERE day_num = :day " +
+                   "UNION ALL " +
+                   "SELECT node_id, time_stamp, CAST(NULL AS INTEGER) AS observed, flow AS predicted " +
+                   "FROM flow_forecast WHERE day_num = :day" +
+                   ") c GROUP BY c.node_id, c.time_stamp",
+           nativeQuery = true)
+    List<CombinedFlowView> findCombinedByDay(@Param("day") Integer day);
+
+    /**
+     * 查询指定节点在指定日期和小时的观测流量与预测流量
+     * 两个子查询都是(day_num, time_stamp, node_id)索引上的单点查找
+     */
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT c.node_id AS \"nodeId\", c.time_stamp AS \"timeStamp\", " +
+                   "MAX(c.observed) AS \"observed\", MAX(c.predicted) AS \"predicted\" FROM (" +
+                   "SELECT node_id, time_stamp, flow AS observed, CAST(NULL AS INTEGER) AS predicted " +
+                   "FROM flow WHERE day_num = :day AND time_stamp = :timeStamp AND node_id = :nodeId " +
+                   "UNION ALL " +
+                   "SELECT node_id, time_stamp, CAST(NULL AS INTEGER) AS observed, flow AS predicted " +
+                   "FROM flow_forecast WHERE day_num = :day AND time_stamp = :timeStamp AND node_id = :nodeId" +
+                   ") c GROUP BY c.node_id, c.time_stamp",
+           nativeQuery = true)
+    CombinedFlowView findCombinedByNodeAndDayAndTimeStamp(@Param("nodeId") Integer nodeId,
+                                                          @Param("day") Integer day,
+                                                          @Param("timeStamp") Integer timeStamp);
+}
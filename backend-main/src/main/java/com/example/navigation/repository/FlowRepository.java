@@ -36,6 +36,7 @@ public interface FlowRepository extends JpaRepository<Flow, Long> {
     
     /**
      * 查询指定时间段内的车流量数据
+     * 返回原始行，长时间范围的统计应使用FlowRollupService的汇总结果
      */
     @Query("SELECT f FROM Flow f WHERE f.day BETWEEN :startDay AND :endDay")
     List<Flow> findByDayBetween(@Param("startDay") Integer startDay, @Param("endDay") Integer endDay);
@@ -1,20 +1,22 @@
 package com.example.navigation.repository;
 
 import com.example.navigation.model.entity.Node;
+import com.example.navigation.model.projection.NodeCoordinateView;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 
 public interface NodeRepository extends JpaRepository<Node, Integer> {
     
     /**
      * 根据坐标范围查询节点
-     * 注意：现在经纬度是String类型，需要转换为数值进行比较
+     * 纬度条件走(latitude, longitude)索引的范围扫描，经度条件在索引项上过滤
      */
     @Query("SELECT n FROM Node n WHERE " +
-           "CAST(n.latitude AS double) BETWEEN :minLat AND :maxLat AND " +
-           "CAST(n.longitude AS double) BETWEEN :minLng AND :maxLng")
+           "n.latitude BETWEEN :minLat AND :maxLat AND " +
+           "n.longitude BETWEEN :minLng AND :maxLng")
     List<Node> findNodesInBounds(
             @Param("minLat") Double minLat,
             @Param("maxLat") Double maxLat,
@@ -26,6 +28,20 @@ public interface NodeRepository extends JpaRepository<Node, Integer> {
      */
     Node findByNodeID(Integer nodeID);
 
+    /**
+     * 查询全部节点的ID和坐标（只读投影）
+     */
+    @Transactional(readOnly = true)
+    @Query("SELECT new com.example.navigation.model.projection.NodeCoordinateView(n.nodeID, n.latitude, n.longitude) FROM Node n")
+    List<NodeCoordinateView> findAllCoordinates();
+
+    /**
+     * 查询全部节点ID
+     */
+    @Transactional(readOnly = true)
+    @Query("SELECT n.nodeID FROM Node n")
+    List<Integer> findAllNodeIds();
+
     /**
      * 检查节点ID是否存在
      */
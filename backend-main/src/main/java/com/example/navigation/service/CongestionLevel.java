@@ -0,0 +1,41 @@
+package com.example.navigation.service;
+
+/**
+ * 拥挤级别划分
+ * 仪表盘整体统计、区域统计、热点和拥挤度接口共用同一组阈值，按下标从畅通到严重拥堵排列；
+ * 平均流量直接与阈值比较（等价于向下取整后比较），不做四舍五入
+ */
+final class CongestionLevel {
+
+    static final String[] NAMES = {"畅通", "缓慢", "拥堵", "严重拥堵"};
+    static final int SLOW_THRESHOLD = 40; // 缓慢阈值
+    static final int CONGESTED_THRESHOLD = 70; // 拥堵阈值
+    static final int SEVERE_THRESHOLD = 100; // 严重拥堵阈值
+    /** 达到拥堵阈值的最低级别下标 */
+    static final int CONGESTED = 2;
+
+    private CongestionLevel() {
+    }
+
+    /**
+     * 根据流量值确定拥挤级别下标
+     */
+    static int indexOf(double flow) {
+        if (flow >= SEVERE_THRESHOLD) {
+            return 3;
+        } else if (flow >= CONGESTED_THRESHOLD) {
+            return 2;
+        } else if (flow >= SLOW_THRESHOLD) {
+            return 1;
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * 根据流量值（或平均流量）确定拥挤级别名称
+     */
+    static String nameOf(double flow) {
+        return NAMES[indexOf(flow)];
+    }
+}
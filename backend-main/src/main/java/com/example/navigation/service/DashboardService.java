@@ -1,102 +1,270 @@
 package com.example.navigation.service;
 
 import com.example.navigation.model.dto.dashboard.DashboardStatsResponse;
-import com.example.navigation.model.entity.Flow;
-import com.example.navigation.repository.FlowRepository;
+import com.example.navigation.model.projection.CombinedFlowView;
+import com.example.navigation.repository.FlowForecastRepository;
 import com.example.navigation.repository.NodeRepository;
+import com.example.navigation.util.QuantileSketch;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 仪表盘服务类
  * 提供交通统计信息和数据分析功能
+ * 当前日期的统计量（各拥挤级别计数、流量总和）随列式存储的有效流量变更增量维护，
+ * 每次变更后发布一个不可变快照，查询时直接读取快照；流量分位数来自按区域和小时维护的分位数摘要
  */
 @Service
 @RequiredArgsConstructor
-public class DashboardService {
-    
+public class DashboardService implements FlowTimeSeriesStore.EffectiveFlowListener {
+
     private static final Logger logger = LoggerFactory.getLogger(DashboardService.class);
-    
-    private final FlowRepository flowRepository;
+
+    private static final String[] LEVELS = CongestionLevel.NAMES;
+
+    private final FlowForecastRepository flowForecastRepository;
     private final NodeRepository nodeRepository;
+    private final FlowTimeSeriesStore flowTimeSeriesStore;
+    private final TrafficClock trafficClock;
+    private final FlowQuantileService flowQuantileService;
+
+    // 增量累加器，只在列式存储写锁内修改
+    private final Aggregates aggregates = new Aggregates();
+    private final AtomicReference<StatsSnapshot> snapshot = new AtomicReference<>();
+
+    @PostConstruct
+    public void registerListener() {
+        flowTimeSeriesStore.addListener(this);
+    }
 
     /**
      * 获取仪表盘统计数据
      */
     public DashboardStatsResponse getDashboardStats() {
-        logger.info("开始计算仪表盘统计数据");
-        
         try {
-            // 获取当前时间的交通数据
-            Integer currentDay = getCurrentDay();
-            List<Flow> currentFlowData = flowRepository.findByDay(currentDay);
-            
-            // 计算拥挤级别和拥挤路段数量
-            String congestionLevel = calculateCongestionLevel(currentFlowData);
-            Integer congestedSections = calculateCongestedSections(currentFlowData);
-            
-            DashboardStatsResponse.DashboardStatsData data = 
-                new DashboardStatsResponse.DashboardStatsData(congestionLevel, congestedSections);
-            
-            DashboardStatsResponse response = new DashboardStatsResponse(true, data);
-            
-            logger.info("仪表盘统计数据计算完成: 拥挤级别={}, 拥挤路段数={}", 
-                       congestionLevel, congestedSections);
-            
-            return response;
+            StatsSnapshot stats = currentSnapshot();
+            QuantileSketch sketch = flowQuantileService.getDaySketch();
+            DashboardStatsResponse.FlowQuantiles quantiles = sketch.isEmpty()
+                ? new DashboardStatsResponse.FlowQuantiles(0, null, null, null)
+                : new DashboardStatsResponse.FlowQuantiles(sketch.getCount(),
+                    sketch.quantile(0.50), sketch.quantile(0.90), sketch.quantile(0.99));
+            DashboardStatsResponse.DashboardStatsData data =
+                new DashboardStatsResponse.DashboardStatsData(stats.getCongestionLevel(), (int) stats.getCongestedSections(), quantiles);
+
+            logger.debug("仪表盘统计数据: 拥挤级别={}, 拥挤路段数={}, 快照版本={}",
+                        data.getCongestionLevel(), data.getCongestedSections(), stats.version);
+            return new DashboardStatsResponse(true, data);
         } catch (Exception e) {
             logger.error("计算仪表盘统计数据失败: error={}", e.getMessage());
             throw new RuntimeException("获取统计数据失败: " + e.getMessage());
         }
     }
 
+    @Override
+    public void onEffectiveFlowChanged(int day, int hour, int nodeId, int oldFlow, int newFlow) {
+        if (day != aggregates.day) {
+            return;
+        }
+        if (oldFlow != FlowTimeSeriesStore.MISSING) {
+            aggregates.apply(oldFlow, -1);
+        }
+        if (newFlow != FlowTimeSeriesStore.MISSING) {
+            aggregates.apply(newFlow, 1);
+        }
+        snapshot.set(aggregates.toSnapshot());
+    }
+
+    @Override
+    public void onReset() {
+        rebuild();
+    }
+
     /**
-     * 计算整体拥挤级别
+     * 从头重建当前日期的统计量（用于恢复）
+     * 列式存储就绪时在其写锁内扫描并替换累加器，保证与后续增量一致；否则从数据库扫描
      */
-    private String calculateCongestionLevel(List<Flow> flowData) {
-        if (flowData.isEmpty()) {
-            return "畅通";
-        }
-        
-        // 计算平均流量
-        double averageFlow = flowData.stream()
-                .mapToInt(Flow::getFlow)
-                .average()
-                .orElse(0.0);
-        
-        // 根据平均流量确定拥挤级别
-        if (averageFlow >= 100) {
-            return "严重拥堵";
-        } else if (averageFlow >= 70) {
-            return "拥堵";
-        } else if (averageFlow >= 40) {
-            return "缓慢";
+    public StatsSnapshot rebuild() {
+        int day = getCurrentDay();
+        long start = System.currentTimeMillis();
+        if (flowTimeSeriesStore.isReady()) {
+            Aggregates rebuilt = new Aggregates();
+            rebuilt.day = day;
+            flowTimeSeriesStore.scanConsistent(day, (nodeId, hour, flow) -> rebuilt.apply(flow, 1), () -> {
+                aggregates.copyFrom(rebuilt);
+                snapshot.set(aggregates.toSnapshot());
+            });
         } else {
-            return "畅通";
+            snapshot.set(scanDatabase(day).toSnapshot());
+        }
+        StatsSnapshot stats = snapshot.get();
+        logger.info("仪表盘统计量重建完成: 日期={}, 数据点={}, 耗时{}ms", day, stats.count, System.currentTimeMillis() - start);
+        return stats;
+    }
+
+    /**
+     * 定期执行一致性检查
+     */
+    @Scheduled(fixedDelayString = "${dashboard.verify-interval-ms:600000}", initialDelayString = "${dashboard.verify-interval-ms:600000}")
+    public void scheduledVerify() {
+        verifyConsistency(true);
+    }
+
+    /**
+     * 将当前快照与数据库全量扫描结果比对
+     * @param repair 不一致时是否重建快照；为false时只报告比对结果
+     */
+    public Map<String, Object> verifyConsistency(boolean repair) {
+        StatsSnapshot current = currentSnapshot();
+        StatsSnapshot scanned = scanDatabase(current.day).toSnapshot();
+        boolean consistent = current.count == scanned.count
+                && current.sum == scanned.sum
+                && Arrays.equals(current.levelCounts, scanned.levelCounts);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("day", current.day);
+        result.put("consistent", consistent);
+        result.put("snapshot", current.toMap());
+        result.put("scan", scanned.toMap());
+        if (!consistent) {
+            logger.warn("仪表盘统计量与数据库扫描结果不一致: 快照={}, 扫描={}, 重建={}", current.toMap(), scanned.toMap(), repair);
+            if (repair) {
+                result.put("rebuilt", rebuild().toMap());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取当前统计快照的详细信息
+     */
+    public Map<String, Object> getSnapshotDetails() {
+        return currentSnapshot().toMap();
+    }
+
+    private StatsSnapshot currentSnapshot() {
+        StatsSnapshot stats = snapshot.get();
+        if (stats == null || stats.day != getCurrentDay() || !flowTimeSeriesStore.isReady()) {
+            stats = rebuild();
         }
+        return stats;
     }
 
     /**
-     * 计算拥挤路段数量
+     * 从数据库合并查询全量统计指定日期的有效流量
      */
-    private Integer calculateCongestedSections(List<Flow> flowData) {
-        // 计算流量超过拥堵阈值的节点数量
-        long congestedNodes = flowData.stream()
-                .filter(flow -> flow.getFlow() >= 70) // 拥堵阈值
-                .count();
-        
-        return (int) congestedNodes;
+    private Aggregates scanDatabase(int day) {
+        Aggregates scanned = new Aggregates();
+        scanned.day = day;
+        for (CombinedFlowView flow : flowForecastRepository.findCombinedByDay(day)) {
+            if (flow.getEffectiveFlow() != null) {
+                scanned.apply(flow.getEffectiveFlow(), 1);
+            }
+        }
+        return scanned;
     }
 
     /**
      * 获取当前日期
      */
     private Integer getCurrentDay() {
-        // 简化实现，实际应该根据当前日期计算
-        return 1; // 假设当前是第1天
+        return trafficClock.getCurrentDay();
+    }
+
+    /**
+     * 内部类：可变累加器
+     */
+    private static class Aggregates {
+        int day = Integer.MIN_VALUE;
+        long count;
+        long sum;
+        final long[] levelCounts = new long[LEVELS.length];
+        long version;
+
+        void apply(int flow, int sign) {
+            count += sign;
+            sum += (long) sign * flow;
+            levelCounts[CongestionLevel.indexOf(flow)] += sign;
+        }
+
+        void copyFrom(Aggregates other) {
+            day = other.day;
+            count = other.count;
+            sum = other.sum;
+            System.arraycopy(other.levelCounts, 0, levelCounts, 0, levelCounts.length);
+        }
+
+        StatsSnapshot toSnapshot() {
+            version++;
+            return new StatsSnapshot(day, count, sum, levelCounts.clone(), version);
+        }
+    }
+
+    /**
+     * 不可变统计快照
+     */
+    public static final class StatsSnapshot {
+        private final int day;
+        private final long count;
+        private final long sum;
+        private final long[] levelCounts;
+        private final long version;
+        private final long builtAt = System.currentTimeMillis();
+
+        private StatsSnapshot(int day, long count, long sum, long[] levelCounts, long version) {
+            this.day = day;
+            this.count = count;
+            this.sum = sum;
+            this.levelCounts = levelCounts;
+            this.version = version;
+        }
+
+        public double getAverageFlow() {
+            return count == 0 ? 0.0 : (double) sum / count;
+        }
+
+        /**
+         * 根据平均流量确定整体拥挤级别
+         */
+        public String getCongestionLevel() {
+            return count == 0 ? LEVELS[0] : CongestionLevel.nameOf(getAverageFlow());
+        }
+
+        /**
+         * 流量达到拥堵阈值的数据点数量
+         */
+        public long getCongestedSections() {
+            long congested = 0;
+            for (int level = CongestionLevel.CONGESTED; level < LEVELS.length; level++) {
+                congested += levelCounts[level];
+            }
+            return congested;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("day", day);
+            map.put("count", count);
+            map.put("sum", sum);
+            map.put("averageFlow", getAverageFlow());
+            map.put("congestionLevel", getCongestionLevel());
+            map.put("congestedSections", getCongestedSections());
+            Map<String, Long> levels = new LinkedHashMap<>();
+            for (int i = 0; i < LEVELS.length; i++) {
+                levels.put(LEVELS[i], levelCounts[i]);
+            }
+            map.put("levels", levels);
+            map.put("version", version);
+            map.put("builtAt", builtAt);
+            return map;
+        }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,360 @@
+package com.example.navigation.service;
+
+import com.example.navigation.event.EdgesChangedEvent;
+import com.example.navigation.event.NodesChangedEvent;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 路段拥挤度存储
+ * 以路网图快照的边下标组织当前日期每条边每小时的流量（两个端点有效流量的平均值，只有一端有值时取该值），
+ * 按小时主序存放在int数组中，供路径规划和地图渲染直接读取。
+ * 节点有效流量变化时只重算与该节点关联的边；路网变更、列式存储重载或日期切换后整体重建。
+ * 变化的单元格记入脏位图，定期写入edge_congestion表供分析查询
+ */
+@Service
+public class EdgeCongestionStore implements FlowTimeSeriesStore.EffectiveFlowListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(EdgeCongestionStore.class);
+
+    private static final int HOURS = 24;
+    public static final int MISSING = FlowTimeSeriesStore.MISSING;
+
+    private static final String DELETE_DAY_SQL = "DELETE FROM edge_congestion WHERE day_num = ?";
+    private static final String DELETE_CELL_SQL =
+            "DELETE FROM edge_congestion WHERE day_num = ? AND time_stamp = ? AND edge_id = ?";
+    private static final String INSERT_SQL =
+            "INSERT INTO edge_congestion (day_num, time_stamp, edge_id, node_id1, node_id2, flow) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final FlowTimeSeriesStore flowTimeSeriesStore;
+    private final RoadGraph roadGraph;
+    private final TrafficClock trafficClock;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${edge-congestion.write-batch-size:1000}")
+    private int writeBatchSize;
+
+    private final List<CongestionListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile State state;
+    // 路网变更或列式存储重载后置位，下次读取时重建
+    private volatile boolean stale = true;
+    private final Object persistLock = new Object();
+    private long incrementalUpdates;
+    private long rebuilds;
+
+    public EdgeCongestionStore(FlowTimeSeriesStore flowTimeSeriesStore,
+                               RoadGraph roadGraph,
+                               TrafficClock trafficClock,
+                               JdbcTemplate jdbcTemplate,
+                               TransactionTemplate transactionTemplate) {
+        this.flowTimeSeriesStore = flowTimeSeriesStore;
+        this.roadGraph = roadGraph;
+        this.trafficClock = trafficClock;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void registerListener() {
+        flowTimeSeriesStore.addListener(this);
+    }
+
+    /**
+     * 注册节点和路段流量变化监听器
+     */
+    public void addListener(CongestionListener listener) {
+        listeners.add(listener);
+    }
+
+    @EventListener
+    public void onNodesChanged(NodesChangedEvent event) {
+        stale = true;
+    }
+
+    @EventListener
+    public void onEdgesChanged(EdgesChangedEvent event) {
+        stale = true;
+    }
+
+    @Override
+    public void onReset() {
+        stale = true;
+    }
+
+    /**
+     * 节点有效流量变化时更新该节点的镜像值，并重算与之关联的边（在列式存储写锁内调用）
+     */
+    @Override
+    public void onEffectiveFlowChanged(int day, int hour, int nodeId, int oldFlow, int newFlow) {
+        State current = state;
+        if (current == null || current.day != day) {
+            return;
+        }
+        RoadGraph.Snapshot graph = current.graph;
+        int node = graph.indexOf(nodeId);
+        if (node < 0) {
+            return;
+        }
+        int nodeOffset = hour * graph.nodeCount() + node;
+        int previousNodeFlow = current.nodeFlows[nodeOffset];
+        current.nodeFlows[nodeOffset] = newFlow;
+        for (CongestionListener listener : listeners) {
+            listener.onNodeFlowChanged(current, node, hour, previousNodeFlow, newFlow);
+        }
+        for (int p = graph.incidentStart(node); p < graph.incidentEnd(node); p++) {
+            int edge = graph.incidentEdge(p);
+            int value = current.computeEdge(edge, hour);
+            int offset = hour * graph.edgeCount() + edge;
+            int previous = current.edgeFlows[offset];
+            if (previous != value) {
+                current.edgeFlows[offset] = value;
+                synchronized (current.dirty) {
+                    current.dirty.set(offset);
+                }
+                for (CongestionListener listener : listeners) {
+                    listener.onEdgeFlowChanged(current, edge, hour, previous, value);
+                }
+            }
+        }
+        incrementalUpdates++;
+    }
+
+    /**
+     * 获取当前快照，过期时先重建；列式存储未就绪时返回null，调用方回退到原有的按节点计算
+     */
+    public State current() {
+        if (!flowTimeSeriesStore.isReady()) {
+            return null;
+        }
+        State current = state;
+        int day = trafficClock.getCurrentDay();
+        if (current == null || stale || current.day != day || current.graph != roadGraph.current()) {
+            synchronized (this) {
+                current = state;
+                if (current == null || stale || current.day != day || current.graph != roadGraph.current()) {
+                    current = rebuild(day);
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 获取边在当前日期指定小时的流量，边不在路网图中或两端都没有流量时返回null
+     */
+    public Integer getEdgeFlow(long edgeId, int day, int hour) {
+        State current = current();
+        if (current == null || current.day != day || hour < 0 || hour >= HOURS) {
+            return null;
+        }
+        int edge = current.graph.edgeIndexOf(edgeId);
+        if (edge < 0) {
+            return null;
+        }
+        int value = current.edgeFlows[hour * current.graph.edgeCount() + edge];
+        return value == MISSING ? null : value;
+    }
+
+    /**
+     * 从列式存储整体重建（在其写锁内扫描并安装，保证与后续增量一致）
+     */
+    private State rebuild(int day) {
+        long start = System.currentTimeMillis();
+        stale = false;
+        RoadGraph.Snapshot graph = roadGraph.current();
+        State rebuilt = new State(day, graph);
+        flowTimeSeriesStore.scanConsistent(day, (nodeId, hour, flow) -> {
+            int node = graph.indexOf(nodeId);
+            if (node >= 0) {
+                rebuilt.nodeFlows[hour * graph.nodeCount() + node] = flow;
+            }
+        }, () -> {
+            for (int hour = 0; hour < HOURS; hour++) {
+                for (int edge = 0; edge < graph.edgeCount(); edge++) {
+                    rebuilt.edgeFlows[hour * graph.edgeCount() + edge] = rebuilt.computeEdge(edge, hour);
+                }
+            }
+            state = rebuilt;
+            for (CongestionListener listener : listeners) {
+                listener.onRebuilt(rebuilt);
+            }
+        });
+        rebuilds++;
+        logger.info("路段拥挤度重建完成: 日期={}, 边数={}, 耗时{}ms", day, graph.edgeCount(), System.currentTimeMillis() - start);
+        return rebuilt;
+    }
+
+    /**
+     * 定期将变化的单元格写入edge_congestion表；整体重建后先删除该日期的全部行再写入
+     */
+    @Scheduled(fixedDelayString = "${edge-congestion.flush-interval-ms:5000}")
+    public void flush() {
+        State current = state;
+        if (current == null) {
+            return;
+        }
+        BitSet cells;
+        boolean replaceDay;
+        synchronized (current.dirty) {
+            if (current.dirty.isEmpty() && !current.replaceDay) {
+                return;
+            }
+            cells = (BitSet) current.dirty.clone();
+            current.dirty.clear();
+            replaceDay = current.replaceDay;
+            current.replaceDay = false;
+        }
+
+        RoadGraph.Snapshot graph = current.graph;
+        int edgeCount = graph.edgeCount();
+        List<Object[]> deletes = new ArrayList<>();
+        List<Object[]> inserts = new ArrayList<>();
+        int[] offsets = replaceDay ? null : cells.stream().toArray();
+        int total = replaceDay ? edgeCount * HOURS : offsets.length;
+        for (int i = 0; i < total; i++) {
+            int offset = replaceDay ? i : offsets[i];
+            int hour = offset / Math.max(1, edgeCount);
+            int edge = offset % Math.max(1, edgeCount);
+            long edgeId = graph.edgeId(edge);
+            if (!replaceDay) {
+                deletes.add(new Object[]{current.day, hour, edgeId});
+            }
+            int value = current.edgeFlows[offset];
+            if (value != MISSING) {
+                inserts.add(new Object[]{current.day, hour, edgeId,
+                        graph.nodeId(graph.edgeSource(edge)), graph.nodeId(graph.edgeTarget(edge)), value});
+            }
+        }
+
+        try {
+            synchronized (persistLock) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    if (replaceDay) {
+                        jdbcTemplate.update(DELETE_DAY_SQL, current.day);
+                    }
+                    for (int from = 0; from < deletes.size(); from += writeBatchSize) {
+                        jdbcTemplate.batchUpdate(DELETE_CELL_SQL, deletes.subList(from, Math.min(deletes.size(), from + writeBatchSize)));
+                    }
+                    for (int from = 0; from < inserts.size(); from += writeBatchSize) {
+                        jdbcTemplate.batchUpdate(INSERT_SQL, inserts.subList(from, Math.min(inserts.size(), from + writeBatchSize)));
+                    }
+                });
+            }
+            logger.debug("路段拥挤度写入完成: 日期={}, 删除{}行, 写入{}行", current.day, deletes.size(), inserts.size());
+        } catch (RuntimeException e) {
+            // 写入失败时重新标记，下次继续写入
+            logger.error("路段拥挤度写入失败: {}", e.getMessage());
+            synchronized (current.dirty) {
+                current.dirty.or(cells);
+                current.replaceDay |= replaceDay;
+            }
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        State current = state;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", current != null);
+        stats.put("day", current != null ? current.day : null);
+        stats.put("edges", current != null ? current.graph.edgeCount() : 0);
+        stats.put("rebuilds", rebuilds);
+        stats.put("incrementalUpdates", incrementalUpdates);
+        if (current != null) {
+            synchronized (current.dirty) {
+                stats.put("dirtyCells", current.dirty.cardinality());
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 节点和路段流量变化监听器
+     * 增量回调在列式存储写锁内、数组更新之后调用；整体重建后以新的快照调用onRebuilt，同样持有写锁
+     */
+    public interface CongestionListener {
+        /**
+         * 节点（下标）在指定小时的有效流量变化，缺失用MISSING表示
+         */
+        void onNodeFlowChanged(State state, int node, int hour, int oldFlow, int newFlow);
+
+        /**
+         * 边（下标）在指定小时的流量变化，缺失用MISSING表示
+         */
+        void onEdgeFlowChanged(State state, int edge, int hour, int oldFlow, int newFlow);
+
+        /**
+         * 整体重建完成，之后的增量都基于该快照
+         */
+        void onRebuilt(State state);
+    }
+
+    /**
+     * 某一日期的路段拥挤度：路网图快照、按小时主序的节点流量镜像和边流量
+     */
+    public static final class State {
+        private final int day;
+        private final RoadGraph.Snapshot graph;
+        private final int[] nodeFlows;
+        private final int[] edgeFlows;
+        private final BitSet dirty = new BitSet();
+        // 整体重建后需要先清空该日期在表中的旧行
+        private boolean replaceDay = true;
+
+        State(int day, RoadGraph.Snapshot graph) {
+            this.day = day;
+            this.graph = graph;
+            this.nodeFlows = new int[HOURS * graph.nodeCount()];
+            this.edgeFlows = new int[HOURS * graph.edgeCount()];
+            Arrays.fill(nodeFlows, MISSING);
+        }
+
+        public int getDay() {
+            return day;
+        }
+
+        public RoadGraph.Snapshot getGraph() {
+            return graph;
+        }
+
+        /**
+         * 节点（下标）在指定小时的有效流量，缺失时为MISSING
+         */
+        public int nodeFlow(int node, int hour) {
+            return nodeFlows[hour * graph.nodeCount() + node];
+        }
+
+        /**
+         * 边在指定小时的流量，缺失时为MISSING
+         */
+        public int edgeFlow(int edge, int hour) {
+            return edgeFlows[hour * graph.edgeCount() + edge];
+        }
+
+        private int computeEdge(int edge, int hour) {
+            int flow1 = nodeFlows[hour * graph.nodeCount() + graph.edgeSource(edge)];
+            int flow2 = nodeFlows[hour * graph.nodeCount() + graph.edgeTarget(edge)];
+            if (flow1 == MISSING) {
+                return flow2;
+            }
+            if (flow2 == MISSING) {
+                return flow1;
+            }
+            return (int) Math.round((flow1 + flow2) / 2.0);
+        }
+    }
+}
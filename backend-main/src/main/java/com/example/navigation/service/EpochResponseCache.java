@@ -0,0 +1,160 @@
+package com.example.navigation.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 按流量数据版本缓存的响应
+ * 以FlowEpoch和缓存键生成强ETag：请求携带的If-None-Match与当前版本一致时直接返回304，不查询数据也不构建响应；
+ * 缓存键中的其他区分因素（如当前小时）不会递增版本，因此也编入ETag，变化后旧ETag随之失效；
+ * 否则返回该版本下预先序列化好的JSON字节（或预先编码的二进制瓦片），同一版本内的重复请求不再重新计算和序列化
+ */
+@Service
+public class EpochResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(EpochResponseCache.class);
+
+    private final FlowEpoch flowEpoch;
+    private final ObjectMapper objectMapper;
+    private final int maxEntries;
+
+    // 按访问顺序淘汰的LRU，键为接口及参数
+    private final LinkedHashMap<String, CachedBody> entries;
+
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public EpochResponseCache(FlowEpoch flowEpoch,
+                              ObjectMapper objectMapper,
+                              @Value("${http.response-cache.max-entries:256}") int maxEntries) {
+        this.flowEpoch = flowEpoch;
+        this.objectMapper = objectMapper;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedBody> eldest) {
+                return size() > EpochResponseCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 生成条件响应
+     * @param key 缓存键（接口路径及影响结果的参数）
+     * @param ifNoneMatch 请求头If-None-Match，可为空
+     * @param body 版本变化后构建响应对象
+     */
+    public ResponseEntity<byte[]> respond(String key, String ifNoneMatch, Supplier<?> body) {
+        return respondBytes(key, ifNoneMatch, MediaType.APPLICATION_JSON, () -> {
+            try {
+                return objectMapper.writeValueAsBytes(body.get());
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("响应序列化失败: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * 生成已编码为字节的条件响应（如矢量瓦片）
+     * @param contentType 响应内容类型
+     * @param body 版本变化后生成响应字节
+     */
+    public ResponseEntity<byte[]> respondBytes(String key, String ifNoneMatch, MediaType contentType, Supplier<byte[]> body) {
+        // 先读版本再构建：构建期间数据若再变化，响应标记的是较旧的版本，下次请求会重新获取
+        long epoch = flowEpoch.current();
+        String etag = etagOf(key, epoch);
+        if (matches(ifNoneMatch, etag)) {
+            notModified.increment();
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+        }
+
+        CachedBody cached;
+        synchronized (entries) {
+            cached = entries.get(key);
+        }
+        if (cached != null && cached.epoch == epoch) {
+            hits.increment();
+        } else {
+            misses.increment();
+            cached = new CachedBody(epoch, body.get());
+            synchronized (entries) {
+                CachedBody existing = entries.get(key);
+                if (existing == null || existing.epoch <= epoch) {
+                    entries.put(key, cached);
+                }
+            }
+            logger.debug("响应缓存未命中，已按版本{}重新生成: key={}, 大小={}字节", epoch, key, cached.bytes.length);
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .contentType(contentType)
+                .body(cached.bytes);
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("epoch", flowEpoch.current());
+        synchronized (entries) {
+            stats.put("entries", entries.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("notModified", notModified.sum());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        return stats;
+    }
+
+    /**
+     * 由版本号和缓存键的散列生成ETag，同一版本下键不同（如小时变化）时ETag也不同
+     */
+    static String etagOf(String key, long epoch) {
+        return "\"" + epoch + "-" + Integer.toHexString(key.hashCode()) + "\"";
+    }
+
+    /**
+     * If-None-Match是否包含指定ETag（或*）
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals(etag) || trimmed.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 内部类：某一版本下序列化好的响应
+     */
+    private static class CachedBody {
+        final long epoch;
+        final byte[] bytes;
+
+        CachedBody(long epoch, byte[] bytes) {
+            this.epoch = epoch;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.navigation.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * 多日流量分析服务
+ * 按日期划分任务，在ForkJoin线程池中并行扫描后合并。未归档的日期优先从列式存储的观测层读取，
+ * 已归档或不在内存中的日期通过归档服务合并扫描段文件和flow表，不把整个区间加载为实体列表
+ */
+@Service
+public class FlowAnalyticsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlowAnalyticsService.class);
+
+    private static final int HOURS = 24;
+    private static final String[] WEEKDAYS = {"周一", "周二", "周三", "周四", "周五", "周六", "周日"};
+
+    private final FlowTimeSeriesStore flowTimeSeriesStore;
+    private final FlowArchiveService flowArchiveService;
+    private final ForkJoinPool pool;
+
+    @Value("${analytics.max-days:366}")
+    private int maxDays;
+
+    @Value("${analytics.days-per-task:4}")
+    private int daysPerTask;
+
+    @Value("${analytics.first-day-weekday:1}")
+    private int firstDayWeekday;
+
+    public FlowAnalyticsService(FlowTimeSeriesStore flowTimeSeriesStore,
+                                FlowArchiveService flowArchiveService,
+                                @Value("${analytics.parallelism:4}") int parallelism) {
+        this.flowTimeSeriesStore = flowTimeSeriesStore;
+        this.flowArchiveService = flowArchiveService;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * 按小时统计日期区间内的平均流量和最大流量，nodeId为空时统计全部节点
+     */
+    public List<Map<String, Object>> getHourlyProfile(int startDay, int endDay, Integer nodeId) {
+        long[][] totals = aggregate(startDay, endDay, () -> new long[3][HOURS], (acc, day, hour, node, flow) -> {
+            if (nodeId == null || nodeId == node) {
+                acc[0][hour]++;
+                acc[1][hour] += flow;
+                acc[2][hour] = Math.max(acc[2][hour], flow);
+            }
+        }, (a, b) -> {
+            for (int hour = 0; hour < HOURS; hour++) {
+                a[0][hour] += b[0][hour];
+                a[1][hour] += b[1][hour];
+                a[2][hour] = Math.max(a[2][hour], b[2][hour]);
+            }
+            return a;
+        });
+        List<Map<String, Object>> profile = new ArrayList<>();
+        for (int hour = 0; hour < HOURS; hour++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("timeStamp", hour);
+            row.put("count", totals[0][hour]);
+            row.put("mean", totals[0][hour] == 0 ? 0.0 : (double) totals[1][hour] / totals[0][hour]);
+            row.put("max", totals[2][hour]);
+            profile.add(row);
+        }
+        return profile;
+    }
+
+    /**
+     * 按星期统计日期区间内的平均流量（第1天的星期由analytics.first-day-weekday指定）
+     */
+    public List<Map<String, Object>> getWeekdayProfile(int startDay, int endDay) {
+        long[][] totals = aggregate(startDay, endDay, () -> new long[2][7], (acc, day, hour, node, flow) -> {
+            int weekday = weekdayOf(day);
+            acc[0][weekday]++;
+            acc[1][weekday] += flow;
+        }, (a, b) -> {
+            for (int weekday = 0; weekday < 7; weekday++) {
+                a[0][weekday] += b[0][weekday];
+                a[1][weekday] += b[1][weekday];
+            }
+            return a;
+        });
+        List<Map<String, Object>> profile = new ArrayList<>();
+        for (int weekday = 0; weekday < 7; weekday++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("weekday", weekday + 1);
+            row.put("name", WEEKDAYS[weekday]);
+            row.put("count", totals[0][weekday]);
+            row.put("mean", totals[0][weekday] == 0 ? 0.0 : (double) totals[1][weekday] / totals[0][weekday]);
+            profile.add(row);
+        }
+        return profile;
+    }
+
+    /**
+     * 单个节点每天的平均流量和最大流量
+     */
+    public List<Map<String, Object>> getNodeTrend(int nodeId, int startDay, int endDay) {
+        // 每天一行：{样本数, 总和, 最大值}
+        TreeMap<Integer, long[]> days = aggregate(startDay, endDay, TreeMap::new, (acc, day, hour, node, flow) -> {
+            if (node == nodeId) {
+                long[] totals = acc.computeIfAbsent(day, d -> new long[3]);
+                totals[0]++;
+                totals[1] += flow;
+                totals[2] = Math.max(totals[2], flow);
+            }
+        }, (a, b) -> {
+            a.putAll(b);
+            return a;
+        });
+        List<Map<String, Object>> trend = new ArrayList<>();
+        days.forEach((day, totals) -> {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("day", day);
+            row.put("count", totals[0]);
+            row.put("mean", (double) totals[1] / totals[0]);
+            row.put("max", totals[2]);
+            trend.add(row);
+        });
+        return trend;
+    }
+
+    /**
+     * 日期区间内平均流量最高的节点
+     */
+    public List<Map<String, Object>> getTopNodes(int startDay, int endDay, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit必须为正数: " + limit);
+        }
+        // 每个节点：{样本数, 总和, 最大值}
+        Map<Integer, long[]> nodes = aggregate(startDay, endDay, HashMap::new, (acc, day, hour, node, flow) -> {
+            long[] totals = acc.computeIfAbsent(node, n -> new long[3]);
+            totals[0]++;
+            totals[1] += flow;
+            totals[2] = Math.max(totals[2], flow);
+        }, (a, b) -> {
+            b.forEach((node, totals) -> a.merge(node, totals, (x, y) -> {
+                x[0] += y[0];
+                x[1] += y[1];
+                x[2] = Math.max(x[2], y[2]);
+                return x;
+            }));
+            return a;
+        });
+        List<Map<String, Object>> top = new ArrayList<>();
+        nodes.entrySet().stream()
+                .sorted(Comparator.comparingDouble((Map.Entry<Integer, long[]> e) -> (double) e.getValue()[1] / e.getValue()[0])
+                        .reversed())
+                .limit(limit)
+                .forEach(entry -> {
+                    long[] totals = entry.getValue();
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("nodeId", entry.getKey());
+                    row.put("count", totals[0]);
+                    row.put("mean", (double) totals[1] / totals[0]);
+                    row.put("max", totals[2]);
+                    top.add(row);
+                });
+        return top;
+    }
+
+    /**
+     * 将日期区间拆分为ForkJoin任务并行累加，最后合并各任务的结果
+     */
+    private <A> A aggregate(int startDay, int endDay, Supplier<A> init, Accumulator<A> accumulator, BinaryOperator<A> combiner) {
+        if (startDay > endDay) {
+            throw new IllegalArgumentException("起始日期不能晚于结束日期: " + startDay + " > " + endDay);
+        }
+        if (endDay - startDay + 1 > maxDays) {
+            throw new IllegalArgumentException("查询区间不能超过" + maxDays + "天");
+        }
+        long start = System.currentTimeMillis();
+        A result = pool.invoke(new DayRangeTask<>(startDay, endDay, init, accumulator, combiner));
+        logger.debug("流量分析完成: 日期={}-{}, 耗时{}ms", startDay, endDay, System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * 扫描一天的观测流量：已归档的日期合并扫描归档段和flow表（补录行优先），
+     * 其余日期在列式存储中时读内存，否则扫描flow表
+     */
+    private void scanDay(int day, FlowArchiveService.RangeVisitor visitor) {
+        if (!flowArchiveService.getArchivedDays().contains(day)
+                && flowTimeSeriesStore.isReady()
+                && flowTimeSeriesStore.forEachObserved(day, (nodeId, hour, flow) -> visitor.visit(day, hour, nodeId, flow))) {
+            return;
+        }
+        flowArchiveService.scanRange(day, day, visitor);
+    }
+
+    private int weekdayOf(int day) {
+        return Math.floorMod(day - 1 + firstDayWeekday - 1, 7);
+    }
+
+    /**
+     * 累加回调
+     */
+    @FunctionalInterface
+    private interface Accumulator<A> {
+        void accept(A acc, int day, int hour, int nodeId, int flow);
+    }
+
+    /**
+     * 内部类：日期区间任务，超过days-per-task时对半拆分
+     */
+    private class DayRangeTask<A> extends RecursiveTask<A> {
+        private final int from;
+        private final int to;
+        private final Supplier<A> init;
+        private final Accumulator<A> accumulator;
+        private final BinaryOperator<A> combiner;
+
+        DayRangeTask(int from, int to, Supplier<A> init, Accumulator<A> accumulator, BinaryOperator<A> combiner) {
+            this.from = from;
+            this.to = to;
+            this.init = init;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from + 1 <= Math.max(1, daysPerTask)) {
+                A acc = init.get();
+                for (int day = from; day <= to; day++) {
+                    scanDay(day, (d, hour, nodeId, flow) -> accumulator.accept(acc, d, hour, nodeId, flow));
+                }
+                return acc;
+            }
+            int mid = (from + to) >>> 1;
+            DayRangeTask<A> left = new DayRangeTask<>(from, mid, init, accumulator, combiner);
+            DayRangeTask<A> right = new DayRangeTask<>(mid + 1, to, init, accumulator, combiner);
+            left.fork();
+            A rightResult = right.compute();
+            return combiner.apply(left.join(), rightResult);
+        }
+    }
+}
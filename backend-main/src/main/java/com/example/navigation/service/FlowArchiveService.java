@@ -0,0 +1,413 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.entity.Flow;
+import com.example.navigation.util.FlowSegmentCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.sql.PreparedStatement;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * 历史流量归档服务
+ * 将早于保留天数的日期从flow表迁移到按天划分的段文件（差值+varint编码的节点×小时矩阵，带CRC32校验），
+ * 读取时以内存映射方式打开。范围查询透明地合并归档段与flow表中的行，
+ * 同一(日期, 小时, 节点)同时存在时以flow表为准（归档后补录的数据）。
+ * 归档只是存储位置的迁移，不发布流量变更事件
+ */
+@Service
+public class FlowArchiveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlowArchiveService.class);
+
+    private static final String SEGMENT_PREFIX = "day-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // flow表一行的估算存储大小（4个整数列、行头和主键索引项），用于计算压缩比
+    private static final int ESTIMATED_ROW_BYTES = 64;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TrafficClock trafficClock;
+
+    @Value("${flow.archive.dir:data/flow-archive}")
+    private String archiveDir;
+
+    @Value("${flow.archive.retain-days:30}")
+    private int retainDays;
+
+    @Value("${flow.archive.fetch-size:5000}")
+    private int fetchSize;
+
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final NavigableSet<Integer> archivedDays = new ConcurrentSkipListSet<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean loaded;
+    private volatile Map<String, Object> lastRun = Collections.emptyMap();
+
+    public FlowArchiveService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, TrafficClock trafficClock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.trafficClock = trafficClock;
+    }
+
+    /**
+     * 定时归档（默认每天凌晨3点）
+     */
+    @Scheduled(cron = "${flow.archive.cron:0 0 3 * * *}")
+    public void scheduledArchive() {
+        archiveExpired();
+    }
+
+    /**
+     * 归档所有早于(当前日期 - 保留天数)的日期
+     * @return 本次执行的统计信息
+     */
+    public Map<String, Object> archiveExpired() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("流量归档任务正在执行中");
+        }
+        try {
+            long start = System.currentTimeMillis();
+            int cutoff = trafficClock.getCurrentDay() - Math.max(1, retainDays);
+            List<Integer> days = jdbcTemplate.queryForList(
+                    "SELECT DISTINCT day_num FROM flow WHERE day_num < ? ORDER BY day_num", Integer.class, cutoff);
+            List<Map<String, Object>> archived = new ArrayList<>();
+            for (int day : days) {
+                archived.add(archiveDayInternal(day));
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("cutoffDay", cutoff);
+            result.put("days", archived);
+            result.put("elapsedMs", System.currentTimeMillis() - start);
+            result.put("finishedAt", System.currentTimeMillis());
+            lastRun = result;
+            logger.info("流量归档完成: 截止日期={}, 归档天数={}, 耗时{}ms", cutoff, days.size(), System.currentTimeMillis() - start);
+            return result;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 归档指定日期
+     */
+    public Map<String, Object> archiveDay(int day) {
+        if (day >= trafficClock.getCurrentDay()) {
+            throw new IllegalArgumentException("不能归档当前及之后的日期: " + day);
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("流量归档任务正在执行中");
+        }
+        try {
+            return archiveDayInternal(day);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 在一个事务中锁定该日的行、写入段文件并删除已归档的行。
+     * 段文件先写临时文件再原子替换，并在删除行之前落盘；事务失败时段与flow表中的行同时存在，查询时以flow表为准
+     */
+    private Map<String, Object> archiveDayInternal(int day) {
+        ensureLoaded();
+        long start = System.currentTimeMillis();
+        Map<Integer, int[]> matrix = new HashMap<>();
+        // 已有段时（归档后又补录了数据）先读出旧内容，再用flow表中的行覆盖
+        Segment existing = segments.get(day);
+        if (existing != null) {
+            existing.forEach((nodeId, hour, flow) -> cell(matrix, nodeId)[hour] = flow);
+        }
+
+        Map<String, Object> result = transactionTemplate.execute(status -> {
+            long[] maxId = {Long.MIN_VALUE};
+            int[] liveRows = {0};
+            jdbcTemplate.query("SELECT id, time_stamp, node_id, flow FROM flow WHERE day_num = ? FOR UPDATE", rs -> {
+                int hour = rs.getInt(2);
+                if (hour >= 0 && hour < FlowSegmentCodec.HOURS) {
+                    cell(matrix, rs.getInt(3))[hour] = rs.getInt(4);
+                }
+                maxId[0] = Math.max(maxId[0], rs.getLong(1));
+                liveRows[0]++;
+            }, day);
+            if (liveRows[0] == 0) {
+                return null;
+            }
+
+            byte[] encoded = FlowSegmentCodec.encode(day, matrix);
+            Path path = writeSegment(day, encoded);
+            Segment segment = openSegment(path);
+            // 读回校验：数据点数必须与矩阵一致
+            int expected = matrix.values().stream()
+                    .mapToInt(values -> (int) Arrays.stream(values).filter(v -> v != Integer.MIN_VALUE).count())
+                    .sum();
+            if (segment.header.rows != expected) {
+                throw new IllegalStateException("归档段读回校验失败: 日期=" + day);
+            }
+            segments.put(day, segment);
+            archivedDays.add(day);
+
+            // 只删除读取时已存在的行，之后新插入的行保留在flow表中
+            int deleted = jdbcTemplate.update("DELETE FROM flow WHERE day_num = ? AND id <= ?", day, maxId[0]);
+            Map<String, Object> dayResult = new LinkedHashMap<>();
+            dayResult.put("day", day);
+            dayResult.put("rows", segment.header.rows);
+            dayResult.put("deletedRows", deleted);
+            dayResult.put("nodes", segment.header.nodeCount);
+            dayResult.put("segmentBytes", encoded.length);
+            dayResult.put("estimatedRowBytes", (long) segment.header.rows * ESTIMATED_ROW_BYTES);
+            dayResult.put("compressionRatio", compressionRatio(segment.header.rows, encoded.length));
+            return dayResult;
+        });
+        if (result == null) {
+            result = new LinkedHashMap<>();
+            result.put("day", day);
+            result.put("rows", 0);
+        }
+        result.put("elapsedMs", System.currentTimeMillis() - start);
+        logger.info("日期{}归档完成: {}", day, result);
+        return result;
+    }
+
+    /**
+     * 范围扫描：合并归档段与flow表中的行，按(日期, 小时, 节点, 流量)回调。flow表的行以设定的fetch size流式读取
+     */
+    public void scanRange(int startDay, int endDay, RangeVisitor visitor) {
+        if (startDay > endDay) {
+            throw new IllegalArgumentException("起始日期不能晚于结束日期: " + startDay + " > " + endDay);
+        }
+        ensureLoaded();
+        NavigableSet<Integer> archived = archivedDays.subSet(startDay, true, endDay, true);
+        // 归档日期在flow表中还有行时记录其键，扫描段时跳过
+        Map<Integer, Set<Long>> shadowed = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    "SELECT day_num, time_stamp, node_id, flow FROM flow WHERE day_num BETWEEN ? AND ?");
+            statement.setFetchSize(fetchSize);
+            statement.setInt(1, startDay);
+            statement.setInt(2, endDay);
+            return statement;
+        }, rs -> {
+            int day = rs.getInt(1);
+            int hour = rs.getInt(2);
+            int nodeId = rs.getInt(3);
+            if (archived.contains(day)) {
+                shadowed.computeIfAbsent(day, d -> new HashSet<>()).add(cellKey(nodeId, hour));
+            }
+            visitor.visit(day, hour, nodeId, rs.getInt(4));
+        });
+        for (int day : archived) {
+            Segment segment = segments.get(day);
+            Set<Long> skip = shadowed.getOrDefault(day, Collections.emptySet());
+            segment.forEach((nodeId, hour, flow) -> {
+                if (skip.isEmpty() || !skip.contains(cellKey(nodeId, hour))) {
+                    visitor.visit(day, hour, nodeId, flow);
+                }
+            });
+        }
+    }
+
+    /**
+     * 只扫描某个归档日期中未被flow表的行覆盖的数据点（供需要单独扫描flow表的调用方使用）
+     */
+    public void scanArchivedDay(int day, RangeVisitor visitor) {
+        ensureLoaded();
+        Segment segment = segments.get(day);
+        if (segment == null) {
+            return;
+        }
+        Set<Long> skip = new HashSet<>();
+        jdbcTemplate.query("SELECT time_stamp, node_id FROM flow WHERE day_num = ?",
+                (RowCallbackHandler) rs -> skip.add(cellKey(rs.getInt(2), rs.getInt(1))), day);
+        segment.forEach((nodeId, hour, flow) -> {
+            if (skip.isEmpty() || !skip.contains(cellKey(nodeId, hour))) {
+                visitor.visit(day, hour, nodeId, flow);
+            }
+        });
+    }
+
+    /**
+     * 与FlowRepository.findByDayBetween对应的透明查询，归档数据返回的实体没有ID
+     */
+    public List<Flow> findByDayBetween(int startDay, int endDay) {
+        List<Flow> flows = new ArrayList<>();
+        scanRange(startDay, endDay, (day, hour, nodeId, flow) -> flows.add(new Flow(null, day, hour, nodeId, flow)));
+        return flows;
+    }
+
+    /**
+     * 已归档的日期
+     */
+    public NavigableSet<Integer> getArchivedDays() {
+        ensureLoaded();
+        return Collections.unmodifiableNavigableSet(archivedDays);
+    }
+
+    /**
+     * 扫描吞吐量测试：扫描日期区间并统计数据点数和耗时
+     */
+    public Map<String, Object> benchmarkScan(int startDay, int endDay) {
+        long[] rows = {0};
+        long[] checksum = {0};
+        long start = System.nanoTime();
+        scanRange(startDay, endDay, (day, hour, nodeId, flow) -> {
+            rows[0]++;
+            checksum[0] += flow;
+        });
+        double elapsedMs = (System.nanoTime() - start) / 1_000_000.0;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("startDay", startDay);
+        result.put("endDay", endDay);
+        result.put("archivedDays", archivedDays.subSet(startDay, true, endDay, true).size());
+        result.put("rows", rows[0]);
+        result.put("flowSum", checksum[0]);
+        result.put("elapsedMs", elapsedMs);
+        result.put("rowsPerSecond", elapsedMs > 0 ? (long) (rows[0] * 1000 / elapsedMs) : rows[0]);
+        return result;
+    }
+
+    /**
+     * 获取归档统计信息（段数、数据点数、文件大小、压缩比）
+     */
+    public Map<String, Object> getStatistics() {
+        ensureLoaded();
+        long rows = 0;
+        long bytes = 0;
+        for (Segment segment : segments.values()) {
+            rows += segment.header.rows;
+            bytes += segment.size;
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("directory", Paths.get(archiveDir).toAbsolutePath().toString());
+        stats.put("retainDays", retainDays);
+        stats.put("segments", segments.size());
+        stats.put("firstDay", archivedDays.isEmpty() ? null : archivedDays.first());
+        stats.put("lastDay", archivedDays.isEmpty() ? null : archivedDays.last());
+        stats.put("rows", rows);
+        stats.put("segmentBytes", bytes);
+        stats.put("bytesPerRow", rows == 0 ? 0.0 : (double) bytes / rows);
+        stats.put("compressionRatio", rows == 0 ? 0.0 : compressionRatio(rows, bytes));
+        stats.put("lastRun", lastRun);
+        return stats;
+    }
+
+    /**
+     * 首次使用时打开归档目录下的全部段文件，校验失败的段跳过并记录错误
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            Path dir = Paths.get(archiveDir);
+            if (Files.isDirectory(dir)) {
+                try (Stream<Path> files = Files.list(dir)) {
+                    files.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                                    && path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                            .forEach(path -> {
+                                try {
+                                    Segment segment = openSegment(path);
+                                    segments.put(segment.header.day, segment);
+                                    archivedDays.add(segment.header.day);
+                                } catch (RuntimeException e) {
+                                    logger.error("归档段无法打开，已跳过: file={}, error={}", path, e.getMessage());
+                                }
+                            });
+                } catch (IOException e) {
+                    throw new UncheckedIOException("读取归档目录失败: " + dir, e);
+                }
+            }
+            loaded = true;
+            logger.info("流量归档段加载完成: 目录={}, 段数={}", dir.toAbsolutePath(), segments.size());
+        }
+    }
+
+    private Path writeSegment(int day, byte[] encoded) {
+        Path dir = Paths.get(archiveDir);
+        Path target = dir.resolve(SEGMENT_PREFIX + day + SEGMENT_SUFFIX);
+        try {
+            Files.createDirectories(dir);
+            Path temp = dir.resolve(SEGMENT_PREFIX + day + SEGMENT_SUFFIX + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.write(ByteBuffer.wrap(encoded));
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return target;
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入归档段失败: " + target, e);
+        }
+    }
+
+    private static Segment openSegment(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Segment(buffer, FlowSegmentCodec.readHeader(buffer), channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("打开归档段失败: " + path, e);
+        }
+    }
+
+    private static int[] cell(Map<Integer, int[]> matrix, int nodeId) {
+        return matrix.computeIfAbsent(nodeId, id -> {
+            int[] values = new int[FlowSegmentCodec.HOURS];
+            Arrays.fill(values, Integer.MIN_VALUE);
+            return values;
+        });
+    }
+
+    private static long cellKey(int nodeId, int hour) {
+        return ((long) nodeId << 8) | hour;
+    }
+
+    private static double compressionRatio(long rows, long segmentBytes) {
+        return segmentBytes == 0 ? 0.0 : (double) rows * ESTIMATED_ROW_BYTES / segmentBytes;
+    }
+
+    /**
+     * 范围扫描回调
+     */
+    @FunctionalInterface
+    public interface RangeVisitor {
+        void visit(int day, int hour, int nodeId, int flow);
+    }
+
+    /**
+     * 内部类：内存映射的归档段
+     */
+    private static class Segment {
+        final MappedByteBuffer buffer;
+        final FlowSegmentCodec.Header header;
+        final long size;
+
+        Segment(MappedByteBuffer buffer, FlowSegmentCodec.Header header, long size) {
+            this.buffer = buffer;
+            this.header = header;
+            this.size = size;
+        }
+
+        void forEach(FlowSegmentCodec.CellVisitor visitor) {
+            FlowSegmentCodec.decode(buffer, header, visitor);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.navigation.service;
+
+import com.example.navigation.event.EdgesChangedEvent;
+import com.example.navigation.event.FlowChangedEvent;
+import com.example.navigation.event.NodesChangedEvent;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 流量数据版本号
+ * 单调递增，任何有效流量变更（观测写入、批量导入、预测物化、存储重载）或节点、边变更都会递增，
+ * 地图和仪表盘接口以此生成ETag，版本不变时可直接返回304。
+ * 初始值每次启动随机生成，避免重启后或多实例之间复用相同的版本号，让客户端缓存的旧ETag误命中
+ */
+@Component
+@RequiredArgsConstructor
+public class FlowEpoch implements FlowTimeSeriesStore.EffectiveFlowListener {
+
+    private final FlowTimeSeriesStore flowTimeSeriesStore;
+
+    private final AtomicLong epoch = new AtomicLong(ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE >> 1));
+
+    @PostConstruct
+    public void registerListener() {
+        flowTimeSeriesStore.addListener(this);
+    }
+
+    /**
+     * 当前版本号
+     */
+    public long current() {
+        return epoch.get();
+    }
+
+    @Override
+    public void onEffectiveFlowChanged(int day, int hour, int nodeId, int oldFlow, int newFlow) {
+        epoch.incrementAndGet();
+    }
+
+    @Override
+    public void onReset() {
+        epoch.incrementAndGet();
+    }
+
+    /**
+     * 列式存储未就绪时变更不会经过监听器，这里直接根据变更事件递增
+     */
+    @EventListener
+    public void onFlowChanged(FlowChangedEvent event) {
+        epoch.incrementAndGet();
+    }
+
+    @EventListener
+    public void onNodesChanged(NodesChangedEvent event) {
+        epoch.incrementAndGet();
+    }
+
+    @EventListener
+    public void onEdgesChanged(EdgesChangedEvent event) {
+        epoch.incrementAndGet();
+    }
+}
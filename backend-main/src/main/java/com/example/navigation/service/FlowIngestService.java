@@ -0,0 +1,473 @@
+package com.example.navigation.service;
+
+import com.example.navigation.event.FlowChangedEvent;
+import com.example.navigation.event.FlowChangedEvent.FlowChange;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.example.navigation.util.PgCopy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * 车流量流式导入服务
+ * 逐行解析NDJSON或CSV请求体，不缓冲整个请求，按配置的批大小分批写入flow表：
+ * - 默认在事务内用SELECT ... FOR UPDATE锁定已有行并读取旧值，批量UPDATE已有行，缺失的行按(day_num, time_stamp, node_id)
+ *   唯一索引"不存在才插入"（PostgreSQL为ON CONFLICT DO NOTHING，其他数据库为MERGE）；
+ *   被并发写入抢先插入的行在下一轮按已有行重新锁定并更新
+ * - 启用flow.ingest.use-copy且连接为PostgreSQL时，先COPY到临时表，锁定并读取匹配的已有行后用集合语句合并，
+ *   插入冲突的行交给JDBC路径处理
+ * 旧值都在写入事务内读取，每批提交后发布FlowChangedEvent，携带变更前后的流量值
+ */
+@Service
+public class FlowIngestService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlowIngestService.class);
+
+    private static final String UPDATE_SQL =
+            "UPDATE flow SET flow = ? WHERE day_num = ? AND time_stamp = ? AND node_id = ?";
+    private static final String INSERT_IF_ABSENT_PG_SQL =
+            "INSERT INTO flow (day_num, time_stamp, node_id, flow) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (day_num, time_stamp, node_id) DO NOTHING";
+    private static final String INSERT_IF_ABSENT_SQL =
+            "MERGE INTO flow f USING (VALUES (CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS INTEGER))) " +
+            "AS s (day_num, time_stamp, node_id, flow) " +
+            "ON f.day_num = s.day_num AND f.time_stamp = s.time_stamp AND f.node_id = s.node_id " +
+            "WHEN NOT MATCHED THEN INSERT (day_num, time_stamp, node_id, flow) VALUES (s.day_num, s.time_stamp, s.node_id, s.flow)";
+    // 按(日期, 小时)分组锁定已有行时，每条语句最多携带的节点数
+    private static final int LOCK_CHUNK_SIZE = 500;
+    private static final String CREATE_STAGING_SQL =
+            "CREATE TEMP TABLE IF NOT EXISTS flow_ingest_staging " +
+            "(day_num INTEGER, time_stamp INTEGER, node_id INTEGER, flow INTEGER) ON COMMIT DELETE ROWS";
+    private static final String COPY_SQL =
+            "COPY flow_ingest_staging (day_num, time_stamp, node_id, flow) FROM STDIN WITH (FORMAT csv)";
+    private static final String LOCK_STAGED_SQL =
+            "SELECT f.day_num, f.time_stamp, f.node_id, f.flow FROM flow f JOIN flow_ingest_staging s " +
+            "ON f.day_num = s.day_num AND f.time_stamp = s.time_stamp AND f.node_id = s.node_id FOR UPDATE OF f";
+    private static final String MERGE_UPDATE_SQL =
+            "UPDATE flow f SET flow = s.flow FROM flow_ingest_staging s " +
+            "WHERE f.day_num = s.day_num AND f.time_stamp = s.time_stamp AND f.node_id = s.node_id";
+    private static final String MERGE_INSERT_SQL =
+            "INSERT INTO flow (day_num, time_stamp, node_id, flow) " +
+            "SELECT s.day_num, s.time_stamp, s.node_id, s.flow FROM flow_ingest_staging s " +
+            "ON CONFLICT (day_num, time_stamp, node_id) DO NOTHING RETURNING day_num, time_stamp, node_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @Value("${flow.ingest.batch-size:5000}")
+    private int batchSize;
+
+    @Value("${flow.ingest.use-copy:false}")
+    private boolean useCopy;
+
+    @Value("${flow.ingest.max-errors:20}")
+    private int maxErrors;
+
+    // COPY不可用时（非PostgreSQL连接）只告警一次，之后固定走JDBC批量
+    private volatile boolean copyUnavailable;
+    // 首次写入时根据连接判断是否为PostgreSQL，决定"不存在才插入"的语法
+    private volatile Boolean postgres;
+
+    public FlowIngestService(JdbcTemplate jdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             ApplicationEventPublisher eventPublisher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * 导入NDJSON流，每行一个对象：{"day":1,"timeStamp":8,"nodeID":3,"flow":42}
+     */
+    public Map<String, Object> ingestNdjson(InputStream body) throws IOException {
+        IngestRun run = new IngestRun();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                run.lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    run.add(parseJsonLine(line));
+                } catch (IOException | IllegalArgumentException e) {
+                    run.reject(e.getMessage());
+                }
+            }
+        }
+        return run.finish("ndjson");
+    }
+
+    /**
+     * 导入CSV流，列顺序为day,timeStamp,nodeID,flow；首行为表头时按列名定位
+     */
+    public Map<String, Object> ingestCsv(InputStream body) throws IOException {
+        IngestRun run = new IngestRun();
+        int[] columns = {0, 1, 2, 3};
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                run.lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] fields = line.split(",", -1);
+                if (run.lineNumber == 1 && !fields[0].isBlank() && !Character.isDigit(fields[0].trim().charAt(0))) {
+                    columns = parseCsvHeader(fields);
+                    continue;
+                }
+                try {
+                    run.add(parseCsvFields(fields, columns));
+                } catch (IllegalArgumentException e) {
+                    run.reject(e.getMessage());
+                }
+            }
+        }
+        return run.finish("csv");
+    }
+
+    private int[] parseJsonLine(String line) throws IOException {
+        int[] reading = {Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        try (JsonParser parser = jsonFactory.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("不是JSON对象");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                int slot = fieldSlot(field);
+                if (slot >= 0) {
+                    reading[slot] = parser.getValueAsInt(Integer.MIN_VALUE);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return validate(reading);
+    }
+
+    private int[] parseCsvHeader(String[] fields) {
+        int[] columns = {-1, -1, -1, -1};
+        for (int i = 0; i < fields.length; i++) {
+            int slot = fieldSlot(fields[i].trim());
+            if (slot >= 0) {
+                columns[slot] = i;
+            }
+        }
+        for (int column : columns) {
+            if (column < 0) {
+                throw new IllegalArgumentException("CSV表头必须包含day、timeStamp、nodeID、flow列");
+            }
+        }
+        return columns;
+    }
+
+    private int[] parseCsvFields(String[] fields, int[] columns) {
+        int[] reading = new int[4];
+        for (int slot = 0; slot < 4; slot++) {
+            if (columns[slot] >= fields.length) {
+                throw new IllegalArgumentException("列数不足");
+            }
+            try {
+                reading[slot] = Integer.parseInt(fields[columns[slot]].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("无效的整数: " + fields[columns[slot]]);
+            }
+        }
+        return validate(reading);
+    }
+
+    /**
+     * 字段名到读数下标的映射：0=day, 1=timeStamp, 2=nodeID, 3=flow
+     */
+    private static int fieldSlot(String field) {
+        switch (field) {
+            case "day": case "day_num": return 0;
+            case "timeStamp": case "time_stamp": case "hour": return 1;
+            case "nodeID": case "nodeId": case "node_id": return 2;
+            case "flow": return 3;
+            default: return -1;
+        }
+    }
+
+    private static int[] validate(int[] reading) {
+        if (reading[0] == Integer.MIN_VALUE || reading[1] == Integer.MIN_VALUE
+                || reading[2] == Integer.MIN_VALUE || reading[3] == Integer.MIN_VALUE) {
+            throw new IllegalArgumentException("缺少day、timeStamp、nodeID或flow字段");
+        }
+        if (reading[0] < 0 || reading[1] < 0 || reading[1] > 23 || reading[3] < 0) {
+            throw new IllegalArgumentException("取值超出范围: day=" + reading[0] + ", timeStamp=" + reading[1]
+                    + ", flow=" + reading[3]);
+        }
+        return reading;
+    }
+
+    /**
+     * 写入一批读数并在提交后发布变更
+     * 同一批内相同(日期, 小时, 节点)的读数只保留最后一条
+     * @return {更新行数, 插入行数}
+     */
+    private int[] writeBatch(Map<Long, int[]> batch) {
+        List<int[]> readings = new ArrayList<>(batch.values());
+        boolean copy = useCopy && !copyUnavailable;
+        WriteResult result = transactionTemplate.execute(status -> {
+            WriteResult written = new WriteResult();
+            if (copy) {
+                copyBatch(readings, written);
+            } else {
+                jdbcBatch(readings, written);
+            }
+            return written;
+        });
+
+        List<FlowChange> changes = new ArrayList<>(readings.size());
+        for (int[] r : readings) {
+            Integer oldFlow = result.oldFlows.get(cellKey(r));
+            if (oldFlow == null || oldFlow != r[3]) {
+                changes.add(new FlowChange(r[0], r[1], r[2], oldFlow, r[3]));
+            }
+        }
+        if (!changes.isEmpty()) {
+            eventPublisher.publishEvent(new FlowChangedEvent("ingest", changes));
+        }
+        return new int[]{result.updated, result.inserted};
+    }
+
+    /**
+     * 锁定并更新已有行，缺失的行不存在才插入；插入时被并发写入抢先的行进入下一轮，按已有行处理
+     */
+    private void jdbcBatch(List<int[]> readings, WriteResult result) {
+        List<int[]> pending = readings;
+        while (!pending.isEmpty()) {
+            Map<Long, Integer> existing = lockExisting(pending);
+            result.oldFlows.putAll(existing);
+            List<int[]> present = new ArrayList<>();
+            List<int[]> missing = new ArrayList<>();
+            for (int[] r : pending) {
+                (existing.containsKey(cellKey(r)) ? present : missing).add(r);
+            }
+            if (!present.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPDATE_SQL, present, present.size(),
+                        (ps, r) -> {
+                            ps.setInt(1, r[3]);
+                            ps.setInt(2, r[0]);
+                            ps.setInt(3, r[1]);
+                            ps.setInt(4, r[2]);
+                        });
+                result.updated += present.size();
+            }
+            pending = insertIfAbsent(missing, result);
+        }
+    }
+
+    /**
+     * 在当前事务内按(日期, 小时)分组，用SELECT ... FOR UPDATE锁定并读取已有行的流量，
+     * 提交前其他写入者不能修改这些行，读到的就是本批覆盖前的旧值
+     */
+    private Map<Long, Integer> lockExisting(List<int[]> readings) {
+        Map<Long, List<Integer>> nodesByHour = new LinkedHashMap<>();
+        for (int[] r : readings) {
+            nodesByHour.computeIfAbsent(((long) r[0] << 5) | r[1], k -> new ArrayList<>()).add(r[2]);
+        }
+        Map<Long, Integer> existing = new HashMap<>();
+        nodesByHour.forEach((dayHour, nodeIds) -> {
+            int day = (int) (dayHour >> 5);
+            int hour = (int) (dayHour & 31);
+            for (int from = 0; from < nodeIds.size(); from += LOCK_CHUNK_SIZE) {
+                List<Integer> chunk = nodeIds.subList(from, Math.min(from + LOCK_CHUNK_SIZE, nodeIds.size()));
+                String sql = "SELECT node_id, flow FROM flow WHERE day_num = ? AND time_stamp = ? AND node_id IN ("
+                        + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ") FOR UPDATE";
+                Object[] args = new Object[chunk.size() + 2];
+                args[0] = day;
+                args[1] = hour;
+                for (int i = 0; i < chunk.size(); i++) {
+                    args[i + 2] = chunk.get(i);
+                }
+                jdbcTemplate.query(sql, rs -> {
+                    existing.put(cellKey(day, hour, rs.getInt(1)), rs.getInt(2));
+                }, args);
+            }
+        });
+        return existing;
+    }
+
+    /**
+     * 批量"不存在才插入"
+     * @return 因并发写入已插入同一(日期, 小时, 节点)而未插入的行
+     */
+    private List<int[]> insertIfAbsent(List<int[]> rows, WriteResult result) {
+        if (rows.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int[][] insertCounts = jdbcTemplate.batchUpdate(isPostgres() ? INSERT_IF_ABSENT_PG_SQL : INSERT_IF_ABSENT_SQL,
+                rows, rows.size(),
+                (ps, r) -> {
+                    ps.setInt(1, r[0]);
+                    ps.setInt(2, r[1]);
+                    ps.setInt(3, r[2]);
+                    ps.setInt(4, r[3]);
+                });
+        List<int[]> conflicted = new ArrayList<>();
+        int offset = 0;
+        for (int[] chunk : insertCounts) {
+            for (int count : chunk) {
+                // 驱动未返回行数时视为已插入
+                if (count == 0) {
+                    conflicted.add(rows.get(offset));
+                } else {
+                    result.inserted++;
+                }
+                offset++;
+            }
+        }
+        return conflicted;
+    }
+
+    private void copyBatch(List<int[]> readings, WriteResult result) {
+        List<int[]> conflicted = jdbcTemplate.execute((ConnectionCallback<List<int[]>>) connection -> {
+            if (!PgCopy.isSupported(connection)) {
+                copyUnavailable = true;
+                logger.warn("当前数据库连接不是PostgreSQL，COPY导入不可用，改用JDBC批量写入");
+                return null;
+            }
+            StringBuilder csv = new StringBuilder(readings.size() * 16);
+            for (int[] r : readings) {
+                csv.append(r[0]).append(',').append(r[1]).append(',').append(r[2]).append(',').append(r[3]).append('\n');
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_STAGING_SQL);
+                PgCopy.copyIn(connection, COPY_SQL, new StringReader(csv.toString()));
+                try (ResultSet rs = statement.executeQuery(LOCK_STAGED_SQL)) {
+                    while (rs.next()) {
+                        result.oldFlows.put(cellKey(rs.getInt(1), rs.getInt(2), rs.getInt(3)), rs.getInt(4));
+                    }
+                }
+                result.updated += statement.executeUpdate(MERGE_UPDATE_SQL);
+                Set<Long> inserted = new HashSet<>();
+                try (ResultSet rs = statement.executeQuery(MERGE_INSERT_SQL)) {
+                    while (rs.next()) {
+                        inserted.add(cellKey(rs.getInt(1), rs.getInt(2), rs.getInt(3)));
+                    }
+                }
+                result.inserted += inserted.size();
+                List<int[]> rest = new ArrayList<>();
+                for (int[] r : readings) {
+                    long key = cellKey(r);
+                    if (!result.oldFlows.containsKey(key) && !inserted.contains(key)) {
+                        rest.add(r);
+                    }
+                }
+                return rest;
+            } catch (IOException e) {
+                throw new SQLException("COPY写入失败: " + e.getMessage(), e);
+            }
+        });
+        jdbcBatch(conflicted != null ? conflicted : readings, result);
+    }
+
+    private boolean isPostgres() {
+        Boolean detected = postgres;
+        if (detected == null) {
+            detected = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                    "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName()));
+            postgres = detected;
+        }
+        return detected;
+    }
+
+    /**
+     * (日期, 小时, 节点)的组合键，同一批内去重和旧值查找共用
+     */
+    private static long cellKey(int day, int hour, int nodeId) {
+        return ((long) day << 37) | ((long) hour << 32) | (nodeId & 0xFFFFFFFFL);
+    }
+
+    private static long cellKey(int[] reading) {
+        return cellKey(reading[0], reading[1], reading[2]);
+    }
+
+    /**
+     * 一批写入的结果：更新行数、插入行数，以及在写入事务内读到的已有行旧值
+     */
+    private static class WriteResult {
+        final Map<Long, Integer> oldFlows = new HashMap<>();
+        int updated;
+        int inserted;
+    }
+
+    /**
+     * 一次导入请求的状态：当前批、计数和前若干条错误
+     */
+    private class IngestRun {
+        final long start = System.nanoTime();
+        final Map<Long, int[]> batch = new LinkedHashMap<>();
+        final List<String> errors = new ArrayList<>();
+        long lineNumber;
+        long accepted;
+        long rejected;
+        long updated;
+        long inserted;
+        int batches;
+
+        void add(int[] reading) {
+            batch.put(cellKey(reading), reading);
+            accepted++;
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void reject(String message) {
+            rejected++;
+            if (errors.size() < maxErrors) {
+                errors.add("第" + lineNumber + "行: " + message);
+            }
+        }
+
+        void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            int[] counts = writeBatch(batch);
+            updated += counts[0];
+            inserted += counts[1];
+            batches++;
+            batch.clear();
+        }
+
+        Map<String, Object> finish(String format) {
+            flush();
+            long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("format", format);
+            result.put("mode", useCopy && !copyUnavailable ? "copy" : "jdbc-batch");
+            result.put("accepted", accepted);
+            result.put("rejected", rejected);
+            result.put("updated", updated);
+            result.put("inserted", inserted);
+            result.put("batches", batches);
+            result.put("elapsedMs", elapsedMs);
+            result.put("readingsPerSecond", accepted * 1000 / elapsedMs);
+            result.put("errors", errors);
+            logger.info("车流量导入完成: 格式={}, 接收{}条, 拒绝{}条, 更新{}行, 插入{}行, {}批, 耗时{}ms",
+                       format, accepted, rejected, updated, inserted, batches, elapsedMs);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.projection.CombinedFlowView;
+import com.example.navigation.repository.FlowForecastRepository;
+import com.example.navigation.util.QuantileSketch;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * 流量分位数服务
+ * 为当前日期的每个区域×小时维护一个分位数摘要，随列式存储的有效流量变更增量更新（撤销旧值、记录新值）；
+ * 查询时按需合并指定小时范围和区域的摘要，得到p50/p90/p99。每个摘要的桶数只由精度和最大值决定，
+ * 内存与数据量无关。列式存储重载、路网变更或日期切换后整体重建
+ */
+@Service
+public class FlowQuantileService implements FlowTimeSeriesStore.EffectiveFlowListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlowQuantileService.class);
+
+    private static final int HOURS = 24;
+    private static final Set<String> GROUP_BY = Set.of("none", "region", "hour");
+
+    private final FlowTimeSeriesStore flowTimeSeriesStore;
+    private final FlowForecastRepository flowForecastRepository;
+    private final RegionIndex regionIndex;
+    private final TrafficClock trafficClock;
+
+    @Value("${dashboard.quantiles.relative-accuracy:0.02}")
+    private double relativeAccuracy;
+
+    @Value("${dashboard.quantiles.max-value:100000}")
+    private int maxValue;
+
+    // 只在this锁内读写摘要；增量回调时调用方已持有列式存储写锁（锁顺序：重建锁→写锁→this）
+    private volatile State state;
+    private volatile boolean stale = true;
+    private final Object rebuildLock = new Object();
+    private long incrementalUpdates;
+    private long rebuilds;
+
+    public FlowQuantileService(FlowTimeSeriesStore flowTimeSeriesStore,
+                               FlowForecastRepository flowForecastRepository,
+                               RegionIndex regionIndex,
+                               TrafficClock trafficClock) {
+        this.flowTimeSeriesStore = flowTimeSeriesStore;
+        this.flowForecastRepository = flowForecastRepository;
+        this.regionIndex = regionIndex;
+        this.trafficClock = trafficClock;
+    }
+
+    @PostConstruct
+    public void registerListener() {
+        // 提前校验精度和最大值配置
+        new QuantileSketch(relativeAccuracy, maxValue);
+        flowTimeSeriesStore.addListener(this);
+    }
+
+    @Override
+    public synchronized void onEffectiveFlowChanged(int day, int hour, int nodeId, int oldFlow, int newFlow) {
+        State current = state;
+        if (current == null || current.day != day || hour < 0 || hour >= HOURS) {
+            return;
+        }
+        int node = current.assignment.getGraph().indexOf(nodeId);
+        if (node < 0) {
+            return;
+        }
+        QuantileSketch sketch = current.sketch(current.assignment.regionOf(node), hour);
+        if (oldFlow != FlowTimeSeriesStore.MISSING) {
+            sketch.add(oldFlow, -1);
+        }
+        if (newFlow != FlowTimeSeriesStore.MISSING) {
+            sketch.add(newFlow, 1);
+        }
+        incrementalUpdates++;
+    }
+
+    @Override
+    public void onReset() {
+        stale = true;
+    }
+
+    /**
+     * 当前日期全天、全部区域的分位数摘要（合并结果的副本）
+     */
+    public QuantileSketch getDaySketch() {
+        State current = current();
+        synchronized (this) {
+            return current.merge(0, HOURS - 1, null);
+        }
+    }
+
+    /**
+     * 按小时范围和区域合并分位数
+     * @param fromHour 起始小时（含），默认0
+     * @param toHour 结束小时（含），默认23
+     * @param regionIds 区域编号，为空时包含全部区域
+     * @param groupBy none只返回合并结果；region额外按区域分组；hour额外按小时分组
+     * @throws IllegalArgumentException 参数无效或区域不存在
+     */
+    public Map<String, Object> getQuantiles(Integer fromHour, Integer toHour, List<String> regionIds, String groupBy) {
+        int from = fromHour != null ? fromHour : 0;
+        int to = toHour != null ? toHour : HOURS - 1;
+        if (from < 0 || to >= HOURS || from > to) {
+            throw new IllegalArgumentException("小时范围无效: " + from + "-" + to);
+        }
+        String grouping = groupBy != null ? groupBy : "none";
+        if (!GROUP_BY.contains(grouping)) {
+            throw new IllegalArgumentException("不支持的分组方式: " + grouping + "，可选值: none, region, hour");
+        }
+        State current = current();
+        int[] regions = null;
+        if (regionIds != null && !regionIds.isEmpty()) {
+            regions = new int[regionIds.size()];
+            for (int i = 0; i < regions.length; i++) {
+                regions[i] = current.assignment.indexOf(regionIds.get(i));
+                if (regions[i] < 0) {
+                    throw new IllegalArgumentException("区域不存在: " + regionIds.get(i));
+                }
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("day", current.day);
+        result.put("fromHour", from);
+        result.put("toHour", to);
+        synchronized (this) {
+            result.put("overall", current.merge(from, to, regions).summary());
+            List<Map<String, Object>> groups = new ArrayList<>();
+            if ("region".equals(grouping)) {
+                int[] selected = regions != null ? regions
+                        : IntStream.range(0, current.assignment.regionCount()).toArray();
+                for (int region : selected) {
+                    Map<String, Object> group = new LinkedHashMap<>();
+                    group.put("region", current.assignment.region(region).getId());
+                    group.putAll(current.merge(from, to, new int[]{region}).summary());
+                    groups.add(group);
+                }
+            } else if ("hour".equals(grouping)) {
+                for (int hour = from; hour <= to; hour++) {
+                    Map<String, Object> group = new LinkedHashMap<>();
+                    group.put("hour", hour);
+                    group.putAll(current.merge(hour, hour, regions).summary());
+                    groups.add(group);
+                }
+            }
+            if (!"none".equals(grouping)) {
+                result.put("groups", groups);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取统计信息（摘要个数、每个摘要的桶数和估算内存）
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        State current = state;
+        int buckets = new QuantileSketch(relativeAccuracy, maxValue).bucketCount();
+        stats.put("relativeAccuracy", relativeAccuracy);
+        stats.put("maxValue", maxValue);
+        stats.put("bucketsPerSketch", buckets);
+        synchronized (this) {
+            int sketches = current == null ? 0 : (int) Arrays.stream(current.sketches).filter(Objects::nonNull).count();
+            stats.put("day", current == null ? null : current.day);
+            stats.put("regions", current == null ? 0 : current.assignment.regionCount());
+            stats.put("sketches", sketches);
+            stats.put("estimatedBytes", (long) sketches * buckets * Long.BYTES);
+            stats.put("incrementalUpdates", incrementalUpdates);
+            stats.put("rebuilds", rebuilds);
+        }
+        return stats;
+    }
+
+    /**
+     * 获取当前日期的摘要，过期时先重建；列式存储未就绪时从数据库合并查询临时构建，不保留
+     */
+    private State current() {
+        int day = trafficClock.getCurrentDay();
+        if (!flowTimeSeriesStore.isReady()) {
+            State scanned = new State(day, regionIndex.current());
+            for (CombinedFlowView flow : flowForecastRepository.findCombinedByDay(day)) {
+                if (flow.getEffectiveFlow() != null) {
+                    scanned.record(flow.getNodeId(), flow.getTimeStamp(), flow.getEffectiveFlow());
+                }
+            }
+            return scanned;
+        }
+        State current = state;
+        if (isStale(current, day)) {
+            synchronized (rebuildLock) {
+                current = state;
+                if (isStale(current, day)) {
+                    current = rebuild(day);
+                }
+            }
+        }
+        return current;
+    }
+
+    private boolean isStale(State current, int day) {
+        return current == null || stale || current.day != day || current.assignment != regionIndex.current();
+    }
+
+    private State rebuild(int day) {
+        long start = System.currentTimeMillis();
+        stale = false;
+        State rebuilt = new State(day, regionIndex.current());
+        flowTimeSeriesStore.scanConsistent(day, rebuilt::record, () -> {
+            synchronized (this) {
+                state = rebuilt;
+                rebuilds++;
+            }
+        });
+        logger.info("流量分位数摘要重建完成: 日期={}, 区域数={}, 耗时{}ms",
+                day, rebuilt.assignment.regionCount(), System.currentTimeMillis() - start);
+        return rebuilt;
+    }
+
+    /**
+     * 内部类：一天的摘要，布局为[区域 * 24 + 小时]，没有数据的单元格为null
+     */
+    private class State {
+        final int day;
+        final RegionIndex.Assignment assignment;
+        final QuantileSketch[] sketches;
+
+        State(int day, RegionIndex.Assignment assignment) {
+            this.day = day;
+            this.assignment = assignment;
+            this.sketches = new QuantileSketch[assignment.regionCount() * HOURS];
+        }
+
+        QuantileSketch sketch(int region, int hour) {
+            int offset = region * HOURS + hour;
+            if (sketches[offset] == null) {
+                sketches[offset] = new QuantileSketch(relativeAccuracy, maxValue);
+            }
+            return sketches[offset];
+        }
+
+        void record(int nodeId, int hour, int flow) {
+            int node = assignment.getGraph().indexOf(nodeId);
+            if (node >= 0 && hour >= 0 && hour < HOURS) {
+                sketch(assignment.regionOf(node), hour).add(flow);
+            }
+        }
+
+        /**
+         * 合并小时范围内指定区域（null为全部区域）的摘要
+         */
+        QuantileSketch merge(int fromHour, int toHour, int[] regions) {
+            QuantileSketch merged = new QuantileSketch(relativeAccuracy, maxValue);
+            int regionCount = regions != null ? regions.length : assignment.regionCount();
+            for (int i = 0; i < regionCount; i++) {
+                int region = regions != null ? regions[i] : i;
+                for (int hour = fromHour; hour <= toHour; hour++) {
+                    QuantileSketch sketch = sketches[region * HOURS + hour];
+                    if (sketch != null) {
+                        merged.merge(sketch);
+                    }
+                }
+            }
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,682 @@
+package com.example.navigation.service;
+
+import com.example.navigation.event.FlowChangedEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * 观测流量汇总服务
+ * 在内存中维护每个节点每小时（跨所有日期）的样本数、总和、最大值和固定宽度分桶直方图，
+ * 以及每天全路网的样本数、总和和最大值，并定期写入flow_rollup_hourly和flow_rollup_daily表。
+ * 启动时和每晚由并行回填任务从flow表和归档段全量计算，之后随FlowChangedEvent增量维护，
+ * 长时间范围的统计和避堵阈值直接读取汇总结果而不是原始流量
+ */
+@Service
+public class FlowRollupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlowRollupService.class);
+
+    public static final int HOURS = 24;
+    public static final int BUCKETS = 16;
+
+    private static final String DELETE_HOURLY_SQL = "DELETE FROM flow_rollup_hourly WHERE node_id = ? AND time_stamp = ?";
+    private static final String INSERT_HOURLY_SQL =
+            "INSERT INTO flow_rollup_hourly (node_id, time_stamp, sample_count, flow_sum, flow_max, histogram) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_DAILY_SQL = "DELETE FROM flow_rollup_daily WHERE day_num = ?";
+    private static final String INSERT_DAILY_SQL =
+            "INSERT INTO flow_rollup_daily (day_num, sample_count, flow_sum, flow_max) VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FlowArchiveService flowArchiveService;
+
+    @Value("${rollup.bucket-width:16}")
+    private int bucketWidth;
+
+    @Value("${rollup.min-samples:5}")
+    private int minSamples;
+
+    @Value("${rollup.backfill-parallelism:4}")
+    private int backfillParallelism;
+
+    @Value("${rollup.write-batch-size:1000}")
+    private int writeBatchSize;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // 以下字段受lock保护
+    private Rollups rollups = new Rollups();
+    private final Set<Long> dirtyHours = new HashSet<>();
+    private final Set<Integer> dirtyDays = new HashSet<>();
+    private boolean backfilling;
+    private final Set<Long> touchedHours = new HashSet<>();
+    private final Set<Integer> touchedDays = new HashSet<>();
+
+    private final Object persistLock = new Object();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean ready;
+    private volatile Map<String, Object> lastBackfill = Collections.emptyMap();
+    private ForkJoinPool backfillPool;
+
+    public FlowRollupService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                             FlowArchiveService flowArchiveService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.flowArchiveService = flowArchiveService;
+    }
+
+    @PostConstruct
+    public void init() {
+        backfillPool = new ForkJoinPool(backfillParallelism);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        backfillPool.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        backfill();
+    }
+
+    /**
+     * 定时回填（默认每天凌晨2点30分），修正增量维护中保持不变的最大值
+     */
+    @Scheduled(cron = "${rollup.backfill-cron:0 30 2 * * *}")
+    public void scheduledBackfill() {
+        backfill();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 根据观测流量变更增量更新汇总：旧值从样本中移除，新值加入
+     * 最大值只会增大，流量被改小或删除时保持原值，直到下次回填
+     */
+    @EventListener
+    public void onFlowChanged(FlowChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            for (FlowChangedEvent.FlowChange change : event.getChanges()) {
+                if (change.getTimeStamp() < 0 || change.getTimeStamp() >= HOURS) {
+                    continue;
+                }
+                if (change.getOldFlow() != null) {
+                    rollups.apply(change.getDay(), change.getTimeStamp(), change.getNodeId(), change.getOldFlow(), -1, bucketWidth);
+                }
+                if (change.getNewFlow() != null) {
+                    rollups.apply(change.getDay(), change.getTimeStamp(), change.getNodeId(), change.getNewFlow(), 1, bucketWidth);
+                }
+                long hourKey = hourKey(change.getNodeId(), change.getTimeStamp());
+                dirtyHours.add(hourKey);
+                dirtyDays.add(change.getDay());
+                if (backfilling) {
+                    touchedHours.add(hourKey);
+                    touchedDays.add(change.getDay());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 并行回填：按节点ID区间划分flow表、按日期划分归档段，在ForkJoin线程池中分别扫描汇总后合并，替换内存汇总并重写汇总表。
+     * 回填期间发生变更的(节点, 小时)和日期在替换后从flow表和归档段重新计算
+     * @return 本次回填的统计信息
+     */
+    public Map<String, Object> backfill() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("流量汇总回填任务正在执行中");
+        }
+        lock.writeLock().lock();
+        try {
+            backfilling = true;
+            touchedHours.clear();
+            touchedDays.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            long start = System.currentTimeMillis();
+            List<int[]> ranges = partitionNodeRanges();
+            List<Integer> archivedDays = new ArrayList<>(flowArchiveService.getArchivedDays());
+            Rollups rebuilt;
+            try {
+                rebuilt = backfillPool.submit(() -> {
+                    // 不用可变的单位元：并行归约时同一个单位元会被多个线程同时合并
+                    Rollups live = ranges.parallelStream()
+                            .map(this::scanRange)
+                            .reduce(Rollups::merge)
+                            .orElseGet(Rollups::new);
+                    Rollups archived = archivedDays.parallelStream()
+                            .map(this::scanArchivedDay)
+                            .reduce(Rollups::merge)
+                            .orElseGet(Rollups::new);
+                    return live.merge(archived);
+                }).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("流量汇总回填被中断", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("流量汇总回填失败: " + e.getCause().getMessage(), e.getCause());
+            }
+
+            Set<Long> hoursToRefresh;
+            Set<Integer> daysToRefresh;
+            lock.writeLock().lock();
+            try {
+                rollups = rebuilt;
+                dirtyHours.clear();
+                dirtyDays.clear();
+                hoursToRefresh = new HashSet<>(touchedHours);
+                daysToRefresh = new HashSet<>(touchedDays);
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            persistAll(rebuilt);
+            refresh(hoursToRefresh, daysToRefresh);
+            ready = true;
+
+            long elapsed = System.currentTimeMillis() - start;
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("partitions", ranges.size());
+            result.put("archivedDays", archivedDays.size());
+            result.put("nodes", rebuilt.nodes.size());
+            result.put("days", rebuilt.days.size());
+            result.put("refreshedHours", hoursToRefresh.size());
+            result.put("refreshedDays", daysToRefresh.size());
+            result.put("elapsedMs", elapsed);
+            result.put("finishedAt", System.currentTimeMillis());
+            lastBackfill = result;
+            logger.info("流量汇总回填完成: 分区数={}, 节点数={}, 天数={}, 耗时{}ms",
+                       ranges.size(), rebuilt.nodes.size(), rebuilt.days.size(), elapsed);
+            return result;
+        } finally {
+            lock.writeLock().lock();
+            try {
+                backfilling = false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            running.set(false);
+        }
+    }
+
+    /**
+     * 定期将增量变化的汇总行写入数据库
+     */
+    @Scheduled(fixedDelayString = "${rollup.flush-interval-ms:5000}")
+    public void flush() {
+        if (!ready) {
+            return;
+        }
+        List<Object[]> hourlyRows = new ArrayList<>();
+        List<Object[]> dailyRows = new ArrayList<>();
+        Set<Long> hours;
+        Set<Integer> days;
+        lock.writeLock().lock();
+        try {
+            if (backfilling || (dirtyHours.isEmpty() && dirtyDays.isEmpty())) {
+                return;
+            }
+            hours = new HashSet<>(dirtyHours);
+            days = new HashSet<>(dirtyDays);
+            dirtyHours.clear();
+            dirtyDays.clear();
+            for (long key : hours) {
+                Object[] row = hourlyRow(rollups, nodeOf(key), hourOf(key));
+                if (row != null) {
+                    hourlyRows.add(row);
+                }
+            }
+            for (int day : days) {
+                Object[] row = dailyRow(rollups, day);
+                if (row != null) {
+                    dailyRows.add(row);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            synchronized (persistLock) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.batchUpdate(DELETE_HOURLY_SQL, hours.stream()
+                            .map(key -> new Object[]{nodeOf(key), hourOf(key)})
+                            .collect(Collectors.toList()), writeBatchSize, (ps, args) -> {
+                        ps.setObject(1, args[0]);
+                        ps.setObject(2, args[1]);
+                    });
+                    insertHourly(hourlyRows);
+                    jdbcTemplate.batchUpdate(DELETE_DAILY_SQL, days.stream()
+                            .map(day -> new Object[]{day})
+                            .collect(Collectors.toList()), writeBatchSize, (ps, args) -> ps.setObject(1, args[0]));
+                    insertDaily(dailyRows);
+                });
+            }
+            logger.debug("流量汇总写入完成: 小时汇总{}行, 日汇总{}行", hourlyRows.size(), dailyRows.size());
+        } catch (RuntimeException e) {
+            // 写入失败时重新标记，下次继续写入
+            logger.error("流量汇总写入失败: {}", e.getMessage());
+            lock.writeLock().lock();
+            try {
+                dirtyHours.addAll(hours);
+                dirtyDays.addAll(days);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 获取节点(跨所有日期)每小时的流量汇总：样本数、平均值、最大值、P95
+     */
+    public List<Map<String, Object>> getNodeHourlyProfile(int nodeId) {
+        lock.readLock().lock();
+        try {
+            NodeRollup node = rollups.nodes.get(nodeId);
+            List<Map<String, Object>> profile = new ArrayList<>();
+            if (node == null) {
+                return profile;
+            }
+            for (int hour = 0; hour < HOURS; hour++) {
+                if (node.count[hour] <= 0) {
+                    continue;
+                }
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("timeStamp", hour);
+                row.put("count", node.count[hour]);
+                row.put("mean", (double) node.sum[hour] / node.count[hour]);
+                row.put("max", node.max[hour]);
+                row.put("p95", node.quantile(hour, 0.95, bucketWidth));
+                profile.add(row);
+            }
+            return profile;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取日期区间内每天的全路网流量汇总：样本数、总和、平均值、最大值
+     */
+    public List<Map<String, Object>> getDailyTotals(int startDay, int endDay) {
+        if (startDay > endDay) {
+            throw new IllegalArgumentException("起始日期不能晚于结束日期: " + startDay + " > " + endDay);
+        }
+        lock.readLock().lock();
+        try {
+            List<Map<String, Object>> totals = new ArrayList<>();
+            for (Map.Entry<Integer, DayRollup> entry : rollups.days.subMap(startDay, true, endDay, true).entrySet()) {
+                DayRollup day = entry.getValue();
+                if (day.count <= 0) {
+                    continue;
+                }
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("day", entry.getKey());
+                row.put("count", day.count);
+                row.put("sum", day.sum);
+                row.put("mean", (double) day.sum / day.count);
+                row.put("max", day.max);
+                totals.add(row);
+            }
+            return totals;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 估算节点某小时的流量分位数，样本数不足rollup.min-samples时返回null
+     */
+    public Integer getPercentile(int nodeId, int hour, double q) {
+        if (hour < 0 || hour >= HOURS) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            NodeRollup node = rollups.nodes.get(nodeId);
+            if (node == null || node.count[hour] < minSamples) {
+                return null;
+            }
+            return (int) Math.round(node.quantile(hour, q, bucketWidth));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取汇总统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("ready", ready);
+            stats.put("backfilling", backfilling);
+            stats.put("nodes", rollups.nodes.size());
+            stats.put("days", rollups.days.size());
+            stats.put("bucketWidth", bucketWidth);
+            stats.put("buckets", BUCKETS);
+            stats.put("dirtyHours", dirtyHours.size());
+            stats.put("dirtyDays", dirtyDays.size());
+            stats.put("lastBackfill", lastBackfill);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按节点ID区间划分回填分区
+     */
+    private List<int[]> partitionNodeRanges() {
+        int[] bounds = jdbcTemplate.queryForObject("SELECT MIN(node_id), MAX(node_id) FROM flow", (rs, rowNum) -> {
+            int min = rs.getInt(1);
+            return rs.wasNull() ? null : new int[]{min, rs.getInt(2)};
+        });
+        List<int[]> ranges = new ArrayList<>();
+        if (bounds == null) {
+            return ranges;
+        }
+        long span = (long) bounds[1] - bounds[0] + 1;
+        long size = Math.max(1, (span + backfillParallelism * 4L - 1) / (backfillParallelism * 4L));
+        for (long from = bounds[0]; from <= bounds[1]; from += size) {
+            ranges.add(new int[]{(int) from, (int) Math.min(bounds[1], from + size - 1)});
+        }
+        return ranges;
+    }
+
+    private Rollups scanRange(int[] range) {
+        Rollups partial = new Rollups();
+        jdbcTemplate.query("SELECT day_num, time_stamp, node_id, flow FROM flow WHERE node_id BETWEEN ? AND ?",
+                rs -> {
+                    int hour = rs.getInt(2);
+                    if (hour >= 0 && hour < HOURS) {
+                        partial.apply(rs.getInt(1), hour, rs.getInt(3), rs.getInt(4), 1, bucketWidth);
+                    }
+                }, range[0], range[1]);
+        return partial;
+    }
+
+    private Rollups scanArchivedDay(int day) {
+        Rollups partial = new Rollups();
+        flowArchiveService.scanArchivedDay(day, (archivedDay, hour, nodeId, flow) ->
+                partial.apply(archivedDay, hour, nodeId, flow, 1, bucketWidth));
+        return partial;
+    }
+
+    /**
+     * 回填期间发生变更的(节点, 小时)和日期从flow表和归档段重新计算，并标记为待写入。
+     * 归档日期中被flow表补录行覆盖的数据点以flow表为准，与回填的合并规则一致
+     */
+    void refresh(Set<Long> hours, Set<Integer> days) {
+        if (hours.isEmpty() && days.isEmpty()) {
+            return;
+        }
+        NavigableSet<Integer> archivedDays = flowArchiveService.getArchivedDays();
+        // 归档段中属于待刷新(节点, 小时)的数据点，每个归档日期只扫描一次
+        Map<Long, List<Integer>> archivedFlows = new HashMap<>();
+        if (!hours.isEmpty()) {
+            for (int archivedDay : archivedDays) {
+                flowArchiveService.scanArchivedDay(archivedDay, (day, hour, nodeId, flow) -> {
+                    long key = hourKey(nodeId, hour);
+                    if (hours.contains(key)) {
+                        archivedFlows.computeIfAbsent(key, k -> new ArrayList<>()).add(flow);
+                    }
+                });
+            }
+        }
+        for (long key : hours) {
+            int nodeId = nodeOf(key);
+            int hour = hourOf(key);
+            List<Integer> flows = new ArrayList<>(jdbcTemplate.queryForList(
+                    "SELECT flow FROM flow WHERE node_id = ? AND time_stamp = ?", Integer.class, nodeId, hour));
+            flows.addAll(archivedFlows.getOrDefault(key, Collections.emptyList()));
+            lock.writeLock().lock();
+            try {
+                NodeRollup node = rollups.nodes.computeIfAbsent(nodeId, id -> new NodeRollup());
+                node.reset(hour);
+                for (int flow : flows) {
+                    node.add(hour, flow, 1, bucketWidth);
+                }
+                dirtyHours.add(key);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        for (int day : days) {
+            DayRollup fresh = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*), COALESCE(SUM(flow), 0), COALESCE(MAX(flow), 0) FROM flow WHERE day_num = ?",
+                    (rs, rowNum) -> {
+                        DayRollup rollup = new DayRollup();
+                        rollup.count = rs.getLong(1);
+                        rollup.sum = rs.getLong(2);
+                        rollup.max = rs.getInt(3);
+                        return rollup;
+                    }, day);
+            if (archivedDays.contains(day)) {
+                flowArchiveService.scanArchivedDay(day, (archivedDay, hour, nodeId, flow) -> {
+                    fresh.count++;
+                    fresh.sum += flow;
+                    fresh.max = Math.max(fresh.max, flow);
+                });
+            }
+            lock.writeLock().lock();
+            try {
+                rollups.days.put(day, fresh);
+                dirtyDays.add(day);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中重写全部汇总表
+     */
+    private void persistAll(Rollups snapshot) {
+        List<Object[]> hourlyRows = new ArrayList<>();
+        snapshot.nodes.forEach((nodeId, node) -> {
+            for (int hour = 0; hour < HOURS; hour++) {
+                Object[] row = hourlyRow(snapshot, nodeId, hour);
+                if (row != null) {
+                    hourlyRows.add(row);
+                }
+            }
+        });
+        List<Object[]> dailyRows = new ArrayList<>();
+        for (int day : snapshot.days.keySet()) {
+            Object[] row = dailyRow(snapshot, day);
+            if (row != null) {
+                dailyRows.add(row);
+            }
+        }
+        synchronized (persistLock) {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.update("DELETE FROM flow_rollup_hourly");
+                jdbcTemplate.update("DELETE FROM flow_rollup_daily");
+                insertHourly(hourlyRows);
+                insertDaily(dailyRows);
+            });
+        }
+    }
+
+    private void insertHourly(List<Object[]> rows) {
+        jdbcTemplate.batchUpdate(INSERT_HOURLY_SQL, rows, writeBatchSize, (ps, row) -> {
+            for (int i = 0; i < row.length; i++) {
+                ps.setObject(i + 1, row[i]);
+            }
+        });
+    }
+
+    private void insertDaily(List<Object[]> rows) {
+        jdbcTemplate.batchUpdate(INSERT_DAILY_SQL, rows, writeBatchSize, (ps, row) -> {
+            for (int i = 0; i < row.length; i++) {
+                ps.setObject(i + 1, row[i]);
+            }
+        });
+    }
+
+    /**
+     * 生成小时汇总行，样本数为0时返回null（对应行只删除不插入）
+     */
+    private static Object[] hourlyRow(Rollups source, int nodeId, int hour) {
+        NodeRollup node = source.nodes.get(nodeId);
+        if (node == null || node.count[hour] <= 0) {
+            return null;
+        }
+        StringBuilder histogram = new StringBuilder();
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (bucket > 0) {
+                histogram.append(',');
+            }
+            histogram.append(node.histogram[hour * BUCKETS + bucket]);
+        }
+        return new Object[]{nodeId, hour, node.count[hour], node.sum[hour], node.max[hour], histogram.toString()};
+    }
+
+    private static Object[] dailyRow(Rollups source, int day) {
+        DayRollup rollup = source.days.get(day);
+        if (rollup == null || rollup.count <= 0) {
+            return null;
+        }
+        return new Object[]{day, rollup.count, rollup.sum, rollup.max};
+    }
+
+    static long hourKey(int nodeId, int hour) {
+        return ((long) nodeId << 8) | hour;
+    }
+
+    private static int nodeOf(long hourKey) {
+        return (int) (hourKey >> 8);
+    }
+
+    private static int hourOf(long hourKey) {
+        return (int) (hourKey & 0xFF);
+    }
+
+    /**
+     * 内部类：一组汇总（完整汇总或回填分区的部分汇总）
+     */
+    private static class Rollups {
+        final Map<Integer, NodeRollup> nodes = new HashMap<>();
+        final TreeMap<Integer, DayRollup> days = new TreeMap<>();
+
+        void apply(int day, int hour, int nodeId, int flow, int sign, int bucketWidth) {
+            nodes.computeIfAbsent(nodeId, id -> new NodeRollup()).add(hour, flow, sign, bucketWidth);
+            DayRollup rollup = days.computeIfAbsent(day, d -> new DayRollup());
+            rollup.count += sign;
+            rollup.sum += (long) sign * flow;
+            if (sign > 0) {
+                rollup.max = Math.max(rollup.max, flow);
+            }
+        }
+
+        /**
+         * 合并另一分区的汇总
+         */
+        Rollups merge(Rollups other) {
+            other.nodes.forEach((nodeId, node) -> nodes.merge(nodeId, node, NodeRollup::merge));
+            other.days.forEach((day, rollup) -> days.merge(day, rollup, (a, b) -> {
+                DayRollup merged = new DayRollup();
+                merged.count = a.count + b.count;
+                merged.sum = a.sum + b.sum;
+                merged.max = Math.max(a.max, b.max);
+                return merged;
+            }));
+            return this;
+        }
+    }
+
+    /**
+     * 内部类：单个节点24小时的汇总，直方图按[小时 * BUCKETS + 桶]排列
+     */
+    private static class NodeRollup {
+        final long[] count = new long[HOURS];
+        final long[] sum = new long[HOURS];
+        final int[] max = new int[HOURS];
+        final int[] histogram = new int[HOURS * BUCKETS];
+
+        void add(int hour, int flow, int sign, int bucketWidth) {
+            count[hour] += sign;
+            sum[hour] += (long) sign * flow;
+            histogram[hour * BUCKETS + bucketOf(flow, bucketWidth)] += sign;
+            if (sign > 0) {
+                max[hour] = Math.max(max[hour], flow);
+            }
+        }
+
+        NodeRollup merge(NodeRollup other) {
+            for (int hour = 0; hour < HOURS; hour++) {
+                count[hour] += other.count[hour];
+                sum[hour] += other.sum[hour];
+                max[hour] = Math.max(max[hour], other.max[hour]);
+            }
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other.histogram[i];
+            }
+            return this;
+        }
+
+        void reset(int hour) {
+            count[hour] = 0;
+            sum[hour] = 0;
+            max[hour] = 0;
+            Arrays.fill(histogram, hour * BUCKETS, (hour + 1) * BUCKETS, 0);
+        }
+
+        /**
+         * 按直方图估算分位数，在所在桶内线性插值；最后一个桶的上界取最大值
+         */
+        double quantile(int hour, double q, int bucketWidth) {
+            long rank = Math.max(1, (long) Math.ceil(q * count[hour]));
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                int inBucket = histogram[hour * BUCKETS + bucket];
+                if (inBucket > 0 && seen + inBucket >= rank) {
+                    double lower = (double) bucket * bucketWidth;
+                    double upper = bucket == BUCKETS - 1 ? max[hour] : Math.min((bucket + 1.0) * bucketWidth, max[hour]);
+                    upper = Math.max(lower, upper);
+                    return lower + (upper - lower) * (rank - seen) / inBucket;
+                }
+                seen += inBucket;
+            }
+            return max[hour];
+        }
+
+        private static int bucketOf(int flow, int bucketWidth) {
+            return flow <= 0 ? 0 : Math.min(flow / bucketWidth, BUCKETS - 1);
+        }
+    }
+
+    /**
+     * 内部类：单日全路网汇总
+     */
+    private static class DayRollup {
+        long count;
+        long sum;
+        int max;
+    }
+}
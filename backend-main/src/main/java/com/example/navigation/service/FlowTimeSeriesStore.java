@@ -0,0 +1,452 @@
+package com.example.navigation.service;
+
+import com.example.navigation.event.FlowChangedEvent;
+import com.example.navigation.event.FlowChangedEvent.FlowChange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 列式车流量时间序列存储
+ * 启动时从flow表、归档段和flow_forecast表批量加载，之后随FlowChangedEvent和预测物化增量更新。
+ * 每天的数据按[小时][节点下标]打包为两个int数组（观测层和预测层），
+ * 节点ID到下标的映射全局共享，按节点、按小时、按天的查询都不再访问数据库。
+ * 全量加载在旁路构建新的数据集后一次性发布，不加锁的读取方只会看到加载前或加载后的完整数据
+ */
+@Service
+public class FlowTimeSeriesStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlowTimeSeriesStore.class);
+
+    public static final int HOURS = 24;
+    // 缺失值标记
+    public static final int MISSING = Integer.MIN_VALUE;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FlowArchiveService flowArchiveService;
+
+    // 当前发布的数据集，增量写入在写锁内直接修改，全量加载时整体替换
+    private volatile Columns columns = new Columns();
+    private final Object writeLock = new Object();
+    private final List<EffectiveFlowListener> listeners = new CopyOnWriteArrayList<>();
+    // 整日替换期间不逐格通知，结束后统一发出onReset
+    private boolean bulkLoading;
+    private volatile boolean ready;
+    private volatile long loadedAt;
+    private volatile long loadMillis;
+
+    public FlowTimeSeriesStore(JdbcTemplate jdbcTemplate, FlowArchiveService flowArchiveService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.flowArchiveService = flowArchiveService;
+    }
+
+    /**
+     * 应用启动完成后加载全部流量数据
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            reload();
+        } catch (Exception e) {
+            logger.error("加载列式流量存储失败，查询将回退到数据库: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 从数据库和归档段重新加载全部观测流量和预测流量，归档日期中被flow表补录行覆盖的数据点以flow表为准
+     * 新数据集在旁路构建，完成后一次性替换；加载期间读取方继续看到原有的完整数据，加载失败时原有数据保持不变
+     */
+    public void reload() {
+        synchronized (writeLock) {
+            long start = System.currentTimeMillis();
+            Columns loaded = new Columns();
+            int[] rows = new int[2];
+            jdbcTemplate.query("SELECT node_id FROM nodes ORDER BY node_id",
+                    rs -> { loaded.indexOf(rs.getInt(1)); });
+            jdbcTemplate.query("SELECT day_num, time_stamp, node_id, flow FROM flow", rs -> {
+                loaded.write(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getInt(4), false);
+                rows[0]++;
+            });
+            for (int day : flowArchiveService.getArchivedDays()) {
+                flowArchiveService.scanArchivedDay(day, (archivedDay, hour, nodeId, flow) -> {
+                    loaded.write(archivedDay, hour, nodeId, flow, false);
+                    rows[0]++;
+                });
+            }
+            jdbcTemplate.query("SELECT day_num, time_stamp, node_id, flow FROM flow_forecast", rs -> {
+                loaded.write(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getInt(4), true);
+                rows[1]++;
+            });
+
+            columns = loaded;
+            loadedAt = System.currentTimeMillis();
+            loadMillis = loadedAt - start;
+            ready = true;
+            listeners.forEach(EffectiveFlowListener::onReset);
+            logger.info("列式流量存储加载完成: 观测{}行, 预测{}行, 节点数={}, 天数={}, 占用约{}KB, 耗时{}ms",
+                       rows[0], rows[1], loaded.nodeCount, loaded.days.size(), loaded.estimateBytes() / 1024, loadMillis);
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 注册有效流量变更监听器，回调在写锁内同步执行
+     */
+    public void addListener(EffectiveFlowListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 在写锁内执行操作，期间不会有流量写入和有效流量变化通知，用于监听者与存储整体对齐
+     */
+    public void runExclusive(Runnable action) {
+        synchronized (writeLock) {
+            action.run();
+        }
+    }
+
+    /**
+     * 在写锁内遍历指定日期的有效流量，遍历期间不会有并发写入，
+     * 结束后在同一把锁内执行onComplete，供增量聚合在重建时原子地替换自身状态
+     */
+    public void scanConsistent(int day, FlowVisitor visitor, Runnable onComplete) {
+        synchronized (writeLock) {
+            forEachEffective(day, visitor);
+            onComplete.run();
+        }
+    }
+
+    /**
+     * 观测流量变更提交后增量更新观测层
+     */
+    @EventListener
+    public void onFlowChanged(FlowChangedEvent event) {
+        synchronized (writeLock) {
+            for (FlowChange change : event.getChanges()) {
+                putLocked(change.getDay(), change.getTimeStamp(), change.getNodeId(),
+                          change.getNewFlow() != null ? change.getNewFlow() : MISSING, false);
+            }
+        }
+    }
+
+    /**
+     * 用一批新的预测值替换指定日期的整个预测层
+     * @param rows 每行为{小时, 节点ID, 流量}
+     */
+    public void replacePredictedDay(int day, List<int[]> rows) {
+        synchronized (writeLock) {
+            bulkLoading = true;
+            try {
+                DayColumns dayColumns = columns.days.get(day);
+                if (dayColumns != null) {
+                    Arrays.fill(dayColumns.predicted, MISSING);
+                }
+                for (int[] row : rows) {
+                    putLocked(day, row[0], row[1], row[2], true);
+                }
+            } finally {
+                bulkLoading = false;
+            }
+            listeners.forEach(EffectiveFlowListener::onReset);
+        }
+    }
+
+    /**
+     * 获取观测流量，缺失时返回null
+     */
+    public Integer getObserved(int nodeId, int day, int hour) {
+        return valueOrNull(columns.cell(nodeId, day, hour, false));
+    }
+
+    /**
+     * 获取预测流量，缺失时返回null
+     */
+    public Integer getPredicted(int nodeId, int day, int hour) {
+        return valueOrNull(columns.cell(nodeId, day, hour, true));
+    }
+
+    /**
+     * 获取有效流量（有观测值时使用观测值，否则使用预测值），都缺失时返回null
+     */
+    public Integer getEffectiveFlow(int nodeId, int day, int hour) {
+        return valueOrNull(columns.effectiveCell(nodeId, day, hour));
+    }
+
+    /**
+     * 获取单个节点一天24小时的有效流量，缺失的小时为MISSING
+     */
+    public int[] getNodeSeries(int nodeId, int day) {
+        int[] series = new int[HOURS];
+        Arrays.fill(series, MISSING);
+        Columns current = columns;
+        Integer index = current.nodeIndex.get(nodeId);
+        DayColumns dayColumns = current.days.get(day);
+        if (index == null || dayColumns == null || index >= dayColumns.capacity) {
+            return series;
+        }
+        for (int hour = 0; hour < HOURS; hour++) {
+            series[hour] = dayColumns.effective(hour * dayColumns.capacity + index);
+        }
+        return series;
+    }
+
+    /**
+     * 遍历指定日期某一小时所有节点的有效流量
+     */
+    public void forEachEffective(int day, int hour, FlowVisitor visitor) {
+        Columns current = columns;
+        DayColumns dayColumns = current.days.get(day);
+        if (dayColumns == null || hour < 0 || hour >= HOURS) {
+            return;
+        }
+        visitHour(current, dayColumns, hour, visitor);
+    }
+
+    /**
+     * 遍历指定日期所有(节点, 小时)的有效流量
+     */
+    public void forEachEffective(int day, FlowVisitor visitor) {
+        Columns current = columns;
+        DayColumns dayColumns = current.days.get(day);
+        if (dayColumns == null) {
+            return;
+        }
+        for (int hour = 0; hour < HOURS; hour++) {
+            visitHour(current, dayColumns, hour, visitor);
+        }
+    }
+
+    /**
+     * 遍历指定日期所有(节点, 小时)的观测流量，该日期不在存储中时返回false
+     */
+    public boolean forEachObserved(int day, FlowVisitor visitor) {
+        Columns current = columns;
+        DayColumns dayColumns = current.days.get(day);
+        if (dayColumns == null) {
+            return false;
+        }
+        int[] ids = current.nodeIds;
+        int count = Math.min(Math.min(current.nodeCount, dayColumns.capacity), ids.length);
+        for (int hour = 0; hour < HOURS; hour++) {
+            int base = hour * dayColumns.capacity;
+            for (int index = 0; index < count; index++) {
+                int flow = dayColumns.observed[base + index];
+                if (flow != MISSING) {
+                    visitor.visit(ids[index], hour, flow);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 获取存储统计信息（含内存占用估算）
+     */
+    public Map<String, Object> getStatistics() {
+        Columns current = columns;
+        long observedCells = 0;
+        long predictedCells = 0;
+        for (DayColumns dayColumns : current.days.values()) {
+            observedCells += countPresent(dayColumns.observed);
+            predictedCells += countPresent(dayColumns.predicted);
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", ready);
+        stats.put("nodes", current.nodeCount);
+        stats.put("days", new TreeSet<>(current.days.keySet()));
+        stats.put("observedCells", observedCells);
+        stats.put("predictedCells", predictedCells);
+        stats.put("memoryBytes", current.estimateBytes());
+        stats.put("loadedAt", loadedAt);
+        stats.put("loadMillis", loadMillis);
+        return stats;
+    }
+
+    private static void visitHour(Columns current, DayColumns dayColumns, int hour, FlowVisitor visitor) {
+        int[] ids = current.nodeIds;
+        int count = Math.min(Math.min(current.nodeCount, dayColumns.capacity), ids.length);
+        int base = hour * dayColumns.capacity;
+        for (int index = 0; index < count; index++) {
+            int flow = dayColumns.effective(base + index);
+            if (flow != MISSING) {
+                visitor.visit(ids[index], hour, flow);
+            }
+        }
+    }
+
+    /**
+     * 在写锁内写入当前数据集的一个单元格；有效流量变化时通知监听器
+     */
+    private void putLocked(int day, int hour, int nodeId, int flow, boolean predicted) {
+        if (hour < 0 || hour >= HOURS) {
+            return;
+        }
+        Columns current = columns;
+        boolean notify = !bulkLoading && !listeners.isEmpty();
+        int before = notify ? current.effectiveCell(nodeId, day, hour) : MISSING;
+        current.write(day, hour, nodeId, flow, predicted);
+        if (notify) {
+            int after = current.effectiveCell(nodeId, day, hour);
+            if (after != before) {
+                for (EffectiveFlowListener listener : listeners) {
+                    listener.onEffectiveFlowChanged(day, hour, nodeId, before, after);
+                }
+            }
+        }
+    }
+
+    private static long countPresent(int[] values) {
+        long count = 0;
+        for (int value : values) {
+            if (value != MISSING) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Integer valueOrNull(int value) {
+        return value == MISSING ? null : value;
+    }
+
+    /**
+     * 有效流量遍历回调
+     */
+    @FunctionalInterface
+    public interface FlowVisitor {
+        void visit(int nodeId, int hour, int flow);
+    }
+
+    /**
+     * 有效流量变更监听器
+     */
+    public interface EffectiveFlowListener {
+        /**
+         * 单个(日期, 小时, 节点)的有效流量发生变化，缺失用MISSING表示
+         */
+        void onEffectiveFlowChanged(int day, int hour, int nodeId, int oldFlow, int newFlow);
+
+        /**
+         * 全量加载或整日替换后调用，监听器应从存储重建自身状态
+         */
+        void onReset();
+    }
+
+    /**
+     * 内部类：一个完整的数据集，包括节点ID与列下标的双向映射和每天的列数据
+     * 只在写锁内修改；读取方先取一次引用，再只从该数据集读取
+     */
+    private static class Columns {
+        // 节点ID -> 列下标，以及下标 -> 节点ID，只追加
+        final Map<Integer, Integer> nodeIndex = new ConcurrentHashMap<>();
+        volatile int[] nodeIds = new int[INITIAL_CAPACITY];
+        volatile int nodeCount;
+        final ConcurrentHashMap<Integer, DayColumns> days = new ConcurrentHashMap<>();
+
+        int cell(int nodeId, int day, int hour, boolean predicted) {
+            Integer index = nodeIndex.get(nodeId);
+            DayColumns dayColumns = days.get(day);
+            if (index == null || dayColumns == null || hour < 0 || hour >= HOURS || index >= dayColumns.capacity) {
+                return MISSING;
+            }
+            return (predicted ? dayColumns.predicted : dayColumns.observed)[hour * dayColumns.capacity + index];
+        }
+
+        int effectiveCell(int nodeId, int day, int hour) {
+            int observed = cell(nodeId, day, hour, false);
+            return observed != MISSING ? observed : cell(nodeId, day, hour, true);
+        }
+
+        /**
+         * 写入一个单元格，必要时分配新节点下标并扩容该日的列数组
+         */
+        void write(int day, int hour, int nodeId, int flow, boolean predicted) {
+            if (hour < 0 || hour >= HOURS) {
+                return;
+            }
+            int index = indexOf(nodeId);
+            DayColumns dayColumns = days.get(day);
+            if (dayColumns == null) {
+                if (flow == MISSING) {
+                    return;
+                }
+                dayColumns = new DayColumns(nodeIds.length);
+                days.put(day, dayColumns);
+            } else if (index >= dayColumns.capacity) {
+                dayColumns = dayColumns.grow(nodeIds.length);
+                days.put(day, dayColumns);
+            }
+            (predicted ? dayColumns.predicted : dayColumns.observed)[hour * dayColumns.capacity + index] = flow;
+        }
+
+        int indexOf(int nodeId) {
+            Integer index = nodeIndex.get(nodeId);
+            if (index != null) {
+                return index;
+            }
+            int next = nodeCount;
+            if (next == nodeIds.length) {
+                nodeIds = Arrays.copyOf(nodeIds, nodeIds.length * 2);
+            }
+            nodeIds[next] = nodeId;
+            nodeIndex.put(nodeId, next);
+            nodeCount = next + 1;
+            return next;
+        }
+
+        /**
+         * 估算占用内存：每天两层int数组，加上节点下标数组和映射表（每个映射条目按约48字节估算）
+         */
+        long estimateBytes() {
+            long bytes = 16L + 4L * nodeIds.length + 48L * nodeIndex.size();
+            for (DayColumns dayColumns : days.values()) {
+                bytes += 2 * (16L + 4L * dayColumns.observed.length);
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * 内部类：一天的列数据，布局为[小时 * capacity + 节点下标]
+     */
+    private static class DayColumns {
+        final int capacity;
+        final int[] observed;
+        final int[] predicted;
+
+        DayColumns(int capacity) {
+            this.capacity = capacity;
+            this.observed = new int[HOURS * capacity];
+            this.predicted = new int[HOURS * capacity];
+            Arrays.fill(observed, MISSING);
+            Arrays.fill(predicted, MISSING);
+        }
+
+        int effective(int offset) {
+            int value = observed[offset];
+            return value != MISSING ? value : predicted[offset];
+        }
+
+        DayColumns grow(int newCapacity) {
+            DayColumns grown = new DayColumns(newCapacity);
+            for (int hour = 0; hour < HOURS; hour++) {
+                System.arraycopy(observed, hour * capacity, grown.observed, hour * newCapacity, capacity);
+                System.arraycopy(predicted, hour * capacity, grown.predicted, hour * newCapacity, capacity);
+            }
+            return grown;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.navigation.service;
+
+import com.example.navigation.repository.NodeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * 预测流量物化任务
+ * 每晚为接下来几天的所有节点、所有小时批量调用模型预测，
+ * 并通过JDBC批量写入flow_forecast表，供地图、仪表盘和路径规划与观测流量一起查询
+ */
+@Component
+public class ForecastMaterializationJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(ForecastMaterializationJob.class);
+
+    private static final String DELETE_SQL = "DELETE FROM flow_forecast WHERE day_num = ?";
+    private static final String INSERT_SQL =
+            "INSERT INTO flow_forecast (day_num, time_stamp, node_id, flow, model_version) VALUES (?, ?, ?, ?, ?)";
+
+    private final NodeRepository nodeRepository;
+    private final PythonModelService pythonModelService;
+    private final ModelRegistry modelRegistry;
+    private final TrafficClock trafficClock;
+    private final FlowTimeSeriesStore flowTimeSeriesStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${forecast.job.days-ahead:1}")
+    private int daysAhead;
+
+    @Value("${forecast.job.predict-batch-size:500}")
+    private int predictBatchSize;
+
+    @Value("${forecast.job.write-batch-size:1000}")
+    private int writeBatchSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Map<String, Object> lastRun = Collections.emptyMap();
+
+    public ForecastMaterializationJob(NodeRepository nodeRepository,
+                                      PythonModelService pythonModelService,
+                                      ModelRegistry modelRegistry,
+                                      TrafficClock trafficClock,
+                                      FlowTimeSeriesStore flowTimeSeriesStore,
+                                      JdbcTemplate jdbcTemplate,
+                                      TransactionTemplate transactionTemplate) {
+        this.nodeRepository = nodeRepository;
+        this.pythonModelService = pythonModelService;
+        this.modelRegistry = modelRegistry;
+        this.trafficClock = trafficClock;
+        this.flowTimeSeriesStore = flowTimeSeriesStore;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * 定时执行（默认每天凌晨2点）
+     */
+    @Scheduled(cron = "${forecast.job.cron:0 0 2 * * *}")
+    public void scheduledRun() {
+        materialize();
+    }
+
+    /**
+     * 物化接下来daysAhead天的预测流量
+     * @return 本次执行的统计信息
+     */
+    public Map<String, Object> materialize() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("预测物化任务正在执行中");
+        }
+        try {
+            long start = System.currentTimeMillis();
+            List<Integer> nodeIds = nodeRepository.findAllNodeIds().stream()
+                    .sorted()
+                    .collect(Collectors.toList());
+            String modelVersion = modelRegistry.getActiveVersion();
+            logger.info("开始物化预测流量: 节点数={}, 天数={}, 模型版本={}", nodeIds.size(), daysAhead, modelVersion);
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            List<Integer> materializedDays = new ArrayList<>();
+            List<Integer> failedDays = new ArrayList<>();
+            int rows = 0;
+            for (int offset = 1; offset <= daysAhead; offset++) {
+                int day = trafficClock.getCurrentDay() + offset;
+                try {
+                    rows += materializeDay(day, nodeIds, modelVersion);
+                    materializedDays.add(day);
+                } catch (IOException | IllegalStateException e) {
+                    // 模型不可用时保留该日已有的预测，不写入默认值
+                    logger.error("物化第{}天预测流量失败: {}", day, e.getMessage());
+                    failedDays.add(day);
+                }
+            }
+
+            long elapsed = System.currentTimeMillis() - start;
+            result.put("modelVersion", modelVersion);
+            result.put("nodes", nodeIds.size());
+            result.put("materializedDays", materializedDays);
+            result.put("failedDays", failedDays);
+            result.put("rows", rows);
+            result.put("elapsedMs", elapsed);
+            result.put("finishedAt", System.currentTimeMillis());
+            lastRun = result;
+
+            logger.info("预测流量物化完成: 写入{}行, 耗时{}ms, 失败日期={}", rows, elapsed, failedDays);
+            return result;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    public Map<String, Object> getLastRun() {
+        return lastRun;
+    }
+
+    /**
+     * 先完成一天所有小时的预测，再在一个事务中替换该日的预测数据
+     */
+    private int materializeDay(int day, List<Integer> nodeIds, String modelVersion) throws IOException {
+        List<Object[]> batchArgs = new ArrayList<>(nodeIds.size() * 24);
+        for (int hour = 0; hour < 24; hour++) {
+            for (int from = 0; from < nodeIds.size(); from += predictBatchSize) {
+                List<Integer> chunk = nodeIds.subList(from, Math.min(from + predictBatchSize, nodeIds.size()));
+                Map<Integer, Double> volumes = pythonModelService.predictVolumesBatch(chunk, hour, null);
+                for (Integer nodeId : chunk) {
+                    Double volume = volumes.get(nodeId);
+                    if (volume != null) {
+                        batchArgs.add(new Object[]{day, hour, nodeId, (int) Math.round(volume), modelVersion});
+                    }
+                }
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(DELETE_SQL, day);
+            for (int from = 0; from < batchArgs.size(); from += writeBatchSize) {
+                jdbcTemplate.batchUpdate(INSERT_SQL, batchArgs.subList(from, Math.min(from + writeBatchSize, batchArgs.size())));
+            }
+        });
+        flowTimeSeriesStore.replacePredictedDay(day, batchArgs.stream()
+                .map(args -> new int[]{(Integer) args[1], (Integer) args[2], (Integer) args[3]})
+                .collect(Collectors.toList()));
+        logger.debug("第{}天预测流量写入完成: {}行", day, batchArgs.size());
+        return batchArgs.size();
+    }
+}
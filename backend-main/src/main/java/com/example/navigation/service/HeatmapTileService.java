@@ -0,0 +1,384 @@
+package com.example.navigation.service;
+
+import com.example.navigation.event.NodesChangedEvent;
+import com.example.navigation.model.dto.map.HeatmapResponse;
+import com.example.navigation.model.dto.map.HeatmapTileResponse;
+import com.example.navigation.model.projection.CombinedFlowView;
+import com.example.navigation.model.projection.NodeCoordinateView;
+import com.example.navigation.repository.FlowForecastRepository;
+import com.example.navigation.repository.NodeRepository;
+import com.example.navigation.util.TileMath;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 热力图瓦片金字塔服务
+ * 将当前日期、当前小时各节点的归一化流量强度聚合到四叉树网格：
+ * 每个缩放级别（默认8-18级）的每个瓦片划分为cellsPerTile x cellsPerTile个网格单元，
+ * 单元格记录强度总和、节点数和坐标总和（用于计算加权中心）。
+ * 有效流量变化时沿节点所在的各级单元格增量更新，每次更新代价为O(级别数)
+ */
+@Service
+public class HeatmapTileService implements FlowTimeSeriesStore.EffectiveFlowListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeatmapTileService.class);
+
+    private final NodeRepository nodeRepository;
+    private final FlowForecastRepository flowForecastRepository;
+    private final FlowTimeSeriesStore flowTimeSeriesStore;
+    private final TrafficClock trafficClock;
+
+    @Value("${map.heatmap.min-zoom:8}")
+    private int minZoom;
+
+    @Value("${map.heatmap.max-zoom:18}")
+    private int maxZoom;
+
+    @Value("${map.heatmap.cells-per-tile:64}")
+    private int cellsPerTile;
+
+    @Value("${map.heatmap.max-points-per-tile:512}")
+    private int maxPointsPerTile;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // 以下状态在lock写锁内修改
+    private Map<Integer, NodeEntry> nodes = new HashMap<>();
+    private List<Map<Long, Map<Long, Cell>>> levels = new ArrayList<>();
+    private volatile int builtDay = Integer.MIN_VALUE;
+    private volatile int builtHour = Integer.MIN_VALUE;
+    private volatile long builtAt;
+    private volatile boolean dirty = true;
+
+    private int cellBits;
+    private final LongAdder incrementalUpdates = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    public HeatmapTileService(NodeRepository nodeRepository,
+                              FlowForecastRepository flowForecastRepository,
+                              FlowTimeSeriesStore flowTimeSeriesStore,
+                              TrafficClock trafficClock) {
+        this.nodeRepository = nodeRepository;
+        this.flowForecastRepository = flowForecastRepository;
+        this.flowTimeSeriesStore = flowTimeSeriesStore;
+        this.trafficClock = trafficClock;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (Integer.bitCount(cellsPerTile) != 1) {
+            throw new IllegalStateException("map.heatmap.cells-per-tile必须是2的幂: " + cellsPerTile);
+        }
+        cellBits = Integer.numberOfTrailingZeros(cellsPerTile);
+        flowTimeSeriesStore.addListener(this);
+    }
+
+    /**
+     * 获取一个热力图瓦片
+     * 缩放级别超出金字塔范围时使用最近的层级；单元格数超过上限时逐级合并为更粗的网格
+     */
+    public HeatmapTileResponse getTile(int z, int x, int y) {
+        if (!TileMath.isValidTile(z, x, y)) {
+            throw new IllegalArgumentException("无效的瓦片坐标: " + z + "/" + x + "/" + y);
+        }
+        ensureFresh();
+
+        int level = Math.max(minZoom, Math.min(maxZoom, z));
+        lock.readLock().lock();
+        try {
+            Map<Long, Map<Long, Cell>> tiles = levels.get(level - minZoom);
+            // 将请求瓦片换算为源层级的全局单元格坐标范围[min, max]
+            long cellMinX, cellMaxX, cellMinY, cellMaxY;
+            if (z >= level) {
+                int d = z - level;
+                cellMinX = ((long) x << cellBits) >> d;
+                cellMaxX = ((((long) x + 1) << cellBits) - 1) >> d;
+                cellMinY = ((long) y << cellBits) >> d;
+                cellMaxY = ((((long) y + 1) << cellBits) - 1) >> d;
+            } else {
+                int d = level - z + cellBits;
+                cellMinX = (long) x << d;
+                cellMaxX = (((long) x + 1) << d) - 1;
+                cellMinY = (long) y << d;
+                cellMaxY = (((long) y + 1) << d) - 1;
+            }
+
+            List<long[]> coords = new ArrayList<>();
+            List<Cell> cells = new ArrayList<>();
+            long tileMinX = cellMinX >> cellBits, tileMaxX = cellMaxX >> cellBits;
+            long tileMinY = cellMinY >> cellBits, tileMaxY = cellMaxY >> cellBits;
+            if ((tileMaxX - tileMinX + 1) * (tileMaxY - tileMinY + 1) <= tiles.size()) {
+                for (long tx = tileMinX; tx <= tileMaxX; tx++) {
+                    for (long ty = tileMinY; ty <= tileMaxY; ty++) {
+                        collect(tiles.get(packKey(tx, ty)), cellMinX, cellMaxX, cellMinY, cellMaxY, coords, cells);
+                    }
+                }
+            } else {
+                // 低缩放级别覆盖大量瓦片时只遍历有数据的瓦片
+                for (Map.Entry<Long, Map<Long, Cell>> tile : tiles.entrySet()) {
+                    long tx = tile.getKey() >> 32, ty = (int) (long) tile.getKey();
+                    if (tx >= tileMinX && tx <= tileMaxX && ty >= tileMinY && ty <= tileMaxY) {
+                        collect(tile.getValue(), cellMinX, cellMaxX, cellMinY, cellMaxY, coords, cells);
+                    }
+                }
+            }
+
+            // 输出网格：不超过cellsPerTile x cellsPerTile，点数超过上限时逐级合并，最多合并为单个单元格，因此无需截断
+            int shift = z < level ? level - z : 0;
+            Map<Long, Cell> merged = mergeCells(coords, cells, shift);
+            while (merged.size() > maxPointsPerTile && merged.size() > 1) {
+                shift++;
+                merged = mergeCells(coords, cells, shift);
+            }
+
+            List<HeatmapResponse.HeatmapPoint> points = new ArrayList<>(merged.size());
+            for (Cell cell : merged.values()) {
+                points.add(new HeatmapResponse.HeatmapPoint(cell.lat / cell.count, cell.lng / cell.count,
+                        Math.min(1.0, cell.intensity / cell.count)));
+            }
+            return new HeatmapTileResponse(true, z, x, y, level, points);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onEffectiveFlowChanged(int day, int hour, int nodeId, int oldFlow, int newFlow) {
+        if (dirty || day != builtDay || hour != builtHour) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            NodeEntry entry = nodes.get(nodeId);
+            if (entry == null) {
+                // 新节点的坐标未加载，下次请求时重建
+                dirty = true;
+                return;
+            }
+            removeContribution(entry);
+            entry.intensity = newFlow == FlowTimeSeriesStore.MISSING ? Double.NaN : MapService.normalizeIntensity(newFlow);
+            addContribution(entry);
+            incrementalUpdates.increment();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onReset() {
+        dirty = true;
+    }
+
+    /**
+     * 标记需要重建（节点坐标变更等）
+     */
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * 节点变更后标记金字塔需要重建
+     */
+    @EventListener
+    public void onNodesChanged(NodesChangedEvent event) {
+        invalidate();
+    }
+
+    /**
+     * 从头构建金字塔
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        int day = trafficClock.getCurrentDay();
+        int hour = trafficClock.getCurrentHour();
+
+        Map<Integer, NodeEntry> entries = new HashMap<>();
+        for (NodeCoordinateView node : nodeRepository.findAllCoordinates()) {
+            entries.put(node.nodeId(), new NodeEntry(node.latitude(), node.longitude()));
+        }
+
+        Runnable install = () -> {
+            lock.writeLock().lock();
+            try {
+                nodes = entries;
+                levels = new ArrayList<>();
+                for (int z = minZoom; z <= maxZoom; z++) {
+                    levels.add(new HashMap<>());
+                }
+                for (NodeEntry entry : entries.values()) {
+                    addContribution(entry);
+                }
+                builtDay = day;
+                builtHour = hour;
+                builtAt = System.currentTimeMillis();
+                dirty = false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        };
+
+        if (flowTimeSeriesStore.isReady()) {
+            // 在列式存储写锁内读取并安装，避免与增量更新交错
+            flowTimeSeriesStore.scanConsistent(day, (nodeId, flowHour, flow) -> {
+                NodeEntry entry = flowHour == hour ? entries.get(nodeId) : null;
+                if (entry != null) {
+                    entry.intensity = MapService.normalizeIntensity(flow);
+                }
+            }, install);
+        } else {
+            for (CombinedFlowView flow : flowForecastRepository.findCombinedByDay(day)) {
+                NodeEntry entry = entries.get(flow.getNodeId());
+                if (entry != null && flow.getTimeStamp() == hour && flow.getEffectiveFlow() != null) {
+                    entry.intensity = MapService.normalizeIntensity(flow.getEffectiveFlow());
+                }
+            }
+            install.run();
+        }
+        rebuilds.increment();
+        logger.info("热力图瓦片金字塔构建完成: 日期={}, 小时={}, 节点数={}, 层级={}-{}, 耗时{}ms",
+                   day, hour, entries.size(), minZoom, maxZoom, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 获取金字塔统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("minZoom", minZoom);
+            stats.put("maxZoom", maxZoom);
+            stats.put("cellsPerTile", cellsPerTile);
+            stats.put("maxPointsPerTile", maxPointsPerTile);
+            stats.put("nodes", nodes.size());
+            stats.put("day", builtDay);
+            stats.put("hour", builtHour);
+            stats.put("dirty", dirty);
+            Map<Integer, Map<String, Integer>> perLevel = new LinkedHashMap<>();
+            for (int i = 0; i < levels.size(); i++) {
+                int cellCount = levels.get(i).values().stream().mapToInt(Map::size).sum();
+                perLevel.put(minZoom + i, Map.of("tiles", levels.get(i).size(), "cells", cellCount));
+            }
+            stats.put("levels", perLevel);
+            stats.put("incrementalUpdates", incrementalUpdates.sum());
+            stats.put("rebuilds", rebuilds.sum());
+            stats.put("builtAt", builtAt);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 日期、小时变化或被标记为过期时重建
+     */
+    private void ensureFresh() {
+        if (dirty || builtDay != trafficClock.getCurrentDay() || builtHour != trafficClock.getCurrentHour()) {
+            synchronized (this) {
+                if (dirty || builtDay != trafficClock.getCurrentDay() || builtHour != trafficClock.getCurrentHour()) {
+                    rebuild();
+                }
+            }
+        }
+    }
+
+    private void collect(Map<Long, Cell> tile, long minX, long maxX, long minY, long maxY,
+                         List<long[]> coords, List<Cell> cells) {
+        if (tile == null) {
+            return;
+        }
+        for (Map.Entry<Long, Cell> e : tile.entrySet()) {
+            long cx = e.getKey() >> 32, cy = (int) (long) e.getKey();
+            if (cx >= minX && cx <= maxX && cy >= minY && cy <= maxY) {
+                coords.add(new long[]{cx, cy});
+                cells.add(e.getValue());
+            }
+        }
+    }
+
+    private static Map<Long, Cell> mergeCells(List<long[]> coords, List<Cell> cells, int shift) {
+        Map<Long, Cell> merged = new HashMap<>();
+        for (int i = 0; i < cells.size(); i++) {
+            Cell source = cells.get(i);
+            Cell target = merged.computeIfAbsent(packKey(coords.get(i)[0] >> shift, coords.get(i)[1] >> shift), k -> new Cell());
+            target.intensity += source.intensity;
+            target.lat += source.lat;
+            target.lng += source.lng;
+            target.count += source.count;
+        }
+        return merged;
+    }
+
+    private void addContribution(NodeEntry entry) {
+        updateCells(entry, 1);
+    }
+
+    private void removeContribution(NodeEntry entry) {
+        updateCells(entry, -1);
+    }
+
+    /**
+     * 沿节点所在的各级单元格加上或减去该节点的贡献
+     */
+    private void updateCells(NodeEntry entry, int sign) {
+        if (Double.isNaN(entry.intensity)) {
+            return;
+        }
+        long cellX = (long) (TileMath.lngToPixelX(entry.lng, maxZoom) / TileMath.TILE_SIZE * cellsPerTile);
+        long cellY = (long) (TileMath.latToPixelY(entry.lat, maxZoom) / TileMath.TILE_SIZE * cellsPerTile);
+        for (int z = maxZoom; z >= minZoom; z--) {
+            int d = maxZoom - z;
+            long cx = cellX >> d, cy = cellY >> d;
+            Map<Long, Map<Long, Cell>> tiles = levels.get(z - minZoom);
+            long tileKey = packKey(cx >> cellBits, cy >> cellBits);
+            Map<Long, Cell> tile = tiles.computeIfAbsent(tileKey, k -> new HashMap<>());
+            long cellKey = packKey(cx, cy);
+            Cell cell = tile.computeIfAbsent(cellKey, k -> new Cell());
+            cell.intensity += sign * entry.intensity;
+            cell.lat += sign * entry.lat;
+            cell.lng += sign * entry.lng;
+            cell.count += sign;
+            if (cell.count <= 0) {
+                tile.remove(cellKey);
+                if (tile.isEmpty()) {
+                    tiles.remove(tileKey);
+                }
+            }
+        }
+    }
+
+    private static long packKey(long x, long y) {
+        return (x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 内部类：节点坐标及当前贡献的强度（NaN表示无数据）
+     */
+    private static class NodeEntry {
+        final double lat;
+        final double lng;
+        double intensity = Double.NaN;
+
+        NodeEntry(double lat, double lng) {
+            this.lat = lat;
+            this.lng = lng;
+        }
+    }
+
+    /**
+     * 内部类：网格单元聚合值
+     */
+    private static class Cell {
+        double intensity;
+        double lat;
+        double lng;
+        int count;
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.navigation.service;
+
+import com.example.navigation.event.NodesChangedEvent;
+import com.example.navigation.model.dto.map.HeatmapTimelineResponse;
+import com.example.navigation.model.projection.CombinedFlowView;
+import com.example.navigation.repository.FlowForecastRepository;
+import com.example.navigation.util.TileMath;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 热力图24小时回放服务
+ * 一次遍历某日全部有效流量，按zoom层级的像素网格聚合为网格×小时的平均强度矩阵，
+ * 再编码为0点的基准帧加23个只含变化网格的增量帧（强度按精度量化后比较，微小波动不产生变化）。
+ * 结果按日期缓存，该日期的有效流量变化或节点变更后失效，下次请求时重新计算
+ */
+@Service
+public class HeatmapTimelineService implements FlowTimeSeriesStore.EffectiveFlowListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeatmapTimelineService.class);
+
+    private static final int HOURS = 24;
+
+    private final FlowTimeSeriesStore flowTimeSeriesStore;
+    private final FlowForecastRepository flowForecastRepository;
+    private final RoadGraph roadGraph;
+
+    @Value("${map.timeline.zoom:12}")
+    private int zoom;
+
+    @Value("${map.cluster.radius-px:60}")
+    private int cellPx;
+
+    @Value("${map.timeline.precision:0.01}")
+    private double precision;
+
+    @Value("${map.timeline.cache-days:7}")
+    private int cacheDays;
+
+    // 按访问顺序淘汰的LRU，键为日期
+    private final LinkedHashMap<Integer, HeatmapTimelineResponse> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, HeatmapTimelineResponse> eldest) {
+            return size() > cacheDays;
+        }
+    };
+    // 每次失效递增，计算期间发生的失效会使计算结果不进入缓存
+    private final AtomicLong version = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder encodedEntries = new LongAdder();
+    private final LongAdder fullFrameEntries = new LongAdder();
+
+    public HeatmapTimelineService(FlowTimeSeriesStore flowTimeSeriesStore,
+                                  FlowForecastRepository flowForecastRepository,
+                                  RoadGraph roadGraph) {
+        this.flowTimeSeriesStore = flowTimeSeriesStore;
+        this.flowForecastRepository = flowForecastRepository;
+        this.roadGraph = roadGraph;
+    }
+
+    @PostConstruct
+    public void registerListener() {
+        flowTimeSeriesStore.addListener(this);
+    }
+
+    @Override
+    public void onEffectiveFlowChanged(int day, int hour, int nodeId, int oldFlow, int newFlow) {
+        version.incrementAndGet();
+        synchronized (cache) {
+            cache.remove(day);
+        }
+    }
+
+    @Override
+    public void onReset() {
+        invalidateAll();
+    }
+
+    @EventListener
+    public void onNodesChanged(NodesChangedEvent event) {
+        invalidateAll();
+    }
+
+    /**
+     * 获取某日的回放帧，命中缓存时直接返回
+     */
+    public HeatmapTimelineResponse getTimeline(int day) {
+        HeatmapTimelineResponse cached;
+        synchronized (cache) {
+            cached = cache.get(day);
+        }
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        long startVersion = version.get();
+        HeatmapTimelineResponse timeline = build(day);
+        if (version.get() == startVersion) {
+            synchronized (cache) {
+                cache.put(day, timeline);
+            }
+        }
+        return timeline;
+    }
+
+    /**
+     * 获取统计信息，compressionRatio为增量编码后的条目数与24个完整帧条目数之比
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (cache) {
+            stats.put("cachedDays", new ArrayList<>(cache.keySet()));
+        }
+        stats.put("zoom", zoom);
+        stats.put("hits", hits.sum());
+        stats.put("builds", builds.sum());
+        long full = fullFrameEntries.sum();
+        stats.put("encodedEntries", encodedEntries.sum());
+        stats.put("fullFrameEntries", full);
+        stats.put("compressionRatio", full > 0 ? (double) encodedEntries.sum() / full : null);
+        return stats;
+    }
+
+    private void invalidateAll() {
+        version.incrementAndGet();
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private HeatmapTimelineResponse build(int day) {
+        long start = System.currentTimeMillis();
+        RoadGraph.Snapshot graph = roadGraph.current();
+
+        // 每个网格：{纬度和, 经度和, 坐标样本数, 24小时强度和..., 24小时数据点数...}
+        Map<Long, double[]> grid = new HashMap<>();
+        FlowTimeSeriesStore.FlowVisitor visitor = (nodeId, hour, flow) -> {
+            int node = graph.indexOf(nodeId);
+            if (node < 0 || hour < 0 || hour >= HOURS) {
+                return;
+            }
+            double lat = graph.latitude(node);
+            double lng = graph.longitude(node);
+            long cellX = (long) Math.floor(TileMath.lngToPixelX(lng, zoom) / cellPx);
+            long cellY = (long) Math.floor(TileMath.latToPixelY(lat, zoom) / cellPx);
+            double[] cell = grid.computeIfAbsent((cellX << 32) | (cellY & 0xFFFFFFFFL), key -> new double[3 + 2 * HOURS]);
+            cell[0] += lat;
+            cell[1] += lng;
+            cell[2]++;
+            cell[3 + hour] += MapService.normalizeIntensity(flow);
+            cell[3 + HOURS + hour]++;
+        };
+        forEachEffectiveFlow(day, visitor);
+
+        // 网格按编号排序，下标在同一天的各帧中保持稳定
+        long[] keys = grid.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        List<HeatmapTimelineResponse.TimelineCell> cells = new ArrayList<>(keys.length);
+        double[] previous = new double[keys.length];
+        Arrays.fill(previous, Double.NaN);
+        for (long key : keys) {
+            double[] cell = grid.get(key);
+            cells.add(new HeatmapTimelineResponse.TimelineCell((key >> 32) + ":" + (int) key,
+                    cell[0] / cell[2], cell[1] / cell[2]));
+        }
+
+        List<HeatmapTimelineResponse.Frame> frames = new ArrayList<>(HOURS);
+        long encoded = 0;
+        long full = 0;
+        for (int hour = 0; hour < HOURS; hour++) {
+            int[] changed = new int[keys.length];
+            double[] intensities = new double[keys.length];
+            int[] removed = new int[keys.length];
+            int changedCount = 0;
+            int removedCount = 0;
+            for (int i = 0; i < keys.length; i++) {
+                double[] cell = grid.get(keys[i]);
+                double count = cell[3 + HOURS + hour];
+                double value = count > 0 ? quantize(cell[3 + hour] / count) : Double.NaN;
+                if (count > 0) {
+                    full++;
+                }
+                if (Double.isNaN(value)) {
+                    if (!Double.isNaN(previous[i])) {
+                        removed[removedCount++] = i;
+                    }
+                } else if (value != previous[i]) {
+                    changed[changedCount] = i;
+                    intensities[changedCount++] = value;
+                }
+                previous[i] = value;
+            }
+            encoded += changedCount + removedCount;
+            frames.add(new HeatmapTimelineResponse.Frame(hour, hour == 0,
+                    Arrays.copyOf(changed, changedCount), Arrays.copyOf(intensities, changedCount),
+                    removedCount > 0 ? Arrays.copyOf(removed, removedCount) : null));
+        }
+
+        builds.increment();
+        encodedEntries.add(encoded);
+        fullFrameEntries.add(full);
+        logger.info("热力图回放帧计算完成: 日期={}, 网格数={}, 增量条目数={}, 完整帧条目数={}, 耗时{}ms",
+                day, keys.length, encoded, full, System.currentTimeMillis() - start);
+        return new HeatmapTimelineResponse(true, day, zoom, cells, frames);
+    }
+
+    /**
+     * 遍历指定日期的有效流量，列式存储未就绪时回退到数据库合并查询
+     */
+    private void forEachEffectiveFlow(int day, FlowTimeSeriesStore.FlowVisitor visitor) {
+        if (flowTimeSeriesStore.isReady()) {
+            flowTimeSeriesStore.forEachEffective(day, visitor);
+            return;
+        }
+        for (CombinedFlowView flow : flowForecastRepository.findCombinedByDay(day)) {
+            if (flow.getEffectiveFlow() != null) {
+                visitor.visit(flow.getNodeId(), flow.getTimeStamp(), flow.getEffectiveFlow());
+            }
+        }
+    }
+
+    private double quantize(double intensity) {
+        double scale = 1.0 / precision;
+        return Math.round(intensity * scale) / scale;
+    }
+}
@@ -0,0 +1,347 @@
+package com.example.navigation.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 拥堵热点服务
+ * 对每个配置的滑动窗口（截止当前小时的最近若干小时）维护节点和路段在窗口内的流量总和，
+ * 随路段拥挤度存储的增量回调更新；每个窗口另保留一个容量为max-k的候选集合，
+ * 总和上升时只与集合中的最小值比较即可维护前K名。集合成员的总和下降后才需要一次有界最小堆全量选择，
+ * 因此查询通常只对候选集合排序，不需要对当天的全部流量排序。
+ * 当前小时推进或路段拥挤度整体重建后，窗口在列式存储写锁内重新计算
+ */
+@Service
+public class HotspotService implements EdgeCongestionStore.CongestionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotspotService.class);
+
+    private final EdgeCongestionStore edgeCongestionStore;
+    private final FlowTimeSeriesStore flowTimeSeriesStore;
+    private final TrafficClock trafficClock;
+
+    @Value("${dashboard.hotspots.windows:1,3,6,24}")
+    private int[] windowHours;
+
+    @Value("${dashboard.hotspots.max-k:100}")
+    private int maxK;
+
+    // 以下状态在this锁内访问；增量回调时调用方已持有列式存储写锁
+    private EdgeCongestionStore.State builtState;
+    private int builtHour = -1;
+    private Map<Integer, Window> windows = Map.of();
+    private long rescans;
+    private long rebuilds;
+
+    public HotspotService(EdgeCongestionStore edgeCongestionStore,
+                          FlowTimeSeriesStore flowTimeSeriesStore,
+                          TrafficClock trafficClock) {
+        this.edgeCongestionStore = edgeCongestionStore;
+        this.flowTimeSeriesStore = flowTimeSeriesStore;
+        this.trafficClock = trafficClock;
+    }
+
+    @PostConstruct
+    public void registerListener() {
+        for (int hours : windowHours) {
+            if (hours < 1 || hours > 24) {
+                throw new IllegalStateException("dashboard.hotspots.windows中的窗口小时数应在1-24之间: " + hours);
+            }
+        }
+        edgeCongestionStore.addListener(this);
+    }
+
+    /**
+     * 获取窗口内流量总和最高的K个节点和K条路段
+     * @param k 返回数量，不超过max-k
+     * @param window 窗口小时数，必须是配置的窗口之一
+     * @throws IllegalArgumentException 参数无效
+     */
+    public Map<String, Object> getHotspots(int k, int window) {
+        if (k < 1 || k > maxK) {
+            throw new IllegalArgumentException("k应在1-" + maxK + "之间: " + k);
+        }
+        if (Arrays.stream(windowHours).noneMatch(hours -> hours == window)) {
+            throw new IllegalArgumentException("不支持的窗口: " + window + "，可选值: " + Arrays.toString(windowHours));
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        EdgeCongestionStore.State state = edgeCongestionStore.current();
+        if (state == null) {
+            result.put("ready", false);
+            result.put("nodes", List.of());
+            result.put("edges", List.of());
+            return result;
+        }
+        int hour = trafficClock.getCurrentHour();
+        ensureCurrent(state, hour);
+
+        synchronized (this) {
+            Window current = windows.get(window);
+            RoadGraph.Snapshot graph = builtState.getGraph();
+            List<Map<String, Object>> nodes = new ArrayList<>();
+            for (int node : current.nodes.top(k)) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("nodeId", graph.nodeId(node));
+                item.put("latitude", graph.latitude(node));
+                item.put("longitude", graph.longitude(node));
+                putScore(item, current.nodes, node);
+                nodes.add(item);
+            }
+            List<Map<String, Object>> edges = new ArrayList<>();
+            for (int edge : current.edges.top(k)) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("edgeId", graph.edgeId(edge));
+                item.put("nodeId1", graph.nodeId(graph.edgeSource(edge)));
+                item.put("nodeId2", graph.nodeId(graph.edgeTarget(edge)));
+                putScore(item, current.edges, edge);
+                edges.add(item);
+            }
+            result.put("ready", true);
+            result.put("day", builtState.getDay());
+            result.put("window", window);
+            result.put("fromHour", current.fromHour);
+            result.put("toHour", current.toHour);
+            result.put("nodes", nodes);
+            result.put("edges", edges);
+        }
+        return result;
+    }
+
+    /**
+     * 当前小时，窗口范围随小时推进，用于区分缓存键
+     */
+    public int getCurrentHour() {
+        return trafficClock.getCurrentHour();
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("windows", windowHours);
+        stats.put("maxK", maxK);
+        stats.put("builtHour", builtHour);
+        stats.put("rebuilds", rebuilds);
+        stats.put("rescans", rescans);
+        return stats;
+    }
+
+    @Override
+    public synchronized void onNodeFlowChanged(EdgeCongestionStore.State state, int node, int hour, int oldFlow, int newFlow) {
+        if (state != builtState) {
+            return;
+        }
+        for (Window window : windows.values()) {
+            if (window.covers(hour)) {
+                window.nodes.update(node, oldFlow, newFlow);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onEdgeFlowChanged(EdgeCongestionStore.State state, int edge, int hour, int oldFlow, int newFlow) {
+        if (state != builtState) {
+            return;
+        }
+        for (Window window : windows.values()) {
+            if (window.covers(hour)) {
+                window.edges.update(edge, oldFlow, newFlow);
+            }
+        }
+    }
+
+    @Override
+    public void onRebuilt(EdgeCongestionStore.State state) {
+        rebuild(state, trafficClock.getCurrentHour());
+    }
+
+    /**
+     * 快照或当前小时变化后，在列式存储写锁内重新计算全部窗口（锁顺序：写锁→this）
+     */
+    private void ensureCurrent(EdgeCongestionStore.State state, int hour) {
+        synchronized (this) {
+            if (state == builtState && hour == builtHour) {
+                return;
+            }
+        }
+        flowTimeSeriesStore.runExclusive(() -> rebuild(state, hour));
+    }
+
+    private synchronized void rebuild(EdgeCongestionStore.State state, int hour) {
+        if (state == builtState && hour == builtHour) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        RoadGraph.Snapshot graph = state.getGraph();
+        Map<Integer, Window> rebuilt = new HashMap<>();
+        for (int hours : windowHours) {
+            Window window = new Window(Math.max(0, hour - hours + 1), hour,
+                    new Ranking(graph.nodeCount(), maxK), new Ranking(graph.edgeCount(), maxK));
+            for (int h = window.fromHour; h <= window.toHour; h++) {
+                for (int node = 0; node < graph.nodeCount(); node++) {
+                    window.nodes.update(node, EdgeCongestionStore.MISSING, state.nodeFlow(node, h));
+                }
+                for (int edge = 0; edge < graph.edgeCount(); edge++) {
+                    window.edges.update(edge, EdgeCongestionStore.MISSING, state.edgeFlow(edge, h));
+                }
+            }
+            window.nodes.rescan();
+            window.edges.rescan();
+            rebuilt.put(hours, window);
+        }
+        windows = rebuilt;
+        builtState = state;
+        builtHour = hour;
+        rebuilds++;
+        logger.info("拥堵热点窗口重建完成: 日期={}, 当前小时={}, 窗口={}, 耗时{}ms",
+                state.getDay(), hour, Arrays.toString(windowHours), System.currentTimeMillis() - start);
+    }
+
+    private void putScore(Map<String, Object> item, Ranking ranking, int index) {
+        long total = ranking.scores[index];
+        int hours = ranking.counts[index];
+        double average = hours > 0 ? (double) total / hours : 0.0;
+        item.put("totalFlow", total);
+        item.put("hours", hours);
+        item.put("averageFlow", Math.round(average * 100) / 100.0);
+        item.put("level", CongestionLevel.nameOf(average));
+    }
+
+    /**
+     * 内部类：一个滑动窗口覆盖的小时范围及其节点、路段排名
+     */
+    private static class Window {
+        final int fromHour;
+        final int toHour;
+        final Ranking nodes;
+        final Ranking edges;
+
+        Window(int fromHour, int toHour, Ranking nodes, Ranking edges) {
+            this.fromHour = fromHour;
+            this.toHour = toHour;
+            this.nodes = nodes;
+            this.edges = edges;
+        }
+
+        boolean covers(int hour) {
+            return hour >= fromHour && hour <= toHour;
+        }
+    }
+
+    /**
+     * 内部类：按下标的窗口总和及前K名候选集合
+     * 候选集合满时，集合外的总和都不大于集合中的最小值；成员总和下降会破坏这一点，标记后在下次查询时全量选择
+     */
+    private class Ranking {
+        final long[] scores;
+        final int[] counts;
+        final int capacity;
+        final int[] candidates;
+        final BitSet members;
+        int size;
+        boolean stale;
+
+        Ranking(int length, int capacity) {
+            this.scores = new long[length];
+            this.counts = new int[length];
+            this.capacity = capacity;
+            this.candidates = new int[capacity];
+            this.members = new BitSet(length);
+        }
+
+        void update(int index, int oldFlow, int newFlow) {
+            long delta = 0;
+            if (oldFlow != EdgeCongestionStore.MISSING) {
+                delta -= oldFlow;
+                counts[index]--;
+            }
+            if (newFlow != EdgeCongestionStore.MISSING) {
+                delta += newFlow;
+                counts[index]++;
+            }
+            if (delta == 0) {
+                return;
+            }
+            scores[index] += delta;
+            if (stale) {
+                return;
+            }
+            if (members.get(index)) {
+                if (delta < 0 && size == capacity) {
+                    stale = true;
+                }
+                return;
+            }
+            if (size < capacity) {
+                if (scores[index] > 0) {
+                    candidates[size++] = index;
+                    members.set(index);
+                }
+                return;
+            }
+            int min = minPosition();
+            if (scores[index] > scores[candidates[min]]) {
+                members.clear(candidates[min]);
+                candidates[min] = index;
+                members.set(index);
+            }
+        }
+
+        /**
+         * 按总和降序返回前k个下标（总和为0的不返回）
+         */
+        int[] top(int k) {
+            if (stale) {
+                rescan();
+            }
+            return Arrays.stream(candidates, 0, size).boxed()
+                    .filter(index -> scores[index] > 0)
+                    .sorted((a, b) -> Long.compare(scores[b], scores[a]))
+                    .limit(k)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+
+        /**
+         * 用容量为capacity的最小堆从全部下标中重新选出候选集合
+         */
+        void rescan() {
+            PriorityQueue<Integer> heap = new PriorityQueue<>(capacity, Comparator.comparingLong(index -> scores[index]));
+            for (int index = 0; index < scores.length; index++) {
+                if (scores[index] <= 0) {
+                    continue;
+                }
+                if (heap.size() < capacity) {
+                    heap.add(index);
+                } else if (scores[index] > scores[heap.peek()]) {
+                    heap.poll();
+                    heap.add(index);
+                }
+            }
+            members.clear();
+            size = 0;
+            for (int index : heap) {
+                candidates[size++] = index;
+                members.set(index);
+            }
+            stale = false;
+            rescans++;
+        }
+
+        private int minPosition() {
+            int min = 0;
+            for (int i = 1; i < size; i++) {
+                if (scores[candidates[i]] < scores[candidates[min]]) {
+                    min = i;
+                }
+            }
+            return min;
+        }
+    }
+}
@@ -2,15 +2,19 @@ package com.example.navigation.service;
 
 import com.example.navigation.model.dto.map.HeatmapResponse;
 import com.example.navigation.model.dto.map.CongestionResponse;
-import com.example.navigation.model.entity.Flow;
-import com.example.navigation.model.entity.Node;
-import com.example.navigation.repository.FlowRepository;
-import com.example.navigation.repository.NodeRepository;
+import com.example.navigation.model.projection.CombinedFlowView;
+import com.example.navigation.repository.FlowForecastRepository;
+import com.example.navigation.util.BoundingBox;
+import com.example.navigation.util.TileMath;
+import com.fasterxml.jackson.core.JsonGenerator;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -26,47 +30,45 @@ public class MapService {
     
     private static final Logger logger = LoggerFactory.getLogger(MapService.class);
     
-    private final FlowRepository flowRepository;
-    private final NodeRepository nodeRepository;
+    private final FlowForecastRepository flowForecastRepository;
+    private final FlowTimeSeriesStore flowTimeSeriesStore;
+    private final TrafficClock trafficClock;
+    private final NodeSpatialIndex nodeSpatialIndex;
+    private final EdgeCongestionStore edgeCongestionStore;
+
+    @Value("${map.cluster.radius-px:60}")
+    private int clusterRadiusPx;
 
     /**
      * 获取热力图数据
      */
     public HeatmapResponse getHeatmapData() {
-        logger.info("开始生成热力图数据");
+        return getHeatmapData(null, null);
+    }
+
+    /**
+     * 获取视口范围内的热力图数据
+     * bbox为空时覆盖全部节点；zoom不为空时按该层级的像素网格在服务端聚合，
+     * 每个网格输出一个位于质心、强度取平均值并带数据点数量的加权点
+     */
+    public HeatmapResponse getHeatmapData(BoundingBox bbox, Integer zoom) {
+        validateHeatmapZoom(zoom);
+        logger.info("开始生成热力图数据: bbox={}, zoom={}", bbox, zoom);
         
         try {
-            // 获取当前时间的流量数据
+            long start = System.currentTimeMillis();
             Integer currentDay = getCurrentDay();
-            List<Flow> flowData = flowRepository.findByDay(currentDay);
-            
-            // 获取所有节点信息
-            List<Node> nodes = nodeRepository.findAll();
-            Map<Integer, Node> nodeMap = nodes.stream()
-                    .collect(Collectors.toMap(Node::getNodeID, node -> node));
-            
-            // 生成热力图数据点
-            List<HeatmapResponse.HeatmapPoint> heatmapPoints = flowData.stream()
-                    .filter(flow -> nodeMap.containsKey(flow.getNodeID()))
-                    .map(flow -> {
-                        Node node = nodeMap.get(flow.getNodeID());
-                        try {
-                            double lat = Double.parseDouble(node.getLatitude());
-                            double lng = Double.parseDouble(node.getLongitude());
-                            double intensity = normalizeIntensity(flow.getFlow());
-                            return new HeatmapResponse.HeatmapPoint(lat, lng, intensity);
-                        } catch (NumberFormatException e) {
-                            logger.warn("节点坐标格式错误: nodeID={}, lat={}, lng={}", 
-                                       node.getNodeID(), node.getLatitude(), node.getLongitude());
-                            return null;
-                        }
-                    })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
+            List<HeatmapResponse.HeatmapPoint> heatmapPoints = new ArrayList<>();
+            if (zoom == null) {
+                forEachEffectiveFlowInView(currentDay, bbox, (lat, lng, flow) ->
+                        heatmapPoints.add(new HeatmapResponse.HeatmapPoint(lat, lng, normalizeIntensity(flow))));
+            } else {
+                heatmapPoints.addAll(getHeatmapCells(currentDay, bbox, zoom).values());
+            }
             
             HeatmapResponse response = new HeatmapResponse(true, heatmapPoints);
             
-            logger.info("热力图数据生成完成，数据点数量: {}", heatmapPoints.size());
+            logger.info("热力图数据生成完成，数据点数量: {}, 耗时{}ms", heatmapPoints.size(), System.currentTimeMillis() - start);
             return response;
         } catch (Exception e) {
             logger.error("生成热力图数据失败: error={}", e.getMessage());
@@ -74,26 +76,122 @@ public class MapService {
         }
     }
 
+    /**
+     * 校验热力图聚合层级
+     * @throws IllegalArgumentException zoom不在0-30之间
+     */
+    public void validateHeatmapZoom(Integer zoom) {
+        if (zoom != null && (zoom < 0 || zoom > 30)) {
+            throw new IllegalArgumentException("zoom应在0-30之间: " + zoom);
+        }
+    }
+
+    /**
+     * 流式写出视口范围内的热力图数据，结构与getHeatmapData的响应相同
+     * 未聚合时边遍历节点边写出，不构建数据点列表；聚合时只保留与网格数成正比的聚合单元。
+     * zoom须由调用方在响应头提交前通过validateHeatmapZoom校验
+     */
+    public void writeHeatmapData(BoundingBox bbox, Integer zoom, JsonGenerator generator) throws IOException {
+        long start = System.currentTimeMillis();
+        Integer currentDay = getCurrentDay();
+        long[] written = {0};
+        generator.writeStartObject();
+        generator.writeBooleanField("success", true);
+        generator.writeArrayFieldStart("data");
+        try {
+            if (zoom == null) {
+                forEachEffectiveFlowInView(currentDay, bbox, (lat, lng, flow) -> {
+                    writeHeatmapPoint(generator, lat, lng, normalizeIntensity(flow), null);
+                    written[0]++;
+                });
+            } else {
+                for (HeatmapResponse.HeatmapPoint point : getHeatmapCells(currentDay, bbox, zoom).values()) {
+                    writeHeatmapPoint(generator, point.getLat(), point.getLng(), point.getIntensity(), point.getWeight());
+                    written[0]++;
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        logger.info("热力图数据流式写出完成，数据点数量: {}, 耗时{}ms", written[0], System.currentTimeMillis() - start);
+    }
+
+    private static void writeHeatmapPoint(JsonGenerator generator, double lat, double lng, double intensity, Integer weight) {
+        try {
+            generator.writeStartObject();
+            generator.writeNumberField("lat", lat);
+            generator.writeNumberField("lng", lng);
+            generator.writeNumberField("intensity", intensity);
+            if (weight != null) {
+                generator.writeNumberField("weight", weight);
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 按zoom层级的像素网格聚合视口内当前日期的热力图数据，键为网格编号(x << 32 | y)
+     */
+    public Map<Long, HeatmapResponse.HeatmapPoint> getHeatmapCells(BoundingBox bbox, int zoom) {
+        return getHeatmapCells(getCurrentDay(), bbox, zoom);
+    }
+
+    private Map<Long, HeatmapResponse.HeatmapPoint> getHeatmapCells(Integer day, BoundingBox bbox, int zoom) {
+        // 每个聚合单元：{纬度和, 经度和, 强度和, 数据点数}
+        Map<Long, double[]> clusters = new HashMap<>();
+        forEachEffectiveFlowInView(day, bbox, (lat, lng, flow) -> {
+            long cellX = (long) Math.floor(TileMath.lngToPixelX(lng, zoom) / clusterRadiusPx);
+            long cellY = (long) Math.floor(TileMath.latToPixelY(lat, zoom) / clusterRadiusPx);
+            double[] cluster = clusters.computeIfAbsent((cellX << 32) | (cellY & 0xFFFFFFFFL), key -> new double[4]);
+            cluster[0] += lat;
+            cluster[1] += lng;
+            cluster[2] += normalizeIntensity(flow);
+            cluster[3]++;
+        });
+        Map<Long, HeatmapResponse.HeatmapPoint> cells = new HashMap<>(clusters.size() * 2);
+        clusters.forEach((key, cluster) -> {
+            double count = cluster[3];
+            cells.put(key, new HeatmapResponse.HeatmapPoint(cluster[0] / count, cluster[1] / count,
+                    cluster[2] / count, (int) count));
+        });
+        return cells;
+    }
+
     /**
      * 获取拥挤度数据
      */
     public CongestionResponse getCongestionData() {
-        logger.info("开始生成拥挤度数据");
+        return getCongestionData(null);
+    }
+
+    /**
+     * 获取视口范围内的拥挤度数据，bbox为空时统计全部节点
+     */
+    public CongestionResponse getCongestionData(BoundingBox bbox) {
+        logger.info("开始生成拥挤度数据: bbox={}", bbox);
         
         try {
             // 获取当前时间的流量数据
             Integer currentDay = getCurrentDay();
-            List<Flow> flowData = flowRepository.findByDay(currentDay);
             
             // 按拥挤级别分组统计
-            Map<String, Long> congestionStats = flowData.stream()
-                    .collect(Collectors.groupingBy(
-                            this::getCongestionLevel,
-                            Collectors.counting()
-                    ));
+            Map<String, Long> congestionStats = new HashMap<>();
+            if (countEdgeCongestion(currentDay, bbox, congestionStats)) {
+                logger.debug("拥挤度按路段统计");
+            } else if (bbox == null) {
+                forEachEffectiveFlow(currentDay, (nodeId, hour, flow) ->
+                        congestionStats.merge(CongestionLevel.nameOf(flow), 1L, Long::sum));
+            } else {
+                forEachEffectiveFlowInView(currentDay, bbox, (lat, lng, flow) ->
+                        congestionStats.merge(CongestionLevel.nameOf(flow), 1L, Long::sum));
+            }
             
             // 计算各拥挤级别的拥挤度值（百分比）
-            long totalSections = flowData.size();
+            long totalSections = congestionStats.values().stream().mapToLong(Long::longValue).sum();
             List<CongestionResponse.CongestionRegion> regions = congestionStats.entrySet().stream()
                     .map(entry -> {
                         String level = entry.getKey();
@@ -107,7 +205,7 @@ public class MapService {
                     .map(CongestionResponse.CongestionRegion::getLevel)
                     .collect(Collectors.toSet());
             
-            Arrays.asList("畅通", "缓慢", "拥堵", "严重拥堵").forEach(level -> {
+            Arrays.asList(CongestionLevel.NAMES).forEach(level -> {
                 if (!existingLevels.contains(level)) {
                     regions.add(new CongestionResponse.CongestionRegion(level, 0.0));
                 }
@@ -141,25 +239,100 @@ public class MapService {
     /**
      * 标准化热力图强度值（0-1之间）
      */
-    private double normalizeIntensity(int flow) {
+    static double normalizeIntensity(int flow) {
         // 假设最大流量为200，将流量值标准化到0-1之间
         double maxFlow = 200.0;
         return Math.min(flow / maxFlow, 1.0);
     }
 
     /**
-     * 根据流量值确定拥挤级别
+     * 遍历指定日期的有效流量（观测值缺失的(节点, 小时)使用预测值）
+     * 列式存储就绪时直接读内存，否则回退到数据库合并查询
      */
-    private String getCongestionLevel(Flow flow) {
-        int flowValue = flow.getFlow();
-        if (flowValue >= 100) {
-            return "严重拥堵";
-        } else if (flowValue >= 70) {
-            return "拥堵";
-        } else if (flowValue >= 40) {
-            return "缓慢";
-        } else {
-            return "畅通";
+    private void forEachEffectiveFlow(Integer day, FlowTimeSeriesStore.FlowVisitor visitor) {
+        if (flowTimeSeriesStore.isReady()) {
+            flowTimeSeriesStore.forEachEffective(day, visitor);
+            return;
+        }
+        for (CombinedFlowView flow : flowForecastRepository.findCombinedByDay(day)) {
+            if (flow.getEffectiveFlow() != null) {
+                visitor.visit(flow.getNodeId(), flow.getTimeStamp(), flow.getEffectiveFlow());
+            }
+        }
+    }
+
+    /**
+     * 遍历视口范围内节点指定日期的有效流量，bbox为空时遍历全部节点
+     * 列式存储就绪时通过空间索引只访问范围内的节点，否则回退到数据库合并查询后按坐标过滤
+     */
+    private void forEachEffectiveFlowInView(Integer day, BoundingBox bbox, LocatedFlowVisitor visitor) {
+        if (flowTimeSeriesStore.isReady()) {
+            NodeSpatialIndex.NodeVisitor nodeVisitor = (nodeId, lat, lng) -> {
+                for (int flow : flowTimeSeriesStore.getNodeSeries(nodeId, day)) {
+                    if (flow != FlowTimeSeriesStore.MISSING) {
+                        visitor.visit(lat, lng, flow);
+                    }
+                }
+            };
+            if (bbox == null) {
+                nodeSpatialIndex.forEach(nodeVisitor);
+            } else {
+                nodeSpatialIndex.query(bbox, nodeVisitor);
+            }
+            return;
+        }
+        for (CombinedFlowView flow : flowForecastRepository.findCombinedByDay(day)) {
+            double[] coordinates = nodeSpatialIndex.getCoordinates(flow.getNodeId());
+            if (coordinates != null && flow.getEffectiveFlow() != null
+                    && (bbox == null || bbox.contains(coordinates[0], coordinates[1]))) {
+                visitor.visit(coordinates[0], coordinates[1], flow.getEffectiveFlow());
+            }
+        }
+    }
+
+    /**
+     * 按路段（边, 小时）统计拥挤级别，bbox不为空时只统计至少一个端点在范围内的边
+     * 有范围时通过节点空间索引找到范围内的节点，只遍历它们的关联边，代价与视口内的节点数成正比；
+     * 两个端点都在范围内的边只在下标较小的端点处统计一次。
+     * 路段拥挤度未就绪或路网没有边时返回false，由调用方回退到按节点统计
+     */
+    private boolean countEdgeCongestion(Integer day, BoundingBox bbox, Map<String, Long> congestionStats) {
+        EdgeCongestionStore.State state = edgeCongestionStore.current();
+        if (state == null || state.getDay() != day || state.getGraph().edgeCount() == 0) {
+            return false;
+        }
+        RoadGraph.Snapshot graph = state.getGraph();
+        if (bbox == null) {
+            for (int edge = 0; edge < graph.edgeCount(); edge++) {
+                countEdge(state, edge, congestionStats);
+            }
+            return true;
+        }
+        nodeSpatialIndex.query(bbox, (nodeId, lat, lng) -> {
+            int node = graph.indexOf(nodeId);
+            if (node < 0) {
+                return;
+            }
+            for (int position = graph.incidentStart(node); position < graph.incidentEnd(node); position++) {
+                int edge = graph.incidentEdge(position);
+                int other = graph.edgeSource(edge) == node ? graph.edgeTarget(edge) : graph.edgeSource(edge);
+                boolean countedElsewhere = other == node
+                        ? position > graph.incidentStart(node) && graph.incidentEdge(position - 1) == edge
+                        : other < node && bbox.contains(graph.latitude(other), graph.longitude(other));
+                if (!countedElsewhere) {
+                    countEdge(state, edge, congestionStats);
+                }
+            }
+        });
+        return true;
+    }
+
+    private static void countEdge(EdgeCongestionStore.State state, int edge, Map<String, Long> congestionStats) {
+        for (int hour = 0; hour < 24; hour++) {
+            int flow = state.edgeFlow(edge, hour);
+            if (flow != EdgeCongestionStore.MISSING) {
+                congestionStats.merge(CongestionLevel.nameOf(flow), 1L, Long::sum);
+            }
         }
     }
 
@@ -167,7 +340,14 @@ public class MapService {
      * 获取当前日期
      */
     private Integer getCurrentDay() {
-        // 简化实现，实际应该根据当前日期计算
-        return 1; // 假设当前是第1天
+        return trafficClock.getCurrentDay();
+    }
+
+    /**
+     * 带节点坐标的流量遍历回调
+     */
+    @FunctionalInterface
+    private interface LocatedFlowVisitor {
+        void visit(double lat, double lng, int flow);
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,293 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.dto.map.CongestionResponse;
+import com.example.navigation.model.dto.map.HeatmapResponse;
+import com.example.navigation.model.dto.map.MapStreamPayload;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 地图数据推送服务（SSE）
+ * 单个生产者在流量数据版本推进时计算一次热力图网格和拥挤度，与上一版本比较后生成增量，
+ * 再分发到每个订阅者的有界队列，由发送线程池异步写出。
+ * 订阅者的队列满时丢弃积压的旧事件并替换为最新快照，客户端状态仍然完整，慢客户端不会拖慢生产者
+ */
+@Service
+public class MapStreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MapStreamService.class);
+
+    private final MapService mapService;
+    private final FlowEpoch flowEpoch;
+
+    @Value("${map.stream.zoom:12}")
+    private int zoom;
+
+    @Value("${map.stream.queue-capacity:32}")
+    private int queueCapacity;
+
+    @Value("${map.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${map.stream.heartbeat-ms:15000}")
+    private long heartbeatMs;
+
+    @Value("${map.stream.sender-threads:4}")
+    private int senderThreads;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Object producerLock = new Object();
+    private volatile StreamState state;
+    private long lastPublishedAt = System.currentTimeMillis();
+    private ExecutorService senderExecutor;
+
+    private final AtomicLong subscriberSequence = new AtomicLong();
+    private final LongAdder publishedDeltas = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+
+    public MapStreamService(MapService mapService, FlowEpoch flowEpoch) {
+        this.mapService = mapService;
+        this.flowEpoch = flowEpoch;
+    }
+
+    @PostConstruct
+    public void start() {
+        senderExecutor = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "map-stream-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+        senderExecutor.shutdownNow();
+    }
+
+    /**
+     * 新增订阅者，首先推送当前版本的完整快照
+     */
+    public SseEmitter subscribe() {
+        return subscribe(new SseEmitter(timeoutMs));
+    }
+
+    /**
+     * 使用给定的SseEmitter新增订阅者
+     */
+    SseEmitter subscribe(SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(subscriberSequence.incrementAndGet(), emitter, queueCapacity);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+
+        synchronized (producerLock) {
+            advance();
+            subscribers.add(subscriber);
+            enqueue(subscriber, snapshotEvent(state));
+        }
+        logger.info("地图推送新增订阅者: id={}, 当前订阅者数={}", subscriber.id, subscribers.size());
+        return emitter;
+    }
+
+    /**
+     * 定期检查流量数据版本，有变化时计算并分发增量；长时间无变化时发送心跳以检测断开的连接
+     */
+    @Scheduled(fixedDelayString = "${map.stream.interval-ms:1000}")
+    public void tick() {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        synchronized (producerLock) {
+            advance();
+            if (System.currentTimeMillis() - lastPublishedAt >= heartbeatMs) {
+                lastPublishedAt = System.currentTimeMillis();
+                subscribers.forEach(subscriber -> enqueue(subscriber, StreamEvent.HEARTBEAT));
+            }
+        }
+    }
+
+    /**
+     * 获取推送统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        StreamState current = state;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("subscribers", subscribers.size());
+        stats.put("epoch", current == null ? null : current.epoch);
+        stats.put("cells", current == null ? 0 : current.cells.size());
+        stats.put("zoom", zoom);
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("publishedDeltas", publishedDeltas.sum());
+        stats.put("droppedEvents", droppedEvents.sum());
+        return stats;
+    }
+
+    /**
+     * 版本推进时计算新状态并向已有订阅者分发增量，调用方需持有producerLock
+     */
+    private void advance() {
+        long epoch = flowEpoch.current();
+        StreamState previous = state;
+        if (previous != null && previous.epoch == epoch) {
+            return;
+        }
+        StreamState next = new StreamState(epoch, mapService.getHeatmapCells(null, zoom),
+                mapService.getCongestionData().getData());
+        state = next;
+        if (previous == null || subscribers.isEmpty()) {
+            return;
+        }
+
+        List<MapStreamPayload.StreamCell> changed = new ArrayList<>();
+        next.cells.forEach((key, point) -> {
+            if (!point.equals(previous.cells.get(key))) {
+                changed.add(toCell(key, point));
+            }
+        });
+        List<String> removed = new ArrayList<>();
+        for (Long key : previous.cells.keySet()) {
+            if (!next.cells.containsKey(key)) {
+                removed.add(cellId(key));
+            }
+        }
+        boolean congestionChanged = !next.congestion.getRegions().equals(previous.congestion.getRegions());
+        if (changed.isEmpty() && removed.isEmpty() && !congestionChanged) {
+            return;
+        }
+
+        MapStreamPayload delta = new MapStreamPayload(epoch, congestionChanged ? next.congestion : null, changed, removed);
+        StreamEvent event = new StreamEvent("delta", epoch, delta);
+        subscribers.forEach(subscriber -> enqueue(subscriber, event));
+        publishedDeltas.increment();
+        lastPublishedAt = System.currentTimeMillis();
+        logger.debug("地图推送增量: 版本={}, 变化网格={}, 删除网格={}, 拥挤度变化={}, 订阅者数={}",
+                    epoch, changed.size(), removed.size(), congestionChanged, subscribers.size());
+    }
+
+    /**
+     * 放入订阅者队列，调用方需持有producerLock；队列已满时清空积压并改为推送最新快照
+     */
+    private void enqueue(Subscriber subscriber, StreamEvent event) {
+        if (!subscriber.queue.offer(event)) {
+            int dropped = subscriber.queue.size();
+            subscriber.queue.clear();
+            droppedEvents.add(dropped);
+            // 入队前state已更新到最新版本，快照已包含被丢弃的增量和当前事件
+            subscriber.queue.offer(snapshotEvent(state));
+            logger.warn("地图推送订阅者积压过多，丢弃{}个旧事件并重新发送快照: id={}", dropped, subscriber.id);
+        }
+        if (subscriber.draining.compareAndSet(false, true)) {
+            senderExecutor.execute(() -> drain(subscriber));
+        }
+    }
+
+    /**
+     * 在发送线程中写出订阅者队列中的事件
+     */
+    private void drain(Subscriber subscriber) {
+        try {
+            StreamEvent event;
+            while ((event = subscriber.queue.poll()) != null) {
+                if (event == StreamEvent.HEARTBEAT) {
+                    subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+                } else {
+                    subscriber.emitter.send(SseEmitter.event()
+                            .name(event.name)
+                            .id(String.valueOf(event.epoch))
+                            .data(event.payload, MediaType.APPLICATION_JSON));
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            logger.info("地图推送订阅者连接已断开: id={}, error={}", subscriber.id, e.getMessage());
+            subscribers.remove(subscriber);
+            subscriber.queue.clear();
+            subscriber.emitter.completeWithError(e);
+        } finally {
+            subscriber.draining.set(false);
+        }
+        // 释放标记后若又有新事件入队，重新调度
+        if (!subscriber.queue.isEmpty() && subscribers.contains(subscriber)
+                && subscriber.draining.compareAndSet(false, true)) {
+            senderExecutor.execute(() -> drain(subscriber));
+        }
+    }
+
+    private static StreamEvent snapshotEvent(StreamState state) {
+        List<MapStreamPayload.StreamCell> cells = new ArrayList<>(state.cells.size());
+        state.cells.forEach((key, point) -> cells.add(toCell(key, point)));
+        return new StreamEvent("snapshot", state.epoch, new MapStreamPayload(state.epoch, state.congestion, cells, null));
+    }
+
+    private static MapStreamPayload.StreamCell toCell(long key, HeatmapResponse.HeatmapPoint point) {
+        return new MapStreamPayload.StreamCell(cellId(key), point.getLat(), point.getLng(),
+                point.getIntensity(), point.getWeight());
+    }
+
+    private static String cellId(long key) {
+        return (key >> 32) + ":" + (int) key;
+    }
+
+    /**
+     * 内部类：某一版本下的推送状态
+     */
+    private static class StreamState {
+        final long epoch;
+        final Map<Long, HeatmapResponse.HeatmapPoint> cells;
+        final CongestionResponse.CongestionData congestion;
+
+        StreamState(long epoch, Map<Long, HeatmapResponse.HeatmapPoint> cells, CongestionResponse.CongestionData congestion) {
+            this.epoch = epoch;
+            this.cells = cells;
+            this.congestion = congestion;
+        }
+    }
+
+    /**
+     * 内部类：待发送的事件，HEARTBEAT为心跳注释
+     */
+    private static class StreamEvent {
+        static final StreamEvent HEARTBEAT = new StreamEvent(null, 0, null);
+
+        final String name;
+        final long epoch;
+        final Object payload;
+
+        StreamEvent(String name, long epoch, Object payload) {
+            this.name = name;
+            this.epoch = epoch;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * 内部类：订阅者及其有界队列
+     */
+    private static class Subscriber {
+        final long id;
+        final SseEmitter emitter;
+        final BlockingQueue<StreamEvent> queue;
+        final AtomicBoolean draining = new AtomicBoolean();
+
+        Subscriber(long id, SseEmitter emitter, int capacity) {
+            this.id = id;
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+}
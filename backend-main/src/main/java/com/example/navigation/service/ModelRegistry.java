@@ -0,0 +1,381 @@
+package com.example.navigation.service;
+
+import com.example.navigation.enums.BusinessErrorCode;
+import com.example.navigation.event.ModelVersionPromotedEvent;
+import com.example.navigation.exception.BusinessException;
+import com.example.navigation.util.Histogram;
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 模型版本注册中心
+ * 监视模型目录，在后台加载并校验新版本模型；影子期内对线上请求同时使用新旧模型评分，
+ * 统计延迟与预测差异，达标后原子切换生效版本并发布ModelVersionPromotedEvent
+ */
+@Service
+public class ModelRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelRegistry.class);
+    private static final String DEFAULT_VERSION = "default";
+    private static final DateTimeFormatter VERSION_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneId.systemDefault());
+
+    private final PythonModelService pythonModelService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${model.registry.dir:}")
+    private String modelDir;
+
+    @Value("${model.registry.shadow-duration-ms:300000}")
+    private long shadowDurationMs;
+
+    @Value("${model.registry.shadow-sample-rate:0.1}")
+    private double shadowSampleRate;
+
+    @Value("${model.registry.shadow-min-samples:200}")
+    private int shadowMinSamples;
+
+    @Value("${model.registry.max-divergence:0.2}")
+    private double maxDivergence;
+
+    private final AtomicReference<String> activeVersion = new AtomicReference<>(DEFAULT_VERSION);
+    private volatile ShadowSession shadow;
+
+    // 已知的模型文件及其最后修改时间
+    private final Map<Path, Long> knownFiles = new ConcurrentHashMap<>();
+    // 最近的版本变更记录
+    private final Deque<Map<String, Object>> history = new ConcurrentLinkedDeque<>();
+
+    private ExecutorService loaderExecutor;
+    private ThreadPoolExecutor shadowExecutor;
+
+    public ModelRegistry(PythonModelService pythonModelService, ApplicationEventPublisher eventPublisher) {
+        this.pythonModelService = pythonModelService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostConstruct
+    public void init() {
+        loaderExecutor = Executors.newSingleThreadExecutor(daemonThreadFactory("model-registry-loader"));
+        // 影子评分队列有界，积压时直接丢弃样本，避免拖慢线上请求
+        shadowExecutor = new ThreadPoolExecutor(1, 2, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(64), daemonThreadFactory("model-registry-shadow"),
+                new ThreadPoolExecutor.DiscardPolicy());
+
+        if (!isWatching()) {
+            logger.info("未配置模型目录，模型热加载已禁用");
+            return;
+        }
+        // 启动时已存在的模型文件视为基线版本
+        scanModelFiles().forEach((path, modified) -> knownFiles.put(path, modified));
+        logger.info("模型注册中心已启动: 目录={}, 基线文件数={}", modelDir, knownFiles.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loaderExecutor.shutdownNow();
+        shadowExecutor.shutdownNow();
+    }
+
+    /**
+     * 定期检查模型目录中新增或更新的模型文件，并判断影子期是否结束
+     */
+    @Scheduled(fixedDelayString = "${model.registry.poll-interval-ms:10000}")
+    public void pollModelDirectory() {
+        if (!isWatching()) {
+            return;
+        }
+        scanModelFiles().forEach((path, modified) -> {
+            Long previous = knownFiles.put(path, modified);
+            if (previous == null || previous < modified) {
+                String version = buildVersion(path, modified);
+                logger.info("检测到新模型文件: path={}, version={}", path, version);
+                loaderExecutor.execute(() -> loadCandidate(path, version));
+            }
+        });
+        concludeShadowIfDue();
+    }
+
+    /**
+     * 记录一次生效模型的批量预测，按采样率用候选模型对同一批请求进行影子评分
+     * @param timePoint 时间点
+     * @param volumes 生效模型的预测结果
+     * @param latencyNanos 生效模型调用耗时
+     */
+    public void recordActiveBatch(int timePoint, Map<Integer, Double> volumes, long latencyNanos) {
+        ShadowSession session = shadow;
+        if (session == null || volumes.isEmpty()) {
+            return;
+        }
+        if (ThreadLocalRandom.current().nextDouble() >= shadowSampleRate) {
+            return;
+        }
+        Map<Integer, Double> activeVolumes = new HashMap<>(volumes);
+        session.activeLatency.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        shadowExecutor.execute(() -> scoreShadow(session, timePoint, activeVolumes));
+    }
+
+    /**
+     * 手动切换到已加载的候选版本
+     * @throws IllegalArgumentException 版本不在影子期
+     * @throws BusinessException 切换期间候选版本被其他操作切换或替代（409），或模型服务切换失败（502）
+     */
+    public void promote(String version) {
+        ShadowSession session = shadow;
+        if (session == null || !session.version.equals(version)) {
+            throw new IllegalArgumentException("模型版本不在影子期: " + version);
+        }
+        boolean promoted;
+        try {
+            promoted = promote(session);
+        } catch (IOException | IllegalStateException e) {
+            throw new BusinessException(BusinessErrorCode.MODEL_SERVICE_ERROR);
+        }
+        if (!promoted) {
+            throw new BusinessException(BusinessErrorCode.MODEL_PROMOTION_CONFLICT);
+        }
+    }
+
+    public String getActiveVersion() {
+        return activeVersion.get();
+    }
+
+    /**
+     * 当前生效的是否为注册中心切换过的版本（而非模型服务启动时加载的默认模型）
+     */
+    public boolean hasPromotedVersion() {
+        return !DEFAULT_VERSION.equals(activeVersion.get());
+    }
+
+    /**
+     * 获取注册中心状态（生效版本、影子期统计与最近变更记录）
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("watching", isWatching());
+        status.put("modelDir", modelDir);
+        status.put("activeVersion", activeVersion.get());
+        ShadowSession session = shadow;
+        status.put("shadow", session == null ? null : session.toMap());
+        status.put("history", new ArrayList<>(history));
+        return status;
+    }
+
+    /**
+     * 后台加载并校验候选模型，成功后进入影子期；模型服务校验未通过（422）时记录为rejected
+     */
+    private void loadCandidate(Path path, String version) {
+        try {
+            JsonNode result = pythonModelService.loadModelVersion(version, path.toAbsolutePath().toString());
+            if (!result.path("success").asBoolean(false)) {
+                logger.warn("候选模型校验未通过: version={}, 校验结果: {}", version, result.path("validation"));
+                recordHistory(version, "rejected", "模型校验未通过: " + result.path("validation"));
+                return;
+            }
+
+            ShadowSession previous = shadow;
+            shadow = new ShadowSession(version);
+            if (previous != null) {
+                unloadQuietly(previous.version);
+                recordHistory(previous.version, "superseded", "被更新的候选版本替代");
+            }
+            recordHistory(version, "shadow", "加载成功，进入影子期: " + result.path("validation"));
+            logger.info("候选模型进入影子期: version={}, 影子期={}ms", version, shadowDurationMs);
+        } catch (IOException | IllegalStateException e) {
+            logger.error("加载候选模型失败: version={}, 错误: {}", version, e.getMessage());
+            recordHistory(version, "failed", e.getMessage());
+        }
+    }
+
+    /**
+     * 使用候选模型对同一批节点评分，统计延迟与相对差异
+     */
+    private void scoreShadow(ShadowSession session, int timePoint, Map<Integer, Double> activeVolumes) {
+        long start = System.nanoTime();
+        try {
+            Map<Integer, Double> candidateVolumes = pythonModelService.predictVolumesBatch(
+                    new ArrayList<>(activeVolumes.keySet()), timePoint, session.version);
+            session.candidateLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+
+            candidateVolumes.forEach((nodeId, candidate) -> {
+                double active = activeVolumes.get(nodeId);
+                double diff = Math.abs(candidate - active);
+                session.absDiffSum.add(diff);
+                session.relDiffSum.add(diff / Math.max(active, 1.0));
+                session.maxAbsDiff.accumulate(diff);
+                session.samples.increment();
+            });
+        } catch (IOException | IllegalStateException e) {
+            session.failures.increment();
+            logger.debug("影子评分失败: version={}, 错误: {}", session.version, e.getMessage());
+        }
+    }
+
+    /**
+     * 影子期结束后根据差异决定切换或拒绝候选版本
+     */
+    private void concludeShadowIfDue() {
+        ShadowSession session = shadow;
+        if (session == null || System.currentTimeMillis() - session.startedAt < shadowDurationMs) {
+            return;
+        }
+        if (session.samples.sum() < shadowMinSamples) {
+            logger.debug("影子期样本不足，继续观察: version={}, 样本数={}", session.version, session.samples.sum());
+            return;
+        }
+
+        double divergence = session.meanRelativeDivergence();
+        if (divergence <= maxDivergence) {
+            try {
+                promote(session);
+            } catch (IOException | IllegalStateException e) {
+                // 已记录失败，候选版本保留在影子期，下次检查时重试
+            }
+        } else {
+            shadow = null;
+            unloadQuietly(session.version);
+            recordHistory(session.version, "rejected",
+                    String.format("平均相对差异%.4f超过阈值%.4f", divergence, maxDivergence));
+            logger.warn("候选模型差异过大，已拒绝: version={}, 平均相对差异={}", session.version, divergence);
+        }
+    }
+
+    /**
+     * 原子切换生效版本，并通知缓存等组件
+     * @return 是否已切换；候选版本已不是当前影子版本时返回false
+     * @throws IOException 模型服务切换失败，失败记录已写入变更历史
+     */
+    private synchronized boolean promote(ShadowSession session) throws IOException {
+        if (shadow != session) {
+            return false;
+        }
+        try {
+            pythonModelService.promoteModelVersion(session.version);
+        } catch (IOException | IllegalStateException e) {
+            logger.error("切换模型版本失败: version={}, 错误: {}", session.version, e.getMessage());
+            recordHistory(session.version, "failed", "切换失败: " + e.getMessage());
+            throw e;
+        }
+        shadow = null;
+        String previous = activeVersion.getAndSet(session.version);
+        recordHistory(session.version, "promoted", "替换版本 " + previous);
+        logger.info("模型版本已切换: {} -> {}", previous, session.version);
+        eventPublisher.publishEvent(new ModelVersionPromotedEvent(previous, session.version));
+        return true;
+    }
+
+    private void unloadQuietly(String version) {
+        try {
+            pythonModelService.unloadModelVersion(version);
+        } catch (IOException | IllegalStateException e) {
+            logger.debug("卸载模型版本失败: version={}, 错误: {}", version, e.getMessage());
+        }
+    }
+
+    private Map<Path, Long> scanModelFiles() {
+        Map<Path, Long> files = new HashMap<>();
+        Path dir = Paths.get(modelDir);
+        if (!Files.isDirectory(dir)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.json")) {
+            for (Path path : stream) {
+                files.put(path, Files.getLastModifiedTime(path).toMillis());
+            }
+        } catch (IOException e) {
+            logger.warn("扫描模型目录失败: dir={}, 错误: {}", modelDir, e.getMessage());
+        }
+        return files;
+    }
+
+    private String buildVersion(Path path, long modified) {
+        String fileName = path.getFileName().toString();
+        String baseName = fileName.substring(0, fileName.length() - ".json".length());
+        return baseName + "-" + VERSION_FORMATTER.format(Instant.ofEpochMilli(modified));
+    }
+
+    private void recordHistory(String version, String state, String message) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("version", version);
+        record.put("state", state);
+        record.put("message", message);
+        record.put("timestamp", System.currentTimeMillis());
+        history.addFirst(record);
+        while (history.size() > 20) {
+            history.pollLast();
+        }
+    }
+
+    private boolean isWatching() {
+        return modelDir != null && !modelDir.isBlank();
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 内部类：一个候选版本的影子期统计
+     */
+    private static class ShadowSession {
+        final String version;
+        final long startedAt = System.currentTimeMillis();
+        final Histogram activeLatency = new Histogram("us", 1000, 2000, 5000, 10000, 20000, 50000, 100000, 500000);
+        final Histogram candidateLatency = new Histogram("us", 1000, 2000, 5000, 10000, 20000, 50000, 100000, 500000);
+        final LongAdder samples = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final DoubleAdder absDiffSum = new DoubleAdder();
+        final DoubleAdder relDiffSum = new DoubleAdder();
+        final DoubleAccumulator maxAbsDiff = new DoubleAccumulator(Math::max, 0.0);
+
+        ShadowSession(String version) {
+            this.version = version;
+        }
+
+        double meanRelativeDivergence() {
+            long n = samples.sum();
+            return n == 0 ? 0.0 : relDiffSum.sum() / n;
+        }
+
+        Map<String, Object> toMap() {
+            long n = samples.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("version", version);
+            map.put("startedAt", startedAt);
+            map.put("samples", n);
+            map.put("failures", failures.sum());
+            map.put("meanAbsoluteDivergence", n == 0 ? 0.0 : absDiffSum.sum() / n);
+            map.put("meanRelativeDivergence", meanRelativeDivergence());
+            map.put("maxAbsoluteDivergence", maxAbsDiff.get());
+            map.put("activeLatency", activeLatency.snapshot());
+            map.put("candidateLatency", candidateLatency.snapshot());
+            return map;
+        }
+    }
+}
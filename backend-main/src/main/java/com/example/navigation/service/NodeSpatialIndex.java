@@ -0,0 +1,192 @@
+package com.example.navigation.service;
+
+import com.example.navigation.event.NodesChangedEvent;
+import com.example.navigation.model.projection.NodeCoordinateView;
+import com.example.navigation.repository.NodeRepository;
+import com.example.navigation.util.BoundingBox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 节点空间索引
+ * 将节点坐标解析为double数组，并按固定经纬度间隔划分的均匀网格建立索引，
+ * 范围查询只访问与范围相交的网格单元，代价与视口内的节点数成正比。
+ * 收到节点变更事件后标记过期，下次查询时重建
+ */
+@Service
+public class NodeSpatialIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeSpatialIndex.class);
+
+    private final NodeRepository nodeRepository;
+
+    @Value("${map.spatial-index.cell-degrees:0.01}")
+    private double cellDegrees;
+
+    private volatile Snapshot snapshot;
+    // 每次失效递增，构建期间发生的失效会使构建结果立即过期
+    private final AtomicLong generation = new AtomicLong();
+
+    public NodeSpatialIndex(NodeRepository nodeRepository) {
+        this.nodeRepository = nodeRepository;
+    }
+
+    /**
+     * 节点变更后标记索引过期
+     */
+    @EventListener
+    public void onNodesChanged(NodesChangedEvent event) {
+        invalidate();
+    }
+
+    /**
+     * 标记索引过期
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * 遍历范围内的节点
+     */
+    public void query(BoundingBox bbox, NodeVisitor visitor) {
+        Snapshot current = current();
+        long minX = cellOf(bbox.getWest()), maxX = cellOf(bbox.getEast());
+        long minY = cellOf(bbox.getSouth()), maxY = cellOf(bbox.getNorth());
+        // 按double计算范围覆盖的网格数，超大范围不会溢出成很小的值
+        double rangeCells = ((double) maxX - minX + 1) * ((double) maxY - minY + 1);
+        if (rangeCells <= current.cells.size()) {
+            for (long cx = minX; cx <= maxX; cx++) {
+                for (long cy = minY; cy <= maxY; cy++) {
+                    visitCell(current, current.cells.get(packKey(cx, cy)), bbox, visitor);
+                }
+            }
+        } else {
+            // 范围覆盖的网格数多于有节点的网格数时，改为遍历有节点的网格
+            for (Map.Entry<Long, int[]> cell : current.cells.entrySet()) {
+                long cx = cell.getKey() >> 32, cy = (int) (long) cell.getKey();
+                if (cx >= minX && cx <= maxX && cy >= minY && cy <= maxY) {
+                    visitCell(current, cell.getValue(), bbox, visitor);
+                }
+            }
+        }
+    }
+
+    /**
+     * 遍历全部节点
+     */
+    public void forEach(NodeVisitor visitor) {
+        Snapshot current = current();
+        for (int i = 0; i < current.ids.length; i++) {
+            visitor.visit(current.ids[i], current.lats[i], current.lngs[i]);
+        }
+    }
+
+    /**
+     * 获取节点坐标{纬度, 经度}，节点不存在时返回null
+     */
+    public double[] getCoordinates(int nodeId) {
+        Snapshot current = current();
+        Integer index = current.indexById.get(nodeId);
+        return index == null ? null : new double[]{current.lats[index], current.lngs[index]};
+    }
+
+    public int size() {
+        return current().ids.length;
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null || current.generation != generation.get()) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null || current.generation != generation.get()) {
+                    current = build(generation.get());
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Snapshot build(long buildGeneration) {
+        long start = System.currentTimeMillis();
+        List<NodeCoordinateView> nodes = nodeRepository.findAllCoordinates();
+        int[] ids = new int[nodes.size()];
+        double[] lats = new double[nodes.size()];
+        double[] lngs = new double[nodes.size()];
+        int count = nodes.size();
+        for (int i = 0; i < count; i++) {
+            NodeCoordinateView node = nodes.get(i);
+            ids[i] = node.nodeId();
+            lats[i] = node.latitude();
+            lngs[i] = node.longitude();
+        }
+
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+        Map<Integer, Integer> indexById = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            buckets.computeIfAbsent(packKey(cellOf(lngs[i]), cellOf(lats[i])), k -> new ArrayList<>()).add(i);
+            indexById.put(ids[i], i);
+        }
+        Map<Long, int[]> cells = new HashMap<>(buckets.size() * 2);
+        buckets.forEach((key, members) -> cells.put(key, members.stream().mapToInt(Integer::intValue).toArray()));
+
+        logger.info("节点空间索引构建完成: 节点数={}, 网格数={}, 耗时{}ms", count, cells.size(), System.currentTimeMillis() - start);
+        return new Snapshot(buildGeneration, ids, lats, lngs, cells, indexById);
+    }
+
+    private static void visitCell(Snapshot snapshot, int[] members, BoundingBox bbox, NodeVisitor visitor) {
+        if (members == null) {
+            return;
+        }
+        for (int i : members) {
+            if (bbox.contains(snapshot.lats[i], snapshot.lngs[i])) {
+                visitor.visit(snapshot.ids[i], snapshot.lats[i], snapshot.lngs[i]);
+            }
+        }
+    }
+
+    private long cellOf(double degrees) {
+        return (long) Math.floor(degrees / cellDegrees);
+    }
+
+    private static long packKey(long x, long y) {
+        return (x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 节点遍历回调
+     */
+    @FunctionalInterface
+    public interface NodeVisitor {
+        void visit(int nodeId, double lat, double lng);
+    }
+
+    /**
+     * 内部类：不可变的索引快照
+     */
+    private static class Snapshot {
+        final long generation;
+        final int[] ids;
+        final double[] lats;
+        final double[] lngs;
+        final Map<Long, int[]> cells;
+        final Map<Integer, Integer> indexById;
+
+        Snapshot(long generation, int[] ids, double[] lats, double[] lngs, Map<Long, int[]> cells, Map<Integer, Integer> indexById) {
+            this.generation = generation;
+            this.ids = ids;
+            this.lats = lats;
+            this.lngs = lngs;
+            this.cells = cells;
+            this.indexById = indexById;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.navigation.service;
+
+import com.example.navigation.util.Histogram;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 预测请求微批收集器
+ * 位于PythonModelService之前，将并发路径搜索在短时间窗口内提交的(节点, 小时)预测请求
+ * 去重后合并为一次批量调用，再统一完成所有等待中的Future
+ */
+@Service
+public class PredictionBatchCollector {
+
+    private static final Logger logger = LoggerFactory.getLogger(PredictionBatchCollector.class);
+
+    private final PythonModelService pythonModelService;
+    private final ModelRegistry modelRegistry;
+
+    @Value("${model.batch.max-wait-ms:2}")
+    private long maxWaitMs;
+
+    @Value("${model.batch.max-size:64}")
+    private int maxBatchSize;
+
+    @Value("${model.batch.dispatch-threads:4}")
+    private int dispatchThreads;
+
+    @Value("${model.service.timeout:5000}")
+    private long timeoutMs;
+
+    // 等待中的请求，key为打包后的(小时, 节点)，相同key的并发请求共享同一个Future
+    private final ConcurrentHashMap<Long, PendingPrediction> pending = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<Long> queue = new LinkedBlockingQueue<>();
+
+    // 每批去重后的key数量、每批合并的原始请求数量、请求在窗口中的等待时间
+    private final Histogram batchSizeHistogram = new Histogram("keys", 1, 2, 4, 8, 16, 32, 64, 128, 256);
+    private final Histogram batchRequestHistogram = new Histogram("requests", 1, 2, 4, 8, 16, 32, 64, 128, 256, 512);
+    private final Histogram waitTimeHistogram = new Histogram("us", 50, 100, 250, 500, 1000, 2000, 5000, 10000, 50000);
+
+    private Thread collectorThread;
+    private ExecutorService dispatchExecutor;
+    private volatile boolean running;
+
+    public PredictionBatchCollector(PythonModelService pythonModelService, ModelRegistry modelRegistry) {
+        this.pythonModelService = pythonModelService;
+        this.modelRegistry = modelRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        dispatchExecutor = Executors.newFixedThreadPool(dispatchThreads, runnable -> {
+            Thread thread = new Thread(runnable, "prediction-batch-dispatch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        collectorThread = new Thread(this::collectLoop, "prediction-batch-collector");
+        collectorThread.setDaemon(true);
+        collectorThread.start();
+        logger.info("预测微批收集器已启动: 窗口={}ms, 最大批大小={}", maxWaitMs, maxBatchSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        collectorThread.interrupt();
+        dispatchExecutor.shutdownNow();
+        pending.values().forEach(p -> p.future.cancel(false));
+        pending.clear();
+    }
+
+    /**
+     * 异步提交一个预测请求
+     * @param nodeId 节点ID
+     * @param timePoint 时间点（0-23小时格式）
+     * @return 预测流量的Future
+     */
+    public CompletableFuture<Double> submit(int nodeId, int timePoint) {
+        long key = packKey(nodeId, timePoint);
+        PendingPrediction prediction = pending.get(key);
+        if (prediction != null) {
+            prediction.requests++;
+            return prediction.future;
+        }
+
+        PendingPrediction created = new PendingPrediction();
+        prediction = pending.putIfAbsent(key, created);
+        if (prediction != null) {
+            prediction.requests++;
+            return prediction.future;
+        }
+        queue.add(key);
+        return created.future;
+    }
+
+    /**
+     * 同步预测单个节点流量，超时或失败时抛出IllegalStateException
+     */
+    public double predictVolume(int nodeId, int timePoint) {
+        try {
+            return submit(nodeId, timePoint).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待预测结果时被中断", e);
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("微批预测失败: nodeId={}, timePoint={}, 错误: {}", nodeId, timePoint, e.toString());
+            throw new IllegalStateException("预测失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 同步预测多个节点在同一时间点的流量
+     */
+    public Map<Integer, Double> predictVolumes(List<Integer> nodeIds, int timePoint) {
+        Map<Integer, CompletableFuture<Double>> futures = new LinkedHashMap<>();
+        for (Integer nodeId : nodeIds) {
+            futures.computeIfAbsent(nodeId, id -> submit(id, timePoint));
+        }
+        try {
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                    .get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待批量预测结果时被中断", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("批量预测失败: " + e.getMessage(), e);
+        }
+
+        Map<Integer, Double> results = new LinkedHashMap<>();
+        futures.forEach((nodeId, future) -> results.put(nodeId, future.join()));
+        return results;
+    }
+
+    /**
+     * 获取批处理统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxWaitMs", maxWaitMs);
+        stats.put("maxBatchSize", maxBatchSize);
+        stats.put("pending", pending.size());
+        stats.put("batchSize", batchSizeHistogram.snapshot());
+        stats.put("requestsPerBatch", batchRequestHistogram.snapshot());
+        stats.put("waitTime", waitTimeHistogram.snapshot());
+        return stats;
+    }
+
+    /**
+     * 收集循环：阻塞等待第一个请求，然后在窗口期内继续收集，直到超时或达到最大批大小
+     */
+    private void collectLoop() {
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        while (running) {
+            try {
+                Long first = queue.take();
+                List<Long> keys = new ArrayList<>(maxBatchSize);
+                keys.add(first);
+
+                long deadline = System.nanoTime() + windowNanos;
+                while (keys.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Long next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    keys.add(next);
+                }
+                queue.drainTo(keys, maxBatchSize - keys.size());
+
+                dispatch(keys);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("预测微批收集循环发生错误: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 将一批key从等待表中摘下，按时间点分组后交给派发线程执行批量调用
+     */
+    private void dispatch(List<Long> keys) {
+        long now = System.nanoTime();
+        Map<Integer, Map<Integer, PendingPrediction>> byTimePoint = new HashMap<>();
+        int requests = 0;
+        for (Long key : keys) {
+            PendingPrediction prediction = pending.remove(key);
+            if (prediction == null) {
+                continue;
+            }
+            requests += prediction.requests;
+            waitTimeHistogram.record(TimeUnit.NANOSECONDS.toMicros(now - prediction.enqueuedAt));
+            byTimePoint.computeIfAbsent(unpackTimePoint(key), t -> new LinkedHashMap<>())
+                    .put(unpackNodeId(key), prediction);
+        }
+        batchSizeHistogram.record(keys.size());
+        batchRequestHistogram.record(requests);
+
+        byTimePoint.forEach((timePoint, predictions) -> dispatchExecutor.execute(() -> {
+            try {
+                long start = System.nanoTime();
+                // 使用失败即抛出的批量接口：失败结果以异常完成Future，不会被当作真实预测缓存
+                Map<Integer, Double> volumes = pythonModelService.predictVolumesBatch(
+                        new ArrayList<>(predictions.keySet()), timePoint, null);
+                // 影子期内按采样率用候选模型对同一批请求评分
+                modelRegistry.recordActiveBatch(timePoint, volumes, System.nanoTime() - start);
+                predictions.forEach((nodeId, prediction) -> {
+                    Double volume = volumes.get(nodeId);
+                    if (volume != null) {
+                        prediction.future.complete(volume);
+                    } else {
+                        prediction.future.completeExceptionally(
+                                new IllegalStateException("模型服务未返回节点" + nodeId + "的预测值"));
+                    }
+                });
+            } catch (Exception e) {
+                logger.warn("批量预测调用失败: timePoint={}, 节点数={}, 错误: {}",
+                           timePoint, predictions.size(), e.getMessage());
+                predictions.values().forEach(prediction -> prediction.future.completeExceptionally(e));
+            }
+        }));
+    }
+
+    private static long packKey(int nodeId, int timePoint) {
+        return ((long) timePoint << 32) | (nodeId & 0xFFFFFFFFL);
+    }
+
+    private static int unpackNodeId(long key) {
+        return (int) key;
+    }
+
+    private static int unpackTimePoint(long key) {
+        return (int) (key >>> 32);
+    }
+
+    /**
+     * 内部类：一个等待中的(节点, 小时)预测
+     */
+    private static class PendingPrediction {
+        final CompletableFuture<Double> future = new CompletableFuture<>();
+        final long enqueuedAt = System.nanoTime();
+        volatile int requests = 1; // 合并到该key上的请求数（仅用于统计，允许轻微误差）
+    }
+}
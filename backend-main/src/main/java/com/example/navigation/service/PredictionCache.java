@@ -0,0 +1,306 @@
+package com.example.navigation.service;
+
+import com.example.navigation.event.ModelVersionPromotedEvent;
+import com.example.navigation.util.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 流量预测缓存
+ * 位于预测微批收集器之前，按(节点, 小时)缓存预测结果：
+ * - 每个条目有TTL，过期后重新加载
+ * - 条目数量有上限，超限时优先淘汰访问频率最低的条目
+ * - 热点条目在接近过期时提前异步刷新，刷新期间继续返回旧值
+ * - 同一key的并发未命中只触发一次加载
+ * - 模型版本切换后旧版本条目标记为过期，访问时继续返回旧值并在后台重新加载，避免切换瞬间的加载风暴
+ */
+@Service
+public class PredictionCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PredictionCache.class);
+
+    private final PredictionBatchCollector predictionBatchCollector;
+
+    @Value("${model.cache.ttl-ms:300000}")
+    private long ttlMs;
+
+    @Value("${model.cache.max-size:100000}")
+    private int maxSize;
+
+    @Value("${model.cache.refresh-ahead-ratio:0.8}")
+    private double refreshAheadRatio;
+
+    @Value("${model.cache.hot-threshold:3}")
+    private int hotThreshold;
+
+    @Value("${model.service.timeout:5000}")
+    private long timeoutMs;
+
+    private final ConcurrentHashMap<Long, CacheEntry> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    // 模型代数，版本切换时递增，旧代数的条目视为过期
+    private volatile int generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final Histogram loadLatencyHistogram = new Histogram("us", 500, 1000, 2000, 5000, 10000, 20000, 50000, 100000, 500000);
+
+    public PredictionCache(PredictionBatchCollector predictionBatchCollector) {
+        this.predictionBatchCollector = predictionBatchCollector;
+    }
+
+    /**
+     * 异步获取预测流量
+     * @param nodeId 节点ID
+     * @param timePoint 时间点（0-23小时格式）
+     */
+    public CompletableFuture<Double> getAsync(int nodeId, int timePoint) {
+        long key = packKey(nodeId, timePoint);
+        long now = System.currentTimeMillis();
+
+        CacheEntry entry = entries.get(key);
+        if (entry != null && !entry.isExpired(now, ttlMs)) {
+            hits.increment();
+            entry.frequency.incrementAndGet();
+            if (entry.generation != generation || shouldRefreshAhead(entry, now)) {
+                refreshAhead(key, entry);
+            }
+            return entry.future;
+        }
+
+        CacheEntry created = new CacheEntry(now, generation);
+        CacheEntry current = entries.compute(key, (k, existing) ->
+                existing != null && !existing.isExpired(now, ttlMs) ? existing : created.inheritFrequency(existing));
+        if (current != created) {
+            // 其他线程已经加载或正在加载，共享其结果
+            hits.increment();
+            current.frequency.incrementAndGet();
+            return current.future;
+        }
+
+        misses.increment();
+        load(key, created, created.future);
+        evictIfNeeded();
+        return created.future;
+    }
+
+    /**
+     * 同步获取预测流量
+     */
+    public double get(int nodeId, int timePoint) {
+        try {
+            return getAsync(nodeId, timePoint).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待预测结果时被中断", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("预测失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 同步获取多个节点在同一时间点的预测流量，未命中的key会合并进同一个微批
+     */
+    public Map<Integer, Double> getAll(List<Integer> nodeIds, int timePoint) {
+        Map<Integer, CompletableFuture<Double>> futures = new LinkedHashMap<>();
+        for (Integer nodeId : nodeIds) {
+            futures.computeIfAbsent(nodeId, id -> getAsync(id, timePoint));
+        }
+        try {
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                    .get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待批量预测结果时被中断", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("批量预测失败: " + e.getMessage(), e);
+        }
+
+        Map<Integer, Double> results = new LinkedHashMap<>();
+        futures.forEach((nodeId, future) -> results.put(nodeId, future.join()));
+        return results;
+    }
+
+    /**
+     * 清空缓存（加载新模型版本后调用）
+     */
+    public void invalidateAll() {
+        int size = entries.size();
+        entries.clear();
+        invalidations.increment();
+        logger.info("预测缓存已清空: 清除条目数={}", size);
+    }
+
+    /**
+     * 新模型版本生效后，将现有条目标记为旧版本结果
+     * 与invalidateAll不同，旧值在重新加载完成前继续提供服务
+     */
+    @EventListener
+    public void onModelVersionPromoted(ModelVersionPromotedEvent event) {
+        generation++;
+        invalidations.increment();
+        logger.info("模型版本切换为{}，预测缓存条目已标记为过期: 条目数={}", event.getActiveVersion(), entries.size());
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long requests = hitCount + missCount;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", entries.size());
+        stats.put("maxSize", maxSize);
+        stats.put("ttlMs", ttlMs);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", requests == 0 ? 0.0 : (double) hitCount / requests);
+        stats.put("loadFailures", loadFailures.sum());
+        stats.put("refreshes", refreshes.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("generation", generation);
+        stats.put("loadLatency", loadLatencyHistogram.snapshot());
+        return stats;
+    }
+
+    private boolean shouldRefreshAhead(CacheEntry entry, long now) {
+        return entry.future.isDone()
+                && entry.frequency.get() >= hotThreshold
+                && now - entry.loadedAt >= (long) (ttlMs * refreshAheadRatio)
+                && !entry.refreshing.get();
+    }
+
+    /**
+     * 热点条目提前刷新：新值加载完成后替换旧条目，加载期间继续返回旧值。
+     * 新条目标记为开始加载时的模型代数，加载期间切换了模型版本时，结果仍视为旧版本，下次访问会再次刷新
+     */
+    private void refreshAhead(long key, CacheEntry entry) {
+        if (!entry.future.isDone() || !entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        refreshes.increment();
+        int loadGeneration = generation;
+        CompletableFuture<Double> refreshed = new CompletableFuture<>();
+        refreshed.whenComplete((volume, error) -> {
+            if (error == null) {
+                CacheEntry replacement = new CacheEntry(System.currentTimeMillis(), loadGeneration).inheritFrequency(entry);
+                replacement.future.complete(volume);
+                entries.replace(key, entry, replacement);
+            } else {
+                entry.refreshing.set(false);
+            }
+        });
+        load(key, entry, refreshed);
+    }
+
+    private void load(long key, CacheEntry entry, CompletableFuture<Double> target) {
+        long start = System.nanoTime();
+        predictionBatchCollector.submit(unpackNodeId(key), unpackTimePoint(key)).whenComplete((volume, error) -> {
+            loadLatencyHistogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            if (error != null) {
+                loadFailures.increment();
+                // 失败结果不缓存，下次访问重新加载
+                if (target == entry.future) {
+                    entries.remove(key, entry);
+                }
+                target.completeExceptionally(error);
+            } else {
+                target.complete(volume);
+            }
+        });
+    }
+
+    /**
+     * 超过容量时淘汰：先淘汰过期条目，再按访问频率从低到高淘汰，
+     * 并将所有条目的频率减半，使历史热点逐渐老化
+     */
+    private void evictIfNeeded() {
+        if (entries.size() <= maxSize || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            int target = Math.max(0, (int) (maxSize * 0.9));
+            List<Map.Entry<Long, CacheEntry>> candidates = new ArrayList<>(entries.size());
+            for (Map.Entry<Long, CacheEntry> e : entries.entrySet()) {
+                if (e.getValue().isExpired(now, ttlMs)) {
+                    if (entries.remove(e.getKey(), e.getValue())) {
+                        evictions.increment();
+                    }
+                } else {
+                    candidates.add(e);
+                }
+            }
+
+            int excess = entries.size() - target;
+            if (excess > 0) {
+                candidates.sort(Comparator.comparingInt(e -> e.getValue().frequency.get()));
+                for (int i = 0; i < candidates.size() && excess > 0; i++) {
+                    Map.Entry<Long, CacheEntry> e = candidates.get(i);
+                    if (e.getValue().future.isDone() && entries.remove(e.getKey(), e.getValue())) {
+                        evictions.increment();
+                        excess--;
+                    }
+                }
+            }
+            entries.values().forEach(e -> e.frequency.updateAndGet(f -> f >> 1));
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static long packKey(int nodeId, int timePoint) {
+        return ((long) timePoint << 32) | (nodeId & 0xFFFFFFFFL);
+    }
+
+    private static int unpackNodeId(long key) {
+        return (int) key;
+    }
+
+    private static int unpackTimePoint(long key) {
+        return (int) (key >>> 32);
+    }
+
+    /**
+     * 内部类：缓存条目
+     */
+    private static class CacheEntry {
+        final CompletableFuture<Double> future = new CompletableFuture<>();
+        final long loadedAt;                                   // 加载时间戳(毫秒)
+        final int generation;                                  // 加载时的模型代数
+        final AtomicInteger frequency = new AtomicInteger(1);  // 访问频率
+        final AtomicBoolean refreshing = new AtomicBoolean();  // 是否正在提前刷新
+
+        CacheEntry(long loadedAt, int generation) {
+            this.loadedAt = loadedAt;
+            this.generation = generation;
+        }
+
+        boolean isExpired(long now, long ttlMs) {
+            return future.isDone() && now - loadedAt >= ttlMs;
+        }
+
+        CacheEntry inheritFrequency(CacheEntry previous) {
+            if (previous != null) {
+                frequency.set(Math.max(1, previous.frequency.get()));
+            }
+            return this;
+        }
+    }
+}
@@ -2,11 +2,20 @@ package com.example.navigation.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +25,10 @@ import org.springframework.stereotype.Service;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Python机器学习模型服务类
@@ -32,8 +45,44 @@ public class PythonModelService {
     @Value("${model.service.timeout:5000}")
     private int timeout;
 
+    @Value("${model.service.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${model.service.availability-cache-ms:5000}")
+    private long availabilityCacheMs;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    // 共享的连接池客户端，所有请求都受连接、读取和取连接超时约束
+    private CloseableHttpClient httpClient;
+
+    // 可用性检查结果缓存，避免路径搜索中每条边都发起一次探测请求
+    private volatile boolean lastAvailable;
+    private volatile long lastAvailabilityCheck;
+
+    @PostConstruct
+    public void init() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeout)
+                .setSocketTimeout(timeout)
+                .setConnectionRequestTimeout(timeout)
+                .build();
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
     /**
      * 预测指定节点在指定时间的流量
      * @param nodeId 节点ID
@@ -43,7 +92,7 @@ public class PythonModelService {
     public double predictVolume(int nodeId, int timePoint) {
         logger.debug("开始预测节点流量: nodeId={}, timePoint={}", nodeId, timePoint);
         
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+        try {
             URI uri = new URIBuilder(modelServiceUrl + "/predict")
                     .setParameter("node", String.valueOf(nodeId))
                     .setParameter("time", String.valueOf(timePoint))
@@ -77,30 +126,110 @@ public class PythonModelService {
 
     /**
      * 批量预测多个节点的流量
+     * 通过一次 /predict/batch 调用完成，模型服务未返回的节点使用默认值
      * @param nodeIds 节点ID列表
      * @param timePoint 时间点
      * @return 节点ID到流量值的映射
      */
-    public java.util.Map<Integer, Double> predictVolumesBatch(java.util.List<Integer> nodeIds, int timePoint) {
+    public Map<Integer, Double> predictVolumesBatch(List<Integer> nodeIds, int timePoint) {
         logger.debug("开始批量预测节点流量: nodeIds={}, timePoint={}", nodeIds, timePoint);
         
-        java.util.Map<Integer, Double> results = new java.util.HashMap<>();
-        
-        for (Integer nodeId : nodeIds) {
-            double volume = predictVolume(nodeId, timePoint);
-            results.put(nodeId, volume);
+        Map<Integer, Double> results = new HashMap<>();
+        if (nodeIds == null || nodeIds.isEmpty()) {
+            return results;
         }
+
+        try {
+            results.putAll(predictVolumesBatch(nodeIds, timePoint, null));
+        } catch (IOException | IllegalStateException e) {
+            logger.error("调用Python模型服务批量预测时发生错误: 节点数={}, timePoint={}, 错误: {}", 
+                        nodeIds.size(), timePoint, e.getMessage());
+        }
+        // 模型服务未返回的节点使用默认值
+        nodeIds.forEach(nodeId -> results.putIfAbsent(nodeId, getDefaultVolume()));
         
         logger.debug("批量预测完成，预测了{}个节点的流量", results.size());
         return results;
     }
 
+    /**
+     * 使用指定模型版本批量预测节点流量，失败时抛出异常而不是回退默认值
+     * @param nodeIds 节点ID列表
+     * @param timePoint 时间点
+     * @param version 模型版本，为null时使用当前生效版本
+     * @return 节点ID到流量值的映射（只包含模型服务返回的节点）
+     */
+    public Map<Integer, Double> predictVolumesBatch(List<Integer> nodeIds, int timePoint, String version) throws IOException {
+        ObjectNode requestBody = objectMapper.createObjectNode();
+        ArrayNode nodeIdArray = requestBody.putArray("nodeIds");
+        nodeIds.forEach(nodeIdArray::add);
+        requestBody.put("timePoint", timePoint);
+        if (version != null) {
+            requestBody.put("version", version);
+        }
+
+        JsonNode predictions = postJson("/predict/batch", requestBody).path("predictions");
+        Map<Integer, Double> results = new HashMap<>();
+        for (Integer nodeId : nodeIds) {
+            JsonNode volume = predictions.get(String.valueOf(nodeId));
+            if (volume != null) {
+                results.put(nodeId, Math.max(volume.asDouble(), 1.0));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 让Python模型服务加载一个候选模型版本（加载后会在服务端校验，但不会生效）
+     * @param version 版本号
+     * @param modelPath 模型文件的绝对路径
+     * @return 服务端返回的校验结果，校验未通过（422）时success为false
+     */
+    public JsonNode loadModelVersion(String version, String modelPath) throws IOException {
+        ObjectNode requestBody = objectMapper.createObjectNode();
+        requestBody.put("version", version);
+        requestBody.put("path", modelPath);
+        return postJson("/models/load", requestBody, 200, 422);
+    }
+
+    /**
+     * 原子切换Python模型服务当前生效的模型版本
+     */
+    public void promoteModelVersion(String version) throws IOException {
+        ObjectNode requestBody = objectMapper.createObjectNode();
+        requestBody.put("version", version);
+        postJson("/models/promote", requestBody);
+    }
+
+    /**
+     * 卸载一个未生效的模型版本
+     */
+    public void unloadModelVersion(String version) throws IOException {
+        ObjectNode requestBody = objectMapper.createObjectNode();
+        requestBody.put("version", version);
+        postJson("/models/unload", requestBody);
+    }
+
     /**
      * 检查Python模型服务是否可用
+     * 检查结果缓存一段时间，模型服务变慢或宕机时不会让每次调用都等待一次探测
      * @return 服务是否可用
      */
     public boolean isServiceAvailable() {
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+        long now = System.currentTimeMillis();
+        if (now - lastAvailabilityCheck < availabilityCacheMs) {
+            return lastAvailable;
+        }
+        lastAvailable = checkServiceAvailability();
+        lastAvailabilityCheck = System.currentTimeMillis();
+        return lastAvailable;
+    }
+
+    /**
+     * 发送探测请求检查模型服务可用性
+     */
+    private boolean checkServiceAvailability() {
+        try {
             // 发送一个简单的预测请求来测试服务
             URI uri = new URIBuilder(modelServiceUrl + "/predict")
                     .setParameter("node", "1")
@@ -127,6 +256,51 @@ public class PythonModelService {
         }
     }
 
+    /**
+     * 通知Python模型服务重新加载模型文件
+     * @return 是否重载成功
+     */
+    public boolean reloadModel() {
+        try {
+            HttpPost httpPost = new HttpPost(modelServiceUrl + "/reload");
+            try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                EntityUtils.consume(response.getEntity());
+                if (statusCode != 200) {
+                    logger.warn("模型重载失败，状态码: {}", statusCode);
+                }
+                return statusCode == 200;
+            }
+        } catch (IOException e) {
+            logger.error("调用Python模型服务重载接口时发生错误: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 向模型服务发送JSON POST请求，非200状态码视为失败
+     */
+    private JsonNode postJson(String path, ObjectNode requestBody) throws IOException {
+        return postJson(path, requestBody, 200);
+    }
+
+    /**
+     * 向模型服务发送JSON POST请求，不在acceptedStatusCodes中的状态码视为失败
+     */
+    private JsonNode postJson(String path, ObjectNode requestBody, int... acceptedStatusCodes) throws IOException {
+        HttpPost httpPost = new HttpPost(modelServiceUrl + path);
+        httpPost.setEntity(new StringEntity(objectMapper.writeValueAsString(requestBody), ContentType.APPLICATION_JSON));
+
+        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            String responseBody = EntityUtils.toString(response.getEntity());
+            if (Arrays.stream(acceptedStatusCodes).noneMatch(code -> code == statusCode)) {
+                throw new IllegalStateException("模型服务返回错误状态码: " + statusCode + ", 响应: " + responseBody);
+            }
+            return objectMapper.readTree(responseBody);
+        }
+    }
+
     /**
      * 获取默认流量值（当模型服务不可用时使用）
      * @return 默认流量值
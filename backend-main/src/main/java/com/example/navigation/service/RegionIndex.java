@@ -0,0 +1,399 @@
+package com.example.navigation.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * 区域划分
+ * 把路网图快照中的每个节点预先分配到一个区域，结果为按节点下标的区域下标数组，
+ * 统计服务按下标直接查表，不需要逐条计算坐标。两种划分方式：
+ * grid按经纬度均匀网格，只为含有节点的网格创建区域，区域按编号排序；
+ * polygon从GeoJSON文件加载多边形（如行政区），节点归入文件中第一个包含它的多边形，不在任何多边形内的节点归入“未划分区域”。
+ * 下标在同一快照内稳定；路网变更产生新快照后重新分配
+ */
+@Service
+public class RegionIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegionIndex.class);
+
+    static final String UNASSIGNED_ID = "unassigned";
+
+    private final RoadGraph roadGraph;
+    private final ResourceLoader resourceLoader;
+    private final ObjectMapper objectMapper;
+
+    @Value("${dashboard.regions.mode:grid}")
+    private String mode;
+
+    @Value("${dashboard.regions.cell-degrees:0.05}")
+    private double cellDegrees;
+
+    @Value("${dashboard.regions.polygons-file:}")
+    private String polygonsFile;
+
+    private List<PolygonRegion> polygons = List.of();
+    private volatile Assignment assignment;
+
+    public RegionIndex(RoadGraph roadGraph, ResourceLoader resourceLoader, ObjectMapper objectMapper) {
+        this.roadGraph = roadGraph;
+        this.resourceLoader = resourceLoader;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * polygon方式启动时加载多边形文件，文件缺失或格式错误时启动失败
+     */
+    @PostConstruct
+    public void loadPolygons() {
+        if ("grid".equals(mode)) {
+            return;
+        }
+        if (!"polygon".equals(mode)) {
+            throw new IllegalStateException("不支持的区域划分方式: " + mode + "，可选值: grid, polygon");
+        }
+        if (polygonsFile == null || polygonsFile.isBlank()) {
+            throw new IllegalStateException("区域划分方式为polygon时必须配置dashboard.regions.polygons-file");
+        }
+        Resource resource = resourceLoader.getResource(polygonsFile);
+        try (InputStream input = resource.getInputStream()) {
+            polygons = parsePolygons(objectMapper.readTree(input));
+        } catch (IOException e) {
+            throw new IllegalStateException("读取区域多边形文件失败: " + polygonsFile + ", error=" + e.getMessage(), e);
+        }
+        logger.info("区域多边形加载完成: 文件={}, 区域数={}", polygonsFile, polygons.size());
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * 获取当前路网图快照的区域分配
+     */
+    public Assignment current() {
+        return forGraph(roadGraph.current());
+    }
+
+    /**
+     * 获取指定路网图快照的区域分配，快照变化时重新计算
+     */
+    public Assignment forGraph(RoadGraph.Snapshot graph) {
+        Assignment current = assignment;
+        if (current == null || current.graph != graph) {
+            synchronized (this) {
+                current = assignment;
+                if (current == null || current.graph != graph) {
+                    current = build(graph);
+                    assignment = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Assignment build(RoadGraph.Snapshot graph) {
+        long start = System.currentTimeMillis();
+        Assignment built = "polygon".equals(mode) ? buildPolygons(graph) : buildGrid(graph);
+        logger.info("区域分配完成: 方式={}, 节点数={}, 区域数={}, 耗时{}ms",
+                mode, graph.nodeCount(), built.regionCount(), System.currentTimeMillis() - start);
+        return built;
+    }
+
+    private Assignment buildGrid(RoadGraph.Snapshot graph) {
+        long[] cellOfNode = new long[graph.nodeCount()];
+        TreeMap<Long, double[]> cells = new TreeMap<>();
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            long row = (long) Math.floor(graph.latitude(node) / cellDegrees);
+            long col = (long) Math.floor(graph.longitude(node) / cellDegrees);
+            long key = (row << 32) | (col & 0xFFFFFFFFL);
+            cellOfNode[node] = key;
+            // {纬度和, 经度和, 节点数}
+            double[] sums = cells.computeIfAbsent(key, k -> new double[3]);
+            sums[0] += graph.latitude(node);
+            sums[1] += graph.longitude(node);
+            sums[2]++;
+        }
+
+        List<Region> regions = new ArrayList<>(cells.size());
+        Map<Long, Integer> indexOfCell = new HashMap<>();
+        for (Map.Entry<Long, double[]> entry : cells.entrySet()) {
+            long row = entry.getKey() >> 32;
+            long col = (int) (long) entry.getKey();
+            double[] sums = entry.getValue();
+            indexOfCell.put(entry.getKey(), regions.size());
+            regions.add(new Region(row + ":" + col, row + ":" + col,
+                    row * cellDegrees, col * cellDegrees, (row + 1) * cellDegrees, (col + 1) * cellDegrees,
+                    sums[0] / sums[2], sums[1] / sums[2], (int) sums[2]));
+        }
+        int[] regionOfNode = new int[graph.nodeCount()];
+        for (int node = 0; node < regionOfNode.length; node++) {
+            regionOfNode[node] = indexOfCell.get(cellOfNode[node]);
+        }
+        return new Assignment(graph, regionOfNode, regions);
+    }
+
+    private Assignment buildPolygons(RoadGraph.Snapshot graph) {
+        int unassigned = polygons.size();
+        int[] regionOfNode = new int[graph.nodeCount()];
+        // 每个区域：{纬度和, 经度和, 节点数}，最后一个为未划分区域
+        double[][] sums = new double[polygons.size() + 1][3];
+        for (int node = 0; node < regionOfNode.length; node++) {
+            double lat = graph.latitude(node);
+            double lng = graph.longitude(node);
+            int region = unassigned;
+            for (int i = 0; i < polygons.size(); i++) {
+                if (polygons.get(i).contains(lng, lat)) {
+                    region = i;
+                    break;
+                }
+            }
+            regionOfNode[node] = region;
+            sums[region][0] += lat;
+            sums[region][1] += lng;
+            sums[region][2]++;
+        }
+
+        List<Region> regions = new ArrayList<>(polygons.size() + 1);
+        for (int i = 0; i < polygons.size(); i++) {
+            PolygonRegion polygon = polygons.get(i);
+            double[] s = sums[i];
+            regions.add(new Region(polygon.id, polygon.name, polygon.south, polygon.west, polygon.north, polygon.east,
+                    s[2] > 0 ? s[0] / s[2] : (polygon.south + polygon.north) / 2,
+                    s[2] > 0 ? s[1] / s[2] : (polygon.west + polygon.east) / 2, (int) s[2]));
+        }
+        double[] rest = sums[unassigned];
+        if (rest[2] > 0) {
+            double south = Double.POSITIVE_INFINITY, west = Double.POSITIVE_INFINITY;
+            double north = Double.NEGATIVE_INFINITY, east = Double.NEGATIVE_INFINITY;
+            for (int node = 0; node < regionOfNode.length; node++) {
+                if (regionOfNode[node] == unassigned) {
+                    south = Math.min(south, graph.latitude(node));
+                    north = Math.max(north, graph.latitude(node));
+                    west = Math.min(west, graph.longitude(node));
+                    east = Math.max(east, graph.longitude(node));
+                }
+            }
+            regions.add(new Region(UNASSIGNED_ID, "未划分区域", south, west, north, east,
+                    rest[0] / rest[2], rest[1] / rest[2], (int) rest[2]));
+        }
+        return new Assignment(graph, regionOfNode, regions);
+    }
+
+    /**
+     * 解析GeoJSON FeatureCollection，支持Polygon和MultiPolygon（每个多边形第一个环为外环，其余为洞），
+     * 区域编号取properties.id，缺省时取name，再缺省时取序号
+     */
+    private static List<PolygonRegion> parsePolygons(JsonNode root) {
+        JsonNode features = root.path("features");
+        if (!features.isArray()) {
+            throw new IllegalStateException("区域多边形文件应为GeoJSON FeatureCollection");
+        }
+        List<PolygonRegion> result = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+        for (JsonNode feature : features) {
+            JsonNode properties = feature.path("properties");
+            String name = properties.path("name").asText(null);
+            String id = properties.path("id").asText(name != null ? name : String.valueOf(result.size()));
+            if (!ids.add(id)) {
+                throw new IllegalStateException("区域编号重复: " + id);
+            }
+            JsonNode geometry = feature.path("geometry");
+            String type = geometry.path("type").asText();
+            List<double[][]> rings = new ArrayList<>();
+            List<Boolean> holes = new ArrayList<>();
+            if ("Polygon".equals(type)) {
+                addPolygon(geometry.path("coordinates"), rings, holes);
+            } else if ("MultiPolygon".equals(type)) {
+                for (JsonNode polygon : geometry.path("coordinates")) {
+                    addPolygon(polygon, rings, holes);
+                }
+            } else {
+                throw new IllegalStateException("区域" + id + "的几何类型不受支持: " + type);
+            }
+            result.add(new PolygonRegion(id, name != null ? name : id, rings, holes));
+        }
+        return result;
+    }
+
+    private static void addPolygon(JsonNode polygon, List<double[][]> rings, List<Boolean> holes) {
+        for (int r = 0; r < polygon.size(); r++) {
+            JsonNode ring = polygon.get(r);
+            double[][] points = new double[ring.size()][];
+            for (int i = 0; i < ring.size(); i++) {
+                points[i] = new double[]{ring.get(i).get(0).asDouble(), ring.get(i).get(1).asDouble()};
+            }
+            rings.add(points);
+            holes.add(r > 0);
+        }
+    }
+
+    /**
+     * 内部类：多边形区域，外包矩形用于快速排除
+     */
+    private static final class PolygonRegion {
+        final String id;
+        final String name;
+        final List<double[][]> rings;
+        final List<Boolean> holes;
+        double south = Double.POSITIVE_INFINITY;
+        double west = Double.POSITIVE_INFINITY;
+        double north = Double.NEGATIVE_INFINITY;
+        double east = Double.NEGATIVE_INFINITY;
+
+        PolygonRegion(String id, String name, List<double[][]> rings, List<Boolean> holes) {
+            this.id = id;
+            this.name = name;
+            this.rings = rings;
+            this.holes = holes;
+            for (double[][] ring : rings) {
+                for (double[] point : ring) {
+                    west = Math.min(west, point[0]);
+                    east = Math.max(east, point[0]);
+                    south = Math.min(south, point[1]);
+                    north = Math.max(north, point[1]);
+                }
+            }
+        }
+
+        /**
+         * 射线法判断点是否在区域内：落在奇数个外环内且不在洞内
+         */
+        boolean contains(double lng, double lat) {
+            if (lng < west || lng > east || lat < south || lat > north) {
+                return false;
+            }
+            boolean inside = false;
+            for (int r = 0; r < rings.size(); r++) {
+                if (ringContains(rings.get(r), lng, lat)) {
+                    if (holes.get(r)) {
+                        return false;
+                    }
+                    inside = true;
+                }
+            }
+            return inside;
+        }
+
+        private static boolean ringContains(double[][] ring, double x, double y) {
+            boolean inside = false;
+            for (int i = 0, j = ring.length - 1; i < ring.length; j = i++) {
+                if ((ring[i][1] > y) != (ring[j][1] > y)
+                        && x < (ring[j][0] - ring[i][0]) * (y - ring[i][1]) / (ring[j][1] - ring[i][1]) + ring[i][0]) {
+                    inside = !inside;
+                }
+            }
+            return inside;
+        }
+    }
+
+    /**
+     * 一个路网图快照的节点到区域分配
+     */
+    public static final class Assignment {
+        private final RoadGraph.Snapshot graph;
+        private final int[] regionOfNode;
+        private final List<Region> regions;
+        private final Map<String, Integer> indexById = new HashMap<>();
+
+        private Assignment(RoadGraph.Snapshot graph, int[] regionOfNode, List<Region> regions) {
+            this.graph = graph;
+            this.regionOfNode = regionOfNode;
+            this.regions = Collections.unmodifiableList(regions);
+            for (int i = 0; i < regions.size(); i++) {
+                indexById.put(regions.get(i).getId(), i);
+            }
+        }
+
+        public RoadGraph.Snapshot getGraph() {
+            return graph;
+        }
+
+        /**
+         * 节点（下标）所属区域的下标
+         */
+        public int regionOf(int node) {
+            return regionOfNode[node];
+        }
+
+        public int regionCount() {
+            return regions.size();
+        }
+
+        public Region region(int index) {
+            return regions.get(index);
+        }
+
+        public List<Region> getRegions() {
+            return regions;
+        }
+
+        /**
+         * 按区域编号查找下标，不存在时返回-1
+         */
+        public int indexOf(String regionId) {
+            return indexById.getOrDefault(regionId, -1);
+        }
+    }
+
+    /**
+     * 区域：编号、名称、外包矩形、节点质心和节点数
+     */
+    public static final class Region {
+        private final String id;
+        private final String name;
+        private final double south;
+        private final double west;
+        private final double north;
+        private final double east;
+        private final double centerLat;
+        private final double centerLng;
+        private final int nodeCount;
+
+        Region(String id, String name, double south, double west, double north, double east,
+               double centerLat, double centerLng, int nodeCount) {
+            this.id = id;
+            this.name = name;
+            this.south = south;
+            this.west = west;
+            this.north = north;
+            this.east = east;
+            this.centerLat = centerLat;
+            this.centerLng = centerLng;
+            this.nodeCount = nodeCount;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getNodeCount() {
+            return nodeCount;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", id);
+            map.put("name", name);
+            map.put("bounds", List.of(west, south, east, north));
+            map.put("centerLat", centerLat);
+            map.put("centerLng", centerLng);
+            map.put("nodeCount", nodeCount);
+            return map;
+        }
+    }
+}
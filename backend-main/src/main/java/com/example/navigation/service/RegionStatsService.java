@@ -0,0 +1,292 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.projection.CombinedFlowView;
+import com.example.navigation.repository.FlowForecastRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * 区域统计服务
+ * 按区域划分的节点到区域预分配结果，为当前日期的每个区域×小时维护数据点数、流量总和和各拥挤级别计数，
+ * 随列式存储的有效流量变更增量更新，查询某个区域时不需要扫描flow表。
+ * 整体重建（列式存储重载、路网变更、日期切换）在列式存储写锁内按小时拆分任务并行扫描，
+ * 各任务只写自己小时的单元格，互不冲突
+ */
+@Service
+public class RegionStatsService implements FlowTimeSeriesStore.EffectiveFlowListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegionStatsService.class);
+
+    private static final int HOURS = 24;
+    private static final String[] LEVELS = CongestionLevel.NAMES;
+
+    private final FlowTimeSeriesStore flowTimeSeriesStore;
+    private final FlowForecastRepository flowForecastRepository;
+    private final RegionIndex regionIndex;
+    private final FlowQuantileService flowQuantileService;
+    private final TrafficClock trafficClock;
+
+    @Value("${dashboard.regions.parallelism:4}")
+    private int parallelism;
+
+    private ForkJoinPool rebuildPool;
+
+    // 只在this锁内读写累加值；增量回调时调用方已持有列式存储写锁（锁顺序：重建锁→写锁→this）
+    private volatile State state;
+    private volatile boolean stale = true;
+    private final Object rebuildLock = new Object();
+    private long incrementalUpdates;
+    private long rebuilds;
+
+    public RegionStatsService(FlowTimeSeriesStore flowTimeSeriesStore,
+                              FlowForecastRepository flowForecastRepository,
+                              RegionIndex regionIndex,
+                              FlowQuantileService flowQuantileService,
+                              TrafficClock trafficClock) {
+        this.flowTimeSeriesStore = flowTimeSeriesStore;
+        this.flowForecastRepository = flowForecastRepository;
+        this.regionIndex = regionIndex;
+        this.flowQuantileService = flowQuantileService;
+        this.trafficClock = trafficClock;
+    }
+
+    @PostConstruct
+    public void init() {
+        rebuildPool = new ForkJoinPool(parallelism);
+        flowTimeSeriesStore.addListener(this);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildPool.shutdownNow();
+    }
+
+    @Override
+    public synchronized void onEffectiveFlowChanged(int day, int hour, int nodeId, int oldFlow, int newFlow) {
+        State current = state;
+        if (current == null || current.day != day || hour < 0 || hour >= HOURS) {
+            return;
+        }
+        int node = current.assignment.getGraph().indexOf(nodeId);
+        if (node < 0) {
+            return;
+        }
+        int cell = current.assignment.regionOf(node) * HOURS + hour;
+        if (oldFlow != FlowTimeSeriesStore.MISSING) {
+            current.apply(cell, oldFlow, -1);
+        }
+        if (newFlow != FlowTimeSeriesStore.MISSING) {
+            current.apply(cell, newFlow, 1);
+        }
+        incrementalUpdates++;
+    }
+
+    @Override
+    public void onReset() {
+        stale = true;
+    }
+
+    /**
+     * 获取全部区域的统计
+     * @param hour 指定小时，为空时统计全天
+     * @throws IllegalArgumentException 小时无效
+     */
+    public Map<String, Object> getRegionStats(Integer hour) {
+        if (hour != null && (hour < 0 || hour >= HOURS)) {
+            throw new IllegalArgumentException("小时无效: " + hour);
+        }
+        int from = hour != null ? hour : 0;
+        int to = hour != null ? hour : HOURS - 1;
+        State current = current();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("day", current.day);
+        result.put("hour", hour);
+        result.put("mode", regionIndex.getMode());
+        List<Map<String, Object>> regions = new ArrayList<>(current.assignment.regionCount());
+        synchronized (this) {
+            for (int region = 0; region < current.assignment.regionCount(); region++) {
+                Map<String, Object> item = current.assignment.region(region).toMap();
+                item.putAll(current.summarize(region, from, to));
+                regions.add(item);
+            }
+        }
+        result.put("regions", regions);
+        return result;
+    }
+
+    /**
+     * 下钻单个区域：全天统计、逐小时统计和当天流量分位数
+     * @throws IllegalArgumentException 区域不存在
+     */
+    public Map<String, Object> getRegionDetail(String regionId) {
+        State current = current();
+        int region = current.assignment.indexOf(regionId);
+        if (region < 0) {
+            throw new IllegalArgumentException("区域不存在: " + regionId);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("day", current.day);
+        result.putAll(current.assignment.region(region).toMap());
+        List<Map<String, Object>> hourly = new ArrayList<>(HOURS);
+        synchronized (this) {
+            result.putAll(current.summarize(region, 0, HOURS - 1));
+            for (int hour = 0; hour < HOURS; hour++) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("hour", hour);
+                item.putAll(current.summarize(region, hour, hour));
+                hourly.add(item);
+            }
+        }
+        result.put("hourly", hourly);
+        Map<String, Object> quantiles = flowQuantileService.getQuantiles(null, null, List.of(regionId), "none");
+        result.put("quantiles", quantiles.get("overall"));
+        return result;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        State current = state;
+        stats.put("mode", regionIndex.getMode());
+        stats.put("day", current == null ? null : current.day);
+        stats.put("regions", current == null ? 0 : current.assignment.regionCount());
+        stats.put("parallelism", parallelism);
+        stats.put("incrementalUpdates", incrementalUpdates);
+        stats.put("rebuilds", rebuilds);
+        return stats;
+    }
+
+    /**
+     * 获取当前日期的区域统计，过期时先重建；列式存储未就绪时从数据库合并查询临时构建，不保留
+     */
+    private State current() {
+        int day = trafficClock.getCurrentDay();
+        if (!flowTimeSeriesStore.isReady()) {
+            State scanned = new State(day, regionIndex.current());
+            for (CombinedFlowView flow : flowForecastRepository.findCombinedByDay(day)) {
+                if (flow.getEffectiveFlow() != null) {
+                    scanned.record(flow.getNodeId(), flow.getTimeStamp(), flow.getEffectiveFlow());
+                }
+            }
+            return scanned;
+        }
+        State current = state;
+        if (isStale(current, day)) {
+            synchronized (rebuildLock) {
+                current = state;
+                if (isStale(current, day)) {
+                    current = rebuild(day);
+                }
+            }
+        }
+        return current;
+    }
+
+    private boolean isStale(State current, int day) {
+        return current == null || stale || current.day != day || current.assignment != regionIndex.current();
+    }
+
+    /**
+     * 在列式存储写锁内按小时并行扫描，完成后在同一把锁内替换状态，保证与后续增量一致
+     */
+    private State rebuild(int day) {
+        long start = System.currentTimeMillis();
+        stale = false;
+        State rebuilt = new State(day, regionIndex.current());
+        flowTimeSeriesStore.runExclusive(() -> {
+            try {
+                rebuildPool.submit(() -> IntStream.range(0, HOURS).parallel().forEach(hour ->
+                        flowTimeSeriesStore.forEachEffective(day, hour, rebuilt::record))).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("区域统计重建被中断", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("区域统计重建失败: " + e.getCause().getMessage(), e.getCause());
+            }
+            synchronized (this) {
+                state = rebuilt;
+                rebuilds++;
+            }
+        });
+        logger.info("区域统计重建完成: 日期={}, 区域数={}, 并行度={}, 耗时{}ms",
+                day, rebuilt.assignment.regionCount(), parallelism, System.currentTimeMillis() - start);
+        return rebuilt;
+    }
+
+    /**
+     * 内部类：一天的区域累加值，单元格布局为[区域 * 24 + 小时]，级别计数为[单元格 * 4 + 级别]
+     */
+    private static class State {
+        final int day;
+        final RegionIndex.Assignment assignment;
+        final long[] counts;
+        final long[] sums;
+        final long[] levelCounts;
+
+        State(int day, RegionIndex.Assignment assignment) {
+            this.day = day;
+            this.assignment = assignment;
+            int cells = assignment.regionCount() * HOURS;
+            this.counts = new long[cells];
+            this.sums = new long[cells];
+            this.levelCounts = new long[cells * LEVELS.length];
+        }
+
+        void record(int nodeId, int hour, int flow) {
+            int node = assignment.getGraph().indexOf(nodeId);
+            if (node >= 0 && hour >= 0 && hour < HOURS) {
+                apply(assignment.regionOf(node) * HOURS + hour, flow, 1);
+            }
+        }
+
+        void apply(int cell, int flow, int sign) {
+            counts[cell] += sign;
+            sums[cell] += (long) sign * flow;
+            levelCounts[cell * LEVELS.length + CongestionLevel.indexOf(flow)] += sign;
+        }
+
+        /**
+         * 汇总一个区域在小时范围内的数据点数、平均流量、拥挤级别和各级别分布
+         */
+        Map<String, Object> summarize(int region, int fromHour, int toHour) {
+            long count = 0;
+            long sum = 0;
+            long[] levels = new long[LEVELS.length];
+            for (int hour = fromHour; hour <= toHour; hour++) {
+                int cell = region * HOURS + hour;
+                count += counts[cell];
+                sum += sums[cell];
+                for (int level = 0; level < LEVELS.length; level++) {
+                    levels[level] += levelCounts[cell * LEVELS.length + level];
+                }
+            }
+            double average = count == 0 ? 0.0 : (double) sum / count;
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", count);
+            map.put("averageFlow", Math.round(average * 100) / 100.0);
+            map.put("congestionLevel", count == 0 ? LEVELS[0] : CongestionLevel.nameOf(average));
+            long congested = 0;
+            for (int level = CongestionLevel.CONGESTED; level < LEVELS.length; level++) {
+                congested += levels[level];
+            }
+            map.put("congestedSections", congested);
+            Map<String, Long> distribution = new LinkedHashMap<>();
+            for (int level = 0; level < LEVELS.length; level++) {
+                distribution.put(LEVELS[level], levels[level]);
+            }
+            map.put("levels", distribution);
+            return map;
+        }
+    }
+}
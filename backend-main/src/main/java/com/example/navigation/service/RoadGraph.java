@@ -0,0 +1,314 @@
+package com.example.navigation.service;
+
+import com.example.navigation.event.EdgesChangedEvent;
+import com.example.navigation.event.NodesChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 路网图快照
+ * 把nodes表和edges表读成按节点ID排序的基本类型数组，邻接关系按CSR格式（偏移数组+关联边数组）存储，
+ * 每条边在两个端点下各登记一次。节点或边变更后标记过期，下次访问时整体重建并原子替换
+ */
+@Service
+public class RoadGraph {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoadGraph.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Snapshot snapshot;
+    // 每次失效递增，构建期间发生的失效会使构建结果立即过期
+    private final AtomicLong generation = new AtomicLong();
+
+    public RoadGraph(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener
+    public void onNodesChanged(NodesChangedEvent event) {
+        invalidate();
+    }
+
+    @EventListener
+    public void onEdgesChanged(EdgesChangedEvent event) {
+        invalidate();
+    }
+
+    /**
+     * 标记快照过期
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * 获取当前快照，过期时先重建
+     */
+    public Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null || current.generation != generation.get()) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null || current.generation != generation.get()) {
+                    current = build(generation.get());
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 获取快照统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Snapshot current = current();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("generation", current.generation);
+        stats.put("nodes", current.nodeCount());
+        stats.put("edges", current.edgeCount());
+        stats.put("builtAt", current.builtAt);
+        return stats;
+    }
+
+    private Snapshot build(long buildGeneration) {
+        long start = System.currentTimeMillis();
+        IntArray ids = new IntArray();
+        DoubleArray lats = new DoubleArray();
+        DoubleArray lngs = new DoubleArray();
+        jdbcTemplate.query("SELECT node_id, latitude, longitude FROM nodes ORDER BY node_id", (RowCallbackHandler) rs -> {
+            ids.add(rs.getInt(1));
+            lats.add(rs.getDouble(2));
+            lngs.add(rs.getDouble(3));
+        });
+        int[] nodeIds = ids.toArray();
+
+        LongArray edgeIds = new LongArray();
+        IntArray sources = new IntArray();
+        IntArray targets = new IntArray();
+        FloatArray distances = new FloatArray();
+        int[] skipped = {0};
+        jdbcTemplate.query("SELECT id, node_id1, node_id2, distance FROM edges ORDER BY id", (RowCallbackHandler) rs -> {
+            int source = Arrays.binarySearch(nodeIds, rs.getInt(2));
+            int target = Arrays.binarySearch(nodeIds, rs.getInt(3));
+            if (source < 0 || target < 0) {
+                skipped[0]++;
+                return;
+            }
+            edgeIds.add(rs.getLong(1));
+            sources.add(source);
+            targets.add(target);
+            distances.add(rs.getFloat(4));
+        });
+
+        int nodeCount = nodeIds.length;
+        int edgeCount = sources.size;
+        int[] offsets = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            offsets[sources.values[e] + 1]++;
+            offsets[targets.values[e] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] incident = new int[offsets[nodeCount]];
+        int[] fill = Arrays.copyOf(offsets, nodeCount);
+        for (int e = 0; e < edgeCount; e++) {
+            incident[fill[sources.values[e]]++] = e;
+            incident[fill[targets.values[e]]++] = e;
+        }
+
+        if (skipped[0] > 0) {
+            logger.warn("路网图构建时跳过{}条端点不存在的边", skipped[0]);
+        }
+        logger.info("路网图快照构建完成: 节点数={}, 边数={}, 耗时{}ms", nodeCount, edgeCount, System.currentTimeMillis() - start);
+        return new Snapshot(buildGeneration, nodeIds, lats.toArray(), lngs.toArray(), edgeIds.toArray(),
+                sources.toArray(), targets.toArray(), distances.toArray(), offsets, incident);
+    }
+
+    /**
+     * 不可变的路网图快照
+     * 节点和边都用下标访问：节点下标是节点在ID升序中的位置，边下标是边在快照中的位置
+     */
+    public static final class Snapshot {
+        private final long generation;
+        private final long builtAt = System.currentTimeMillis();
+        private final int[] nodeIds;
+        private final double[] lats;
+        private final double[] lngs;
+        private final long[] edgeIds;
+        private final int[] sources;
+        private final int[] targets;
+        private final float[] distances;
+        private final int[] offsets;
+        private final int[] incident;
+
+        Snapshot(long generation, int[] nodeIds, double[] lats, double[] lngs, long[] edgeIds,
+                 int[] sources, int[] targets, float[] distances, int[] offsets, int[] incident) {
+            this.generation = generation;
+            this.nodeIds = nodeIds;
+            this.lats = lats;
+            this.lngs = lngs;
+            this.edgeIds = edgeIds;
+            this.sources = sources;
+            this.targets = targets;
+            this.distances = distances;
+            this.offsets = offsets;
+            this.incident = incident;
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        public int nodeCount() {
+            return nodeIds.length;
+        }
+
+        public int edgeCount() {
+            return sources.length;
+        }
+
+        /**
+         * 节点ID对应的下标，节点不存在时返回-1
+         */
+        public int indexOf(int nodeId) {
+            int index = Arrays.binarySearch(nodeIds, nodeId);
+            return index >= 0 ? index : -1;
+        }
+
+        public int nodeId(int node) {
+            return nodeIds[node];
+        }
+
+        public double latitude(int node) {
+            return lats[node];
+        }
+
+        public double longitude(int node) {
+            return lngs[node];
+        }
+
+        public long edgeId(int edge) {
+            return edgeIds[edge];
+        }
+
+        /**
+         * 边ID对应的下标（边按ID升序排列），边不存在时返回-1
+         */
+        public int edgeIndexOf(long edgeId) {
+            int index = Arrays.binarySearch(edgeIds, edgeId);
+            return index >= 0 ? index : -1;
+        }
+
+        /**
+         * 边的第一个端点（节点下标）
+         */
+        public int edgeSource(int edge) {
+            return sources[edge];
+        }
+
+        /**
+         * 边的第二个端点（节点下标）
+         */
+        public int edgeTarget(int edge) {
+            return targets[edge];
+        }
+
+        public float edgeDistance(int edge) {
+            return distances[edge];
+        }
+
+        /**
+         * 节点关联边在incidentEdge中的起始位置
+         */
+        public int incidentStart(int node) {
+            return offsets[node];
+        }
+
+        /**
+         * 节点关联边在incidentEdge中的结束位置（不含）
+         */
+        public int incidentEnd(int node) {
+            return offsets[node + 1];
+        }
+
+        public int incidentEdge(int position) {
+            return incident[position];
+        }
+    }
+
+    private static final class IntArray {
+        int[] values = new int[1024];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static final class LongArray {
+        long[] values = new long[1024];
+        int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static final class DoubleArray {
+        double[] values = new double[1024];
+        int size;
+
+        void add(double value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        double[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static final class FloatArray {
+        float[] values = new float[1024];
+        int size;
+
+        void add(float value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        float[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
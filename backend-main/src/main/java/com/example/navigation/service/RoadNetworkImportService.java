@@ -0,0 +1,622 @@
+package com.example.navigation.service;
+
+import com.example.navigation.event.EdgesChangedEvent;
+import com.example.navigation.event.NodesChangedEvent;
+import com.example.navigation.util.DistanceCalculator;
+import com.example.navigation.util.PgCopy;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 路网批量导入服务
+ * 逐行解析节点/边文件，不缓冲整个请求，校验后按批交给写入线程池并行写入，每批一个事务：
+ * - 节点：文件内重复的节点ID只保留第一条，已存在的节点更新坐标，其余批量插入并保留文件中的ID
+ * - 边：两个端点必须存在，自环拒绝，无向去重（与已有的边和文件内的边都去重），缺少距离时按端点坐标计算
+ * 新增行默认使用JDBC批量INSERT，启用network.import.use-copy且连接为PostgreSQL时使用COPY。
+ * 导入完成后发布NodesChangedEvent/EdgesChangedEvent，路网图快照、空间索引和热力图随之重建
+ */
+@Service
+public class RoadNetworkImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoadNetworkImportService.class);
+
+    private static final String UPDATE_NODE_SQL = "UPDATE nodes SET latitude = ?, longitude = ? WHERE node_id = ?";
+    private static final String INSERT_NODE_SQL = "INSERT INTO nodes (node_id, latitude, longitude) VALUES (?, ?, ?)";
+    private static final String COPY_NODES_SQL = "COPY nodes (node_id, latitude, longitude) FROM STDIN WITH (FORMAT csv)";
+    private static final String INSERT_EDGE_SQL = "INSERT INTO edges (node_id1, node_id2, distance) VALUES (?, ?, ?)";
+    private static final String COPY_EDGES_SQL = "COPY edges (node_id1, node_id2, distance) FROM STDIN WITH (FORMAT csv)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RoadGraph roadGraph;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ExecutorService writers;
+    private final int parallelism;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    @Value("${network.import.batch-size:10000}")
+    private int batchSize;
+
+    @Value("${network.import.use-copy:false}")
+    private boolean useCopy;
+
+    @Value("${network.import.max-errors:20}")
+    private int maxErrors;
+
+    // COPY不可用时（非PostgreSQL连接）只告警一次，之后固定走JDBC批量
+    private volatile boolean copyUnavailable;
+
+    public RoadNetworkImportService(JdbcTemplate jdbcTemplate,
+                                    TransactionTemplate transactionTemplate,
+                                    RoadGraph roadGraph,
+                                    ApplicationEventPublisher eventPublisher,
+                                    @Value("${network.import.parallelism:4}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.roadGraph = roadGraph;
+        this.eventPublisher = eventPublisher;
+        this.parallelism = Math.max(1, parallelism);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "network-import-writer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writers.shutdownNow();
+    }
+
+    /**
+     * 导入节点CSV，列顺序为nodeID,latitude,longitude；首行为表头时按列名定位
+     */
+    public Map<String, Object> importNodesCsv(InputStream body) throws IOException {
+        return run("nodes-csv", run -> {
+            int[] columns = {0, 1, 2};
+            try (BufferedReader reader = reader(body)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    run.lineNumber++;
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    String[] fields = line.split(",", -1);
+                    if (run.lineNumber == 1 && isHeader(fields)) {
+                        columns = parseHeader(fields, NODE_COLUMNS, 3);
+                        continue;
+                    }
+                    try {
+                        run.addNode(parseInt(field(fields, columns[0])),
+                                parseDouble(field(fields, columns[1])), parseDouble(field(fields, columns[2])));
+                    } catch (IllegalArgumentException e) {
+                        run.reject(e.getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 导入边CSV，列顺序为nodeID1,nodeID2[,distance]；首行为表头时按列名定位，距离（公里）可省略
+     */
+    public Map<String, Object> importEdgesCsv(InputStream body) throws IOException {
+        return run("edges-csv", run -> {
+            int[] columns = {0, 1, 2};
+            try (BufferedReader reader = reader(body)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    run.lineNumber++;
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    String[] fields = line.split(",", -1);
+                    if (run.lineNumber == 1 && isHeader(fields)) {
+                        columns = parseHeader(fields, EDGE_COLUMNS, 2);
+                        continue;
+                    }
+                    try {
+                        Double distance = columns[2] >= 0 && columns[2] < fields.length && !fields[columns[2]].isBlank()
+                                ? parseDouble(fields[columns[2]]) : null;
+                        run.addEdge(parseInt(field(fields, columns[0])), parseInt(field(fields, columns[1])), distance);
+                    } catch (IllegalArgumentException e) {
+                        run.reject(e.getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 导入由OSM数据转换得到的简化文本格式，字段以空白分隔，#开头为注释：
+     * <pre>
+     * N &lt;nodeID&gt; &lt;纬度&gt; &lt;经度&gt;
+     * W &lt;wayID&gt; &lt;nodeID&gt; &lt;nodeID&gt; ...
+     * </pre>
+     * 节点行必须在道路行之前（与OSM文件的顺序一致），道路中相邻的两个节点生成一条边，距离按坐标计算。
+     * 节点ID须已映射到int范围内
+     */
+    public Map<String, Object> importOsm(InputStream body) throws IOException {
+        return run("osm", run -> {
+            try (BufferedReader reader = reader(body)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    run.lineNumber++;
+                    String trimmed = line.trim();
+                    if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                        continue;
+                    }
+                    String[] fields = trimmed.split("\\s+");
+                    try {
+                        if ("N".equals(fields[0]) && fields.length == 4) {
+                            run.addNode(parseInt(fields[1]), parseDouble(fields[2]), parseDouble(fields[3]));
+                        } else if ("W".equals(fields[0]) && fields.length >= 4) {
+                            // 每一段单独校验，道路中个别节点缺失时其余路段照常导入
+                            for (int i = 3; i < fields.length; i++) {
+                                try {
+                                    run.addEdge(parseInt(fields[i - 1]), parseInt(fields[i]), null);
+                                } catch (IllegalArgumentException e) {
+                                    run.reject(e.getMessage());
+                                }
+                            }
+                        } else {
+                            throw new IllegalArgumentException("无法识别的行: " + fields[0]);
+                        }
+                    } catch (IllegalArgumentException e) {
+                        run.reject(e.getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    private Map<String, Object> run(String format, ImportBody importBody) throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("路网导入任务正在执行中");
+        }
+        ImportRun run = new ImportRun();
+        try {
+            importBody.read(run);
+            return run.finish(format);
+        } finally {
+            run.awaitPendingQuietly();
+            running.set(false);
+        }
+    }
+
+    private static BufferedReader reader(InputStream body) {
+        return new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private static final Map<String, Integer> NODE_COLUMNS = Map.of(
+            "nodeID", 0, "nodeId", 0, "node_id", 0, "id", 0,
+            "latitude", 1, "lat", 1,
+            "longitude", 2, "lng", 2, "lon", 2);
+
+    private static final Map<String, Integer> EDGE_COLUMNS = Map.of(
+            "nodeID1", 0, "node_id1", 0, "source", 0, "from", 0,
+            "nodeID2", 1, "node_id2", 1, "target", 1, "to", 1,
+            "distance", 2, "length", 2);
+
+    private static boolean isHeader(String[] fields) {
+        String first = fields[0].trim();
+        return !first.isEmpty() && !Character.isDigit(first.charAt(0)) && first.charAt(0) != '-';
+    }
+
+    /**
+     * 按列名定位列，前required列必须存在，其余可选列缺失时为-1
+     */
+    private static int[] parseHeader(String[] fields, Map<String, Integer> names, int required) {
+        int[] columns = {-1, -1, -1};
+        for (int i = 0; i < fields.length; i++) {
+            Integer slot = names.get(fields[i].trim());
+            if (slot != null) {
+                columns[slot] = i;
+            }
+        }
+        for (int slot = 0; slot < required; slot++) {
+            if (columns[slot] < 0) {
+                throw new IllegalArgumentException("CSV表头缺少必需的列（节点需要nodeID、latitude、longitude，边需要nodeID1、nodeID2）");
+            }
+        }
+        return columns;
+    }
+
+    private static String field(String[] fields, int column) {
+        if (column >= fields.length) {
+            throw new IllegalArgumentException("列数不足");
+        }
+        return fields[column];
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的节点ID: " + value);
+        }
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的数值: " + value);
+        }
+    }
+
+    /**
+     * 写入一批新增行：COPY可用时使用COPY，否则使用JDBC批量INSERT
+     */
+    private int insertRows(String insertSql, String copySql, List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        if (useCopy && !copyUnavailable) {
+            Integer copied = jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+                if (!PgCopy.isSupported(connection)) {
+                    copyUnavailable = true;
+                    logger.warn("当前数据库连接不是PostgreSQL，COPY导入不可用，改用JDBC批量写入");
+                    return null;
+                }
+                StringBuilder csv = new StringBuilder(rows.size() * 32);
+                for (Object[] row : rows) {
+                    csv.append(row[0]).append(',').append(row[1]).append(',').append(row[2]).append('\n');
+                }
+                try {
+                    return (int) PgCopy.copyIn(connection, copySql, new StringReader(csv.toString()));
+                } catch (IOException e) {
+                    throw new SQLException("COPY写入失败: " + e.getMessage(), e);
+                }
+            });
+            if (copied != null) {
+                return copied;
+            }
+        }
+        jdbcTemplate.batchUpdate(insertSql, rows);
+        return rows.size();
+    }
+
+    /**
+     * 导入保留了文件中的节点ID，把节点ID的自增起点推进到当前最大ID之后，避免之后通过JPA新增节点时冲突
+     */
+    private void resetNodeIdentity() {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            String product = connection.getMetaData().getDatabaseProductName();
+            try (Statement statement = connection.createStatement()) {
+                if ("PostgreSQL".equals(product)) {
+                    statement.execute("SELECT setval(pg_get_serial_sequence('nodes', 'node_id'), " +
+                            "GREATEST(MAX(node_id), 1), MAX(node_id) IS NOT NULL) FROM nodes");
+                } else if ("H2".equals(product)) {
+                    long max;
+                    try (ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(node_id), 0) FROM nodes")) {
+                        rs.next();
+                        max = rs.getLong(1);
+                    }
+                    statement.execute("ALTER TABLE nodes ALTER COLUMN node_id RESTART WITH " + (max + 1));
+                } else {
+                    logger.warn("未知数据库{}，未调整节点ID自增起点", product);
+                }
+            }
+            return null;
+        });
+    }
+
+    @FunctionalInterface
+    private interface ImportBody {
+        void read(ImportRun run) throws IOException;
+    }
+
+    /**
+     * 一次导入的状态：当前批、去重集合、计数、前若干条错误和在途的写入任务
+     */
+    private class ImportRun {
+        final long start = System.nanoTime();
+        final List<String> errors = new ArrayList<>();
+        // 限制在途批次数，解析速度快于写入时阻塞解析线程，内存占用与文件大小无关
+        final Semaphore inFlight = new Semaphore(parallelism * 2);
+        final List<Future<?>> pending = new ArrayList<>();
+        final AtomicLong nodesInserted = new AtomicLong();
+        final AtomicLong nodesUpdated = new AtomicLong();
+        final AtomicLong edgesInserted = new AtomicLong();
+        long lineNumber;
+        long nodesAccepted;
+        long edgesAccepted;
+        long duplicates;
+        long rejected;
+        int batches;
+
+        // 节点ID可能是接近Integer.MAX_VALUE的稀疏大数（如OSM ID），用哈希集合而不是按ID下标的位图
+        LongHashSet existingNodes;
+        final LongHashSet seenNodes = new LongHashSet(1024);
+        List<Object[]> nodeInserts = new ArrayList<>();
+        List<Object[]> nodeUpdates = new ArrayList<>();
+
+        RoadGraph.Snapshot graph;
+        LongHashSet edgeKeys;
+        List<Object[]> edgeInserts = new ArrayList<>();
+
+        void addNode(int nodeId, double lat, double lng) {
+            if (graph != null) {
+                throw new IllegalArgumentException("节点必须出现在边之前");
+            }
+            if (nodeId <= 0) {
+                throw new IllegalArgumentException("节点ID必须为正数: " + nodeId);
+            }
+            if (!(lat >= -90 && lat <= 90 && lng >= -180 && lng <= 180)) {
+                throw new IllegalArgumentException("坐标超出范围: " + lat + "," + lng);
+            }
+            if (existingNodes == null) {
+                existingNodes = new LongHashSet(1024);
+                jdbcTemplate.query("SELECT node_id FROM nodes WHERE node_id > 0",
+                        (RowCallbackHandler) rs -> existingNodes.add(rs.getInt(1)));
+            }
+            if (!seenNodes.add(nodeId)) {
+                duplicates++;
+                return;
+            }
+            nodesAccepted++;
+            if (existingNodes.contains(nodeId)) {
+                nodeUpdates.add(new Object[]{lat, lng, nodeId});
+            } else {
+                nodeInserts.add(new Object[]{nodeId, lat, lng});
+            }
+            if (nodeInserts.size() + nodeUpdates.size() >= batchSize) {
+                flushNodes();
+            }
+        }
+
+        void addEdge(int nodeId1, int nodeId2, Double distance) {
+            if (graph == null) {
+                beginEdges();
+            }
+            if (nodeId1 == nodeId2) {
+                throw new IllegalArgumentException("边的两个端点相同: " + nodeId1);
+            }
+            if (distance != null && !(distance > 0)) {
+                throw new IllegalArgumentException("距离必须为正数: " + distance);
+            }
+            int source = graph.indexOf(nodeId1);
+            int target = graph.indexOf(nodeId2);
+            if (source < 0 || target < 0) {
+                throw new IllegalArgumentException("边引用了不存在的节点: " + (source < 0 ? nodeId1 : nodeId2));
+            }
+            if (!edgeKeys.add(edgeKey(nodeId1, nodeId2))) {
+                duplicates++;
+                return;
+            }
+            double km = distance != null ? distance : DistanceCalculator.calculateDistance(
+                    graph.latitude(source), graph.longitude(source), graph.latitude(target), graph.longitude(target));
+            edgesAccepted++;
+            edgeInserts.add(new Object[]{nodeId1, nodeId2, (float) km});
+            if (edgeInserts.size() >= batchSize) {
+                flushEdges();
+            }
+        }
+
+        /**
+         * 进入边阶段：写完所有节点并使路网图重建，再以新快照校验端点和去重
+         */
+        void beginEdges() {
+            finishNodes();
+            graph = roadGraph.current();
+            edgeKeys = new LongHashSet(Math.max(1024, graph.edgeCount() * 2));
+            for (int e = 0; e < graph.edgeCount(); e++) {
+                edgeKeys.add(edgeKey(graph.nodeId(graph.edgeSource(e)), graph.nodeId(graph.edgeTarget(e))));
+            }
+        }
+
+        void finishNodes() {
+            flushNodes();
+            awaitPending();
+            if (nodesInserted.get() + nodesUpdated.get() > 0) {
+                resetNodeIdentity();
+                eventPublisher.publishEvent(new NodesChangedEvent("import"));
+            }
+        }
+
+        void flushNodes() {
+            if (nodeInserts.isEmpty() && nodeUpdates.isEmpty()) {
+                return;
+            }
+            List<Object[]> inserts = nodeInserts;
+            List<Object[]> updates = nodeUpdates;
+            nodeInserts = new ArrayList<>();
+            nodeUpdates = new ArrayList<>();
+            submit(() -> transactionTemplate.executeWithoutResult(status -> {
+                if (!updates.isEmpty()) {
+                    jdbcTemplate.batchUpdate(UPDATE_NODE_SQL, updates);
+                    nodesUpdated.addAndGet(updates.size());
+                }
+                nodesInserted.addAndGet(insertRows(INSERT_NODE_SQL, COPY_NODES_SQL, inserts));
+            }));
+        }
+
+        void flushEdges() {
+            if (edgeInserts.isEmpty()) {
+                return;
+            }
+            List<Object[]> inserts = edgeInserts;
+            edgeInserts = new ArrayList<>();
+            submit(() -> transactionTemplate.executeWithoutResult(status ->
+                    edgesInserted.addAndGet(insertRows(INSERT_EDGE_SQL, COPY_EDGES_SQL, inserts))));
+        }
+
+        void submit(Runnable write) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("路网导入被中断");
+            }
+            batches++;
+            pending.add(writers.submit(() -> {
+                try {
+                    write.run();
+                } finally {
+                    inFlight.release();
+                }
+            }));
+        }
+
+        /**
+         * 等待在途批次写完，任一批失败时抛出（已提交的批次不回滚）
+         */
+        void awaitPending() {
+            try {
+                for (Future<?> future : pending) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("路网导入被中断");
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("路网导入写入失败: " + e.getCause().getMessage(), e.getCause());
+            } finally {
+                pending.clear();
+            }
+        }
+
+        void awaitPendingQuietly() {
+            for (Future<?> future : pending) {
+                try {
+                    future.get();
+                } catch (Exception ignored) {
+                    // 已经在导入失败的路径上，这里只保证返回前没有在途写入
+                }
+            }
+            pending.clear();
+        }
+
+        void reject(String message) {
+            rejected++;
+            if (errors.size() < maxErrors) {
+                errors.add("第" + lineNumber + "行: " + message);
+            }
+        }
+
+        Map<String, Object> finish(String format) {
+            if (graph == null) {
+                finishNodes();
+            } else {
+                flushEdges();
+                awaitPending();
+                if (edgesInserted.get() > 0) {
+                    eventPublisher.publishEvent(new EdgesChangedEvent("import"));
+                }
+            }
+            long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("format", format);
+            result.put("mode", useCopy && !copyUnavailable ? "copy" : "jdbc-batch");
+            result.put("nodesInserted", nodesInserted.get());
+            result.put("nodesUpdated", nodesUpdated.get());
+            result.put("edgesInserted", edgesInserted.get());
+            result.put("duplicates", duplicates);
+            result.put("rejected", rejected);
+            result.put("batches", batches);
+            result.put("elapsedMs", elapsedMs);
+            result.put("rowsPerSecond", (nodesAccepted + edgesAccepted) * 1000 / elapsedMs);
+            result.put("errors", errors);
+            logger.info("路网导入完成: 格式={}, 新增节点{}个, 更新节点{}个, 新增边{}条, 重复{}条, 拒绝{}条, {}批, 耗时{}ms",
+                       format, nodesInserted.get(), nodesUpdated.get(), edgesInserted.get(), duplicates, rejected,
+                       batches, elapsedMs);
+            return result;
+        }
+    }
+
+    /**
+     * 无向边的去重键：较小的节点ID在高32位
+     */
+    private static long edgeKey(int nodeId1, int nodeId2) {
+        int low = Math.min(nodeId1, nodeId2);
+        int high = Math.max(nodeId1, nodeId2);
+        return ((long) low << 32) | (high & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 开放寻址的long集合，百万级节点和边去重时避免装箱，内存只与元素个数有关；
+     * 键0保留为空槽（节点ID为正数，去重键不会为0）
+     */
+    private static final class LongHashSet {
+        private long[] slots;
+        private int size;
+
+        LongHashSet(int expected) {
+            slots = new long[Integer.highestOneBit(Math.max(16, expected) * 2 - 1) << 1];
+        }
+
+        boolean add(long key) {
+            if (size * 2 >= slots.length) {
+                grow();
+            }
+            return insert(slots, key);
+        }
+
+        boolean contains(long key) {
+            int mask = slots.length - 1;
+            int slot = (int) (mix(key) & mask);
+            while (slots[slot] != 0) {
+                if (slots[slot] == key) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        private boolean insert(long[] table, long key) {
+            int mask = table.length - 1;
+            int slot = (int) (mix(key) & mask);
+            while (table[slot] != 0) {
+                if (table[slot] == key) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = key;
+            if (table == slots) {
+                size++;
+            }
+            return true;
+        }
+
+        private void grow() {
+            long[] old = slots;
+            slots = new long[old.length * 2];
+            size = 0;
+            for (long key : old) {
+                if (key != 0) {
+                    insert(slots, key);
+                }
+            }
+        }
+
+        private static long mix(long key) {
+            key ^= key >>> 33;
+            key *= 0xff51afd7ed558ccdL;
+            key ^= key >>> 33;
+            return key;
+        }
+    }
+}
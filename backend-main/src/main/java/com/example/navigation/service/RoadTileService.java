@@ -0,0 +1,293 @@
+package com.example.navigation.service;
+
+import com.example.navigation.util.MvtEncoder;
+import com.example.navigation.util.TileMath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 路段矢量瓦片服务
+ * 从路网图快照中取出与瓦片（含缓冲区）相交的边，裁剪到瓦片坐标后编码为MVT，
+ * 每条边是一个线要素，属性为当前小时的路段流量和拥挤级别。
+ * 边按固定经纬度网格建立索引（每条边登记到其外包矩形覆盖的网格，跨越网格过多的长边单独存放），随路网图快照一起重建；
+ * 按缩放级别简化：低于最小层级返回空瓦片，在瓦片上投影长度不足最小像素长度的边不输出
+ */
+@Service
+public class RoadTileService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoadTileService.class);
+
+    public static final String LAYER_NAME = "roads";
+    private static final String UNKNOWN_LEVEL = "未知";
+    // 外包矩形覆盖的网格数超过该值的边不登记到网格，每次查询都作为候选
+    private static final int MAX_CELLS_PER_EDGE = 64;
+
+    private final RoadGraph roadGraph;
+    private final EdgeCongestionStore edgeCongestionStore;
+    private final TrafficClock trafficClock;
+
+    @Value("${map.roads.min-zoom:10}")
+    private int minZoom;
+
+    @Value("${map.roads.extent:4096}")
+    private int extent;
+
+    @Value("${map.roads.buffer:64}")
+    private int buffer;
+
+    @Value("${map.roads.min-pixel-length:1.0}")
+    private double minPixelLength;
+
+    @Value("${map.roads.cell-degrees:0.01}")
+    private double cellDegrees;
+
+    private volatile EdgeIndex edgeIndex;
+
+    private final LongAdder tilesEncoded = new LongAdder();
+    private final LongAdder featuresEncoded = new LongAdder();
+    private final LongAdder edgesSimplified = new LongAdder();
+
+    public RoadTileService(RoadGraph roadGraph, EdgeCongestionStore edgeCongestionStore, TrafficClock trafficClock) {
+        this.roadGraph = roadGraph;
+        this.edgeCongestionStore = edgeCongestionStore;
+        this.trafficClock = trafficClock;
+    }
+
+    /**
+     * 生成z/x/y瓦片的MVT字节
+     * @throws IllegalArgumentException 瓦片坐标无效
+     */
+    public byte[] getTile(int zoom, int x, int y) {
+        if (!TileMath.isValidTile(zoom, x, y)) {
+            throw new IllegalArgumentException("瓦片坐标无效: " + zoom + "/" + x + "/" + y);
+        }
+        MvtEncoder.Layer layer = new MvtEncoder.Layer(LAYER_NAME, extent);
+        if (zoom >= minZoom) {
+            fillLayer(layer, zoom, x, y);
+        }
+        tilesEncoded.increment();
+        featuresEncoded.add(layer.getFeatureCount());
+        byte[] tile = MvtEncoder.encode(layer);
+        logger.debug("路段瓦片编码完成: {}/{}/{}, 要素数={}, 大小={}字节", zoom, x, y, layer.getFeatureCount(), tile.length);
+        return tile;
+    }
+
+    /**
+     * 当前小时，瓦片内容随小时变化，用于区分缓存键
+     */
+    public int getCurrentHour() {
+        return trafficClock.getCurrentHour();
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        EdgeIndex current = edgeIndex;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("minZoom", minZoom);
+        stats.put("extent", extent);
+        stats.put("indexedCells", current != null ? current.cells.size() : 0);
+        stats.put("tilesEncoded", tilesEncoded.sum());
+        stats.put("featuresEncoded", featuresEncoded.sum());
+        stats.put("edgesSimplified", edgesSimplified.sum());
+        return stats;
+    }
+
+    private void fillLayer(MvtEncoder.Layer layer, int zoom, int x, int y) {
+        EdgeCongestionStore.State congestion = edgeCongestionStore.current();
+        RoadGraph.Snapshot graph = congestion != null ? congestion.getGraph() : roadGraph.current();
+        EdgeIndex index = indexFor(graph);
+        int hour = trafficClock.getCurrentHour();
+
+        // 瓦片内坐标：全局像素坐标减去瓦片原点后按extent缩放
+        double scale = (double) extent / TileMath.TILE_SIZE;
+        double originX = (double) x * TileMath.TILE_SIZE;
+        double originY = (double) y * TileMath.TILE_SIZE;
+        double min = -buffer;
+        double max = extent + buffer;
+        double minLength = minPixelLength * scale;
+
+        double[] bounds = TileMath.tileBounds(zoom, x, y);
+        double padLng = (bounds[2] - bounds[0]) * buffer / extent;
+        double padLat = (bounds[3] - bounds[1]) * buffer / extent;
+        BitSet visited = new BitSet(graph.edgeCount());
+        index.forEachCandidate(bounds[0] - padLng, bounds[1] - padLat, bounds[2] + padLng, bounds[3] + padLat, edge -> {
+            if (visited.get(edge)) {
+                return;
+            }
+            visited.set(edge);
+            int source = graph.edgeSource(edge);
+            int target = graph.edgeTarget(edge);
+            double[] segment = {
+                    (TileMath.lngToPixelX(graph.longitude(source), zoom) - originX) * scale,
+                    (TileMath.latToPixelY(graph.latitude(source), zoom) - originY) * scale,
+                    (TileMath.lngToPixelX(graph.longitude(target), zoom) - originX) * scale,
+                    (TileMath.latToPixelY(graph.latitude(target), zoom) - originY) * scale
+            };
+            if (!clip(segment, min, max)) {
+                return;
+            }
+            int[] coordinates = {
+                    (int) Math.round(segment[0]), (int) Math.round(segment[1]),
+                    (int) Math.round(segment[2]), (int) Math.round(segment[3])
+            };
+            if (Math.hypot(coordinates[2] - coordinates[0], coordinates[3] - coordinates[1]) < Math.max(1.0, minLength)) {
+                edgesSimplified.increment();
+                return;
+            }
+            Map<String, Object> properties = new LinkedHashMap<>();
+            int flow = congestion != null ? congestion.edgeFlow(edge, hour) : EdgeCongestionStore.MISSING;
+            if (flow != EdgeCongestionStore.MISSING) {
+                properties.put("flow", flow);
+                properties.put("congestion", CongestionLevel.nameOf(flow));
+            } else {
+                properties.put("congestion", UNKNOWN_LEVEL);
+            }
+            layer.addLineString(graph.edgeId(edge), coordinates, properties);
+        });
+    }
+
+    /**
+     * Liang-Barsky线段裁剪，segment为{x0, y0, x1, y1}，裁剪结果原地写回
+     * @return 线段与范围是否相交
+     */
+    static boolean clip(double[] segment, double min, double max) {
+        double dx = segment[2] - segment[0];
+        double dy = segment[3] - segment[1];
+        double[] p = {-dx, dx, -dy, dy};
+        double[] q = {segment[0] - min, max - segment[0], segment[1] - min, max - segment[1]};
+        double t0 = 0.0, t1 = 1.0;
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0) {
+                    return false;
+                }
+            } else {
+                double t = q[i] / p[i];
+                if (p[i] < 0) {
+                    t0 = Math.max(t0, t);
+                } else {
+                    t1 = Math.min(t1, t);
+                }
+                if (t0 > t1) {
+                    return false;
+                }
+            }
+        }
+        double x0 = segment[0], y0 = segment[1];
+        segment[0] = x0 + t0 * dx;
+        segment[1] = y0 + t0 * dy;
+        segment[2] = x0 + t1 * dx;
+        segment[3] = y0 + t1 * dy;
+        return true;
+    }
+
+    private EdgeIndex indexFor(RoadGraph.Snapshot graph) {
+        EdgeIndex current = edgeIndex;
+        if (current == null || current.graph != graph) {
+            synchronized (this) {
+                current = edgeIndex;
+                if (current == null || current.graph != graph) {
+                    current = buildIndex(graph);
+                    edgeIndex = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private EdgeIndex buildIndex(RoadGraph.Snapshot graph) {
+        long start = System.currentTimeMillis();
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+        List<Integer> longEdges = new ArrayList<>();
+        for (int edge = 0; edge < graph.edgeCount(); edge++) {
+            int source = graph.edgeSource(edge);
+            int target = graph.edgeTarget(edge);
+            long minX = cellOf(Math.min(graph.longitude(source), graph.longitude(target)));
+            long maxX = cellOf(Math.max(graph.longitude(source), graph.longitude(target)));
+            long minY = cellOf(Math.min(graph.latitude(source), graph.latitude(target)));
+            long maxY = cellOf(Math.max(graph.latitude(source), graph.latitude(target)));
+            if ((maxX - minX + 1) * (maxY - minY + 1) > MAX_CELLS_PER_EDGE) {
+                longEdges.add(edge);
+                continue;
+            }
+            for (long cx = minX; cx <= maxX; cx++) {
+                for (long cy = minY; cy <= maxY; cy++) {
+                    buckets.computeIfAbsent(packKey(cx, cy), k -> new ArrayList<>()).add(edge);
+                }
+            }
+        }
+        Map<Long, int[]> cells = new HashMap<>(buckets.size() * 2);
+        buckets.forEach((key, members) -> cells.put(key, members.stream().mapToInt(Integer::intValue).toArray()));
+        logger.info("路段网格索引构建完成: 边数={}, 网格数={}, 长边数={}, 耗时{}ms",
+                graph.edgeCount(), cells.size(), longEdges.size(), System.currentTimeMillis() - start);
+        return new EdgeIndex(graph, cells, longEdges.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private long cellOf(double degrees) {
+        return (long) Math.floor(degrees / cellDegrees);
+    }
+
+    private static long packKey(long x, long y) {
+        return (x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 内部类：某一路网图快照的边网格索引
+     */
+    private class EdgeIndex {
+        final RoadGraph.Snapshot graph;
+        final Map<Long, int[]> cells;
+        final int[] longEdges;
+
+        EdgeIndex(RoadGraph.Snapshot graph, Map<Long, int[]> cells, int[] longEdges) {
+            this.graph = graph;
+            this.cells = cells;
+            this.longEdges = longEdges;
+        }
+
+        /**
+         * 遍历与范围相交网格中的边（同一条边可能被访问多次，由调用方去重）
+         */
+        void forEachCandidate(double west, double south, double east, double north, EdgeVisitor visitor) {
+            long minX = cellOf(west), maxX = cellOf(east);
+            long minY = cellOf(south), maxY = cellOf(north);
+            visitCell(longEdges, visitor);
+            if ((maxX - minX + 1) * (maxY - minY + 1) <= cells.size()) {
+                for (long cx = minX; cx <= maxX; cx++) {
+                    for (long cy = minY; cy <= maxY; cy++) {
+                        visitCell(cells.get(packKey(cx, cy)), visitor);
+                    }
+                }
+            } else {
+                // 范围覆盖的网格数多于有边的网格数时，改为遍历有边的网格
+                for (Map.Entry<Long, int[]> cell : cells.entrySet()) {
+                    long cx = cell.getKey() >> 32, cy = (int) (long) cell.getKey();
+                    if (cx >= minX && cx <= maxX && cy >= minY && cy <= maxY) {
+                        visitCell(cell.getValue(), visitor);
+                    }
+                }
+            }
+        }
+
+        private void visitCell(int[] members, EdgeVisitor visitor) {
+            if (members == null) {
+                return;
+            }
+            for (int edge : members) {
+                visitor.visit(edge);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface EdgeVisitor {
+        void visit(int edge);
+    }
+}
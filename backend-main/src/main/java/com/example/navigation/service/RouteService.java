@@ -3,10 +3,10 @@ package com.example.navigation.service;
 import com.example.navigation.model.dto.route.RouteResponse;
 import com.example.navigation.model.entity.Edge;
 import com.example.navigation.model.entity.Node;
-import com.example.navigation.model.entity.Flow;
-import com.example.navigation.repository.EdgeRepository;
+import com.example.navigation.model.projection.CombinedFlowView;
+import com.example.navigation.model.projection.NodeCoordinateView;
 import com.example.navigation.repository.NodeRepository;
-import com.example.navigation.repository.FlowRepository;
+import com.example.navigation.repository.FlowForecastRepository;
 import com.example.navigation.util.DistanceCalculator;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -15,6 +15,8 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -27,9 +29,14 @@ public class RouteService {
     private static final Logger logger = LoggerFactory.getLogger(RouteService.class);
     
     private final NodeRepository nodeRepository;
-    private final EdgeRepository edgeRepository;
-    private final FlowRepository flowRepository;
+    private final RoadGraph roadGraph;
+    private final FlowForecastRepository flowForecastRepository;
     private final PythonModelService pythonModelService;
+    private final PredictionCache predictionCache;
+    private final FlowTimeSeriesStore flowTimeSeriesStore;
+    private final TrafficClock trafficClock;
+    private final FlowRollupService flowRollupService;
+    private final EdgeCongestionStore edgeCongestionStore;
 
     @Value("${route.planner.congestion-alpha:0.05}")
     private double congestionAlpha;
@@ -37,6 +44,9 @@ public class RouteService {
     @Value("${route.planner.default-speed-kmh:50.0}")
     private double defaultSpeedKmh;
 
+    @Value("${model.service.timeout:5000}")
+    private long modelTimeoutMs;
+
     /**
      * 规划路线
      */
@@ -82,8 +92,8 @@ public class RouteService {
      * 查找最近的道路节点
      */
     private Node findNearestNode(double lat, double lng) {
-        // 查询附近节点（实际应用中应限制查询范围）
-        List<Node> nearbyNodes = nodeRepository.findAll();
+        // 只读取坐标投影计算距离，找到最近节点后再加载实体（实际应用中应限制查询范围）
+        List<NodeCoordinateView> nearbyNodes = nodeRepository.findAllCoordinates();
         if (nearbyNodes.isEmpty()) {
             logger.warn("数据库中没有找到任何节点");
             return null;
@@ -91,17 +101,9 @@ public class RouteService {
 
         // 计算距离并找到最近的节点
         return nearbyNodes.stream()
-                .min(Comparator.comparingDouble(node -> {
-                    try {
-                        return DistanceCalculator.calculateDistance(lat, lng, 
-                            Double.parseDouble(node.getLatitude()), 
-                            Double.parseDouble(node.getLongitude()));
-                    } catch (NumberFormatException e) {
-                        logger.error("节点坐标格式错误: ID={}, lat={}, lng={}", 
-                                   node.getNodeID(), node.getLatitude(), node.getLongitude());
-                        return Double.MAX_VALUE;
-                    }
-                }))
+                .min(Comparator.comparingDouble(node ->
+                        DistanceCalculator.calculateDistance(lat, lng, node.latitude(), node.longitude())))
+                .flatMap(node -> nodeRepository.findById(node.nodeId()))
                 .orElse(null);
     }
 
@@ -127,15 +129,22 @@ public class RouteService {
     private List<Node> findAvoidingTrafficPath(Node start, Node end) {
         logger.debug("使用避堵路径算法规划路线");
         
-        // 获取当前日期（这里简化为固定值，实际应用中应获取当前日期）
+        // 获取当前日期的观测流量与预测流量，构建高流量节点集合（简化逻辑：认为高流量节点为拥堵节点）
         Integer currentDay = getCurrentDay();
-        List<Flow> recentFlow = flowRepository.findByDay(currentDay);
-
-        // 构建高流量节点集合（简化逻辑：认为高流量节点为拥堵节点）
-        Set<Integer> congestedNodeIds = recentFlow.stream()
-                .filter(flow -> flow.getFlow() > getHighFlowThreshold())
-                .map(Flow::getNodeID)
-                .collect(Collectors.toSet());
+        Set<Integer> congestedNodeIds = new HashSet<>();
+        if (flowTimeSeriesStore.isReady()) {
+            flowTimeSeriesStore.forEachEffective(currentDay, (nodeId, hour, flow) -> {
+                if (flow > getHighFlowThreshold(nodeId, hour)) {
+                    congestedNodeIds.add(nodeId);
+                }
+            });
+        } else {
+            flowForecastRepository.findCombinedByDay(currentDay).stream()
+                    .filter(flow -> flow.getEffectiveFlow() != null
+                            && flow.getEffectiveFlow() > getHighFlowThreshold(flow.getNodeId(), flow.getTimeStamp()))
+                    .map(CombinedFlowView::getNodeId)
+                    .forEach(congestedNodeIds::add);
+        }
 
         logger.debug("检测到 {} 个拥堵节点", congestedNodeIds.size());
 
@@ -154,9 +163,8 @@ public class RouteService {
         PriorityQueue<Integer> priorityQueue = new PriorityQueue<>(Comparator.comparingDouble(distances::get));
 
         // 初始化
-        List<Node> allNodes = nodeRepository.findAll();
-        for (Node node : allNodes) {
-            distances.put(node.getNodeID(), node.getNodeID().equals(start.getNodeID()) ? 0.0 : Double.MAX_VALUE);
+        for (Integer nodeId : nodeRepository.findAllNodeIds()) {
+            distances.put(nodeId, nodeId.equals(start.getNodeID()) ? 0.0 : Double.MAX_VALUE);
         }
         priorityQueue.add(start.getNodeID());
 
@@ -212,9 +220,8 @@ public class RouteService {
         PriorityQueue<Integer> priorityQueue = new PriorityQueue<>(Comparator.comparingDouble(nodeId -> distances.getOrDefault(nodeId, Double.MAX_VALUE)));
 
         // 初始化
-        List<Node> allNodes = nodeRepository.findAll();
-        for (Node node : allNodes) {
-            distances.put(node.getNodeID(), node.getNodeID().equals(start.getNodeID()) ? 0.0 : Double.MAX_VALUE);
+        for (Integer nodeId : nodeRepository.findAllNodeIds()) {
+            distances.put(nodeId, nodeId.equals(start.getNodeID()) ? 0.0 : Double.MAX_VALUE);
         }
         priorityQueue.add(start.getNodeID());
 
@@ -262,13 +269,15 @@ public class RouteService {
     }
 
     /**
-     * 构建图的邻接表
+     * 构建图的邻接表（从路网图快照读取边，不再每次查询edges表）
      */
     private Map<Integer, List<Edge>> buildAdjacencyList() {
-        List<Edge> allEdges = edgeRepository.findAll();
+        RoadGraph.Snapshot graph = roadGraph.current();
         Map<Integer, List<Edge>> adjacencyList = new HashMap<>();
 
-        for (Edge edge : allEdges) {
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            Edge edge = new Edge(graph.edgeId(e), graph.nodeId(graph.edgeSource(e)),
+                    graph.nodeId(graph.edgeTarget(e)), graph.edgeDistance(e));
             adjacencyList.computeIfAbsent(edge.getNodeID1(), k -> new ArrayList<>()).add(edge);
             // 假设所有道路都是双向的
             Edge reverseEdge = new Edge();
@@ -326,9 +335,11 @@ public class RouteService {
                 return -1; // 返回负值表示ML不可用
             }
 
-            // 预测两个节点的流量
-            double flow1 = pythonModelService.predictVolume(nodeID1, timePoint);
-            double flow2 = pythonModelService.predictVolume(nodeID2, timePoint);
+            // 预测两个节点的流量（先查预测缓存，未命中的请求经微批收集器与其他并发搜索合并）
+            CompletableFuture<Double> future1 = predictionCache.getAsync(nodeID1, timePoint);
+            CompletableFuture<Double> future2 = predictionCache.getAsync(nodeID2, timePoint);
+            double flow1 = future1.get(modelTimeoutMs, TimeUnit.MILLISECONDS);
+            double flow2 = future2.get(modelTimeoutMs, TimeUnit.MILLISECONDS);
             
             double averageFlow = (flow1 + flow2) / 2.0;
             
@@ -347,19 +358,29 @@ public class RouteService {
      */
     private double getAverageFlowFromDatabase(Edge edge, Integer timeStamp) {
         Integer currentDay = getCurrentDay();
+
+        // 优先读取物化的路段拥挤度
+        if (edge.getId() != null) {
+            Integer edgeFlow = edgeCongestionStore.getEdgeFlow(edge.getId(), currentDay, timeStamp);
+            if (edgeFlow != null) {
+                logger.debug("路段拥挤度流量: 边{}={}", edge.getId(), edgeFlow);
+                return edgeFlow;
+            }
+        }
         
-        Flow nodeFlow1 = flowRepository.findByNodeIDAndDayAndTimeStamp(edge.getNodeID1(), currentDay, timeStamp);
-        Flow nodeFlow2 = flowRepository.findByNodeIDAndDayAndTimeStamp(edge.getNodeID2(), currentDay, timeStamp);
+        // 观测流量优先，缺失时使用物化的预测流量
+        Integer nodeFlow1 = getEffectiveFlow(edge.getNodeID1(), currentDay, timeStamp);
+        Integer nodeFlow2 = getEffectiveFlow(edge.getNodeID2(), currentDay, timeStamp);
 
         double averageFlow = 0;
         int flowCount = 0;
         
         if (nodeFlow1 != null) {
-            averageFlow += nodeFlow1.getFlow();
+            averageFlow += nodeFlow1;
             flowCount++;
         }
         if (nodeFlow2 != null) {
-            averageFlow += nodeFlow2.getFlow();
+            averageFlow += nodeFlow2;
             flowCount++;
         }
 
@@ -370,8 +391,8 @@ public class RouteService {
         }
         
         logger.debug("数据库查询流量: 节点{}={}, 节点{}={}, 平均流量={}", 
-                    edge.getNodeID1(), nodeFlow1 != null ? nodeFlow1.getFlow() : "null",
-                    edge.getNodeID2(), nodeFlow2 != null ? nodeFlow2.getFlow() : "null",
+                    edge.getNodeID1(), nodeFlow1,
+                    edge.getNodeID2(), nodeFlow2,
                     averageFlow);
         
         return averageFlow;
@@ -427,9 +448,11 @@ public class RouteService {
         nodeIds.add(startID);
         Collections.reverse(nodeIds);
 
-        // 转换为Node对象
+        // 一次查询加载路径上的节点，再按路径顺序转换为Node对象
+        Map<Integer, Node> nodesById = nodeRepository.findAllById(nodeIds).stream()
+                .collect(Collectors.toMap(Node::getNodeID, node -> node));
         return nodeIds.stream()
-                .map(nodeRepository::findByNodeID)
+                .map(nodesById::get)
                 .filter(Objects::nonNull)
                 .collect(Collectors.toList());
     }
@@ -456,34 +479,21 @@ public class RouteService {
         // 2. 计算起点到第一个路径节点的距离
         if (!pathNodes.isEmpty()) {
             Node firstNode = pathNodes.get(0);
-            try {
-                totalDistance += DistanceCalculator.calculateDistance(
-                        String.valueOf(startLat), String.valueOf(startLng),
-                        firstNode.getLatitude(), firstNode.getLongitude());
-            } catch (NumberFormatException e) {
-                logger.warn("计算起点到第一个节点距离时出错: {}", e.getMessage());
-            }
+            totalDistance += DistanceCalculator.calculateDistance(
+                    startLat, startLng, firstNode.getLatitude(), firstNode.getLongitude());
         }
         
         // 3. 添加路径节点
         for (int i = 0; i < pathNodes.size(); i++) {
             Node node = pathNodes.get(i);
-            try {
-                double lat = Double.parseDouble(node.getLatitude());
-                double lng = Double.parseDouble(node.getLongitude());
-                points.add(new RouteResponse.RoutePoint(lat, lng));
-
-                // 计算节点间距离
-                if (i > 0) {
-                    Node prevNode = pathNodes.get(i - 1);
-                    totalDistance += DistanceCalculator.calculateDistance(
-                            prevNode.getLatitude(), prevNode.getLongitude(),
-                            node.getLatitude(), node.getLongitude());
-                }
-            } catch (NumberFormatException e) {
-                logger.error("节点坐标格式错误: ID={}, lat={}, lng={}", 
-                           node.getNodeID(), node.getLatitude(), node.getLongitude());
-                throw new IllegalArgumentException("节点坐标格式错误");
+            points.add(new RouteResponse.RoutePoint(node.getLatitude(), node.getLongitude()));
+
+            // 计算节点间距离
+            if (i > 0) {
+                Node prevNode = pathNodes.get(i - 1);
+                totalDistance += DistanceCalculator.calculateDistance(
+                        prevNode.getLatitude(), prevNode.getLongitude(),
+                        node.getLatitude(), node.getLongitude());
             }
         }
         
@@ -493,13 +503,8 @@ public class RouteService {
         // 5. 计算最后一个路径节点到终点的距离
         if (!pathNodes.isEmpty()) {
             Node lastNode = pathNodes.get(pathNodes.size() - 1);
-            try {
-                totalDistance += DistanceCalculator.calculateDistance(
-                        lastNode.getLatitude(), lastNode.getLongitude(),
-                        String.valueOf(endLat), String.valueOf(endLng));
-            } catch (NumberFormatException e) {
-                logger.warn("计算最后一个节点到终点距离时出错: {}", e.getMessage());
-            }
+            totalDistance += DistanceCalculator.calculateDistance(
+                    lastNode.getLatitude(), lastNode.getLongitude(), endLat, endLng);
         }
 
         // 简单估算时间（实际应根据交通状况计算）
@@ -515,19 +520,37 @@ public class RouteService {
 
     // 辅助方法
     private Integer getCurrentDay() {
-        // 简化实现，实际应该根据当前日期计算
-        return 1; // 假设当前是第1天
+        return trafficClock.getCurrentDay();
     }
 
     private Integer getCurrentTimeStamp() {
-        // 简化实现，实际应该根据当前时间计算
-        return 8; // 假设当前是8点
+        return trafficClock.getCurrentHour();
+    }
+
+    /**
+     * 获取节点的有效流量，列式存储就绪时直接读内存，否则查询数据库
+     */
+    private Integer getEffectiveFlow(Integer nodeId, Integer day, Integer timeStamp) {
+        if (flowTimeSeriesStore.isReady()) {
+            return flowTimeSeriesStore.getEffectiveFlow(nodeId, day, timeStamp);
+        }
+        CombinedFlowView view = flowForecastRepository.findCombinedByNodeAndDayAndTimeStamp(nodeId, day, timeStamp);
+        return view != null ? view.getEffectiveFlow() : null;
     }
 
     private int getHighFlowThreshold() {
         return 100; // 高流量阈值
     }
 
+    /**
+     * 节点某小时的高流量阈值：取流量汇总中该节点该小时的P95，限制在中等流量阈值和固定高流量阈值之间，
+     * 样本不足时使用固定阈值。长期拥堵节点的P95随拥堵升高，不设上限会让最拥堵的节点永远不被判为高流量
+     */
+    private int getHighFlowThreshold(int nodeId, int hour) {
+        Integer p95 = flowRollupService.getPercentile(nodeId, hour, 0.95);
+        return p95 == null ? getHighFlowThreshold() : Math.min(getHighFlowThreshold(), Math.max(getMediumFlowThreshold(), p95));
+    }
+
     private int getMediumFlowThreshold() {
         return 50; // 中等流量阈值
     }
@@ -0,0 +1,247 @@
+package com.example.navigation.service;
+
+import com.example.navigation.exception.StreamAbortedException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 流式响应写出
+ * 大响应不在内存中构建对象树或完整字节数组，而是由调用方通过JsonGenerator边遍历边写出。
+ * 按Accept选择JSON、CBOR或Smile，按Accept-Encoding选择gzip或deflate压缩；
+ * ETag沿用流量数据版本并附加表示形式后缀，版本未变时直接返回304。
+ * 响应头在内容写出前提交，写出中途失败时中止连接而不是结束残缺的响应，客户端不会按ETag缓存残缺内容
+ */
+@Service
+public class StreamingResponseWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingResponseWriter.class);
+
+    public static final MediaType APPLICATION_CBOR = MediaType.parseMediaType("application/cbor");
+    public static final MediaType APPLICATION_SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
+    private final FlowEpoch flowEpoch;
+    private final JsonFactory jsonFactory;
+    private final CBORFactory cborFactory = new CBORFactory();
+    private final SmileFactory smileFactory = new SmileFactory();
+
+    @Value("${http.streaming.buffer-bytes:8192}")
+    private int bufferBytes;
+
+    @Value("${http.streaming.compression-level:6}")
+    private int compressionLevel;
+
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder streamed = new LongAdder();
+    private final LongAdder binary = new LongAdder();
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public StreamingResponseWriter(FlowEpoch flowEpoch, ObjectMapper objectMapper) {
+        this.flowEpoch = flowEpoch;
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * 生成流式条件响应
+     * @param ifNoneMatch 请求头If-None-Match，可为空
+     * @param accept 请求头Accept，可为空
+     * @param acceptEncoding 请求头Accept-Encoding，可为空
+     * @param body 写出响应内容，生成器关闭由本类负责
+     */
+    public ResponseEntity<StreamingResponseBody> respond(String ifNoneMatch, String accept, String acceptEncoding, BodyWriter body) {
+        Format format = negotiateFormat(accept);
+        String encoding = negotiateEncoding(acceptEncoding);
+        long epoch = flowEpoch.current();
+        String etag = "\"" + epoch + format.etagSuffix + (encoding != null ? "-" + encoding : "") + "\"";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        headers.setCacheControl(CacheControl.noCache());
+        headers.setVary(List.of(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING));
+        if (EpochResponseCache.matches(ifNoneMatch, etag)) {
+            notModified.increment();
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+
+        headers.setContentType(format.mediaType);
+        if (encoding != null) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, encoding);
+            compressed.increment();
+        }
+        if (format != Format.JSON) {
+            binary.increment();
+        }
+        streamed.increment();
+        StreamingResponseBody stream = output -> write(output, format, encoding, body);
+        return ResponseEntity.ok().headers(headers).body(stream);
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("streamed", streamed.sum());
+        stats.put("notModified", notModified.sum());
+        stats.put("binary", binary.sum());
+        stats.put("compressed", compressed.sum());
+        stats.put("failed", failed.sum());
+        return stats;
+    }
+
+    /**
+     * 写出响应内容；写出中途失败时不关闭生成器和压缩流，避免补齐结束符或压缩尾部，
+     * 使残缺内容看起来完整，而是抛出StreamAbortedException由容器中止连接
+     */
+    private void write(OutputStream output, Format format, String encoding, BodyWriter body) throws IOException {
+        long start = System.currentTimeMillis();
+        OutputStream target = output;
+        LeveledGzipOutputStream gzip = null;
+        Deflater deflater = null;
+        if ("gzip".equals(encoding)) {
+            gzip = new LeveledGzipOutputStream(output, bufferBytes, compressionLevel);
+            target = gzip;
+        } else if ("deflate".equals(encoding)) {
+            deflater = new Deflater(compressionLevel);
+            target = new DeflaterOutputStream(output, deflater, bufferBytes);
+        }
+        try {
+            JsonGenerator generator = factoryFor(format).createGenerator(new BufferedOutputStream(target, bufferBytes));
+            body.write(generator);
+            generator.close();
+        } catch (IOException | RuntimeException e) {
+            failed.increment();
+            logger.error("流式响应写出失败，中止连接: 格式={}, 压缩={}, error={}", format, encoding, e.getMessage());
+            throw new StreamAbortedException("流式响应写出失败: " + e.getMessage(), e);
+        } finally {
+            if (gzip != null) {
+                gzip.release();
+            }
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        logger.debug("流式响应写出完成: 格式={}, 压缩={}, 耗时{}ms", format, encoding, System.currentTimeMillis() - start);
+    }
+
+    private JsonFactory factoryFor(Format format) {
+        return switch (format) {
+            case CBOR -> cborFactory;
+            case SMILE -> smileFactory;
+            default -> jsonFactory;
+        };
+    }
+
+    /**
+     * 按Accept中出现的顺序选择第一个支持的表示形式（忽略q=0），都不支持时使用JSON
+     */
+    static Format negotiateFormat(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return Format.JSON;
+        }
+        for (String candidate : accept.split(",")) {
+            if (isRefused(candidate)) {
+                continue;
+            }
+            String type = candidate.split(";")[0].trim().toLowerCase();
+            if (type.equals(APPLICATION_CBOR.toString())) {
+                return Format.CBOR;
+            }
+            if (type.equals(APPLICATION_SMILE.toString())) {
+                return Format.SMILE;
+            }
+            if (type.equals("application/json") || type.equals("application/*") || type.equals("*/*")) {
+                return Format.JSON;
+            }
+        }
+        return Format.JSON;
+    }
+
+    /**
+     * 客户端接受gzip时优先gzip，其次deflate，都不接受时不压缩（返回null）
+     */
+    static String negotiateEncoding(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return null;
+        }
+        boolean deflate = false;
+        for (String candidate : acceptEncoding.split(",")) {
+            if (isRefused(candidate)) {
+                continue;
+            }
+            String coding = candidate.split(";")[0].trim().toLowerCase();
+            if (coding.equals("gzip")) {
+                return "gzip";
+            }
+            deflate |= coding.equals("deflate");
+        }
+        return deflate ? "deflate" : null;
+    }
+
+    private static boolean isRefused(String candidate) {
+        String normalized = candidate.replace(" ", "").toLowerCase();
+        return normalized.contains(";q=0") && !normalized.matches(".*;q=0\\.0*[1-9].*");
+    }
+
+    /**
+     * 可设置压缩级别的gzip输出流，写出失败未关闭时也能释放压缩器
+     */
+    private static class LeveledGzipOutputStream extends GZIPOutputStream {
+        LeveledGzipOutputStream(OutputStream output, int size, int level) throws IOException {
+            super(output, size);
+            def.setLevel(level);
+        }
+
+        void release() {
+            def.end();
+        }
+    }
+
+    /**
+     * 响应内容写出回调
+     */
+    @FunctionalInterface
+    public interface BodyWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    /**
+     * 支持的表示形式
+     */
+    enum Format {
+        JSON(MediaType.APPLICATION_JSON, ""),
+        CBOR(APPLICATION_CBOR, "-cbor"),
+        SMILE(APPLICATION_SMILE, "-smile");
+
+        final MediaType mediaType;
+        final String etagSuffix;
+
+        Format(MediaType mediaType, String etagSuffix) {
+            this.mediaType = mediaType;
+            this.etagSuffix = etagSuffix;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.navigation.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalTime;
+
+/**
+ * 交通数据时钟
+ * 统一提供"当前"的数据日期编号和小时，替代各服务中分散的固定值
+ */
+@Component
+public class TrafficClock {
+
+    @Value("${traffic.clock.current-day:1}")
+    private int currentDay;
+
+    @Value("${traffic.clock.fixed-hour:8}")
+    private int fixedHour;
+
+    /**
+     * 获取当前日期编号（与flow表的day_num对应）
+     */
+    public int getCurrentDay() {
+        return currentDay;
+    }
+
+    /**
+     * 获取当前小时（0-23），配置为负数时使用系统时间
+     */
+    public int getCurrentHour() {
+        return fixedHour >= 0 ? fixedHour : LocalTime.now().getHour();
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.navigation.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 经纬度矩形范围
+ * 字符串格式与常见地图库一致：西经度,南纬度,东经度,北纬度
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class BoundingBox {
+    private final double west;
+    private final double south;
+    private final double east;
+    private final double north;
+
+    /**
+     * 解析"west,south,east,north"格式的范围参数
+     * 经度须在±180之间，纬度须在±90之间，不接受NaN和无穷大
+     * @throws IllegalArgumentException 格式错误或范围无效
+     */
+    public static BoundingBox parse(String bbox) {
+        String[] parts = bbox.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("bbox格式应为west,south,east,north: " + bbox);
+        }
+        try {
+            BoundingBox box = new BoundingBox(Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()),
+                    Double.parseDouble(parts[2].trim()), Double.parseDouble(parts[3].trim()));
+            if (!isLongitude(box.west) || !isLongitude(box.east) || !isLatitude(box.south) || !isLatitude(box.north)
+                    || box.west > box.east || box.south > box.north) {
+                throw new IllegalArgumentException("bbox范围无效: " + bbox);
+            }
+            return box;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bbox包含无效数字: " + bbox);
+        }
+    }
+
+    private static boolean isLongitude(double value) {
+        return value >= -180.0 && value <= 180.0;
+    }
+
+    private static boolean isLatitude(double value) {
+        return value >= -90.0 && value <= 90.0;
+    }
+
+    public boolean contains(double lat, double lng) {
+        return lat >= south && lat <= north && lng >= west && lng <= east;
+    }
+}
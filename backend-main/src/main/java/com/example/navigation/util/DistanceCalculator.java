@@ -2,7 +2,7 @@ package com.example.navigation.util;
 
 /**
  * 距离计算工具类
- * 支持处理String和Double类型的坐标
+ * 节点坐标以数值存储，不再提供字符串坐标的重载
  */
 public class DistanceCalculator {
     private static final double EARTH_RADIUS_KM = 6371.0;
@@ -35,40 +35,4 @@ public class DistanceCalculator {
         // 计算距离（公里）
         return EARTH_RADIUS_KM * c;
     }
-
-    /**
-     * 使用Haversine公式计算两个经纬度坐标之间的距离（公里）
-     * @param lat1 起点纬度（String类型）
-     * @param lon1 起点经度（String类型）
-     * @param lat2 终点纬度（String类型）
-     * @param lon2 终点经度（String类型）
-     * @return 距离（公里）
-     * @throws NumberFormatException 当坐标字符串无法转换为数字时抛出
-     */
-    public static double calculateDistance(String lat1, String lon1, String lat2, String lon2) {
-        try {
-            double lat1Double = Double.parseDouble(lat1);
-            double lon1Double = Double.parseDouble(lon1);
-            double lat2Double = Double.parseDouble(lat2);
-            double lon2Double = Double.parseDouble(lon2);
-            
-            return calculateDistance(lat1Double, lon1Double, lat2Double, lon2Double);
-        } catch (NumberFormatException e) {
-            throw new NumberFormatException("无法解析坐标字符串为数值: " + e.getMessage());
-        }
-    }
-
-    /**
-     * 混合类型坐标距离计算（String和Double混合）
-     */
-    public static double calculateDistance(String lat1, String lon1, double lat2, double lon2) {
-        return calculateDistance(Double.parseDouble(lat1), Double.parseDouble(lon1), lat2, lon2);
-    }
-
-    /**
-     * 混合类型坐标距离计算（Double和String混合）
-     */
-    public static double calculateDistance(double lat1, double lon1, String lat2, String lon2) {
-        return calculateDistance(lat1, lon1, Double.parseDouble(lat2), Double.parseDouble(lon2));
-    }
 }
\ No newline at end of file
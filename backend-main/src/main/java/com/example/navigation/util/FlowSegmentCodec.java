@@ -0,0 +1,173 @@
+package com.example.navigation.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 单日流量归档段的编解码
+ * 段内容为一天的节点×小时矩阵：
+ * <pre>
+ * 头部  : 魔数(4) 版本(1) 日期(4) 节点数(4) 数据点数(4) 数据区长度(4)
+ * 数据区: 按升序排列的节点ID差值(varint)；
+ *         每个节点：24位存在掩码(varint)，再按小时依次写入与上一个存在值之差的zigzag varint
+ * 尾部  : 数据区CRC32(4)
+ * </pre>
+ * 相邻节点ID和同一节点相邻小时的流量都很接近，差值编码后大多只占1个字节
+ */
+public final class FlowSegmentCodec {
+
+    public static final int MAGIC = 0x464C5741; // "FLWA"
+    public static final byte VERSION = 1;
+    public static final int HOURS = 24;
+    public static final int HEADER_BYTES = 21;
+    public static final int TRAILER_BYTES = 4;
+
+    private FlowSegmentCodec() {
+    }
+
+    /**
+     * 编码一天的流量矩阵
+     * @param series 节点ID到24小时流量的映射，缺失的小时为Integer.MIN_VALUE
+     */
+    public static byte[] encode(int day, Map<Integer, int[]> series) {
+        int[] nodeIds = series.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(nodeIds.length * 8);
+        int previousNode = 0;
+        for (int nodeId : nodeIds) {
+            writeVarInt(payload, zigzag(nodeId - previousNode));
+            previousNode = nodeId;
+        }
+        int rows = 0;
+        for (int nodeId : nodeIds) {
+            int[] values = series.get(nodeId);
+            int mask = 0;
+            for (int hour = 0; hour < HOURS; hour++) {
+                if (values[hour] != Integer.MIN_VALUE) {
+                    mask |= 1 << hour;
+                }
+            }
+            writeVarInt(payload, mask);
+            int previous = 0;
+            for (int hour = 0; hour < HOURS; hour++) {
+                if (values[hour] != Integer.MIN_VALUE) {
+                    writeVarInt(payload, zigzag(values[hour] - previous));
+                    previous = values[hour];
+                    rows++;
+                }
+            }
+        }
+
+        byte[] body = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + body.length + TRAILER_BYTES).order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(MAGIC).put(VERSION).putInt(day).putInt(nodeIds.length).putInt(rows).putInt(body.length);
+        buffer.put(body);
+        buffer.putInt((int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * 读取并校验头部和校验和
+     * @throws IllegalStateException 格式错误或校验和不匹配
+     */
+    public static Header readHeader(ByteBuffer segment) {
+        ByteBuffer buffer = segment.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (buffer.remaining() < HEADER_BYTES + TRAILER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalStateException("不是有效的流量归档段");
+        }
+        if (buffer.get(4) != VERSION) {
+            throw new IllegalStateException("不支持的归档段版本: " + buffer.get(4));
+        }
+        Header header = new Header(buffer.getInt(5), buffer.getInt(9), buffer.getInt(13), buffer.getInt(17));
+        if (buffer.remaining() != HEADER_BYTES + header.payloadBytes + TRAILER_BYTES) {
+            throw new IllegalStateException("归档段长度不匹配");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(HEADER_BYTES).limit(HEADER_BYTES + header.payloadBytes));
+        if ((int) crc.getValue() != buffer.getInt(HEADER_BYTES + header.payloadBytes)) {
+            throw new IllegalStateException("归档段校验和不匹配: 日期=" + header.day);
+        }
+        return header;
+    }
+
+    /**
+     * 解码数据区，按节点、小时顺序回调每个数据点
+     */
+    public static void decode(ByteBuffer segment, Header header, CellVisitor visitor) {
+        ByteBuffer buffer = segment.duplicate();
+        buffer.position(HEADER_BYTES).limit(HEADER_BYTES + header.payloadBytes);
+        int[] nodeIds = new int[header.nodeCount];
+        int previousNode = 0;
+        for (int i = 0; i < nodeIds.length; i++) {
+            previousNode += unzigzag(readVarInt(buffer));
+            nodeIds[i] = previousNode;
+        }
+        for (int nodeId : nodeIds) {
+            int mask = readVarInt(buffer);
+            int previous = 0;
+            for (int hour = 0; hour < HOURS; hour++) {
+                if ((mask & (1 << hour)) != 0) {
+                    previous += unzigzag(readVarInt(buffer));
+                    visitor.visit(nodeId, hour, previous);
+                }
+            }
+        }
+    }
+
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("varint格式错误");
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 段头部信息
+     */
+    public static final class Header {
+        public final int day;
+        public final int nodeCount;
+        public final int rows;
+        public final int payloadBytes;
+
+        Header(int day, int nodeCount, int rows, int payloadBytes) {
+            this.day = day;
+            this.nodeCount = nodeCount;
+            this.rows = rows;
+            this.payloadBytes = payloadBytes;
+        }
+    }
+
+    /**
+     * 数据点回调
+     */
+    @FunctionalInterface
+    public interface CellVisitor {
+        void visit(int nodeId, int hour, int flow);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.navigation.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 线程安全的固定分桶直方图
+ * 用于记录批大小、等待时间等指标，写入路径只做一次二分查找和一次LongAdder累加
+ */
+public class Histogram {
+    private final String unit;
+    private final long[] upperBounds;      // 各桶上界（含），最后一个桶之后为溢出桶
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param unit 数值单位（仅用于展示）
+     * @param upperBounds 递增排列的桶上界
+     */
+    public Histogram(String unit, long... upperBounds) {
+        for (int i = 1; i < upperBounds.length; i++) {
+            if (upperBounds[i] <= upperBounds[i - 1]) {
+                throw new IllegalArgumentException("直方图桶上界必须递增");
+            }
+        }
+        this.unit = unit;
+        this.upperBounds = upperBounds.clone();
+        this.buckets = new LongAdder[upperBounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一个观测值
+     */
+    public void record(long value) {
+        int low = 0;
+        int high = upperBounds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (upperBounds[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        buckets[low].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0.0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * 按分桶估算分位数（返回所在桶的上界）
+     */
+    public long quantile(double q) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(q * n);
+        long seen = 0;
+        for (int i = 0; i < upperBounds.length; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank) {
+                return upperBounds[i];
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * 导出为便于JSON序列化的快照
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        Map<String, Long> distribution = new LinkedHashMap<>();
+        for (int i = 0; i < upperBounds.length; i++) {
+            distribution.put("<=" + upperBounds[i], buckets[i].sum());
+        }
+        distribution.put(">" + upperBounds[upperBounds.length - 1], buckets[upperBounds.length].sum());
+
+        result.put("unit", unit);
+        result.put("count", getCount());
+        result.put("mean", getMean());
+        result.put("p50", quantile(0.50));
+        result.put("p99", quantile(0.99));
+        result.put("max", max.get());
+        result.put("buckets", distribution);
+        return result;
+    }
+}
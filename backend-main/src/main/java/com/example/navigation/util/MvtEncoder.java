@@ -0,0 +1,173 @@
+package com.example.navigation.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Mapbox Vector Tile（规范2.1）编码
+ * 按protobuf线格式直接写出Tile/Layer/Feature/Value消息，只支持本项目用到的线要素：
+ * <pre>
+ * Tile    : layers(3)
+ * Layer   : version(15)=2 name(1) features(2) keys(3) values(4) extent(5)
+ * Feature : id(1) tags(2, packed) type(3)=LINESTRING geometry(4, packed)
+ * Value   : string_value(1) | sint_value(6)
+ * </pre>
+ * 几何坐标为瓦片内坐标（0到extent），命令和参数按规范做差值和zigzag编码
+ */
+public final class MvtEncoder {
+
+    public static final String CONTENT_TYPE = "application/vnd.mapbox-vector-tile";
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_LENGTH = 2;
+
+    private static final int GEOM_LINESTRING = 2;
+    private static final int CMD_MOVE_TO = 1;
+    private static final int CMD_LINE_TO = 2;
+
+    private MvtEncoder() {
+    }
+
+    /**
+     * 把若干图层编码为一个瓦片
+     */
+    public static byte[] encode(Layer... layers) {
+        ByteArrayOutputStream tile = new ByteArrayOutputStream();
+        for (Layer layer : layers) {
+            writeMessage(tile, 3, layer.toBytes());
+        }
+        return tile.toByteArray();
+    }
+
+    /**
+     * 图层：累积要素，属性键和值在图层内去重后按下标引用
+     */
+    public static final class Layer {
+        private final String name;
+        private final int extent;
+        private final ByteArrayOutputStream features = new ByteArrayOutputStream();
+        private final Map<String, Integer> keys = new LinkedHashMap<>();
+        private final Map<Object, Integer> values = new LinkedHashMap<>();
+        private int featureCount;
+
+        public Layer(String name, int extent) {
+            this.name = name;
+            this.extent = extent;
+        }
+
+        public int getExtent() {
+            return extent;
+        }
+
+        public int getFeatureCount() {
+            return featureCount;
+        }
+
+        /**
+         * 添加一条折线要素
+         * @param coordinates 瓦片内坐标，按x0,y0,x1,y1...排列，至少两个点
+         * @param properties 属性，值只能是String或整数
+         */
+        public void addLineString(long id, int[] coordinates, Map<String, Object> properties) {
+            if (coordinates.length < 4 || coordinates.length % 2 != 0) {
+                throw new IllegalArgumentException("折线至少需要两个点");
+            }
+            ByteArrayOutputStream tags = new ByteArrayOutputStream();
+            for (Map.Entry<String, Object> property : properties.entrySet()) {
+                writeVarInt(tags, keys.computeIfAbsent(property.getKey(), key -> keys.size()));
+                writeVarInt(tags, values.computeIfAbsent(normalize(property.getValue()), value -> values.size()));
+            }
+
+            ByteArrayOutputStream geometry = new ByteArrayOutputStream();
+            int points = coordinates.length / 2;
+            writeVarInt(geometry, command(CMD_MOVE_TO, 1));
+            writeVarInt(geometry, zigzag(coordinates[0]));
+            writeVarInt(geometry, zigzag(coordinates[1]));
+            writeVarInt(geometry, command(CMD_LINE_TO, points - 1));
+            for (int i = 2; i < coordinates.length; i += 2) {
+                writeVarInt(geometry, zigzag(coordinates[i] - coordinates[i - 2]));
+                writeVarInt(geometry, zigzag(coordinates[i + 1] - coordinates[i - 1]));
+            }
+
+            ByteArrayOutputStream feature = new ByteArrayOutputStream();
+            writeTag(feature, 1, WIRE_VARINT);
+            writeVarLong(feature, id);
+            writeMessage(feature, 2, tags.toByteArray());
+            writeTag(feature, 3, WIRE_VARINT);
+            writeVarInt(feature, GEOM_LINESTRING);
+            writeMessage(feature, 4, geometry.toByteArray());
+            writeMessage(features, 2, feature.toByteArray());
+            featureCount++;
+        }
+
+        byte[] toBytes() {
+            ByteArrayOutputStream layer = new ByteArrayOutputStream(features.size() + 256);
+            writeTag(layer, 15, WIRE_VARINT);
+            writeVarInt(layer, 2);
+            writeMessage(layer, 1, name.getBytes(StandardCharsets.UTF_8));
+            layer.writeBytes(features.toByteArray());
+            for (String key : keys.keySet()) {
+                writeMessage(layer, 3, key.getBytes(StandardCharsets.UTF_8));
+            }
+            for (Object value : values.keySet()) {
+                ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+                if (value instanceof String string) {
+                    writeMessage(encoded, 1, string.getBytes(StandardCharsets.UTF_8));
+                } else {
+                    writeTag(encoded, 6, WIRE_VARINT);
+                    writeVarLong(encoded, zigzag((Long) value));
+                }
+                writeMessage(layer, 4, encoded.toByteArray());
+            }
+            writeTag(layer, 5, WIRE_VARINT);
+            writeVarInt(layer, extent);
+            return layer.toByteArray();
+        }
+
+        private static Object normalize(Object value) {
+            if (value instanceof String) {
+                return value;
+            }
+            if (value instanceof Integer || value instanceof Long || value instanceof Short) {
+                return ((Number) value).longValue();
+            }
+            throw new IllegalArgumentException("不支持的属性值类型: " + value);
+        }
+    }
+
+    private static int command(int id, int count) {
+        return (id & 0x7) | (count << 3);
+    }
+
+    private static void writeMessage(ByteArrayOutputStream out, int field, byte[] payload) {
+        writeTag(out, field, WIRE_LENGTH);
+        writeVarInt(out, payload.length);
+        out.writeBytes(payload);
+    }
+
+    private static void writeTag(ByteArrayOutputStream out, int field, int wireType) {
+        writeVarInt(out, (field << 3) | wireType);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.navigation.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * PostgreSQL COPY工具类
+ * 通过反射调用驱动的CopyManager，PostgreSQL驱动只需在运行时可用，编译期不依赖驱动的扩展接口；
+ * 连接不是PostgreSQL（如测试使用的H2）或驱动不在类路径上时视为不支持
+ */
+public class PgCopy {
+    private static final String PG_CONNECTION_CLASS = "org.postgresql.PGConnection";
+
+    private PgCopy() {
+    }
+
+    /**
+     * 连接是否支持COPY
+     */
+    public static boolean isSupported(Connection connection) throws SQLException {
+        Class<?> pgConnection = pgConnectionClass();
+        return pgConnection != null && connection.isWrapperFor(pgConnection);
+    }
+
+    /**
+     * 执行COPY ... FROM STDIN，返回写入的行数
+     * @throws SQLException 连接不支持COPY或COPY执行失败
+     */
+    public static long copyIn(Connection connection, String sql, Reader reader) throws SQLException, IOException {
+        Class<?> pgConnection = pgConnectionClass();
+        if (pgConnection == null || !connection.isWrapperFor(pgConnection)) {
+            throw new SQLException("当前连接不支持COPY");
+        }
+        try {
+            Object copyApi = pgConnection.getMethod("getCopyAPI").invoke(connection.unwrap(pgConnection));
+            Method copyIn = copyApi.getClass().getMethod("copyIn", String.class, Reader.class);
+            return (long) copyIn.invoke(copyApi, sql, reader);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new SQLException("COPY执行失败: " + cause.getMessage(), cause);
+        } catch (ReflectiveOperationException e) {
+            throw new SQLException("PostgreSQL驱动不支持COPY: " + e.getMessage(), e);
+        }
+    }
+
+    private static Class<?> pgConnectionClass() {
+        try {
+            return Class.forName(PG_CONNECTION_CLASS);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.navigation.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 相对误差分位数摘要（对数分桶）
+ * 正值v落入第ceil(log_γ(v))个桶，γ=(1+α)/(1-α)，桶内代表值与真实值的相对误差不超过α；0及负值单独计数。
+ * 桶数只由精度和最大值决定，与数据量无关；计数可以减少，因此有效流量被覆盖时能撤销旧值。
+ * 参数相同的摘要可以逐桶相加合并，用于跨小时、跨区域汇总。非线程安全，由调用方加锁
+ */
+public class QuantileSketch {
+    private final double relativeAccuracy;
+    private final double logGamma;
+    private final long[] counts;   // 下标0为0及负值，下标i(i>=1)为(γ^(i-2), γ^(i-1)]，超出最大值的计入最后一个桶
+    private long count;
+
+    /**
+     * @param relativeAccuracy 相对误差α，取值(0, 1)
+     * @param maxValue 精确覆盖的最大值，更大的值按最大值所在桶计
+     */
+    public QuantileSketch(double relativeAccuracy, int maxValue) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("分位数摘要的相对误差应在(0, 1)之间: " + relativeAccuracy);
+        }
+        if (maxValue < 1) {
+            throw new IllegalArgumentException("分位数摘要的最大值应为正数: " + maxValue);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.logGamma = Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy));
+        this.counts = new long[2 + (int) Math.ceil(Math.log(maxValue) / logGamma)];
+    }
+
+    private QuantileSketch(QuantileSketch other) {
+        this.relativeAccuracy = other.relativeAccuracy;
+        this.logGamma = other.logGamma;
+        this.counts = other.counts.clone();
+        this.count = other.count;
+    }
+
+    /**
+     * 记录一个值
+     */
+    public void add(int value) {
+        add(value, 1);
+    }
+
+    /**
+     * 按权重记录一个值，负权重用于撤销之前记录的值
+     */
+    public void add(int value, long weight) {
+        counts[bucketOf(value)] += weight;
+        count += weight;
+    }
+
+    /**
+     * 把参数相同的另一个摘要合并进来
+     */
+    public void merge(QuantileSketch other) {
+        if (other.counts.length != counts.length || other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("只能合并参数相同的分位数摘要");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+    }
+
+    public QuantileSketch copy() {
+        return new QuantileSketch(this);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count <= 0;
+    }
+
+    /**
+     * 桶数，即每个摘要占用的计数器个数
+     */
+    public int bucketCount() {
+        return counts.length;
+    }
+
+    /**
+     * 估算q分位数（按秩ceil(q*n)所在桶的代表值取整），为空时返回0
+     */
+    public int quantile(double q) {
+        if (count <= 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return valueOf(i);
+            }
+        }
+        return valueOf(counts.length - 1);
+    }
+
+    /**
+     * 导出常用分位数
+     */
+    public Map<String, Object> summary() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", count);
+        result.put("p50", isEmpty() ? null : quantile(0.50));
+        result.put("p90", isEmpty() ? null : quantile(0.90));
+        result.put("p99", isEmpty() ? null : quantile(0.99));
+        return result;
+    }
+
+    private int bucketOf(int value) {
+        if (value <= 0) {
+            return 0;
+        }
+        int index = 1 + (int) Math.ceil(Math.log(value) / logGamma - 1e-9);
+        return Math.min(index, counts.length - 1);
+    }
+
+    /**
+     * 桶的代表值2γ^k/(γ+1)，对桶内任意值的相对误差不超过α
+     */
+    private int valueOf(int bucket) {
+        if (bucket == 0) {
+            return 0;
+        }
+        double gamma = Math.exp(logGamma);
+        return (int) Math.round(2 * Math.exp((bucket - 1) * logGamma) / (gamma + 1));
+    }
+}
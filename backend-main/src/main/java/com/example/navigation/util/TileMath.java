@@ -0,0 +1,65 @@
+package com.example.navigation.util;
+
+/**
+ * Web墨卡托瓦片坐标工具类
+ * 瓦片编号遵循z/x/y约定（x向东增大，y向南增大），瓦片边长256像素
+ */
+public class TileMath {
+    public static final int TILE_SIZE = 256;
+    public static final double MAX_LATITUDE = 85.05112878;
+
+    /**
+     * 经度转换为指定缩放级别下的全局像素横坐标
+     */
+    public static double lngToPixelX(double lng, int zoom) {
+        return (lng + 180.0) / 360.0 * TILE_SIZE * (1L << zoom);
+    }
+
+    /**
+     * 纬度转换为指定缩放级别下的全局像素纵坐标
+     */
+    public static double latToPixelY(double lat, int zoom) {
+        double clamped = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, lat));
+        double sin = Math.sin(Math.toRadians(clamped));
+        double y = 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+        return y * TILE_SIZE * (1L << zoom);
+    }
+
+    /**
+     * 全局像素横坐标转换为经度
+     */
+    public static double pixelXToLng(double pixelX, int zoom) {
+        return pixelX / (TILE_SIZE * (double) (1L << zoom)) * 360.0 - 180.0;
+    }
+
+    /**
+     * 全局像素纵坐标转换为纬度
+     */
+    public static double pixelYToLat(double pixelY, int zoom) {
+        double n = Math.PI - 2 * Math.PI * pixelY / (TILE_SIZE * (double) (1L << zoom));
+        return Math.toDegrees(Math.atan(Math.sinh(n)));
+    }
+
+    /**
+     * 瓦片坐标是否合法
+     */
+    public static boolean isValidTile(int zoom, int x, int y) {
+        if (zoom < 0 || zoom > 30) {
+            return false;
+        }
+        long tiles = 1L << zoom;
+        return x >= 0 && y >= 0 && x < tiles && y < tiles;
+    }
+
+    /**
+     * 瓦片的经纬度范围：{西, 南, 东, 北}
+     */
+    public static double[] tileBounds(int zoom, int x, int y) {
+        return new double[]{
+                pixelXToLng((double) x * TILE_SIZE, zoom),
+                pixelYToLat((double) (y + 1) * TILE_SIZE, zoom),
+                pixelXToLng((double) (x + 1) * TILE_SIZE, zoom),
+                pixelYToLat((double) y * TILE_SIZE, zoom)
+        };
+    }
+}
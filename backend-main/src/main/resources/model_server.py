@@ -10,6 +10,8 @@ import xgboost as xgb
 import pandas as pd
 import os
 import logging
+import math
+import threading
 import traceback
 from datetime import datetime
 
@@ -26,17 +28,27 @@ logger = logging.getLogger(__name__)
 
 app = Flask(__name__)
 
-# 全局模型变量
+# 全局模型变量（当前生效的模型）
 model = None
 MODEL_PATH = "models/node_volume_model.json"
+DEFAULT_VERSION = "default"
+
+# 已加载的模型版本（版本号 -> 模型），用于影子评分和原子切换
+models = {}
+active_version = None
+models_lock = threading.Lock()
 
 def load_model():
     """加载XGBoost模型"""
-    global model
+    global model, active_version
     try:
         if os.path.exists(MODEL_PATH):
-            model = xgb.XGBRegressor()
-            model.load_model(MODEL_PATH)
+            loaded = xgb.XGBRegressor()
+            loaded.load_model(MODEL_PATH)
+            with models_lock:
+                models[DEFAULT_VERSION] = loaded
+                model = loaded
+                active_version = DEFAULT_VERSION
             logger.info(f"✅ 模型加载成功: {MODEL_PATH}")
             return True
         else:
@@ -47,6 +59,27 @@ def load_model():
         logger.error(traceback.format_exc())
         return False
 
+def resolve_model(version):
+    """根据版本号获取模型，未指定版本时返回当前生效的模型"""
+    if not version:
+        return model, active_version
+    return models.get(version), version
+
+def validate_model(candidate):
+    """使用节点×小时的样本网格校验模型输出是否有效"""
+    rows = [[node, time] for node in range(1, 21) for time in range(24)]
+    df = pd.DataFrame(rows, columns=["node", "time"])
+    predictions = [float(p) for p in candidate.predict(df)]
+    invalid = [p for p in predictions if math.isnan(p) or math.isinf(p)]
+    if invalid:
+        return False, {"samples": len(predictions), "invalid": len(invalid)}
+    return True, {
+        "samples": len(predictions),
+        "min": min(predictions),
+        "max": max(predictions),
+        "mean": sum(predictions) / len(predictions)
+    }
+
 def validate_parameters(node, time):
     """验证输入参数"""
     try:
@@ -96,9 +129,16 @@ def predict_volume():
                 return jsonify({"error": "请求体为空"}), 400
             node = data.get("node")
             time = data.get("time")
+            version = data.get("version")
         else:  # GET 请求
             node = request.args.get("node")
             time = request.args.get("time")
+            version = request.args.get("version")
+        
+        # 获取指定版本的模型
+        selected_model, selected_version = resolve_model(version)
+        if selected_model is None:
+            return jsonify({"error": f"模型版本未加载: {version}", "code": "VERSION_NOT_LOADED"}), 404
         
         # 验证参数
         node, time, error = validate_parameters(node, time)
@@ -107,7 +147,7 @@ def predict_volume():
         
         # 准备数据并预测
         df = pd.DataFrame([[node, time]], columns=["node", "time"])
-        prediction = model.predict(df)[0]
+        prediction = selected_model.predict(df)[0]
         
         # 确保预测值合理
         volume = max(float(prediction), 1.0)
@@ -121,6 +161,7 @@ def predict_volume():
             "node": node,
             "time": time,
             "volume": volume,
+            "version": selected_version,
             "processing_time_ms": round(processing_time, 2),
             "timestamp": datetime.now().isoformat(),
             "success": True
@@ -158,6 +199,11 @@ def predict_batch():
         node_ids = data.get("nodeIds", [])
         time_point = data.get("timePoint")
         
+        # 获取指定版本的模型
+        selected_model, selected_version = resolve_model(data.get("version"))
+        if selected_model is None:
+            return jsonify({"error": f"模型版本未加载: {data.get('version')}", "code": "VERSION_NOT_LOADED"}), 404
+        
         if not node_ids:
             return jsonify({"error": "节点ID列表不能为空"}), 400
         
@@ -175,7 +221,7 @@ def predict_batch():
                     continue
                     
                 df = pd.DataFrame([[node_id, time_point]], columns=["node", "time"])
-                prediction = model.predict(df)[0]
+                prediction = selected_model.predict(df)[0]
                 predictions[str(node_id)] = max(float(prediction), 1.0)
             except Exception as e:
                 logger.warning(f"节点 {node_id} 预测失败: {str(e)}")
@@ -190,6 +236,7 @@ def predict_batch():
             "timePoint": time_point,
             "predictions": predictions,
             "count": len(predictions),
+            "version": selected_version,
             "processing_time_ms": round(processing_time, 2),
             "timestamp": datetime.now().isoformat(),
             "success": True
@@ -212,6 +259,7 @@ def get_status():
     return jsonify({
         "status": "healthy",
         "model_loaded": model is not None,
+        "active_version": active_version,
         "model_path": MODEL_PATH,
         "model_exists": os.path.exists(MODEL_PATH),
         "timestamp": datetime.now().isoformat(),
@@ -222,6 +270,15 @@ def get_status():
 def reload_model():
     """重新加载模型"""
     logger.info("收到模型重载请求")
+    if active_version not in (None, DEFAULT_VERSION):
+        # 重载会把生效版本重置为默认模型，已切换到其他版本时拒绝，避免与注册中心记录的版本不一致
+        logger.warning(f"当前生效版本为 {active_version}，拒绝重载默认模型")
+        return jsonify({
+            "success": False,
+            "active_version": active_version,
+            "message": "当前生效的是已切换的模型版本，拒绝重载默认模型",
+            "timestamp": datetime.now().isoformat()
+        }), 409
     success = load_model()
     
     return jsonify({
@@ -230,12 +287,76 @@ def reload_model():
         "timestamp": datetime.now().isoformat()
     }), 200 if success else 500
 
+@app.route("/models", methods=["GET"])
+def list_models():
+    """列出已加载的模型版本"""
+    return jsonify({
+        "active": active_version,
+        "versions": sorted(models.keys()),
+        "timestamp": datetime.now().isoformat()
+    })
+
+@app.route("/models/load", methods=["POST"])
+def load_model_version():
+    """在后台加载一个候选模型版本并校验，不影响当前生效的模型"""
+    data = request.get_json() or {}
+    version = data.get("version")
+    path = data.get("path")
+    if not version or not path:
+        return jsonify({"error": "version和path不能为空"}), 400
+    if not os.path.exists(path):
+        return jsonify({"error": f"模型文件不存在: {path}"}), 404
+    
+    try:
+        candidate = xgb.XGBRegressor()
+        candidate.load_model(path)
+        valid, validation = validate_model(candidate)
+        if not valid:
+            logger.warning(f"候选模型校验失败 - 版本: {version}, 结果: {validation}")
+            return jsonify({"success": False, "version": version, "validation": validation}), 422
+        
+        with models_lock:
+            models[version] = candidate
+        logger.info(f"候选模型加载成功 - 版本: {version}, 路径: {path}, 校验: {validation}")
+        return jsonify({"success": True, "version": version, "validation": validation})
+    except Exception as e:
+        logger.error(f"候选模型加载失败 - 版本: {version}, 错误: {str(e)}")
+        return jsonify({"success": False, "version": version, "error": str(e)}), 500
+
+@app.route("/models/promote", methods=["POST"])
+def promote_model_version():
+    """原子切换当前生效的模型版本"""
+    global model, active_version
+    version = (request.get_json() or {}).get("version")
+    with models_lock:
+        if version not in models:
+            return jsonify({"error": f"模型版本未加载: {version}"}), 404
+        previous = active_version
+        model = models[version]
+        active_version = version
+        # 只保留当前版本和上一个版本，便于回滚
+        for stale in [v for v in models if v not in (version, previous)]:
+            del models[stale]
+    logger.info(f"模型版本已切换: {previous} -> {version}")
+    return jsonify({"success": True, "active": version, "previous": previous})
+
+@app.route("/models/unload", methods=["POST"])
+def unload_model_version():
+    """卸载一个非生效的模型版本"""
+    version = (request.get_json() or {}).get("version")
+    with models_lock:
+        if version == active_version:
+            return jsonify({"error": "不能卸载当前生效的模型版本"}), 400
+        removed = models.pop(version, None) is not None
+    return jsonify({"success": removed, "version": version})
+
 @app.errorhandler(404)
 def not_found(error):
     return jsonify({
         "error": "API端点不存在",
         "code": "NOT_FOUND",
-        "available_endpoints": ["/", "/predict", "/predict/batch", "/status", "/reload"]
+        "available_endpoints": ["/", "/predict", "/predict/batch", "/status", "/reload",
+                                "/models", "/models/load", "/models/promote", "/models/unload"]
     }), 404
 
 @app.errorhandler(500)
@@ -0,0 +1,88 @@
+package com.example.navigation.repository;
+
+import com.example.navigation.model.entity.Node;
+import com.example.navigation.model.projection.NodeCoordinateView;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * flow表索引与只读投影测试
+ * 通过查询计划验证单点查询、按节点查询和节点范围查询使用对应索引，并验证坐标投影的查询结果；
+ * 不修改表结构，也不比较耗时或内存分配
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties")
+class FlowIndexPlanTest {
+
+    private static final int DAYS = 5;
+    private static final int NODES = 50;
+
+    @Autowired
+    private FlowForecastRepository flowForecastRepository;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM flow");
+        nodeRepository.deleteAll();
+    }
+
+    @Test
+    void testFlowLookupsUseIndexes() {
+        List<Object[]> rows = new ArrayList<>();
+        for (int day = 1; day <= DAYS; day++) {
+            for (int hour = 0; hour < 24; hour++) {
+                for (int node = 1; node <= NODES; node++) {
+                    rows.add(new Object[]{day, hour, node, (day * 31 + hour * 7 + node) % 120});
+                }
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO flow (day_num, time_stamp, node_id, flow) VALUES (?, ?, ?, ?)", rows);
+
+        // (日期, 小时, 节点)单点查询走唯一索引，按节点查询走(node_id, day_num)索引
+        assertThat(explain("SELECT flow FROM flow WHERE day_num = 5 AND time_stamp = 8 AND node_id = 17"))
+                .containsIgnoringCase("IDX_FLOW_DAY_TIME_NODE");
+        assertThat(explain("SELECT day_num, time_stamp, flow FROM flow WHERE node_id = 17 AND day_num BETWEEN 1 AND 3"))
+                .containsIgnoringCase("IDX_FLOW_NODE_DAY");
+        assertThat(flowForecastRepository.findCombinedByNodeAndDayAndTimeStamp(17, 5, 8).getObserved())
+                .isEqualTo((5 * 31 + 8 * 7 + 17) % 120);
+    }
+
+    @Test
+    void testNodeProjectionAndBoundsIndex() {
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Node node = new Node();
+            node.setLatitude(39.9 + i * 0.0001);
+            node.setLongitude(116.4 + i * 0.0001);
+            nodes.add(node);
+        }
+        nodeRepository.saveAll(nodes);
+
+        List<NodeCoordinateView> views = nodeRepository.findAllCoordinates();
+        assertThat(views).hasSize(2000);
+        assertThat(views.get(0).latitude()).isBetween(39.9, 40.2);
+
+        assertThat(explain("SELECT node_id FROM nodes WHERE latitude BETWEEN 39.95 AND 39.96 AND longitude BETWEEN 116.0 AND 117.0"))
+                .containsIgnoringCase("IDX_NODES_LAT_LNG");
+        assertThat(nodeRepository.findNodesInBounds(39.95, 39.96, 116.0, 117.0)).hasSize(100);
+    }
+
+    private String explain(String sql) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.entity.Flow;
+import com.example.navigation.model.entity.Node;
+import com.example.navigation.repository.FlowRepository;
+import com.example.navigation.repository.NodeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 仪表盘统计测试：验证增量统计与数据库全量扫描一致，统计快照不一致时只报告的检查不修改快照，要求修复时才重建
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties")
+class DashboardServiceTest {
+
+    private static final int NODES = 25;
+
+    @Autowired
+    private DashboardService dashboardService;
+
+    @Autowired
+    private FlowTimeSeriesStore flowTimeSeriesStore;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private FlowRepository flowRepository;
+
+    @AfterEach
+    void cleanUp() {
+        flowRepository.deleteAll();
+        nodeRepository.deleteAll();
+    }
+
+    @Test
+    void testIncrementalStatsMatchDatabase() {
+        seedFlows();
+
+        assertThat(dashboardService.verifyConsistency(false)).containsEntry("consistent", true);
+        assertThat(dashboardService.getSnapshotDetails()).containsEntry("count", (long) NODES);
+    }
+
+    @Test
+    void testVerifyReportsWithoutRepair() {
+        int nodeId = seedFlows().get(0).getNodeID();
+        flowTimeSeriesStore.runExclusive(() ->
+                dashboardService.onEffectiveFlowChanged(1, 9, nodeId, FlowTimeSeriesStore.MISSING, 50));
+
+        assertThat(dashboardService.verifyConsistency(false))
+                .containsEntry("consistent", false)
+                .doesNotContainKey("rebuilt");
+        assertThat(dashboardService.getSnapshotDetails()).containsEntry("count", (long) NODES + 1);
+
+        assertThat(dashboardService.verifyConsistency(true))
+                .containsEntry("consistent", false)
+                .containsKey("rebuilt");
+        assertThat(dashboardService.verifyConsistency(false)).containsEntry("consistent", true);
+        assertThat(dashboardService.getSnapshotDetails()).containsEntry("count", (long) NODES);
+    }
+
+    /**
+     * 第1天8点每个节点一条流量数据
+     */
+    private List<Flow> seedFlows() {
+        List<Flow> flows = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            Node node = new Node();
+            node.setLatitude(39.90 + i * 0.005);
+            node.setLongitude(116.40);
+            flows.add(new Flow(null, 1, 8, nodeRepository.save(node).getNodeID(), 30 + (i * 7) % 80));
+        }
+        return flowRepository.saveAll(flows);
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.dto.map.CongestionResponse;
+import com.example.navigation.model.entity.Edge;
+import com.example.navigation.model.entity.Flow;
+import com.example.navigation.model.entity.Node;
+import com.example.navigation.repository.EdgeRepository;
+import com.example.navigation.repository.FlowRepository;
+import com.example.navigation.repository.NodeRepository;
+import com.example.navigation.util.BoundingBox;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * 路段拥挤度测试：验证整体重建、节点流量变化时只增量重算关联边、写入edge_congestion表，
+ * 以及视口拥挤度只统计至少一个端点在范围内的边且每条边只统计一次
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties")
+class EdgeCongestionStoreTest {
+
+    @Autowired
+    private EdgeCongestionStore edgeCongestionStore;
+
+    @Autowired
+    private MapService mapService;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private EdgeRepository edgeRepository;
+
+    @Autowired
+    private FlowRepository flowRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        flowRepository.deleteAll();
+        edgeRepository.deleteAll();
+        nodeRepository.deleteAll();
+        jdbcTemplate.update("DELETE FROM edge_congestion");
+    }
+
+    @Test
+    void testIncrementalEdgeCongestion() {
+        int a = saveNode(39.90, 116.40);
+        int b = saveNode(39.91, 116.40);
+        int c = saveNode(39.91, 116.41);
+        Edge ab = edgeRepository.save(new Edge(null, a, b, 1.0f));
+        Edge bc = edgeRepository.save(new Edge(null, b, c, 1.0f));
+        flowRepository.save(new Flow(null, 1, 8, a, 100));
+        flowRepository.save(new Flow(null, 1, 8, b, 200));
+
+        // 首次读取时整体重建：AB取两端平均，BC只有一端有流量
+        assertThat(edgeCongestionStore.getEdgeFlow(ab.getId(), 1, 8)).isEqualTo(150);
+        assertThat(edgeCongestionStore.getEdgeFlow(bc.getId(), 1, 8)).isEqualTo(200);
+        assertThat(edgeCongestionStore.getEdgeFlow(ab.getId(), 1, 9)).isNull();
+        long rebuilds = (long) edgeCongestionStore.getStatistics().get("rebuilds");
+
+        // 节点C新增流量只重算BC，不触发重建
+        flowRepository.save(new Flow(null, 1, 8, c, 100));
+        assertThat(edgeCongestionStore.getEdgeFlow(bc.getId(), 1, 8)).isEqualTo(150);
+        assertThat(edgeCongestionStore.getEdgeFlow(ab.getId(), 1, 8)).isEqualTo(150);
+        assertThat(edgeCongestionStore.getStatistics().get("rebuilds")).isEqualTo(rebuilds);
+
+        edgeCongestionStore.flush();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT flow FROM edge_congestion WHERE day_num = 1 AND time_stamp = 8 AND edge_id = ?",
+                Integer.class, bc.getId())).isEqualTo(150);
+
+        // 删除节点B的流量后两条边都只剩一端
+        flowRepository.delete(flowRepository.findAll().stream()
+                .filter(flow -> flow.getNodeID() == b).findFirst().orElseThrow());
+        assertThat(edgeCongestionStore.getEdgeFlow(ab.getId(), 1, 8)).isEqualTo(100);
+        assertThat(edgeCongestionStore.getEdgeFlow(bc.getId(), 1, 8)).isEqualTo(100);
+
+        edgeCongestionStore.flush();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM edge_congestion WHERE day_num = 1", Long.class)).isEqualTo(2L);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT flow FROM edge_congestion WHERE day_num = 1 AND time_stamp = 8 AND edge_id = ?",
+                Integer.class, ab.getId())).isEqualTo(100);
+    }
+
+    @Test
+    void testViewportCongestionCountsEachEdgeOnce() {
+        int a = saveNode(39.90, 116.40);
+        int b = saveNode(39.91, 116.40);
+        int c = saveNode(40.50, 117.50);
+        int d = saveNode(40.60, 117.60);
+        edgeRepository.save(new Edge(null, a, a, 1.0f));
+        edgeRepository.save(new Edge(null, a, b, 1.0f));
+        edgeRepository.save(new Edge(null, b, c, 1.0f));
+        edgeRepository.save(new Edge(null, c, d, 1.0f));
+        flowRepository.save(new Flow(null, 1, 8, a, 100));
+        flowRepository.save(new Flow(null, 1, 8, b, 100));
+        flowRepository.save(new Flow(null, 1, 8, c, 20));
+        flowRepository.save(new Flow(null, 1, 8, d, 20));
+
+        // 视口只包含A、B：自环AA和AB各统计一次（严重拥堵），BC一端在范围内（缓慢），CD不在范围内
+        Map<String, Double> levels = congestionLevels(BoundingBox.parse("116.39,39.89,116.41,39.92"));
+        assertThat(levels.get("严重拥堵")).isCloseTo(200.0 / 3, within(1e-9));
+        assertThat(levels.get("缓慢")).isCloseTo(100.0 / 3, within(1e-9));
+        assertThat(levels.get("畅通")).isZero();
+
+        // 不限范围时统计全部边
+        Map<String, Double> all = congestionLevels(null);
+        assertThat(all.get("严重拥堵")).isEqualTo(50.0);
+        assertThat(all.get("缓慢")).isEqualTo(25.0);
+        assertThat(all.get("畅通")).isEqualTo(25.0);
+    }
+
+    private Map<String, Double> congestionLevels(BoundingBox bbox) {
+        CongestionResponse response = mapService.getCongestionData(bbox);
+        return response.getData().getRegions().stream()
+                .collect(Collectors.toMap(CongestionResponse.CongestionRegion::getLevel,
+                        CongestionResponse.CongestionRegion::getValue));
+    }
+
+    private int saveNode(double latitude, double longitude) {
+        Node node = new Node();
+        node.setLatitude(latitude);
+        node.setLongitude(longitude);
+        return nodeRepository.save(node).getNodeID();
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.navigation.service;
+
+import com.example.navigation.controller.MapController;
+import com.example.navigation.model.entity.Flow;
+import com.example.navigation.repository.FlowRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 条件请求响应缓存测试：验证同一版本只构建一次、If-None-Match命中返回304、流量变更后版本递增、小时变化后ETag失效、版本号不随重启复用
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties")
+class EpochResponseCacheTest {
+
+    @Autowired
+    private EpochResponseCache epochResponseCache;
+
+    @Autowired
+    private FlowRepository flowRepository;
+
+    @Autowired
+    private MapController mapController;
+
+    @Autowired
+    private TrafficClock trafficClock;
+
+    @AfterEach
+    void cleanUp() {
+        flowRepository.deleteAll();
+    }
+
+    @Test
+    void testConditionalResponsesFollowFlowEpoch() {
+        AtomicInteger builds = new AtomicInteger();
+        ResponseEntity<byte[]> first = epochResponseCache.respond("test", null, () -> Map.of("build", builds.incrementAndGet()));
+        ResponseEntity<byte[]> second = epochResponseCache.respond("test", null, () -> Map.of("build", builds.incrementAndGet()));
+
+        assertThat(builds.get()).isEqualTo(1);
+        assertThat(second.getBody()).isSameAs(first.getBody());
+        String etag = first.getHeaders().getETag();
+
+        // 版本未变：304且不构建响应
+        ResponseEntity<byte[]> notModified = epochResponseCache.respond("test", etag, () -> Map.of("build", builds.incrementAndGet()));
+        assertThat(notModified.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(builds.get()).isEqualTo(1);
+
+        // 写入观测流量后版本递增，旧ETag失效
+        flowRepository.save(new Flow(null, 1, 8, 1, 50));
+        ResponseEntity<byte[]> changed = epochResponseCache.respond("test", etag, () -> Map.of("build", builds.incrementAndGet()));
+        assertThat(changed.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(changed.getHeaders().getETag()).isNotEqualTo(etag);
+        assertThat(builds.get()).isEqualTo(2);
+    }
+
+    @Test
+    void testHourChangeInvalidatesEtag() {
+        ResponseEntity<byte[]> first = mapController.getRoadTile(0, 0, 0, null);
+        String etag = first.getHeaders().getETag();
+        assertThat(mapController.getRoadTile(0, 0, 0, etag).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+
+        // 小时推进不递增流量版本，但瓦片内容随小时变化，旧ETag不能再命中
+        ReflectionTestUtils.setField(trafficClock, "fixedHour", 9);
+        try {
+            ResponseEntity<byte[]> nextHour = mapController.getRoadTile(0, 0, 0, etag);
+            assertThat(nextHour.getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(nextHour.getHeaders().getETag()).isNotEqualTo(etag);
+        } finally {
+            ReflectionTestUtils.setField(trafficClock, "fixedHour", 8);
+        }
+    }
+
+    @Test
+    void testEpochSeedDiffersPerBoot() {
+        // 每个实例（每次启动）的初始版本不同，重启前的ETag不会命中重启后的数据
+        FlowEpoch before = new FlowEpoch(null);
+        FlowEpoch after = new FlowEpoch(null);
+        assertThat(before.current()).isPositive();
+        assertThat(after.current()).isNotEqualTo(before.current());
+        assertThat(EpochResponseCache.etagOf("test", after.current()))
+                .isNotEqualTo(EpochResponseCache.etagOf("test", before.current()));
+    }
+}
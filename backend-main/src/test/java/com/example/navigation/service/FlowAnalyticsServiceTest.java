@@ -0,0 +1,86 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.entity.Flow;
+import com.example.navigation.repository.FlowRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 流量分析测试：验证跨归档段和flow表的多日并行聚合结果
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "traffic.clock.current-day=100",
+        "flow.archive.dir=target/flow-analytics-test",
+        "analytics.days-per-task=1"
+})
+class FlowAnalyticsServiceTest {
+
+    @Autowired
+    private FlowAnalyticsService flowAnalyticsService;
+
+    @Autowired
+    private FlowArchiveService flowArchiveService;
+
+    @Autowired
+    private FlowRepository flowRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        flowRepository.deleteAll();
+    }
+
+    @Test
+    void testProfilesAggregateAcrossArchivedAndLiveDays() {
+        List<Flow> flows = new ArrayList<>();
+        for (int day = 20; day <= 26; day++) {
+            for (int node = 1; node <= 5; node++) {
+                for (int hour = 0; hour < 24; hour++) {
+                    flows.add(new Flow(null, day, hour, node, node * 10 + hour));
+                }
+            }
+        }
+        flowRepository.saveAll(flows);
+        flowArchiveService.archiveDay(20);
+
+        // 归档后直接补录一行（不经过变更事件，列式存储中仍是归档值18），已归档日期应以归档段和flow表的合并结果为准
+        jdbcTemplate.update("INSERT INTO flow (day_num, time_stamp, node_id, flow) VALUES (20, 8, 1, 1000)");
+        assertThat(flowRepository.findByDay(20)).hasSize(1);
+
+        List<Map<String, Object>> hourly = flowAnalyticsService.getHourlyProfile(20, 26, null);
+        assertThat(hourly).hasSize(24);
+        assertThat(hourly.get(8).get("count")).isEqualTo(35L);
+        assertThat((Double) hourly.get(8).get("mean")).isEqualTo((38.0 * 35 - 18 + 1000) / 35);
+        assertThat(hourly.get(8).get("max")).isEqualTo(1000L);
+        assertThat(hourly.get(9).get("count")).isEqualTo(35L);
+        assertThat((Double) hourly.get(9).get("mean")).isEqualTo(39.0);
+
+        List<Map<String, Object>> weekday = flowAnalyticsService.getWeekdayProfile(20, 26);
+        assertThat(weekday).allSatisfy(row -> assertThat(row.get("count")).isEqualTo(120L));
+
+        List<Map<String, Object>> trend = flowAnalyticsService.getNodeTrend(3, 20, 26);
+        assertThat(trend).extracting(row -> row.get("day")).containsExactly(20, 21, 22, 23, 24, 25, 26);
+        assertThat((Double) trend.get(0).get("mean")).isEqualTo(41.5);
+
+        List<Map<String, Object>> top = flowAnalyticsService.getTopNodes(20, 26, 2);
+        assertThat(top).extracting(row -> row.get("nodeId")).containsExactly(5, 4);
+        assertThat(flowAnalyticsService.getNodeTrend(1, 20, 20).get(0).get("max")).isEqualTo(1000L);
+
+        assertThatThrownBy(() -> flowAnalyticsService.getHourlyProfile(26, 20, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.entity.Flow;
+import com.example.navigation.repository.FlowRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 历史流量归档测试：验证段文件编码往返、归档后删除行，以及范围查询合并归档段与补录行
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "traffic.clock.current-day=100",
+        "flow.archive.dir=target/flow-archive-test"
+})
+class FlowArchiveServiceTest {
+
+    @Autowired
+    private FlowArchiveService flowArchiveService;
+
+    @Autowired
+    private FlowRepository flowRepository;
+
+    @AfterEach
+    void cleanUp() {
+        flowRepository.deleteAll();
+    }
+
+    @Test
+    void testArchivedDaysAreScannedTogetherWithLiveRows() {
+        List<Flow> flows = new ArrayList<>();
+        for (int node = 1; node <= 50; node++) {
+            for (int hour = 0; hour < 24; hour++) {
+                flows.add(new Flow(null, 10, hour, node, 40 + (node * 7 + hour * 3) % 90));
+            }
+        }
+        flows.add(new Flow(null, 11, 8, 1, 55));
+        flowRepository.saveAll(flows);
+
+        Map<String, Object> result = flowArchiveService.archiveDay(10);
+        assertThat(result.get("rows")).isEqualTo(1200);
+        assertThat((Double) result.get("compressionRatio")).isGreaterThan(10.0);
+        assertThat(flowRepository.findByDay(10)).isEmpty();
+
+        // 归档后补录的行覆盖归档段中的同一数据点
+        flowRepository.save(new Flow(null, 10, 0, 1, 999));
+
+        List<Flow> scanned = flowArchiveService.findByDayBetween(10, 11);
+        assertThat(scanned).hasSize(1201);
+        assertThat(scanned).filteredOn(flow -> flow.getDay() == 10 && flow.getNodeID() == 1 && flow.getTimeStamp() == 0)
+                .singleElement()
+                .satisfies(flow -> assertThat(flow.getFlow()).isEqualTo(999));
+        assertThat(scanned).filteredOn(flow -> flow.getDay() == 10 && flow.getNodeID() == 50 && flow.getTimeStamp() == 23)
+                .singleElement()
+                .satisfies(flow -> assertThat(flow.getFlow()).isEqualTo(40 + (50 * 7 + 23 * 3) % 90));
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.navigation.service;
+
+import com.example.navigation.event.FlowChangedEvent;
+import com.example.navigation.repository.FlowRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 车流量流式导入测试：验证分批upsert、错误行统计、变更事件以及旧值取自写入事务内的数据库行
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = "flow.ingest.batch-size=3")
+class FlowIngestServiceTest {
+
+    @Autowired
+    private FlowIngestService flowIngestService;
+
+    @Autowired
+    private FlowRepository flowRepository;
+
+    @Autowired
+    private FlowTimeSeriesStore flowTimeSeriesStore;
+
+    @Autowired
+    private EventCapture eventCapture;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        flowRepository.deleteAll();
+        eventCapture.events.clear();
+    }
+
+    /**
+     * CSV带表头导入，再用NDJSON覆盖其中一部分：已有的行被更新而不是重复插入
+     */
+    @Test
+    void testCsvThenNdjsonUpsert() throws IOException {
+        String csv = "nodeID,day,timeStamp,flow\n"
+                + "101,5,8,40\n"
+                + "102,5,8,50\n"
+                + "103,5,8,60\n"
+                + "104,5,8,abc\n"
+                + "104,5,9,70\n";
+        Map<String, Object> first = flowIngestService.ingestCsv(stream(csv));
+
+        assertThat(first.get("accepted")).isEqualTo(4L);
+        assertThat(first.get("rejected")).isEqualTo(1L);
+        assertThat(first.get("inserted")).isEqualTo(4L);
+        assertThat(first.get("batches")).isEqualTo(2);
+
+        String ndjson = "{\"day\":5,\"timeStamp\":8,\"nodeID\":101,\"flow\":45}\n"
+                + "\n"
+                + "{\"day\":5,\"timeStamp\":8,\"nodeID\":105,\"flow\":80}\n"
+                + "{\"day\":5,\"timeStamp\":30,\"nodeID\":106,\"flow\":80}\n";
+        Map<String, Object> second = flowIngestService.ingestNdjson(stream(ndjson));
+
+        assertThat(second.get("updated")).isEqualTo(1L);
+        assertThat(second.get("inserted")).isEqualTo(1L);
+        assertThat(second.get("rejected")).isEqualTo(1L);
+        assertThat(flowRepository.findByDay(5)).hasSize(5);
+        assertThat(flowRepository.findByNodeIDAndDayAndTimeStamp(101, 5, 8).getFlow()).isEqualTo(45);
+
+        // 列式存储通过变更事件同步，更新事件携带旧值
+        assertThat(flowTimeSeriesStore.getObserved(101, 5, 8)).isEqualTo(45);
+        assertThat(eventCapture.events.stream().flatMap(event -> event.getChanges().stream())
+                .filter(change -> change.getNodeId() == 101 && change.getNewFlow() == 45))
+                .singleElement()
+                .satisfies(change -> assertThat(change.getOldFlow()).isEqualTo(40));
+    }
+
+    /**
+     * 绕过变更事件直接写库的行（列式存储不知道它）：导入发布的旧值仍应是库中的值，且唯一索引阻止重复行
+     */
+    @Test
+    void testOldValuesReadInsideWrite() throws IOException {
+        jdbcTemplate.update("INSERT INTO flow (day_num, time_stamp, node_id, flow) VALUES (6, 8, 201, 33)");
+        assertThat(flowTimeSeriesStore.getObserved(201, 6, 8)).isNull();
+        assertThatThrownBy(() -> jdbcTemplate.update("INSERT INTO flow (day_num, time_stamp, node_id, flow) VALUES (6, 8, 201, 34)"))
+                .isInstanceOf(DuplicateKeyException.class);
+
+        Map<String, Object> result = flowIngestService.ingestCsv(stream("6,8,201,90\n6,8,202,10\n"));
+
+        assertThat(result.get("updated")).isEqualTo(1L);
+        assertThat(result.get("inserted")).isEqualTo(1L);
+        assertThat(flowRepository.findByDay(6)).hasSize(2);
+        assertThat(eventCapture.events.stream().flatMap(event -> event.getChanges().stream())
+                .filter(change -> change.getNodeId() == 201))
+                .singleElement()
+                .satisfies(change -> assertThat(change.getOldFlow()).isEqualTo(33));
+        assertThat(flowTimeSeriesStore.getObserved(201, 6, 8)).isEqualTo(90);
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TestConfiguration
+    static class EventCaptureConfig {
+        @Bean
+        EventCapture eventCapture() {
+            return new EventCapture();
+        }
+    }
+
+    /**
+     * 记录导入发布的变更事件
+     */
+    static class EventCapture {
+        final List<FlowChangedEvent> events = new CopyOnWriteArrayList<>();
+
+        @EventListener
+        public void onFlowChanged(FlowChangedEvent event) {
+            if ("ingest".equals(event.getSource())) {
+                events.add(event);
+            }
+        }
+    }
+}
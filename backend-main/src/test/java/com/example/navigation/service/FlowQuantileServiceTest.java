@@ -0,0 +1,138 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.dto.dashboard.DashboardStatsResponse;
+import com.example.navigation.model.entity.Flow;
+import com.example.navigation.model.entity.Node;
+import com.example.navigation.repository.FlowRepository;
+import com.example.navigation.repository.NodeRepository;
+import com.example.navigation.util.QuantileSketch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * 流量分位数测试：验证摘要的相对误差与合并、按区域和小时的分位数、增量撤销旧值以及仪表盘统计中的分位数
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties")
+class FlowQuantileServiceTest {
+
+    @Autowired
+    private FlowQuantileService flowQuantileService;
+
+    @Autowired
+    private DashboardService dashboardService;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private FlowRepository flowRepository;
+
+    @AfterEach
+    void cleanUp() {
+        flowRepository.deleteAll();
+        nodeRepository.deleteAll();
+    }
+
+    @Test
+    void testSketchRelativeErrorAndMerge() {
+        Random random = new Random(42);
+        QuantileSketch left = new QuantileSketch(0.02, 100000);
+        QuantileSketch right = new QuantileSketch(0.02, 100000);
+        int[] values = new int[20000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1 + random.nextInt(5000);
+            (i % 2 == 0 ? left : right).add(values[i]);
+        }
+        left.merge(right);
+        Arrays.sort(values);
+        for (double q : new double[]{0.5, 0.9, 0.99}) {
+            int exact = values[(int) Math.ceil(q * values.length) - 1];
+            assertThat((double) left.quantile(q)).isCloseTo(exact, within(exact * 0.02 + 1));
+        }
+        // 桶数与数据量无关，撤销后计数同步减少
+        assertThat(left.bucketCount()).isEqualTo(new QuantileSketch(0.02, 100000).bucketCount());
+        left.add(values[0], -1);
+        assertThat(left.getCount()).isEqualTo(values.length - 1);
+    }
+
+    @Test
+    void testRegionAndHourQuantiles() {
+        // 区域A（798:2328）在8点有100个节点，流量1-100；区域B（802:2328）在9点有20个节点，流量500
+        List<Flow> flows = new ArrayList<>();
+        List<Integer> regionA = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int nodeId = saveNode(39.91 + i * 0.0002, 116.41);
+            regionA.add(nodeId);
+            flows.add(new Flow(null, 1, 8, nodeId, i + 1));
+        }
+        for (int i = 0; i < 20; i++) {
+            flows.add(new Flow(null, 1, 9, saveNode(40.11 + i * 0.0002, 116.41), 500));
+        }
+        flowRepository.saveAll(flows);
+
+        Map<String, Object> byRegion = flowQuantileService.getQuantiles(null, null, null, "region");
+        Map<String, Object> a = group(byRegion, "region", "798:2328");
+        assertThat(a.get("count")).isEqualTo(100L);
+        assertThat((double) (int) a.get("p50")).isCloseTo(50, within(2.0));
+        assertThat((double) (int) a.get("p90")).isCloseTo(90, within(2.0));
+        assertThat((double) (int) a.get("p99")).isCloseTo(99, within(2.0));
+        assertThat((double) (int) group(byRegion, "region", "802:2328").get("p50")).isCloseTo(500, within(10.0));
+
+        // 跨区域、跨小时合并：120个值中第60个为60，第119个为500
+        Map<String, Object> overall = overall(flowQuantileService.getQuantiles(8, 9, null, "hour"));
+        assertThat(overall.get("count")).isEqualTo(120L);
+        assertThat((double) (int) overall.get("p50")).isCloseTo(60, within(2.0));
+        assertThat((double) (int) overall.get("p99")).isCloseTo(500, within(10.0));
+        assertThat(overall(flowQuantileService.getQuantiles(9, 9, List.of("798:2328"), "none")).get("count")).isEqualTo(0L);
+
+        // 删除流量增量撤销旧值，不触发重建
+        long rebuilds = (long) flowQuantileService.getStatistics().get("rebuilds");
+        flowRepository.deleteAll(flowRepository.findAll().stream()
+                .filter(flow -> flow.getTimeStamp() == 8 && regionA.indexOf(flow.getNodeID()) >= 50).toList());
+        Map<String, Object> remaining = overall(flowQuantileService.getQuantiles(8, 8, List.of("798:2328"), "none"));
+        assertThat(remaining.get("count")).isEqualTo(50L);
+        assertThat((double) (int) remaining.get("p50")).isCloseTo(25, within(2.0));
+        assertThat(flowQuantileService.getStatistics().get("rebuilds")).isEqualTo(rebuilds);
+
+        // 仪表盘统计包含当天分位数
+        DashboardStatsResponse.FlowQuantiles quantiles = dashboardService.getDashboardStats().getData().getFlowQuantiles();
+        assertThat(quantiles.getCount()).isEqualTo(70L);
+        assertThat((double) quantiles.getP99()).isCloseTo(500, within(10.0));
+
+        assertThatThrownBy(() -> flowQuantileService.getQuantiles(10, 8, null, "none")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> flowQuantileService.getQuantiles(null, null, List.of("0:0"), "none")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private int saveNode(double lat, double lng) {
+        Node node = new Node();
+        node.setLatitude(lat);
+        node.setLongitude(lng);
+        return nodeRepository.save(node).getNodeID();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> overall(Map<String, Object> quantiles) {
+        return (Map<String, Object>) quantiles.get("overall");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> group(Map<String, Object> quantiles, String key, Object value) {
+        return ((List<Map<String, Object>>) quantiles.get("groups")).stream()
+                .filter(group -> value.equals(group.get(key)))
+                .findFirst().orElseThrow();
+    }
+}
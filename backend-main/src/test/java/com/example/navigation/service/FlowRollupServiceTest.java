@@ -0,0 +1,138 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.entity.Flow;
+import com.example.navigation.repository.FlowRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 流量汇总测试：验证并行回填、增量维护、分位数估算和汇总表写入、归档日期补录后的重新计算，以及路径规划使用的节点高流量阈值
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "traffic.clock.current-day=100",
+        "flow.archive.dir=target/flow-archive-rollup-test"
+})
+class FlowRollupServiceTest {
+
+    @Autowired
+    private FlowRollupService flowRollupService;
+
+    @Autowired
+    private FlowArchiveService flowArchiveService;
+
+    @Autowired
+    private FlowRepository flowRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RouteService routeService;
+
+    @AfterEach
+    void cleanUp() {
+        flowRepository.deleteAll();
+        flowRollupService.backfill();
+    }
+
+    @Test
+    void testBackfillThenIncrementalUpdates() {
+        // 节点7在8点共20天，流量为10、20 ... 200
+        List<Flow> flows = new ArrayList<>();
+        for (int day = 1; day <= 20; day++) {
+            flows.add(new Flow(null, day, 8, 7, day * 10));
+        }
+        flowRepository.saveAll(flows);
+        flowRollupService.backfill();
+
+        Map<String, Object> profile = flowRollupService.getNodeHourlyProfile(7).get(0);
+        assertThat(profile.get("count")).isEqualTo(20L);
+        assertThat(profile.get("mean")).isEqualTo(105.0);
+        assertThat(profile.get("max")).isEqualTo(200);
+        assertThat(flowRollupService.getPercentile(7, 8, 0.95)).isBetween(176, 200);
+        assertThat(flowRollupService.getPercentile(7, 9, 0.95)).isNull();
+
+        // 增量：改一个值、新增一天
+        Flow first = flows.get(0);
+        first.setFlow(30);
+        flowRepository.save(first);
+        flowRepository.save(new Flow(null, 21, 8, 7, 50));
+
+        assertThat(flowRollupService.getNodeHourlyProfile(7).get(0).get("count")).isEqualTo(21L);
+        List<Map<String, Object>> totals = flowRollupService.getDailyTotals(1, 21);
+        assertThat(totals).hasSize(21);
+        assertThat(totals.get(0).get("sum")).isEqualTo(30L);
+
+        flowRollupService.flush();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT sample_count FROM flow_rollup_hourly WHERE node_id = 7 AND time_stamp = 8", Long.class)).isEqualTo(21L);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT flow_sum FROM flow_rollup_daily WHERE day_num = 1", Long.class)).isEqualTo(30L);
+    }
+
+    @Test
+    void testHighFlowThresholdFollowsClampedP95() {
+        // 节点7在8点长期拥堵（110-300），节点8在8点流量60-79，节点9在8点长期畅通（1-20）
+        List<Flow> flows = new ArrayList<>();
+        for (int day = 1; day <= 20; day++) {
+            flows.add(new Flow(null, day, 8, 7, 100 + day * 10));
+            flows.add(new Flow(null, day, 8, 8, 59 + day));
+            flows.add(new Flow(null, day, 8, 9, day));
+        }
+        flowRepository.saveAll(flows);
+        flowRollupService.backfill();
+
+        // P95超过固定阈值时取固定阈值，最拥堵的节点仍按高流量处理；低于中等阈值时取中等阈值；样本不足时取固定阈值
+        assertThat(highFlowThreshold(7, 8)).isEqualTo(100);
+        assertThat(highFlowThreshold(8, 8)).isBetween(76, 80);
+        assertThat(highFlowThreshold(9, 8)).isEqualTo(50);
+        assertThat(highFlowThreshold(7, 9)).isEqualTo(100);
+    }
+
+    private int highFlowThreshold(int nodeId, int hour) {
+        Integer threshold = ReflectionTestUtils.invokeMethod(routeService, "getHighFlowThreshold", nodeId, hour);
+        return threshold;
+    }
+
+    @Test
+    void testRefreshMergesArchivedSegments() {
+        // 节点9001在8点共20天（第50-69天），流量为10、20 ... 200；第50天另有节点9002在9点的流量77
+        List<Flow> flows = new ArrayList<>();
+        for (int day = 50; day < 70; day++) {
+            flows.add(new Flow(null, day, 8, 9001, (day - 49) * 10));
+        }
+        flows.add(new Flow(null, 50, 9, 9002, 77));
+        flowRepository.saveAll(flows);
+        for (int day = 50; day < 60; day++) {
+            flowArchiveService.archiveDay(day);
+        }
+        flowRollupService.backfill();
+        assertThat(flowRollupService.getNodeHourlyProfile(9001).get(0).get("count")).isEqualTo(20L);
+
+        // 第50天补录一行覆盖归档值10，按回填期间发生变更的路径重新计算
+        flowRepository.save(new Flow(null, 50, 8, 9001, 999));
+        flowRollupService.refresh(Set.of(FlowRollupService.hourKey(9001, 8)), Set.of(50));
+
+        Map<String, Object> profile = flowRollupService.getNodeHourlyProfile(9001).get(0);
+        assertThat(profile.get("count")).isEqualTo(20L);
+        assertThat(profile.get("max")).isEqualTo(999);
+        assertThat((double) profile.get("mean")).isEqualTo((2100 - 10 + 999) / 20.0);
+        assertThat(flowRollupService.getPercentile(9001, 8, 0.95)).isBetween(176, 210);
+        Map<String, Object> day = flowRollupService.getDailyTotals(50, 50).get(0);
+        assertThat(day.get("count")).isEqualTo(2L);
+        assertThat(day.get("sum")).isEqualTo(999L + 77L);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.entity.Flow;
+import com.example.navigation.model.entity.Node;
+import com.example.navigation.repository.FlowRepository;
+import com.example.navigation.repository.NodeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 列式流量存储测试：验证通过JPA写入的流量数据同步到列式存储，全量重载期间读取方不会看到不完整的数据
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties")
+class FlowTimeSeriesStoreTest {
+
+    private static final int NODES = 25;
+
+    @Autowired
+    private FlowTimeSeriesStore flowTimeSeriesStore;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private FlowRepository flowRepository;
+
+    @AfterEach
+    void cleanUp() {
+        flowRepository.deleteAll();
+        nodeRepository.deleteAll();
+    }
+
+    @Test
+    void testStoreTracksSavedFlows() {
+        List<Flow> flows = seedFlows();
+
+        assertThat(flowTimeSeriesStore.isReady()).isTrue();
+        for (Flow flow : flows) {
+            assertThat(flowTimeSeriesStore.getObserved(flow.getNodeID(), 1, 8)).isEqualTo(flow.getFlow());
+        }
+        assertThat(flowTimeSeriesStore.getObserved(-1, 1, 8)).isNull();
+
+        Flow first = flows.get(0);
+        first.setFlow(150);
+        flowRepository.save(first);
+        assertThat(flowTimeSeriesStore.getObserved(first.getNodeID(), 1, 8)).isEqualTo(150);
+    }
+
+    @Test
+    void testReaderNeverSeesPartialReload() throws Exception {
+        seedFlows();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger partialReads = new AtomicInteger();
+        AtomicInteger reads = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                int[] visited = {0};
+                flowTimeSeriesStore.forEachEffective(1, 8, (nodeId, hour, flow) -> visited[0]++);
+                if (visited[0] != NODES) {
+                    partialReads.incrementAndGet();
+                }
+                reads.incrementAndGet();
+            }
+        });
+        reader.start();
+        try {
+            for (int i = 0; i < 20; i++) {
+                flowTimeSeriesStore.reload();
+            }
+        } finally {
+            running.set(false);
+            reader.join();
+        }
+
+        // 重载期间读取方只会看到重载前或重载后的完整数据
+        assertThat(reads.get()).isPositive();
+        assertThat(partialReads.get()).isZero();
+        assertThat(flowTimeSeriesStore.isReady()).isTrue();
+    }
+
+    /**
+     * 第1天8点每个节点一条流量数据
+     */
+    private List<Flow> seedFlows() {
+        List<Flow> flows = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            Node node = new Node();
+            node.setLatitude(39.90 + i * 0.005);
+            node.setLongitude(116.40);
+            flows.add(new Flow(null, 1, 8, nodeRepository.save(node).getNodeID(), 30 + i));
+        }
+        return flowRepository.saveAll(flows);
+    }
+}
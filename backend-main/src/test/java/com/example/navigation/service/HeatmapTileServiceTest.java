@@ -0,0 +1,140 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.dto.map.HeatmapResponse;
+import com.example.navigation.model.dto.map.HeatmapTileResponse;
+import com.example.navigation.model.entity.Flow;
+import com.example.navigation.model.entity.Node;
+import com.example.navigation.repository.FlowRepository;
+import com.example.navigation.repository.NodeRepository;
+import com.example.navigation.util.BoundingBox;
+import com.example.navigation.util.TileMath;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * 热力图测试：验证瓦片点数上限、跨层级聚合、增量更新以及视口过滤与服务端聚合，超大视口不会挂起查询
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "map.heatmap.max-points-per-tile=16",
+        "traffic.clock.fixed-hour=8"
+})
+class HeatmapTileServiceTest {
+
+    private static final double BASE_LAT = 39.90;
+    private static final double BASE_LNG = 116.40;
+
+    @Autowired
+    private HeatmapTileService heatmapTileService;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private FlowRepository flowRepository;
+
+    @AfterEach
+    void cleanUp() {
+        flowRepository.deleteAll();
+        nodeRepository.deleteAll();
+        heatmapTileService.invalidate();
+    }
+
+    @Autowired
+    private MapService mapService;
+
+    @Test
+    void testTilesAreBoundedAndUpdatedIncrementally() {
+        List<Flow> flows = seedGrid();
+
+        // 最高层级：每个节点独立成点，超过上限时合并为更粗的网格
+        HeatmapTileResponse detailed = tileAt(18);
+        assertThat(detailed.getData()).isNotEmpty().hasSizeLessThanOrEqualTo(16);
+        assertThat(detailed.getData()).allSatisfy(point -> assertThat(point.getIntensity()).isEqualTo(0.5));
+
+        // 低于金字塔最低层级时使用第8层聚合
+        HeatmapTileResponse overview = tileAt(5);
+        assertThat(overview.getSourceZoom()).isEqualTo(8);
+        assertThat(overview.getData()).hasSizeBetween(1, 2);
+
+        // 增量更新：一个节点的流量变化后，所在聚合单元的平均强度随之升高
+        Flow first = flows.get(0);
+        first.setFlow(200);
+        flowRepository.save(first);
+        assertThat(tileAt(8).getData()).anySatisfy(point -> assertThat(point.getIntensity()).isGreaterThan(0.5));
+        assertThat(tileAt(18).getData()).anySatisfy(point -> assertThat(point.getIntensity()).isGreaterThan(0.5));
+
+        assertThatThrownBy(() -> heatmapTileService.getTile(3, 8, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testViewportHeatmapIsFilteredAndClustered() {
+        seedGrid();
+        // 只覆盖南边5行节点的视口
+        BoundingBox south = new BoundingBox(BASE_LNG - 0.0005, BASE_LAT - 0.0005, BASE_LNG + 0.0095, BASE_LAT + 0.0045);
+
+        assertThat(mapService.getHeatmapData(south, null).getData()).hasSize(50)
+                .allSatisfy(point -> assertThat(point.getWeight()).isNull());
+
+        // 第12层时整个视口落在一两个聚合单元内，权重之和等于视口内的数据点数
+        List<HeatmapResponse.HeatmapPoint> clustered = mapService.getHeatmapData(south, 12).getData();
+        assertThat(clustered).hasSizeBetween(1, 2);
+        assertThat(clustered.stream().mapToInt(HeatmapResponse.HeatmapPoint::getWeight).sum()).isEqualTo(50);
+
+        BoundingBox empty = new BoundingBox(0, 0, 1, 1);
+        assertThat(mapService.getHeatmapData(empty, 12).getData()).isEmpty();
+        assertThat(mapService.getCongestionData(south).getData().getRegions())
+                .anySatisfy(region -> assertThat(region.getValue()).isEqualTo(100.0));
+    }
+
+    @Test
+    void testUnboundedViewportIsRejectedOrScannedSafely() {
+        seedGrid();
+        assertThatThrownBy(() -> BoundingBox.parse("-1e300,-1e300,1e300,1e300")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> BoundingBox.parse("-Infinity,-90,Infinity,90")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> BoundingBox.parse("NaN,0,1,1")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> BoundingBox.parse("-181,0,1,1")).isInstanceOf(IllegalArgumentException.class);
+        assertThat(BoundingBox.parse("-180,-90,180,90").getEast()).isEqualTo(180.0);
+
+        // 绕过解析直接构造的超大范围改为遍历有节点的网格，不会因网格数溢出而陷入死循环
+        BoundingBox unbounded = new BoundingBox(-1e300, -1e300, 1e300, 1e300);
+        List<HeatmapResponse.HeatmapPoint> points = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> mapService.getHeatmapData(unbounded, null).getData());
+        assertThat(points).hasSize(100);
+    }
+
+    /**
+     * 10x10个节点，间距约100米，第1天8点流量100（强度0.5）
+     */
+    private List<Flow> seedGrid() {
+        List<Flow> flows = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 10; j++) {
+                Node node = new Node();
+                node.setLatitude(BASE_LAT + i * 0.001);
+                node.setLongitude(BASE_LNG + j * 0.001);
+                flows.add(new Flow(null, 1, 8, nodeRepository.save(node).getNodeID(), 100));
+            }
+        }
+        flowRepository.saveAll(flows);
+        heatmapTileService.invalidate();
+        return flows;
+    }
+
+    private HeatmapTileResponse tileAt(int z) {
+        int x = (int) (TileMath.lngToPixelX(BASE_LNG, z) / TileMath.TILE_SIZE);
+        int y = (int) (TileMath.latToPixelY(BASE_LAT, z) / TileMath.TILE_SIZE);
+        return heatmapTileService.getTile(z, x, y);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.dto.map.HeatmapTimelineResponse;
+import com.example.navigation.model.entity.Flow;
+import com.example.navigation.model.entity.Node;
+import com.example.navigation.repository.FlowRepository;
+import com.example.navigation.repository.NodeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * 热力图回放测试：验证基准帧加增量帧可还原每小时的网格强度、增量条目远少于完整帧、按日期缓存与失效
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties")
+class HeatmapTimelineServiceTest {
+
+    private static final int DAY = 3;
+    private static final int NODES = 30;
+
+    @Autowired
+    private HeatmapTimelineService heatmapTimelineService;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private FlowRepository flowRepository;
+
+    @AfterEach
+    void cleanUp() {
+        flowRepository.deleteAll();
+        nodeRepository.deleteAll();
+    }
+
+    @Test
+    void testFramesReplayHourlyIntensities() {
+        // 每个节点相距0.2度，各自落在不同网格；节点0的流量逐小时变化，节点1在10-12点没有数据，其余节点全天不变
+        List<Integer> nodeIds = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            Node node = new Node();
+            node.setLatitude(30.0 + (i / 6) * 0.2);
+            node.setLongitude(110.0 + (i % 6) * 0.2);
+            nodeIds.add(nodeRepository.save(node).getNodeID());
+        }
+        List<Flow> flows = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            for (int hour = 0; hour < 24; hour++) {
+                if (i == 1 && hour >= 10 && hour <= 12) {
+                    continue;
+                }
+                flows.add(new Flow(null, DAY, hour, nodeIds.get(i), expectedFlow(i, hour)));
+            }
+        }
+        flowRepository.saveAll(flows);
+
+        HeatmapTimelineResponse timeline = heatmapTimelineService.getTimeline(DAY);
+        assertThat(timeline.getCells()).hasSize(NODES);
+        assertThat(timeline.getFrames()).hasSize(24);
+        assertThat(timeline.getFrames().get(0).isBase()).isTrue();
+        assertThat(timeline.getFrames().get(0).getCells()).hasSize(NODES);
+
+        // 逐帧回放，每小时的状态与直接计算的强度一致
+        Map<Integer, Double> state = new HashMap<>();
+        long encoded = 0;
+        for (HeatmapTimelineResponse.Frame frame : timeline.getFrames()) {
+            for (int i = 0; i < frame.getCells().length; i++) {
+                state.put(frame.getCells()[i], frame.getIntensities()[i]);
+            }
+            if (frame.getRemoved() != null) {
+                for (int cell : frame.getRemoved()) {
+                    state.remove(cell);
+                }
+            }
+            encoded += frame.getCells().length + (frame.getRemoved() != null ? frame.getRemoved().length : 0);
+            int hour = frame.getHour();
+            assertThat(state).hasSize(hour >= 10 && hour <= 12 ? NODES - 1 : NODES);
+            for (int i = 0; i < NODES; i++) {
+                int cell = cellOf(timeline, 30.0 + (i / 6) * 0.2, 110.0 + (i % 6) * 0.2);
+                if (i == 1 && hour >= 10 && hour <= 12) {
+                    assertThat(state).doesNotContainKey(cell);
+                } else {
+                    assertThat(state.get(cell)).isCloseTo(expectedFlow(i, hour) / 200.0, within(0.005));
+                }
+            }
+        }
+        // 24个完整帧共有717个条目，增量编码后只有基准帧加少量变化
+        assertThat(encoded).isLessThan(NODES + 2 * 24 + 4);
+
+        // 同一日期命中缓存；该日期的流量变化后重新计算
+        assertThat(heatmapTimelineService.getTimeline(DAY)).isSameAs(timeline);
+        Flow changed = flowRepository.findByNodeIDAndDayAndTimeStamp(nodeIds.get(2), DAY, 5);
+        changed.setFlow(180);
+        flowRepository.save(changed);
+        HeatmapTimelineResponse rebuilt = heatmapTimelineService.getTimeline(DAY);
+        assertThat(rebuilt).isNotSameAs(timeline);
+        assertThat(rebuilt.getFrames().get(5).getCells()).hasSizeGreaterThan(timeline.getFrames().get(5).getCells().length);
+    }
+
+    private static int expectedFlow(int node, int hour) {
+        return node == 0 ? 20 + hour * 5 : 100;
+    }
+
+    private static int cellOf(HeatmapTimelineResponse timeline, double lat, double lng) {
+        List<HeatmapTimelineResponse.TimelineCell> cells = timeline.getCells();
+        for (int i = 0; i < cells.size(); i++) {
+            if (Math.abs(cells.get(i).getLat() - lat) < 1e-9 && Math.abs(cells.get(i).getLng() - lng) < 1e-9) {
+                return i;
+            }
+        }
+        throw new AssertionError("网格不存在: " + lat + "," + lng);
+    }
+}
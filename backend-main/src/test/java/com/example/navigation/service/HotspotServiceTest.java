@@ -0,0 +1,153 @@
+package com.example.navigation.service;
+
+import com.example.navigation.controller.DashboardController;
+import com.example.navigation.model.entity.Edge;
+import com.example.navigation.model.entity.Flow;
+import com.example.navigation.model.entity.Node;
+import com.example.navigation.repository.EdgeRepository;
+import com.example.navigation.repository.FlowRepository;
+import com.example.navigation.repository.NodeRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 拥堵热点测试：验证按窗口排名、新增流量时增量更新排名而不重建、流量删除后排名随之调整、小时推进后条件请求不再返回304
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties")
+class HotspotServiceTest {
+
+    @Autowired
+    private HotspotService hotspotService;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private EdgeRepository edgeRepository;
+
+    @Autowired
+    private FlowRepository flowRepository;
+
+    @Autowired
+    private DashboardController dashboardController;
+
+    @Autowired
+    private TrafficClock trafficClock;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @AfterEach
+    void cleanUp() {
+        flowRepository.deleteAll();
+        edgeRepository.deleteAll();
+        nodeRepository.deleteAll();
+    }
+
+    @Test
+    void testTopKOverSlidingWindows() {
+        // 测试配置的当前时间为第1天8点；A-B-C-D为一条链
+        int a = saveNode(39.90, 116.40);
+        int b = saveNode(39.91, 116.40);
+        int c = saveNode(39.92, 116.40);
+        int d = saveNode(39.93, 116.40);
+        Edge ab = edgeRepository.save(new Edge(null, a, b, 1.0f));
+        Edge bc = edgeRepository.save(new Edge(null, b, c, 1.0f));
+        Edge cd = edgeRepository.save(new Edge(null, c, d, 1.0f));
+        flowRepository.save(new Flow(null, 1, 8, a, 100));
+        flowRepository.save(new Flow(null, 1, 8, b, 200));
+        flowRepository.save(new Flow(null, 1, 8, c, 50));
+        flowRepository.save(new Flow(null, 1, 7, c, 300));
+        flowRepository.save(new Flow(null, 1, 2, d, 900));
+
+        // 1小时窗口只看8点
+        Map<String, Object> oneHour = hotspotService.getHotspots(3, 1);
+        assertThat(oneHour.get("ready")).isEqualTo(true);
+        assertThat(ids(oneHour, "nodes", "nodeId")).containsExactly(b, a, c);
+        assertThat(ids(oneHour, "edges", "edgeId")).containsExactly(ab.getId(), bc.getId(), cd.getId());
+
+        // 3小时窗口覆盖6-8点，C的两小时流量相加排到第一；D在2点的流量不在窗口内
+        Map<String, Object> threeHours = hotspotService.getHotspots(2, 3);
+        assertThat(threeHours.get("fromHour")).isEqualTo(6);
+        assertThat(ids(threeHours, "nodes", "nodeId")).containsExactly(c, b);
+        Map<String, Object> top = entries(threeHours, "nodes").get(0);
+        assertThat(top.get("totalFlow")).isEqualTo(350L);
+        assertThat(top.get("averageFlow")).isEqualTo(175.0);
+        assertThat(top.get("level")).isEqualTo("严重拥堵");
+        assertThat(ids(threeHours, "edges", "edgeId")).containsExactly(bc.getId(), cd.getId());
+
+        // 24小时窗口包含D在2点的流量
+        assertThat(ids(hotspotService.getHotspots(1, 24), "nodes", "nodeId")).containsExactly(d);
+
+        // 新增流量随回调增量进入排名，不触发重建
+        long rebuilds = (long) hotspotService.getStatistics().get("rebuilds");
+        flowRepository.save(new Flow(null, 1, 8, d, 400));
+        assertThat(ids(hotspotService.getHotspots(2, 1), "nodes", "nodeId")).containsExactly(d, b);
+        assertThat(ids(hotspotService.getHotspots(1, 1), "edges", "edgeId")).containsExactly(cd.getId());
+        assertThat(hotspotService.getStatistics().get("rebuilds")).isEqualTo(rebuilds);
+
+        // 删除B的流量后B退出排名
+        flowRepository.delete(flowRepository.findAll().stream()
+                .filter(flow -> flow.getNodeID() == b).findFirst().orElseThrow());
+        assertThat(ids(hotspotService.getHotspots(5, 1), "nodes", "nodeId")).containsExactly(d, a, c);
+
+        assertThatThrownBy(() -> hotspotService.getHotspots(3, 2)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> hotspotService.getHotspots(0, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testConditionalRequestAfterHourRolls() throws IOException {
+        int a = saveNode(39.90, 116.40);
+        int b = saveNode(39.91, 116.40);
+        flowRepository.save(new Flow(null, 1, 8, a, 100));
+        flowRepository.save(new Flow(null, 1, 9, b, 200));
+
+        ResponseEntity<byte[]> first = dashboardController.getHotspots(3, 1, null);
+        String etag = first.getHeaders().getETag();
+        assertThat(dashboardController.getHotspots(3, 1, etag).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+
+        // 小时推进后流量版本不变，但窗口和排名已变化，条件请求应返回新的结果
+        ReflectionTestUtils.setField(trafficClock, "fixedHour", 9);
+        try {
+            ResponseEntity<byte[]> nextHour = dashboardController.getHotspots(3, 1, etag);
+            assertThat(nextHour.getStatusCode()).isEqualTo(HttpStatus.OK);
+            @SuppressWarnings("unchecked")
+            Map<String, Object> body = objectMapper.readValue(nextHour.getBody(), Map.class);
+            assertThat(body.get("fromHour")).isEqualTo(9);
+            assertThat(ids(body, "nodes", "nodeId")).containsExactly(b);
+        } finally {
+            ReflectionTestUtils.setField(trafficClock, "fixedHour", 8);
+        }
+    }
+
+    private int saveNode(double lat, double lng) {
+        Node node = new Node();
+        node.setLatitude(lat);
+        node.setLongitude(lng);
+        return nodeRepository.save(node).getNodeID();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> entries(Map<String, Object> hotspots, String key) {
+        return (List<Map<String, Object>>) hotspots.get(key);
+    }
+
+    private static List<Object> ids(Map<String, Object> hotspots, String key, String idKey) {
+        return entries(hotspots, key).stream().map(entry -> entry.get(idKey)).toList();
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.dto.map.MapStreamPayload;
+import com.example.navigation.model.entity.Flow;
+import com.example.navigation.model.entity.Node;
+import com.example.navigation.repository.FlowRepository;
+import com.example.navigation.repository.NodeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 地图推送测试：验证首个快照、变化与删除网格的增量、拥挤度只在变化时推送，
+ * 以及订阅者队列积压超过容量时丢弃旧事件并改为推送最新快照
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "map.stream.queue-capacity=2",
+        "map.stream.interval-ms=3600000"
+})
+class MapStreamServiceTest {
+
+    @Autowired
+    private MapStreamService mapStreamService;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private FlowRepository flowRepository;
+
+    @AfterEach
+    void cleanUp() {
+        flowRepository.deleteAll();
+        nodeRepository.deleteAll();
+    }
+
+    @Test
+    void testSnapshotThenDeltas() throws Exception {
+        Flow near = flowRepository.save(new Flow(null, 1, 8, saveNode(39.90, 116.40), 100));
+        Flow far = flowRepository.save(new Flow(null, 1, 8, saveNode(40.50, 117.50), 20));
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        mapStreamService.subscribe(emitter);
+        Event snapshot = emitter.next();
+        assertThat(snapshot.name).isEqualTo("snapshot");
+        assertThat(snapshot.payload.getCells()).hasSize(2);
+        assertThat(snapshot.payload.getCongestion()).isNotNull();
+        assertThat(snapshot.payload.getRemoved()).isNull();
+
+        // 流量变化但拥挤级别不变：只推送变化的网格，不推送拥挤度
+        near.setFlow(110);
+        flowRepository.save(near);
+        mapStreamService.tick();
+        Event sameLevel = emitter.next();
+        assertThat(sameLevel.name).isEqualTo("delta");
+        assertThat(sameLevel.payload.getEpoch()).isGreaterThan(snapshot.payload.getEpoch());
+        assertThat(sameLevel.payload.getCells()).hasSize(1)
+                .allSatisfy(cell -> assertThat(cell.getIntensity()).isEqualTo(0.55));
+        assertThat(sameLevel.payload.getRemoved()).isEmpty();
+        assertThat(sameLevel.payload.getCongestion()).isNull();
+
+        // 拥挤级别变化时一并推送拥挤度
+        near.setFlow(10);
+        flowRepository.save(near);
+        mapStreamService.tick();
+        Event levelChanged = emitter.next();
+        assertThat(levelChanged.payload.getCells()).hasSize(1);
+        assertThat(levelChanged.payload.getCongestion()).isNotNull();
+
+        // 网格不再有数据时推送删除
+        flowRepository.delete(far);
+        mapStreamService.tick();
+        Event removed = emitter.next();
+        assertThat(removed.payload.getCells()).isEmpty();
+        assertThat(removed.payload.getRemoved()).hasSize(1);
+
+        // 版本未变化时不推送
+        mapStreamService.tick();
+        assertThat(emitter.events.poll(200, TimeUnit.MILLISECONDS)).isNull();
+        emitter.complete();
+    }
+
+    @Test
+    void testQueueOverflowReplacesBacklogWithSnapshot() throws Exception {
+        Flow flow = flowRepository.save(new Flow(null, 1, 8, saveNode(39.90, 116.40), 100));
+
+        // 发送线程阻塞在首个快照上，后续增量在订阅者队列中积压
+        RecordingEmitter emitter = new RecordingEmitter();
+        emitter.gate = new CountDownLatch(1);
+        mapStreamService.subscribe(emitter);
+        assertThat(emitter.next().name).isEqualTo("snapshot");
+        long dropped = (long) mapStreamService.getStatistics().get("droppedEvents");
+
+        // 容量为2：前两个增量入队，第三个入队失败时丢弃积压并替换为最新快照
+        for (int value = 1; value <= 3; value++) {
+            flow.setFlow(100 + value);
+            flowRepository.save(flow);
+            mapStreamService.tick();
+        }
+        assertThat(mapStreamService.getStatistics().get("droppedEvents")).isEqualTo(dropped + 2);
+
+        emitter.gate.countDown();
+        Event replacement = emitter.next();
+        assertThat(replacement.name).isEqualTo("snapshot");
+        assertThat(replacement.payload.getCells()).hasSize(1)
+                .allSatisfy(cell -> assertThat(cell.getIntensity()).isEqualTo(103 / 200.0));
+        assertThat(mapStreamService.getStatistics().get("epoch")).isEqualTo(replacement.payload.getEpoch());
+        assertThat(emitter.events.poll(200, TimeUnit.MILLISECONDS)).isNull();
+        emitter.complete();
+    }
+
+    private int saveNode(double lat, double lng) {
+        Node node = new Node();
+        node.setLatitude(lat);
+        node.setLongitude(lng);
+        return nodeRepository.save(node).getNodeID();
+    }
+
+    /**
+     * 收到的推送事件
+     */
+    private record Event(String name, MapStreamPayload payload) {
+    }
+
+    /**
+     * 记录发送事件的SseEmitter，不写出到HTTP响应；设置gate时首个事件记录后阻塞发送线程
+     */
+    private static class RecordingEmitter extends SseEmitter {
+        private static final Pattern EVENT_NAME = Pattern.compile("event:(\\w+)");
+
+        final BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+        volatile CountDownLatch gate;
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            String name = null;
+            MapStreamPayload payload = null;
+            for (DataWithMediaType data : builder.build()) {
+                if (data.getData() instanceof MapStreamPayload streamPayload) {
+                    payload = streamPayload;
+                } else if (name == null) {
+                    Matcher matcher = EVENT_NAME.matcher(String.valueOf(data.getData()));
+                    name = matcher.find() ? matcher.group(1) : null;
+                }
+            }
+            if (payload == null) {
+                return;
+            }
+            events.add(new Event(name, payload));
+            CountDownLatch current = gate;
+            if (current != null) {
+                try {
+                    current.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                gate = null;
+            }
+        }
+
+        Event next() throws InterruptedException {
+            Event event = events.poll(5, TimeUnit.SECONDS);
+            assertThat(event).as("应收到推送事件").isNotNull();
+            return event;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.navigation.service;
+
+import com.example.navigation.controller.ModelController;
+import com.example.navigation.exception.BusinessException;
+import com.example.navigation.support.StubModelServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 模型注册中心测试：验证候选模型进入影子期，模型服务切换失败时手动切换报告502且生效版本不变，
+ * 恢复后切换成功，版本已不在影子期时拒绝切换
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "model.registry.poll-interval-ms=3600000"
+})
+class ModelRegistryTest {
+
+    private static final StubModelServer stubModelServer = new StubModelServer(7L);
+    private static Path modelDir;
+
+    @Autowired
+    private ModelRegistry modelRegistry;
+
+    @Autowired
+    private ModelController modelController;
+
+    @DynamicPropertySource
+    static void modelProperties(DynamicPropertyRegistry registry) throws IOException {
+        stubModelServer.start();
+        modelDir = Files.createTempDirectory("model-registry-test");
+        registry.add("model.service.url", stubModelServer::getUrl);
+        registry.add("model.registry.dir", modelDir::toString);
+    }
+
+    @AfterAll
+    static void stopStub() throws IOException {
+        stubModelServer.stop();
+        FileSystemUtils.deleteRecursively(modelDir);
+    }
+
+    @Test
+    void testFailedPromotionIsReported() throws Exception {
+        Files.writeString(modelDir.resolve("gbr.json"), "{}");
+        modelRegistry.pollModelDirectory();
+        String version = awaitShadowVersion();
+
+        // 模型服务切换失败：接口报告502，生效版本不变，影子期保留
+        stubModelServer.withPromoteFailing(true);
+        assertThatThrownBy(() -> modelController.promoteModelVersion(version))
+                .isInstanceOfSatisfying(BusinessException.class,
+                        e -> assertThat(e.getHttpStatusCode()).isEqualTo(HttpStatus.BAD_GATEWAY.value()));
+        assertThat(modelRegistry.getActiveVersion()).isEqualTo("default");
+        assertThat(history().get(0)).containsEntry("version", version).containsEntry("state", "failed");
+        assertThat(shadow()).containsEntry("version", version);
+
+        // 恢复后切换成功
+        stubModelServer.healthy();
+        assertThat(modelController.promoteModelVersion(version).getBody()).containsEntry("activeVersion", version);
+        assertThat(modelRegistry.getActiveVersion()).isEqualTo(version);
+        assertThat(modelRegistry.hasPromotedVersion()).isTrue();
+        assertThat(history().get(0)).containsEntry("state", "promoted");
+
+        // 已切换的版本不在影子期
+        assertThatThrownBy(() -> modelRegistry.promote(version)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private String awaitShadowVersion() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (shadow() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(shadow()).as("候选模型应进入影子期").isNotNull();
+        return (String) shadow().get("version");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> shadow() {
+        return (Map<String, Object>) modelRegistry.getStatus().get("shadow");
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> history() {
+        return (List<Map<String, Object>>) modelRegistry.getStatus().get("history");
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.navigation.service;
+
+import com.example.navigation.event.ModelVersionPromotedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+/**
+ * 预测缓存单元测试，验证并发未命中合并、失败不缓存、模型切换后的清空行为以及跨模型切换的提前刷新
+ */
+class PredictionCacheTest {
+
+    private PredictionBatchCollector collector;
+    private PredictionCache cache;
+
+    @BeforeEach
+    void setUp() {
+        collector = mock(PredictionBatchCollector.class);
+        cache = new PredictionCache(collector);
+        ReflectionTestUtils.setField(cache, "ttlMs", 60_000L);
+        ReflectionTestUtils.setField(cache, "maxSize", 100);
+        ReflectionTestUtils.setField(cache, "refreshAheadRatio", 0.8);
+        ReflectionTestUtils.setField(cache, "hotThreshold", 3);
+        ReflectionTestUtils.setField(cache, "timeoutMs", 1000L);
+    }
+
+    /**
+     * 同一key的并发未命中只触发一次加载
+     */
+    @Test
+    void testConcurrentMissesTriggerSingleLoad() {
+        CompletableFuture<Double> pending = new CompletableFuture<>();
+        when(collector.submit(1, 8)).thenReturn(pending);
+
+        List<CompletableFuture<Double>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(cache.getAsync(1, 8));
+        }
+        pending.complete(42.0);
+
+        verify(collector, times(1)).submit(1, 8);
+        futures.forEach(f -> assertThat(f.join()).isEqualTo(42.0));
+        assertThat(cache.getStatistics().get("misses")).isEqualTo(1L);
+    }
+
+    /**
+     * 加载失败的结果不会被缓存
+     */
+    @Test
+    void testFailedLoadIsNotCached() {
+        when(collector.submit(2, 8))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("模型不可用")))
+                .thenReturn(CompletableFuture.completedFuture(10.0));
+
+        assertThat(cache.getAsync(2, 8)).isCompletedExceptionally();
+        assertThat(cache.get(2, 8)).isEqualTo(10.0);
+        verify(collector, times(2)).submit(2, 8);
+    }
+
+    /**
+     * 清空后重新加载，超出容量时按频率淘汰
+     */
+    @Test
+    void testInvalidateAndEviction() {
+        when(collector.submit(anyInt(), anyInt())).thenAnswer(inv -> CompletableFuture.completedFuture(1.0));
+
+        cache.get(3, 8);
+        cache.invalidateAll();
+        cache.get(3, 8);
+        verify(collector, times(2)).submit(3, 8);
+
+        for (int node = 100; node < 300; node++) {
+            cache.get(node, 8);
+        }
+        Map<String, Object> stats = cache.getStatistics();
+        assertThat((Integer) stats.get("size")).isLessThanOrEqualTo(101);
+        assertThat((Long) stats.get("evictions")).isPositive();
+    }
+
+    /**
+     * 提前刷新开始后模型版本切换：刷新结果按旧版本标记，下次访问再次刷新
+     */
+    @Test
+    void testRefreshStartedBeforePromotionStaysStale() {
+        ReflectionTestUtils.setField(cache, "refreshAheadRatio", 0.0);
+        CompletableFuture<Double> refreshing = new CompletableFuture<>();
+        when(collector.submit(4, 8))
+                .thenReturn(CompletableFuture.completedFuture(1.0))
+                .thenReturn(refreshing)
+                .thenReturn(CompletableFuture.completedFuture(3.0));
+
+        // 第三次访问达到热点阈值，开始提前刷新
+        for (int i = 0; i < 3; i++) {
+            assertThat(cache.get(4, 8)).isEqualTo(1.0);
+        }
+        verify(collector, times(2)).submit(4, 8);
+        ReflectionTestUtils.setField(cache, "refreshAheadRatio", 0.8);
+
+        cache.onModelVersionPromoted(new ModelVersionPromotedEvent("default", "v2"));
+        refreshing.complete(2.0);
+
+        // 切换前开始的刷新结果先继续提供服务，同时按新版本重新加载
+        assertThat(cache.get(4, 8)).isEqualTo(2.0);
+        verify(collector, times(3)).submit(4, 8);
+        assertThat(cache.get(4, 8)).isEqualTo(3.0);
+        verify(collector, times(3)).submit(4, 8);
+    }
+}
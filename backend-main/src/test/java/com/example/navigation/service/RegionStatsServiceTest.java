@@ -0,0 +1,121 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.entity.Flow;
+import com.example.navigation.model.entity.Node;
+import com.example.navigation.repository.FlowRepository;
+import com.example.navigation.repository.NodeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 区域统计测试：验证多边形区域（含洞和MultiPolygon）的节点分配、按区域和小时的统计、增量更新与并行重建结果一致、区域下钻
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "dashboard.regions.mode=polygon",
+        "dashboard.regions.polygons-file=classpath:regions-test.geojson"
+})
+class RegionStatsServiceTest {
+
+    @Autowired
+    private RegionStatsService regionStatsService;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private FlowRepository flowRepository;
+
+    @AfterEach
+    void cleanUp() {
+        flowRepository.deleteAll();
+        nodeRepository.deleteAll();
+    }
+
+    @Test
+    void testPolygonRegionStats() {
+        // 东区三个节点，洞内一个节点归入未划分区域；西区两个部分各一个节点；远处一个节点没有流量
+        flowRepository.save(new Flow(null, 1, 8, saveNode(39.905, 116.405), 50));
+        flowRepository.save(new Flow(null, 1, 8, saveNode(39.91, 116.41), 120));
+        flowRepository.save(new Flow(null, 1, 9, saveNode(39.94, 116.44), 80));
+        flowRepository.save(new Flow(null, 1, 8, saveNode(39.925, 116.425), 10));
+        flowRepository.save(new Flow(null, 1, 8, saveNode(39.91, 116.31), 30));
+        int triangle = saveNode(39.91, 116.24);
+        flowRepository.save(new Flow(null, 1, 8, triangle, 200));
+        saveNode(30.0, 110.0);
+
+        Map<String, Object> day = regionStatsService.getRegionStats(null);
+        assertThat(day.get("mode")).isEqualTo("polygon");
+        List<Map<String, Object>> regions = regions(day);
+        assertThat(regions).extracting(region -> region.get("id")).containsExactly("east", "west", "unassigned");
+        assertThat(regions.get(0).get("name")).isEqualTo("东区");
+        assertThat(regions.get(0).get("nodeCount")).isEqualTo(3);
+        assertThat(regions.get(0).get("count")).isEqualTo(3L);
+        assertThat(regions.get(0).get("averageFlow")).isEqualTo(83.33);
+        assertThat(regions.get(0).get("congestionLevel")).isEqualTo("拥堵");
+        assertThat(regions.get(0).get("congestedSections")).isEqualTo(2L);
+        assertThat(regions.get(1).get("congestionLevel")).isEqualTo("严重拥堵");
+        assertThat(regions.get(2).get("nodeCount")).isEqualTo(2);
+        assertThat(regions.get(2).get("count")).isEqualTo(1L);
+
+        // 按小时统计
+        assertThat(regions(regionStatsService.getRegionStats(8)).get(0).get("count")).isEqualTo(2L);
+
+        // 新增流量增量更新，不触发重建；强制重建后结果一致
+        long rebuilds = (long) regionStatsService.getStatistics().get("rebuilds");
+        flowRepository.save(new Flow(null, 1, 9, triangle, 40));
+        Map<String, Object> incremental = regionStatsService.getRegionStats(null);
+        assertThat(regions(incremental).get(1).get("count")).isEqualTo(3L);
+        assertThat(regionStatsService.getStatistics().get("rebuilds")).isEqualTo(rebuilds);
+        regionStatsService.onReset();
+        assertThat(regionStatsService.getRegionStats(null)).isEqualTo(incremental);
+        assertThat(regionStatsService.getStatistics().get("rebuilds")).isEqualTo(rebuilds + 1);
+
+        // 区域下钻
+        Map<String, Object> east = regionStatsService.getRegionDetail("east");
+        assertThat(east.get("count")).isEqualTo(3L);
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> hourly = (List<Map<String, Object>>) east.get("hourly");
+        assertThat(hourly).hasSize(24);
+        assertThat(hourly.get(9).get("count")).isEqualTo(1L);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> quantiles = (Map<String, Object>) east.get("quantiles");
+        assertThat(quantiles.get("count")).isEqualTo(3L);
+
+        assertThatThrownBy(() -> regionStatsService.getRegionDetail("north")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> regionStatsService.getRegionStats(24)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testRegionLevelUsesSharedThresholds() {
+        // 平均流量69.5未达到拥堵阈值，区域级别与整体统计、热点使用同一划分，不四舍五入
+        flowRepository.save(new Flow(null, 1, 10, saveNode(39.905, 116.405), 69));
+        flowRepository.save(new Flow(null, 1, 10, saveNode(39.91, 116.41), 70));
+
+        Map<String, Object> east = regions(regionStatsService.getRegionStats(10)).get(0);
+        assertThat(east.get("averageFlow")).isEqualTo(69.5);
+        assertThat(east.get("congestionLevel")).isEqualTo("缓慢").isEqualTo(CongestionLevel.nameOf(69.5));
+        assertThat(east.get("congestedSections")).isEqualTo(1L);
+    }
+
+    private int saveNode(double lat, double lng) {
+        Node node = new Node();
+        node.setLatitude(lat);
+        node.setLongitude(lng);
+        return nodeRepository.save(node).getNodeID();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> regions(Map<String, Object> stats) {
+        return (List<Map<String, Object>>) stats.get("regions");
+    }
+}
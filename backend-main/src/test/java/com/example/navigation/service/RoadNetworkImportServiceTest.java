@@ -0,0 +1,132 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.entity.Node;
+import com.example.navigation.repository.EdgeRepository;
+import com.example.navigation.repository.NodeRepository;
+import com.example.navigation.util.DistanceCalculator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * 路网批量导入测试：验证去重、引用校验、距离计算、并行分批写入后路网图快照重建，以及接近整数上限的稀疏节点ID
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = "network.import.batch-size=2")
+class RoadNetworkImportServiceTest {
+
+    @Autowired
+    private RoadNetworkImportService roadNetworkImportService;
+
+    @Autowired
+    private RoadGraph roadGraph;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private EdgeRepository edgeRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        edgeRepository.deleteAll();
+        nodeRepository.deleteAll();
+    }
+
+    @Test
+    void testCsvImportValidatesAndDeduplicates() throws Exception {
+        Map<String, Object> nodes = roadNetworkImportService.importNodesCsv(stream(
+                "nodeID,latitude,longitude\n" +
+                "101,39.900,116.400\n" +
+                "102,39.905,116.400\n" +
+                "103,39.905,116.410\n" +
+                "102,39.000,116.000\n" +
+                "104,95.000,116.000\n"));
+        assertThat(nodes.get("nodesInserted")).isEqualTo(3L);
+        assertThat(nodes.get("duplicates")).isEqualTo(1L);
+        assertThat(nodes.get("rejected")).isEqualTo(1L);
+
+        Map<String, Object> edges = roadNetworkImportService.importEdgesCsv(stream(
+                "101,102,0.5\n" +
+                "102,101,0.7\n" +
+                "102,103\n" +
+                "103,999,1.0\n" +
+                "103,103,1.0\n"));
+        assertThat(edges.get("edgesInserted")).isEqualTo(2L);
+        assertThat(edges.get("duplicates")).isEqualTo(1L);
+        assertThat(edges.get("rejected")).isEqualTo(2L);
+
+        RoadGraph.Snapshot graph = roadGraph.current();
+        assertThat(graph.nodeCount()).isEqualTo(3);
+        assertThat(graph.edgeCount()).isEqualTo(2);
+        int node102 = graph.indexOf(102);
+        assertThat(graph.incidentEnd(node102) - graph.incidentStart(node102)).isEqualTo(2);
+        double expected = DistanceCalculator.calculateDistance(39.905, 116.400, 39.905, 116.410);
+        assertThat(edgeRepository.findByNodeID1AndNodeID2(102, 103)).singleElement()
+                .satisfies(edge -> assertThat(edge.getDistance().doubleValue()).isCloseTo(expected, within(1e-4)));
+
+        // 导入保留了文件中的ID，之后通过JPA新增的节点不会与之冲突
+        Node node = new Node();
+        node.setLatitude(39.91);
+        node.setLongitude(116.42);
+        assertThat(nodeRepository.save(node).getNodeID()).isGreaterThan(103);
+    }
+
+    @Test
+    void testOsmImportBuildsEdgesFromWays() throws Exception {
+        Map<String, Object> result = roadNetworkImportService.importOsm(stream(
+                "# 节点\n" +
+                "N 10 39.900 116.400\n" +
+                "N 11 39.901 116.401\n" +
+                "N 12 39.902 116.402\n" +
+                "W 1 10 11 12\n" +
+                "W 2 12 11 13\n"));
+        assertThat(result.get("nodesInserted")).isEqualTo(3L);
+        assertThat(result.get("edgesInserted")).isEqualTo(2L);
+        assertThat(result.get("duplicates")).isEqualTo(1L);
+        assertThat(result.get("rejected")).isEqualTo(1L);
+        assertThat(roadGraph.current().edgeCount()).isEqualTo(2);
+    }
+
+    @Test
+    void testSparseLargeNodeIds() throws Exception {
+        // OSM风格的大ID：去重和已有节点判断不按ID分配位图
+        int large = Integer.MAX_VALUE - 10;
+        try {
+            Map<String, Object> first = roadNetworkImportService.importNodesCsv(stream(
+                    large + ",39.900,116.400\n" +
+                    large + ",39.900,116.400\n" +
+                    (large + 1) + ",39.901,116.401\n"));
+            assertThat(first.get("nodesInserted")).isEqualTo(2L);
+            assertThat(first.get("duplicates")).isEqualTo(1L);
+
+            Map<String, Object> second = roadNetworkImportService.importNodesCsv(stream(large + ",39.950,116.450\n"));
+            assertThat(second.get("nodesUpdated")).isEqualTo(1L);
+            assertThat(second.get("nodesInserted")).isEqualTo(0L);
+            assertThat(nodeRepository.findById(large)).get()
+                    .satisfies(node -> assertThat(node.getLatitude()).isEqualTo(39.95));
+        } finally {
+            // 导入会把自增起点推到最大ID之后，恢复为小值，避免之后的测试通过JPA新增节点时溢出
+            nodeRepository.deleteAll();
+            jdbcTemplate.execute("ALTER TABLE nodes ALTER COLUMN node_id RESTART WITH 1000");
+        }
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.entity.Edge;
+import com.example.navigation.model.entity.Flow;
+import com.example.navigation.model.entity.Node;
+import com.example.navigation.repository.EdgeRepository;
+import com.example.navigation.repository.FlowRepository;
+import com.example.navigation.repository.NodeRepository;
+import com.example.navigation.util.TileMath;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 路段矢量瓦片测试：解码MVT验证要素、拥挤级别属性、裁剪范围和按缩放级别的简化
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties")
+class RoadTileServiceTest {
+
+    private static final int ZOOM = 14;
+
+    @Autowired
+    private RoadTileService roadTileService;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private EdgeRepository edgeRepository;
+
+    @Autowired
+    private FlowRepository flowRepository;
+
+    @AfterEach
+    void cleanUp() {
+        flowRepository.deleteAll();
+        edgeRepository.deleteAll();
+        nodeRepository.deleteAll();
+    }
+
+    @Test
+    void testTileContainsClippedCongestionFeatures() {
+        int a = saveNode(39.9000, 116.4000);
+        int b = saveNode(39.9050, 116.4000);
+        int c = saveNode(39.9050, 116.5000);
+        int far = saveNode(31.2300, 121.4700);
+        Edge ab = edgeRepository.save(new Edge(null, a, b, 0.5f));
+        Edge bc = edgeRepository.save(new Edge(null, b, c, 8.5f));
+        edgeRepository.save(new Edge(null, c, far, 1000f));
+        flowRepository.save(new Flow(null, 1, 8, a, 120));
+        flowRepository.save(new Flow(null, 1, 8, b, 100));
+
+        int x = (int) (TileMath.lngToPixelX(116.4000, ZOOM) / TileMath.TILE_SIZE);
+        int y = (int) (TileMath.latToPixelY(39.9020, ZOOM) / TileMath.TILE_SIZE);
+        Map<Long, Map<String, Object>> features = decode(roadTileService.getTile(ZOOM, x, y));
+
+        // AB完整落在瓦片内；BC向东延伸出瓦片，被裁剪到缓冲区边界；通往远处节点的边不在此瓦片
+        assertThat(features).containsOnlyKeys(ab.getId(), bc.getId());
+        assertThat(features.get(ab.getId())).containsEntry("flow", 110L).containsEntry("congestion", "严重拥堵");
+        assertThat(features.get(bc.getId())).containsEntry("flow", 100L);
+        for (Map<String, Object> feature : features.values()) {
+            @SuppressWarnings("unchecked")
+            List<Integer> coordinates = (List<Integer>) feature.get("geometry");
+            assertThat(coordinates).hasSize(4).allSatisfy(v -> assertThat(v).isBetween(-64, 4096 + 64));
+        }
+
+        // 低于最小层级返回空图层
+        assertThat(decode(roadTileService.getTile(5, 26, 12))).isEmpty();
+        assertThatThrownBy(() -> roadTileService.getTile(3, 8, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private int saveNode(double latitude, double longitude) {
+        Node node = new Node();
+        node.setLatitude(latitude);
+        node.setLongitude(longitude);
+        return nodeRepository.save(node).getNodeID();
+    }
+
+    /**
+     * 解码roads图层：要素ID到属性（含解码后的绝对坐标geometry）的映射
+     */
+    private static Map<Long, Map<String, Object>> decode(byte[] tile) {
+        Reader tileReader = new Reader(tile, 0, tile.length);
+        Map<Long, Map<String, Object>> result = new HashMap<>();
+        while (tileReader.hasMore()) {
+            int tag = (int) tileReader.varint();
+            assertThat(tag >> 3).isEqualTo(3);
+            Reader layer = tileReader.message();
+            List<Reader> features = new ArrayList<>();
+            List<String> keys = new ArrayList<>();
+            List<Object> values = new ArrayList<>();
+            while (layer.hasMore()) {
+                int field = (int) layer.varint() >> 3;
+                switch (field) {
+                    case 1 -> assertThat(layer.string()).isEqualTo(RoadTileService.LAYER_NAME);
+                    case 2 -> features.add(layer.message());
+                    case 3 -> keys.add(layer.string());
+                    case 4 -> {
+                        Reader value = layer.message();
+                        int valueField = (int) value.varint() >> 3;
+                        if (valueField == 1) {
+                            values.add(value.string());
+                        } else {
+                            long zigzag = value.varint();
+                            values.add((zigzag >>> 1) ^ -(zigzag & 1));
+                        }
+                    }
+                    default -> layer.varint();
+                }
+            }
+            for (Reader feature : features) {
+                long id = 0;
+                Map<String, Object> properties = new HashMap<>();
+                while (feature.hasMore()) {
+                    int field = (int) feature.varint() >> 3;
+                    if (field == 1) {
+                        id = feature.varint();
+                    } else if (field == 2) {
+                        Reader tags = feature.message();
+                        while (tags.hasMore()) {
+                            properties.put(keys.get((int) tags.varint()), values.get((int) tags.varint()));
+                        }
+                    } else if (field == 3) {
+                        assertThat(feature.varint()).isEqualTo(2L);
+                    } else {
+                        Reader geometry = feature.message();
+                        List<Integer> coordinates = new ArrayList<>();
+                        int cursorX = 0, cursorY = 0;
+                        while (geometry.hasMore()) {
+                            int count = (int) geometry.varint() >> 3;
+                            for (int i = 0; i < count; i++) {
+                                cursorX += unzigzag((int) geometry.varint());
+                                cursorY += unzigzag((int) geometry.varint());
+                                coordinates.add(cursorX);
+                                coordinates.add(cursorY);
+                            }
+                        }
+                        properties.put("geometry", coordinates);
+                    }
+                }
+                result.put(id, properties);
+            }
+        }
+        return result;
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Reader {
+        final byte[] bytes;
+        int position;
+        final int end;
+
+        Reader(byte[] bytes, int position, int end) {
+            this.bytes = bytes;
+            this.position = position;
+            this.end = end;
+        }
+
+        boolean hasMore() {
+            return position < end;
+        }
+
+        long varint() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        Reader message() {
+            int length = (int) varint();
+            Reader child = new Reader(bytes, position, position + length);
+            position += length;
+            return child;
+        }
+
+        String string() {
+            Reader child = message();
+            return new String(bytes, child.position, child.end - child.position, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.navigation.service;
+
+import com.example.navigation.model.dto.route.RouteResponse;
+import com.example.navigation.model.entity.Edge;
+import com.example.navigation.model.entity.Flow;
+import com.example.navigation.model.entity.Node;
+import com.example.navigation.repository.EdgeRepository;
+import com.example.navigation.repository.FlowRepository;
+import com.example.navigation.repository.NodeRepository;
+import com.example.navigation.support.StubModelServer;
+import com.example.navigation.support.StubModelServer.LatencyDistribution;
+import org.junit.jupiter.api.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 路径规划在模型服务变慢、出错、超时和宕机时的延迟测试
+ * 使用进程内的StubModelServer替代Python模型服务，回退路径的性能回归会在这里暴露
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+        "model.service.timeout=300",
+        "model.service.availability-cache-ms=60000"
+})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class RouteServiceFallbackTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(RouteServiceFallbackTest.class);
+
+    private static final int GRID = 5;
+    private static final int ITERATIONS = 5;
+    private static final StubModelServer stubModelServer = new StubModelServer(42L);
+
+    @Autowired
+    private RouteService routeService;
+
+    @Autowired
+    private PythonModelService pythonModelService;
+
+    @Autowired
+    private PredictionCache predictionCache;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private EdgeRepository edgeRepository;
+
+    @Autowired
+    private FlowRepository flowRepository;
+
+    @DynamicPropertySource
+    static void modelServiceProperties(DynamicPropertyRegistry registry) throws IOException {
+        stubModelServer.start();
+        registry.add("model.service.url", stubModelServer::getUrl);
+    }
+
+    /**
+     * 构建5x5的网格路网，并写入第1天8点的流量数据
+     */
+    @BeforeAll
+    void seedRoadNetwork() {
+        Node[][] grid = new Node[GRID][GRID];
+        for (int i = 0; i < GRID; i++) {
+            for (int j = 0; j < GRID; j++) {
+                Node node = new Node();
+                node.setLatitude(39.90 + i * 0.005);
+                node.setLongitude(116.40 + j * 0.005);
+                grid[i][j] = nodeRepository.save(node);
+            }
+        }
+
+        List<Edge> edges = new ArrayList<>();
+        List<Flow> flows = new ArrayList<>();
+        for (int i = 0; i < GRID; i++) {
+            for (int j = 0; j < GRID; j++) {
+                Integer nodeId = grid[i][j].getNodeID();
+                if (i + 1 < GRID) {
+                    edges.add(new Edge(null, nodeId, grid[i + 1][j].getNodeID(), 0.55f));
+                }
+                if (j + 1 < GRID) {
+                    edges.add(new Edge(null, nodeId, grid[i][j + 1].getNodeID(), 0.43f));
+                }
+                flows.add(new Flow(null, 1, 8, nodeId, 30 + (i * GRID + j) % 60));
+            }
+        }
+        edgeRepository.saveAll(edges);
+        flowRepository.saveAll(flows);
+    }
+
+    @AfterAll
+    void cleanUp() {
+        flowRepository.deleteAll();
+        edgeRepository.deleteAll();
+        nodeRepository.deleteAll();
+        stubModelServer.stop();
+    }
+
+    @BeforeEach
+    void resetModelState() {
+        stubModelServer.healthy();
+        predictionCache.invalidateAll();
+        // 让下一次调用重新探测模型服务可用性
+        ReflectionTestUtils.setField(pythonModelService, "lastAvailabilityCheck", 0L);
+    }
+
+    /**
+     * 模型服务正常：走机器学习分支，预测请求以批量方式发出
+     */
+    @Test
+    @Order(1)
+    void testHealthyModel() {
+        long[] latencies = measureRouteLatency("正常");
+
+        assertThat(stubModelServer.getBatchRequests()).isPositive();
+        assertThat(stubModelServer.getPredictRequests()).isLessThanOrEqualTo(1); // 仅可用性探测
+        assertThat(latencies[latencies.length - 1]).isLessThan(3000);
+    }
+
+    /**
+     * 模型服务变慢（对数正态长尾延迟）：路径规划仍在可接受时间内完成
+     */
+    @Test
+    @Order(2)
+    void testSlowModel() {
+        stubModelServer.withLatency(LatencyDistribution.logNormal(20, 0.5));
+
+        long[] latencies = measureRouteLatency("变慢");
+
+        assertThat(latencies[latencies.length - 1]).isLessThan(5000);
+    }
+
+    /**
+     * 模型服务部分请求失败：失败的预测不被缓存，失败的边回退到数据库流量
+     */
+    @Test
+    @Order(3)
+    void testFlakyModel() {
+        stubModelServer.withErrorRate(0.5);
+
+        long[] latencies = measureRouteLatency("部分失败");
+
+        assertThat(latencies[latencies.length - 1]).isLessThan(5000);
+    }
+
+    /**
+     * 模型服务全部出错：可用性探测失败后直接回退到数据库，不再发送预测请求
+     */
+    @Test
+    @Order(4)
+    void testFailingModel() {
+        stubModelServer.withErrorRate(1.0);
+        int batchRequestsBefore = stubModelServer.getBatchRequests();
+
+        long[] latencies = measureRouteLatency("全部出错");
+
+        assertThat(stubModelServer.getBatchRequests()).isEqualTo(batchRequestsBefore);
+        assertThat(latencies[latencies.length - 1]).isLessThan(3000);
+    }
+
+    /**
+     * 模型服务挂起：请求在配置的超时后放弃，单次路径规划不会被挂起时间拖住
+     */
+    @Test
+    @Order(5)
+    void testHangingModel() {
+        stubModelServer.withTimeoutRate(1.0, 5000);
+
+        long[] latencies = measureRouteLatency("超时");
+
+        assertThat(latencies[latencies.length - 1]).isLessThan(3000);
+    }
+
+    /**
+     * 模型服务宕机：连接被拒绝后回退到数据库
+     */
+    @Test
+    @Order(6)
+    void testModelDown() {
+        stubModelServer.stop();
+
+        long[] latencies = measureRouteLatency("宕机");
+
+        assertThat(latencies[latencies.length - 1]).isLessThan(3000);
+    }
+
+    /**
+     * 多次规划从网格一角到对角的最快路线，返回排序后的耗时（毫秒）
+     */
+    private long[] measureRouteLatency(String scenario) {
+        long[] latencies = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            RouteResponse route = routeService.planRoute(39.90, 116.40,
+                    39.90 + (GRID - 1) * 0.005, 116.40 + (GRID - 1) * 0.005, "fastest");
+            latencies[i] = (System.nanoTime() - start) / 1_000_000;
+
+            assertThat(route.getPoints()).hasSizeGreaterThanOrEqualTo(GRID * 2 - 1);
+            assertThat(route.getTotalDistance()).isPositive();
+        }
+        Arrays.sort(latencies);
+        logger.debug("路径规划延迟[{}]: 中位数={}ms, 最小={}ms, 最大={}ms",
+                scenario, latencies[ITERATIONS / 2], latencies[0], latencies[ITERATIONS - 1]);
+        return latencies;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.navigation.service;
+
+import com.example.navigation.config.GlobalExceptionHandler;
+import com.example.navigation.controller.MapController;
+import com.example.navigation.exception.StreamAbortedException;
+import com.example.navigation.model.entity.Flow;
+import com.example.navigation.model.entity.Node;
+import com.example.navigation.repository.FlowRepository;
+import com.example.navigation.repository.NodeRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 流式响应测试：验证流式写出的热力图与对象序列化结果一致、内容协商（JSON/CBOR/Smile）、压缩和304，
+ * 以及写出中途失败时中止响应
+ */
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.properties")
+class StreamingResponseWriterTest {
+
+    @Autowired
+    private StreamingResponseWriter streamingResponseWriter;
+
+    @Autowired
+    private MapService mapService;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private FlowRepository flowRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MapController mapController;
+
+    @Autowired
+    private GlobalExceptionHandler globalExceptionHandler;
+
+    @AfterEach
+    void cleanUp() {
+        flowRepository.deleteAll();
+        nodeRepository.deleteAll();
+    }
+
+    @Test
+    void testStreamedHeatmapMatchesSerializedResponse() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            Node node = new Node();
+            node.setLatitude(39.90 + i * 0.001);
+            node.setLongitude(116.40);
+            int nodeId = nodeRepository.save(node).getNodeID();
+            flowRepository.save(new Flow(null, 1, 8, nodeId, 10 * i));
+        }
+        JsonNode expected = objectMapper.valueToTree(mapService.getHeatmapData(null, null));
+        JsonNode expectedClustered = objectMapper.valueToTree(mapService.getHeatmapData(null, 12));
+
+        ResponseEntity<StreamingResponseBody> plain = heatmap(null, null, null, null);
+        assertThat(plain.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(objectMapper.readTree(body(plain))).isEqualTo(expected);
+
+        // 聚合后的加权点同样一致
+        ResponseEntity<StreamingResponseBody> clustered = streamingResponseWriter.respond(null, null, null,
+                generator -> mapService.writeHeatmapData(null, 12, generator));
+        assertThat(objectMapper.readTree(body(clustered))).isEqualTo(expectedClustered);
+
+        // CBOR + gzip
+        ResponseEntity<StreamingResponseBody> cbor = heatmap(null, "application/cbor", "br;q=1.0, gzip", null);
+        assertThat(cbor.getHeaders().getContentType()).isEqualTo(StreamingResponseWriter.APPLICATION_CBOR);
+        assertThat(cbor.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        byte[] cborBytes = new GZIPInputStream(new ByteArrayInputStream(body(cbor))).readAllBytes();
+        assertThat(new CBORMapper().readTree(cborBytes)).isEqualTo(expected);
+
+        // Smile + deflate（gzip被q=0拒绝）
+        ResponseEntity<StreamingResponseBody> smile = heatmap(null, "application/x-jackson-smile", "gzip;q=0, deflate", null);
+        assertThat(smile.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("deflate");
+        byte[] smileBytes = new InflaterInputStream(new ByteArrayInputStream(body(smile))).readAllBytes();
+        assertThat(new SmileMapper().readTree(smileBytes)).isEqualTo(expected);
+
+        // 表示形式不同，ETag不同；版本未变时条件请求返回304
+        assertThat(cbor.getHeaders().getETag()).isNotEqualTo(plain.getHeaders().getETag());
+        ResponseEntity<StreamingResponseBody> notModified = heatmap(cbor.getHeaders().getETag(), "application/cbor", "gzip", null);
+        assertThat(notModified.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(notModified.getBody()).isNull();
+        assertThat(heatmap(cbor.getHeaders().getETag(), null, null, null).getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void testFailureMidStreamAbortsWithoutCompletingBody() throws Exception {
+        long failed = (long) streamingResponseWriter.getStatistics().get("failed");
+        StreamingResponseWriter.BodyWriter failing = generator -> {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("data");
+            for (int i = 0; i < 20000; i++) {
+                generator.writeNumber(i);
+            }
+            throw new IllegalStateException("列式存储不可用");
+        };
+
+        // 已写出的部分内容不补齐结束符，也不写gzip尾部
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        assertThatThrownBy(() -> streamingResponseWriter.respond(null, null, null, failing).getBody().writeTo(plain))
+                .isInstanceOf(StreamAbortedException.class)
+                .hasRootCauseMessage("列式存储不可用");
+        assertThat(plain.size()).isPositive();
+        assertThatThrownBy(() -> objectMapper.readTree(plain.toByteArray())).isInstanceOf(JsonProcessingException.class);
+
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        assertThatThrownBy(() -> streamingResponseWriter.respond(null, null, "gzip", failing).getBody().writeTo(gzip))
+                .isInstanceOf(StreamAbortedException.class);
+        assertThatThrownBy(() -> new GZIPInputStream(new ByteArrayInputStream(gzip.toByteArray())).readAllBytes())
+                .isInstanceOf(EOFException.class);
+        assertThat(streamingResponseWriter.getStatistics().get("failed")).isEqualTo(failed + 2);
+
+        // 响应头未提交时清除ETag后返回500，已提交时重新抛出由容器中止连接
+        StreamAbortedException aborted = new StreamAbortedException("流式响应写出失败", new IOException());
+        MockHttpServletResponse uncommitted = new MockHttpServletResponse();
+        uncommitted.setHeader(HttpHeaders.ETAG, "\"1\"");
+        ResponseEntity<String> error = globalExceptionHandler.handleStreamAbortedException(aborted, uncommitted);
+        assertThat(error.getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        assertThat(uncommitted.getHeader(HttpHeaders.ETAG)).isNull();
+        MockHttpServletResponse committed = new MockHttpServletResponse();
+        committed.setCommitted(true);
+        assertThatThrownBy(() -> globalExceptionHandler.handleStreamAbortedException(aborted, committed)).isSameAs(aborted);
+
+        // zoom在响应头提交前校验
+        assertThatThrownBy(() -> mapController.getHeatmapData(null, 31, null, null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private ResponseEntity<StreamingResponseBody> heatmap(String ifNoneMatch, String accept, String acceptEncoding, Integer zoom) {
+        return streamingResponseWriter.respond(ifNoneMatch, accept, acceptEncoding,
+                generator -> mapService.writeHeatmapData(null, zoom, generator));
+    }
+
+    private static byte[] body(ResponseEntity<StreamingResponseBody> response) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        response.getBody().writeTo(output);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,271 @@
+package com.example.navigation.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进程内的Python模型服务桩
+ * 实现model_server.py的 /predict 与 /predict/batch 接口约定，输出由(节点, 小时)确定，
+ * 并可注入延迟分布、错误率和超时（请求挂起），用于测试模型变慢、出错或宕机时的回退路径；
+ * /models/load、/models/promote 与 /models/unload 总是校验通过，可单独让版本切换失败
+ */
+public class StubModelServer implements AutoCloseable {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Random random;
+    private final AtomicInteger predictRequests = new AtomicInteger();
+    private final AtomicInteger batchRequests = new AtomicInteger();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private volatile LatencyDistribution latency = LatencyDistribution.fixed(0);
+    private volatile double errorRate;     // 返回500的概率
+    private volatile double timeoutRate;   // 挂起请求的概率
+    private volatile long hangMillis = 10_000;
+    private volatile boolean promoteFailing;   // /models/promote返回500
+
+    public StubModelServer(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * 在随机端口启动
+     */
+    public StubModelServer start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "stub-model-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/predict", this::handle);
+        server.createContext("/models", this::handleModels);
+        server.start();
+        return this;
+    }
+
+    /**
+     * 停止服务（模拟模型服务宕机）
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public StubModelServer withLatency(LatencyDistribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    public StubModelServer withErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    public StubModelServer withTimeoutRate(double timeoutRate, long hangMillis) {
+        this.timeoutRate = timeoutRate;
+        this.hangMillis = hangMillis;
+        return this;
+    }
+
+    public StubModelServer withPromoteFailing(boolean promoteFailing) {
+        this.promoteFailing = promoteFailing;
+        return this;
+    }
+
+    /**
+     * 恢复为无延迟、无故障的正常状态
+     */
+    public StubModelServer healthy() {
+        return withLatency(LatencyDistribution.fixed(0)).withErrorRate(0).withTimeoutRate(0, hangMillis)
+                .withPromoteFailing(false);
+    }
+
+    public int getPredictRequests() {
+        return predictRequests.get();
+    }
+
+    public int getBatchRequests() {
+        return batchRequests.get();
+    }
+
+    /**
+     * 确定性的预测输出，与真实模型一样保证至少为1
+     */
+    public static double volumeFor(int node, int time) {
+        return Math.max(1.0, 20 + Math.floorMod(node * 31 + time * 17, 80));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            boolean batch = exchange.getRequestURI().getPath().endsWith("/batch");
+            (batch ? batchRequests : predictRequests).incrementAndGet();
+
+            double roll;
+            long delay;
+            synchronized (random) {
+                roll = random.nextDouble();
+                delay = latency.sampleMillis(random);
+            }
+            if (roll < timeoutRate) {
+                sleep(hangMillis);
+                return;
+            }
+            sleep(delay);
+            if (roll < timeoutRate + errorRate) {
+                respond(exchange, 500, "{\"error\":\"injected failure\",\"code\":\"PREDICTION_ERROR\",\"success\":false}");
+                return;
+            }
+
+            if (batch) {
+                handleBatch(exchange);
+            } else {
+                handleSingle(exchange);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleModels(HttpExchange exchange) throws IOException {
+        try {
+            JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+            String path = exchange.getRequestURI().getPath();
+            if (path.endsWith("/promote") && promoteFailing) {
+                respond(exchange, 500, "{\"error\":\"injected failure\",\"success\":false}");
+                return;
+            }
+            ObjectNode response = objectMapper.createObjectNode();
+            response.put("version", body.path("version").asText());
+            response.put("success", true);
+            if (path.endsWith("/load")) {
+                response.putObject("validation").put("passed", true);
+            }
+            respond(exchange, 200, objectMapper.writeValueAsString(response));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleSingle(HttpExchange exchange) throws IOException {
+        Map<String, String> params = parseQuery(exchange.getRequestURI());
+        if ("POST".equals(exchange.getRequestMethod())) {
+            JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+            params.put("node", body.path("node").asText());
+            params.put("time", body.path("time").asText());
+        }
+        int node = Integer.parseInt(params.get("node"));
+        int time = Integer.parseInt(params.get("time"));
+
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("node", node);
+        response.put("time", time);
+        response.put("volume", volumeFor(node, time));
+        response.put("version", "stub");
+        response.put("success", true);
+        respond(exchange, 200, objectMapper.writeValueAsString(response));
+    }
+
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+        int time = body.path("timePoint").asInt();
+
+        ObjectNode response = objectMapper.createObjectNode();
+        ObjectNode predictions = response.putObject("predictions");
+        for (JsonNode nodeId : body.path("nodeIds")) {
+            if (nodeId.asInt() > 0) {
+                predictions.put(nodeId.asText(), volumeFor(nodeId.asInt(), time));
+            }
+        }
+        response.put("timePoint", time);
+        response.put("count", predictions.size());
+        response.put("version", "stub");
+        response.put("success", true);
+        respond(exchange, 200, objectMapper.writeValueAsString(response));
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(URI uri) {
+        Map<String, String> params = new HashMap<>();
+        if (uri.getRawQuery() != null) {
+            for (String pair : uri.getRawQuery().split("&")) {
+                int idx = pair.indexOf('=');
+                if (idx > 0) {
+                    params.put(pair.substring(0, idx), pair.substring(idx + 1));
+                }
+            }
+        }
+        return params;
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 响应延迟分布
+     */
+    @FunctionalInterface
+    public interface LatencyDistribution {
+        long sampleMillis(Random random);
+
+        static LatencyDistribution fixed(long millis) {
+            return random -> millis;
+        }
+
+        static LatencyDistribution uniform(long minMillis, long maxMillis) {
+            return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+        }
+
+        /**
+         * 对数正态分布，适合模拟带长尾的服务延迟
+         */
+        static LatencyDistribution logNormal(double medianMillis, double sigma) {
+            return random -> Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+        }
+    }
+}